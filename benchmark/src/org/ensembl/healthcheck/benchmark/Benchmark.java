@@ -0,0 +1,52 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+/**
+ * One operation timed by the {@link BenchmarkRunner}. The runner calls
+ * {@link #setUp()} once, {@link #setUpIteration()} before each warm up and
+ * measurement iteration, {@link #invoke()} as often as fits in an iteration
+ * and {@link #tearDown()} at the end.
+ */
+public abstract class Benchmark {
+
+  private final String name;
+
+  protected Benchmark(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setUp() throws Exception {
+  }
+
+  public void setUpIteration() throws Exception {
+  }
+
+  /**
+   * Run the operation once.
+   * 
+   * @return something computed by the operation, so the JIT cannot discard it
+   */
+  public abstract Object invoke() throws Exception;
+
+  public void tearDown() throws Exception {
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Runs the benchmarks of the hot paths of the healthchecks against in-memory
+ * H2 databases in MySQL mode, so they need no database server. Run with
+ * <code>ant benchmark</code>, optionally with
+ * <code>-Dbenchmark.filter=substring</code> to only run the benchmarks whose
+ * name contains it.
+ * </p>
+ * 
+ * <p>
+ * Each benchmark is warmed up for <code>benchmark.warmup</code> iterations
+ * (default 5) and then measured for <code>benchmark.iterations</code>
+ * (default 10), each lasting <code>benchmark.time</code> milliseconds
+ * (default 1000). The mean time per operation is printed with the standard
+ * deviation between the measured iterations.
+ * </p>
+ */
+public class BenchmarkRunner {
+
+  /** Stops the JIT discarding what the benchmarks compute */
+  private static int sink = 0;
+
+  public static List<Benchmark> getBenchmarks() {
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.addAll(SqlTemplateBenchmarks.create());
+    benchmarks.addAll(CompareResultSetsBenchmark.create());
+    benchmarks.addAll(ReportBenchmarks.create());
+    benchmarks.addAll(DatabaseNameBenchmarks.create());
+    benchmarks.addAll(SQLParserBenchmark.create());
+    return benchmarks;
+  }
+
+  public static void main(String[] args) throws Exception {
+    String filter = args.length > 0 ? args[0] : "";
+    int warmup = Integer.getInteger("benchmark.warmup", 5);
+    int iterations = Integer.getInteger("benchmark.iterations", 10);
+    long time = Long.getLong("benchmark.time", 1000L);
+
+    System.out.println(String.format("%-50s %14s %12s %14s", "benchmark", "ns/op", "+-", "ops/s"));
+    for (Benchmark benchmark : getBenchmarks()) {
+      if (benchmark.getName().contains(filter)) {
+        double[] nanosPerOp = run(benchmark, warmup, iterations, time);
+        double mean = mean(nanosPerOp);
+        System.out.println(String.format("%-50s %14.1f %12.1f %14.0f", benchmark.getName(), mean,
+            stddev(nanosPerOp, mean), 1e9 / mean));
+      }
+    }
+    System.out.println("(" + sink + ")");
+  }
+
+  /**
+   * @return the mean nanoseconds per operation of each measured iteration
+   */
+  public static double[] run(Benchmark benchmark, int warmup, int iterations, long millis) throws Exception {
+    benchmark.setUp();
+    try {
+      for (int i = 0; i < warmup; i++) {
+        iteration(benchmark, millis);
+      }
+      double[] nanosPerOp = new double[iterations];
+      for (int i = 0; i < iterations; i++) {
+        nanosPerOp[i] = iteration(benchmark, millis);
+      }
+      return nanosPerOp;
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  private static double iteration(Benchmark benchmark, long millis) throws Exception {
+    benchmark.setUpIteration();
+    long nanos = millis * 1000000L;
+    long operations = 0;
+    long start = System.nanoTime();
+    long deadline = start + nanos;
+    long now = start;
+    // check the clock in batches, so reading it is not what is measured,
+    // growing them while a batch takes under a hundredth of the iteration
+    int batch = 1;
+    do {
+      long batchStart = now;
+      for (int i = 0; i < batch; i++) {
+        Object result = benchmark.invoke();
+        sink += System.identityHashCode(result);
+      }
+      operations += batch;
+      now = System.nanoTime();
+      if (batch < 1024 && now - batchStart < nanos / 100) {
+        batch *= 2;
+      }
+    } while (now < deadline);
+    return (double) (now - start) / operations;
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return values.length == 0 ? 0 : sum / values.length;
+  }
+
+  private static double stddev(double[] values, double mean) {
+    if (values.length < 2) {
+      return 0;
+    }
+    double sum = 0;
+    for (double value : values) {
+      sum += (value - mean) * (value - mean);
+    }
+    return Math.sqrt(sum / (values.length - 1));
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+import org.ensembl.healthcheck.testcase.generic.Karyotype;
+import org.ensembl.healthcheck.util.DBUtils;
+
+/**
+ * {@link DBUtils#compareResultSets(ResultSet, ResultSet, EnsTestCase, String, boolean, boolean, String, boolean)}
+ * of the same 10000 rows read from two databases, as when comparing a table
+ * with the previous release.
+ */
+public class CompareResultSetsBenchmark extends Benchmark {
+
+  private static final int ROWS = 10000;
+
+  private static final String SQL = "SELECT * FROM gene ORDER BY gene_id";
+
+  private final EnsTestCase testCase = new Karyotype();
+
+  private Connection first;
+
+  private Connection second;
+
+  public static List<Benchmark> create() {
+    return Arrays.<Benchmark> asList(new CompareResultSetsBenchmark());
+  }
+
+  private CompareResultSetsBenchmark() {
+    super("DBUtils.compareResultSets");
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    first = H2Databases.create("compareresultsetsbenchmark_first", ROWS);
+    second = H2Databases.create("compareresultsetsbenchmark_second", ROWS);
+  }
+
+  @Override
+  public Object invoke() throws Exception {
+    Statement st1 = first.createStatement();
+    Statement st2 = second.createStatement();
+    try {
+      ResultSet rs1 = st1.executeQuery(SQL);
+      ResultSet rs2 = st2.executeQuery(SQL);
+      boolean same = DBUtils.compareResultSets(rs1, rs2, testCase, "", false, false, "gene", false);
+      if (!same) {
+        throw new IllegalStateException("The tables should be the same");
+      }
+      return same;
+    } finally {
+      DBUtils.closeQuietly(st1);
+      DBUtils.closeQuietly(st2);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ensembl.healthcheck.DatabaseRegistryEntry;
+
+/**
+ * {@link DatabaseRegistryEntry#getInfoFromName(String)} of a name written for
+ * each of the database name patterns, both matched against the patterns every
+ * time and from the cache.
+ */
+public class DatabaseNameBenchmarks {
+
+  /**
+   * In the order the patterns are tried. The names for U_DB, TAX_DB, EW_DB
+   * and HELP_DB are matched by patterns tried before them.
+   */
+  static final String[] NAMES = { "ensembl_compara_80", "user_ensembl_ancestral_80", "user_ensembl_compara_80",
+      "user_ensembl_compara_master", "ensembl_ancestral_80", "ensembl_compara_bacteria_27_80",
+      "neurospora_crassa_core_27_80_1", "homo_sapiens_core_80_38", "Prefix1_homo_sapiens_funcgen_80_38",
+      "ensembl_mart_80", "homo_sapiens2_otherfeatures_est_db_80_38", "human_core_20", "user_homo_sapiens_core_80_38",
+      "vega_homo_sapiens_Core_80_38", "mysql", "homo_sapiens_blast", "homo_sapiens_userdata", "ncbi_taxonomy_80",
+      "ensembl_website_80", "ensembl_help_80", "user_mouse_Core", "master_schema_core_80", "NoMatch-Database" };
+
+  public static List<Benchmark> create() {
+    return Arrays.<Benchmark> asList(
+
+    new Benchmark("DatabaseRegistryEntry.getInfoFromName(uncached)") {
+      private int i = 0;
+
+      public Object invoke() {
+        return DatabaseRegistryEntry.getInfoFromName(NAMES[i++ % NAMES.length], null, null);
+      }
+    },
+
+    new Benchmark("DatabaseRegistryEntry.getInfoFromName(cached)") {
+      private int i = 0;
+
+      public Object invoke() {
+        return DatabaseRegistryEntry.getInfoFromName(NAMES[i++ % NAMES.length]);
+      }
+    });
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.ensembl.healthcheck.util.ConnectionBasedSqlTemplateImpl;
+import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.SqlTemplate;
+
+/**
+ * In-memory H2 databases in MySQL mode with a gene table like the one of a
+ * core database.
+ */
+public class H2Databases {
+
+  public static final String DRIVER = "org.h2.Driver";
+
+  /**
+   * @return a connection to a new database called name with a gene table of
+   *         rows rows, spread over 100 seq_regions
+   */
+  public static Connection create(String name, int rows) throws SQLException {
+    Connection con = ConnectionPool.getConnection(DRIVER, "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(con);
+    t.execute("DROP TABLE IF EXISTS gene");
+    t.execute("CREATE TABLE gene (gene_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT, biotype VARCHAR(40) NOT NULL, "
+        + "seq_region_id INT(10) UNSIGNED NOT NULL, seq_region_start INT(10) UNSIGNED NOT NULL, "
+        + "seq_region_end INT(10) UNSIGNED NOT NULL, stable_id VARCHAR(128), PRIMARY KEY (gene_id))");
+    PreparedStatement ps = con.prepareStatement(
+        "INSERT INTO gene (biotype, seq_region_id, seq_region_start, seq_region_end, stable_id) VALUES (?, ?, ?, ?, ?)");
+    try {
+      String[] biotypes = { "protein_coding", "lincRNA", "pseudogene", "miRNA" };
+      for (int i = 1; i <= rows; i++) {
+        ps.setString(1, biotypes[i % biotypes.length]);
+        ps.setInt(2, i % 100);
+        ps.setInt(3, i * 1000);
+        ps.setInt(4, i * 1000 + 500);
+        ps.setString(5, String.format("ENSG%011d", i));
+        ps.addBatch();
+      }
+      ps.executeBatch();
+    } finally {
+      ps.close();
+    }
+    return con;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ensembl.healthcheck.ReportLine;
+import org.ensembl.healthcheck.ReportManager;
+import org.ensembl.healthcheck.Team;
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+import org.ensembl.healthcheck.testcase.generic.Karyotype;
+
+/**
+ * Creating {@link ReportLine}s and adding them to the {@link ReportManager},
+ * which keeps them in memory and spills them to disk beyond its buffer size.
+ */
+public class ReportBenchmarks {
+
+  private static final String[] DATABASES = { "homo_sapiens_core_80_38", "ensembl_compara_80",
+      "Prefix1_homo_sapiens_funcgen_80_38", "mus_musculus_variation_80_38" };
+
+  private static final EnsTestCase testCase = new Karyotype();
+
+  public static List<Benchmark> create() {
+    return Arrays.<Benchmark> asList(
+
+    new Benchmark("ReportLine.<init>") {
+      private int i = 0;
+
+      public Object invoke() {
+        return new ReportLine(testCase, DATABASES[i++ & 3], ReportLine.PROBLEM, "Chromosome 1 has no karyotype data",
+            Team.GENEBUILD, Team.CORE);
+      }
+    },
+
+    new Benchmark("ReportManager.add") {
+      private int i = 0;
+
+      @Override
+      public void setUpIteration() {
+        // start each iteration with an empty store
+        ReportManager.initialise();
+      }
+
+      public Object invoke() {
+        ReportLine line = new ReportLine(testCase, DATABASES[i++ & 3], ReportLine.PROBLEM,
+            "Chromosome 1 has no karyotype data", Team.GENEBUILD, Team.CORE);
+        ReportManager.add(line);
+        return line;
+      }
+
+      @Override
+      public void tearDown() {
+        ReportManager.initialise();
+      }
+    });
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ensembl.healthcheck.util.SQLParser;
+
+/**
+ * {@link SQLParser#parse(String)} of the shipped table.sql, or of the file in
+ * the <code>benchmark.sql</code> system property.
+ */
+public class SQLParserBenchmark extends Benchmark {
+
+  private final String fileName = System.getProperty("benchmark.sql", "resources/runtime/table.sql");
+
+  public static List<Benchmark> create() {
+    return Arrays.<Benchmark> asList(new SQLParserBenchmark());
+  }
+
+  private SQLParserBenchmark() {
+    super("SQLParser.parse(table.sql)");
+  }
+
+  @Override
+  public Object invoke() throws FileNotFoundException {
+    // the parser adds to the statements it has parsed before
+    return new SQLParser().parse(fileName);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.ensembl.healthcheck.util.ConnectionBasedSqlTemplateImpl;
+import org.ensembl.healthcheck.util.DefaultMapRowMapper;
+import org.ensembl.healthcheck.util.ObjectArrayRowMapper;
+import org.ensembl.healthcheck.util.SqlTemplate;
+import org.ensembl.healthcheck.util.StringListMapRowMapper;
+import org.ensembl.healthcheck.util.StringMapRowMapper;
+import org.ensembl.healthcheck.util.StringPairRowMapper;
+
+/**
+ * Mapping the rows of a 10000 row table with
+ * {@link ConnectionBasedSqlTemplateImpl} and the bundled RowMappers.
+ */
+public class SqlTemplateBenchmarks {
+
+  private static final int ROWS = 10000;
+
+  private static SqlTemplate template;
+
+  public static List<Benchmark> create() {
+    return Arrays.asList(
+
+    new SqlBenchmark("SqlTemplate.queryForDefaultObjectList") {
+      public Object invoke() {
+        return template.queryForDefaultObjectList("SELECT stable_id FROM gene", String.class);
+      }
+    },
+
+    new SqlBenchmark("SqlTemplate.queryForList(ObjectArrayRowMapper)") {
+      public Object invoke() {
+        return template.queryForList("SELECT gene_id, biotype, seq_region_start FROM gene", new ObjectArrayRowMapper());
+      }
+    },
+
+    new SqlBenchmark("SqlTemplate.queryForList(StringPairRowMapper)") {
+      public Object invoke() {
+        return template.queryForList("SELECT stable_id, biotype FROM gene", new StringPairRowMapper());
+      }
+    },
+
+    new SqlBenchmark("SqlTemplate.queryForMap(StringMapRowMapper)") {
+      public Object invoke() {
+        return template.queryForMap("SELECT stable_id, biotype FROM gene", new StringMapRowMapper());
+      }
+    },
+
+    new SqlBenchmark("SqlTemplate.queryForMap(StringListMapRowMapper)") {
+      public Object invoke() {
+        return template.queryForMap("SELECT biotype, stable_id FROM gene", new StringListMapRowMapper());
+      }
+    },
+
+    new SqlBenchmark("SqlTemplate.queryForMap(DefaultMapRowMapper)") {
+      public Object invoke() {
+        return template.queryForMap("SELECT gene_id, seq_region_id FROM gene",
+            new DefaultMapRowMapper<Long, Long>(Long.class, Long.class));
+      }
+    });
+  }
+
+  private abstract static class SqlBenchmark extends Benchmark {
+
+    SqlBenchmark(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+      if (template == null) {
+        template = new ConnectionBasedSqlTemplateImpl(H2Databases.create("sqltemplatebenchmark", ROWS));
+      }
+    }
+  }
+}
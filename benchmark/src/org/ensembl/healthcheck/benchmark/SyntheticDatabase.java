@@ -0,0 +1,1234 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.SQLParser;
+
+/**
+ * <p>
+ * Creates a database shaped like a core, variation or compara database from
+ * the table.sql of its schema and fills it with synthetic rows, so whole test
+ * groups can be run against a database of a known size without a copy of a
+ * production database. Run with <code>ant synthetic-database</code>, or
+ * <code>ant load-test</code> to also run test groups against it.
+ * </p>
+ *
+ * <p>
+ * Every table of the schema is filled. The number of rows is set by
+ * <code>synthetic.genes</code> (default 1000),
+ * <code>synthetic.transcripts_per_gene</code> (default 3),
+ * <code>synthetic.exons_per_transcript</code> (default 8),
+ * <code>synthetic.xrefs_per_gene</code> (default 5),
+ * <code>synthetic.variation_features</code> (default 10000),
+ * <code>synthetic.seq_regions</code> (default 100) and
+ * <code>synthetic.other_rows</code> (default 10) for lookup tables, all
+ * multiplied by <code>synthetic.scale</code> (default 1).
+ * </p>
+ *
+ * <p>
+ * Columns are filled by what their names say they hold. A column named like
+ * the single column primary key of another table refers to it: rows of the
+ * big tables are clustered on their parent, e.g. the transcripts of a gene
+ * have consecutive ids, with exponentially distributed numbers of children
+ * per parent, and references to lookup tables such as analysis favour the
+ * first ids. Features are laid out along their seq_region. A feature whose
+ * parent is a feature too, such as a transcript of a gene or an exon of a
+ * transcript, lies within its parent on the same seq_region and strand, and
+ * children with a rank are laid out in the order of their rank. The rows are
+ * the same for the same <code>synthetic.seed</code>.
+ * </p>
+ *
+ * <p>
+ * The database is written to <code>synthetic.url</code>, by default an H2
+ * database in MySQL mode under <code>target/synthetic</code>. H2 gets the
+ * tables without their unique and composite keys, which become plain
+ * indexes; MySQL gets table.sql as it is and skips rows which would break a
+ * unique key.
+ * </p>
+ */
+public class SyntheticDatabase {
+
+  public static final String H2_DRIVER = "org.h2.Driver";
+
+  public static final String MYSQL_DRIVER = "com.mysql.jdbc.Driver";
+
+  private static final int BATCH_SIZE = 1000;
+
+  private static final Pattern CREATE_TABLE = Pattern.compile(
+      "^\\s*CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?`?(\\w+)`?\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern INSERT = Pattern.compile("^\\s*INSERT\\s", Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+
+  private static final Pattern QUOTED = Pattern.compile("'((?:[^']|'')*)'");
+
+  private static final Pattern LENGTH = Pattern.compile("^\\w+\\s*\\(\\s*(\\d+)");
+
+  private static final String[] BIOTYPES = { "protein_coding", "protein_coding", "protein_coding", "lincRNA",
+      "processed_pseudogene", "miRNA", "snRNA", "antisense" };
+
+  private static final String[] ALLELES = { "A/G", "C/T", "G/A", "T/C", "A/C", "G/T", "A/-", "-/T" };
+
+  /**
+   * Tables whose parent is only given by a link table: the table, its parent
+   * and the link table, which gets one row for each row of the table
+   */
+  private static final String[][] LINKED_PARENTS = { { "exon", "transcript", "exon_transcript" } };
+
+  private static final Map<String, String> STABLE_ID_PREFIXES = new HashMap<String, String>();
+
+  static {
+    STABLE_ID_PREFIXES.put("gene", "ENSG");
+    STABLE_ID_PREFIXES.put("transcript", "ENST");
+    STABLE_ID_PREFIXES.put("exon", "ENSE");
+    STABLE_ID_PREFIXES.put("translation", "ENSP");
+    STABLE_ID_PREFIXES.put("gene_member", "ENSG");
+    STABLE_ID_PREFIXES.put("seq_member", "ENSP");
+    STABLE_ID_PREFIXES.put("family", "ENSFM");
+    STABLE_ID_PREFIXES.put("gene_tree_root", "ENSGT");
+  }
+
+  private final String type;
+
+  private final double scale;
+
+  private final Random random;
+
+  private final Timestamp date = Timestamp.valueOf("2015-01-01 00:00:00");
+
+  /** The feature each table of features lies within, by the name of the table */
+  private final Map<String, Table> parents = new HashMap<String, Table>();
+
+  /** The table each link table gives the parents of, by the name of the link table */
+  private final Map<String, Table> links = new HashMap<String, Table>();
+
+  /** Where the rows of the parent features are, by the name of their table */
+  private final Map<String, Locations> locations = new HashMap<String, Locations>();
+
+  public SyntheticDatabase(String type, double scale, long seed) {
+    this.type = type;
+    this.scale = scale;
+    this.random = new Random(seed);
+  }
+
+  public static void main(String[] args) throws Exception {
+    String type = System.getProperty("synthetic.type", "core");
+    String schema = System.getProperty("synthetic.schema");
+    if (schema == null || schema.length() == 0) {
+      schema = System.getProperty(type.equals("core") ? "schema.file" : type + "_schema.file");
+    }
+    if (schema == null || schema.length() == 0) {
+      throw new IllegalArgumentException("Set synthetic.schema to the table.sql of the " + type + " schema");
+    }
+    String database = System.getProperty("synthetic.database", getDefaultName(type));
+    String url = System.getProperty("synthetic.url", "");
+    if (url.length() == 0) {
+      url = "jdbc:h2:file:" + new File("target/synthetic", database).getAbsolutePath() + ";MODE=MySQL";
+    }
+    String user = System.getProperty("synthetic.user", "sa");
+    String password = System.getProperty("synthetic.password", "");
+    double scale = Double.parseDouble(System.getProperty("synthetic.scale", "1"));
+    long seed = Long.getLong("synthetic.seed", 42L);
+
+    long start = System.currentTimeMillis();
+    Connection con = connect(url, database, user, password);
+    try {
+      SyntheticDatabase generator = new SyntheticDatabase(type, scale, seed);
+      Map<String, Long> rows = generator.generate(con, isH2(url), readSchema(schema));
+      long total = 0;
+      for (Map.Entry<String, Long> table : rows.entrySet()) {
+        System.out.println(String.format("%-40s %12d", table.getKey(), table.getValue()));
+        total += table.getValue();
+      }
+      System.out.println(String.format("Wrote %d rows to %d tables of %s in %d ms", total, rows.size(), database,
+          System.currentTimeMillis() - start));
+    } finally {
+      con.close();
+    }
+  }
+
+  /**
+   * @return a name which the healthchecks recognise as a database of type
+   */
+  public static String getDefaultName(String type) {
+    if (type.equals("compara")) {
+      return "ensembl_compara_80";
+    }
+    return "synthetic_species_" + type + "_80_1";
+  }
+
+  private static boolean isH2(String url) {
+    return url.startsWith("jdbc:h2:");
+  }
+
+  /**
+   * Connect to the database, creating it first on MySQL, where url is the
+   * url of the server.
+   */
+  private static Connection connect(String url, String database, String user, String password) throws SQLException {
+    if (isH2(url)) {
+      return ConnectionPool.getConnection(H2_DRIVER, url, user, password);
+    }
+    Connection server = ConnectionPool.getConnection(MYSQL_DRIVER, url, user, password);
+    Statement stmt = server.createStatement();
+    try {
+      stmt.execute("DROP DATABASE IF EXISTS " + database);
+      stmt.execute("CREATE DATABASE " + database);
+    } finally {
+      stmt.close();
+    }
+    String databaseUrl = (url.endsWith("/") ? url : url + "/") + database;
+    if (databaseUrl.indexOf("rewriteBatchedStatements") < 0) {
+      databaseUrl += (databaseUrl.indexOf('?') < 0 ? "?" : "&") + "rewriteBatchedStatements=true";
+    }
+    return ConnectionPool.getConnection(MYSQL_DRIVER, databaseUrl, user, password);
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * @return the CREATE TABLE and INSERT statements of a table.sql, without
+   *         comments
+   */
+  public static List<String> readSchema(String fileName) throws FileNotFoundException {
+    List<String> statements = new ArrayList<String>();
+    for (Object sql : new SQLParser().parse(fileName)) {
+      String statement = BLOCK_COMMENT.matcher((String) sql).replaceAll(" ").trim();
+      if (CREATE_TABLE.matcher(statement).find() || INSERT.matcher(statement).find()) {
+        statements.add(statement);
+      }
+    }
+    return statements;
+  }
+
+  /**
+   * Create the tables of a schema and fill them.
+   *
+   * @param h2
+   *          whether con is an H2 database rather than MySQL
+   * @param statements
+   *          the CREATE TABLE and INSERT statements of the schema
+   * @return the number of rows written to each table
+   */
+  public Map<String, Long> generate(Connection con, boolean h2, List<String> statements) throws SQLException {
+    List<Table> tables = new ArrayList<Table>();
+    List<String> inserts = new ArrayList<String>();
+    for (String statement : statements) {
+      Matcher m = CREATE_TABLE.matcher(statement);
+      if (m.find()) {
+        tables.add(Table.parse(m.group(1), statement.substring(m.end(), statement.lastIndexOf(')'))));
+      } else {
+        inserts.add(statement);
+      }
+    }
+
+    Statement stmt = con.createStatement();
+    try {
+      for (int i = 0; i < tables.size(); i++) {
+        Table table = tables.get(i);
+        stmt.execute("DROP TABLE IF EXISTS " + table.name);
+        if (h2) {
+          for (String ddl : table.getH2Ddl()) {
+            stmt.execute(ddl);
+          }
+        } else {
+          stmt.execute(statementOf(statements, table.name));
+        }
+      }
+      // the rows of the schema itself, such as its schema_version
+      for (String insert : inserts) {
+        try {
+          stmt.execute(insert);
+        } catch (SQLException e) {
+          System.err.println("Skipped " + insert + ": " + e.getMessage());
+        }
+      }
+    } finally {
+      stmt.close();
+    }
+
+    Map<String, Long> counts = getRowCounts(tables);
+    Map<String, Table> primaryKeys = new HashMap<String, Table>();
+    for (Table table : tables) {
+      if (table.primaryKey != null) {
+        primaryKeys.put(table.primaryKey, table);
+      }
+    }
+    findParents(tables, primaryKeys);
+    for (Table parent : parents.values()) {
+      locations.put(parent.name, new Locations(counts.get(parent.name)));
+    }
+    for (Table child : links.values()) {
+      locations.put(child.name, new Locations(counts.get(child.name)));
+    }
+
+    boolean autoCommit = con.getAutoCommit();
+    con.setAutoCommit(false);
+    try {
+      Map<String, Long> filled = new HashMap<String, Long>();
+      for (Table table : parentsFirst(tables)) {
+        filled.put(table.name, fill(con, h2, table, counts, primaryKeys));
+      }
+      Map<String, Long> written = new LinkedHashMap<String, Long>();
+      for (Table table : tables) {
+        written.put(table.name, filled.get(table.name));
+      }
+      return written;
+    } finally {
+      con.setAutoCommit(autoCommit);
+      locations.clear();
+    }
+  }
+
+  private static boolean isFeature(Table table) {
+    return table.hasColumn("seq_region_id") && table.hasColumn("seq_region_start") && table.hasColumn("seq_region_end");
+  }
+
+  /**
+   * Find the feature each table of features lies within: the one named by a
+   * column such as the gene_id of transcript, or by a link table.
+   */
+  private void findParents(List<Table> tables, Map<String, Table> primaryKeys) {
+    parents.clear();
+    links.clear();
+    Map<String, Table> byName = new HashMap<String, Table>();
+    for (Table table : tables) {
+      byName.put(table.name, table);
+    }
+    for (String[] linked : LINKED_PARENTS) {
+      Table table = byName.get(linked[0]);
+      Table parent = byName.get(linked[1]);
+      Table link = byName.get(linked[2]);
+      if (table != null && parent != null && link != null && isFeature(table) && isFeature(parent)
+          && table.primaryKey != null && parent.primaryKey != null) {
+        parents.put(table.name, parent);
+        links.put(link.name, table);
+      }
+    }
+    for (Table table : tables) {
+      if (!isFeature(table) || parents.containsKey(table.name)) {
+        continue;
+      }
+      for (Column column : table.columns) {
+        Table parent = primaryKeys.get(column.name.toLowerCase(Locale.ENGLISH));
+        if (parent != null && parent != table && isFeature(parent)) {
+          parents.put(table.name, parent);
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the tables in the order to fill them, each parent feature and
+   *         the table a link table links before their children
+   */
+  private List<Table> parentsFirst(List<Table> tables) {
+    List<Table> ordered = new ArrayList<Table>();
+    Set<String> visited = new HashSet<String>();
+    for (Table table : tables) {
+      addParentsFirst(table, ordered, visited);
+    }
+    return ordered;
+  }
+
+  private void addParentsFirst(Table table, List<Table> ordered, Set<String> visited) {
+    if (!visited.add(table.name)) {
+      return;
+    }
+    if (parents.containsKey(table.name)) {
+      addParentsFirst(parents.get(table.name), ordered, visited);
+    }
+    if (links.containsKey(table.name)) {
+      addParentsFirst(links.get(table.name), ordered, visited);
+    }
+    ordered.add(table);
+  }
+
+  private static String statementOf(List<String> statements, String table) {
+    for (String statement : statements) {
+      Matcher m = CREATE_TABLE.matcher(statement);
+      if (m.find() && m.group(1).equals(table)) {
+        return statement;
+      }
+    }
+    throw new IllegalArgumentException("No CREATE TABLE for " + table);
+  }
+
+  /**
+   * @return the number of rows to write to each table, following the number
+   *         of genes for the tables which scale with the genome
+   */
+  Map<String, Long> getRowCounts(List<Table> tables) {
+    long genes = scaled("synthetic.genes", 1000);
+    long transcripts = Math.round(genes * Double.parseDouble(System.getProperty("synthetic.transcripts_per_gene", "3")));
+    long exonTranscripts = Math.round(transcripts
+        * Double.parseDouble(System.getProperty("synthetic.exons_per_transcript", "8")));
+    long xrefs = Math.round(genes * Double.parseDouble(System.getProperty("synthetic.xrefs_per_gene", "5")));
+    long variationFeatures = scaled("synthetic.variation_features", 10000);
+    long otherRows = Long.getLong("synthetic.other_rows", 10L);
+
+    Map<String, Long> counts = new HashMap<String, Long>();
+    counts.put("seq_region", scaled("synthetic.seq_regions", 100));
+    counts.put("gene", genes);
+    counts.put("transcript", transcripts);
+    counts.put("translation", transcripts * 4 / 5);
+    // each exon lies within the one transcript it belongs to
+    counts.put("exon", exonTranscripts);
+    counts.put("exon_transcript", exonTranscripts);
+    counts.put("supporting_feature", exonTranscripts);
+    counts.put("transcript_supporting_feature", transcripts);
+    counts.put("xref", xrefs);
+    counts.put("object_xref", xrefs);
+    counts.put("identity_xref", xrefs / 2);
+    counts.put("gene_attrib", genes);
+    counts.put("transcript_attrib", transcripts);
+    counts.put("protein_feature", transcripts * 2);
+    counts.put("dna", counts.get("seq_region"));
+
+    counts.put("variation", variationFeatures);
+    counts.put("variation_feature", variationFeatures);
+    counts.put("allele", variationFeatures * 2);
+    counts.put("transcript_variation", variationFeatures);
+    counts.put("variation_synonym", variationFeatures / 2);
+    counts.put("phenotype_feature", variationFeatures / 10);
+
+    counts.put("gene_member", genes);
+    counts.put("seq_member", transcripts);
+    counts.put("homology", genes);
+    counts.put("homology_member", genes * 2);
+    counts.put("gene_tree_root", genes / 10);
+    counts.put("gene_tree_node", transcripts);
+    counts.put("family", genes / 10);
+    counts.put("family_member", transcripts);
+
+    Map<String, Long> rows = new HashMap<String, Long>();
+    for (Table table : tables) {
+      Long count = counts.get(table.name);
+      if (count == null) {
+        count = table.name.endsWith("_feature") ? genes * 10 : otherRows;
+      }
+      rows.put(table.name, Math.max(1, count));
+    }
+    return rows;
+  }
+
+  private long scaled(String property, long defaultValue) {
+    return Math.round(Long.getLong(property, defaultValue) * scale);
+  }
+
+  // -------------------------------------------------------------------------
+  private long fill(Connection con, boolean h2, Table table, Map<String, Long> counts, Map<String, Table> primaryKeys)
+      throws SQLException {
+    if (table.hasColumn("meta_key") && table.hasColumn("meta_value")) {
+      return fillMeta(con, table);
+    }
+
+    Table linked = links.get(table.name);
+    // a link table gets a row for each row of the table it links
+    long rows = counts.get(linked != null ? linked.name : table.name);
+    Value[] values = new Value[table.columns.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = createValue(table, table.columns.get(i), counts, primaryKeys);
+    }
+
+    Table parent = parents.get(table.name);
+    ParentSequence sequence = null;
+    Locations parentLocations = null;
+    boolean ranked = linked != null || table.hasColumn("rank") || links.containsValue(table);
+    if (parent != null) {
+      sequence = new ParentSequence(counts.get(parent.name), rows, false, true);
+      parentLocations = locations.get(parent.name);
+    }
+    Locations linkedLocations = linked != null ? locations.get(linked.name) : null;
+    Locations tableLocations = locations.get(table.name);
+
+    PreparedStatement ps = con.prepareStatement(table.getInsert(!h2));
+    try {
+      Row row = new Row();
+      for (long id = 1; id <= rows; id++) {
+        row.id = id;
+        if (sequence != null) {
+          row.parent = sequence.next(row);
+          place(row, parentLocations, ranked);
+        } else if (linkedLocations != null) {
+          linkedLocations.get(id, row);
+        }
+        for (int i = 0; i < values.length; i++) {
+          ps.setObject(i + 1, values[i].next(row));
+        }
+        if (tableLocations != null) {
+          tableLocations.set(id, row);
+        }
+        ps.addBatch();
+        if (id % BATCH_SIZE == 0) {
+          ps.executeBatch();
+          con.commit();
+        }
+      }
+      ps.executeBatch();
+      con.commit();
+    } finally {
+      ps.close();
+    }
+    return rows;
+  }
+
+  private long fillMeta(Connection con, Table table) throws SQLException {
+    String species = getDefaultName(type).replaceFirst("_" + type + "_.*", "");
+    String[][] entries = { { "species.production_name", species }, { "species.db_name", species },
+        { "species.scientific_name", "Synthetic species" }, { "species.common_name", "synthetic" },
+        { "species.display_name", "Synthetic species" }, { "species.taxonomy_id", "9606" },
+        { "species.division", "Ensembl" }, { "species.alias", species }, { "assembly.default", "SYN1" },
+        { "assembly.name", "SYN1" }, { "assembly.date", "2015-01" }, { "assembly.accession", "GCA_000000000.1" },
+        { "genebuild.start_date", "2015-01-Ensembl" }, { "genebuild.version", "2015-01" },
+        { "genebuild.method", "full_genebuild" }, { "genebuild.initial_release_date", "2015-01" },
+        { "genebuild.last_geneset_update", "2015-01" }, { "provider.name", "Ensembl" },
+        { "provider.url", "www.ensembl.org" } };
+
+    List<String> columns = new ArrayList<String>();
+    columns.add("meta_key");
+    columns.add("meta_value");
+    if (table.hasColumn("species_id")) {
+      columns.add("species_id");
+    }
+    StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.name).append(" (");
+    for (int i = 0; i < columns.size(); i++) {
+      sql.append(i > 0 ? ", " : "").append(columns.get(i));
+    }
+    sql.append(columns.size() == 3 ? ") VALUES (?, ?, 1)" : ") VALUES (?, ?)");
+
+    PreparedStatement ps = con.prepareStatement(sql.toString());
+    try {
+      int rows = 0;
+      if (!type.equals("compara")) {
+        for (String[] entry : entries) {
+          ps.setString(1, entry[0]);
+          ps.setString(2, entry[1]);
+          ps.addBatch();
+          rows++;
+        }
+      }
+      ps.executeBatch();
+      con.commit();
+      return rows;
+    } finally {
+      ps.close();
+    }
+  }
+
+  /**
+   * Lay a row out within its parent feature, on the same seq_region and
+   * strand. Children with a rank are side by side in the order of their rank
+   * along the strand, the first starting and the last ending with the parent;
+   * others overlap, the first covering all of the parent.
+   */
+  private void place(Row row, Locations parent, boolean ranked) {
+    int p = (int) (row.parent - 1);
+    long start = parent.start[p];
+    long end = parent.end[p];
+    long length = end - start + 1;
+    row.seqRegion = parent.seqRegion[p];
+    row.strand = parent.strand[p];
+    if (ranked) {
+      int slot = row.strand < 0 ? row.siblings - row.rank : row.rank - 1;
+      long width = Math.max(1, length / row.siblings);
+      long slotStart = Math.min(end, start + slot * width);
+      long slotEnd = slot == row.siblings - 1 ? end : Math.min(end, slotStart + width - 1);
+      row.start = slot == 0 ? slotStart : slotStart + (long) (random.nextDouble() * (width / 4));
+      row.end = slot == row.siblings - 1 ? slotEnd : slotEnd - (long) (random.nextDouble() * (width / 4));
+    } else if (row.rank == 1) {
+      row.start = start;
+      row.end = end;
+    } else {
+      row.start = start + (long) (random.nextDouble() * (length / 4));
+      row.end = end - (long) (random.nextDouble() * (length / 4));
+    }
+    row.end = Math.max(row.start, row.end);
+  }
+
+  /**
+   * @return what fills column, chosen by its name and type
+   */
+  private Value createValue(final Table table, final Column column, Map<String, Long> counts,
+      Map<String, Table> primaryKeys) {
+    final String name = column.name.toLowerCase(Locale.ENGLISH);
+
+    if (column.autoIncrement || name.equals(table.primaryKey)) {
+      return new Value() {
+        Object next(Row row) {
+          return row.id;
+        }
+      };
+    }
+
+    Table linked = links.get(table.name);
+    if (linked != null && name.equals(linked.primaryKey)) {
+      return new Value() {
+        Object next(Row row) {
+          return row.id;
+        }
+      };
+    }
+    Table placedIn = parents.get(linked != null ? linked.name : table.name);
+    if (placedIn != null && name.equals(placedIn.primaryKey)) {
+      return new Value() {
+        Object next(Row row) {
+          return row.parent;
+        }
+      };
+    }
+    if (placedIn != null && linked == null) {
+      if (name.equals("seq_region_id")) {
+        return new Value() {
+          Object next(Row row) {
+            return row.seqRegion;
+          }
+        };
+      }
+      if (name.equals("seq_region_start")) {
+        return new Value() {
+          Object next(Row row) {
+            return row.start;
+          }
+        };
+      }
+      if (name.equals("seq_region_strand")) {
+        return new Value() {
+          Object next(Row row) {
+            return row.strand;
+          }
+        };
+      }
+    }
+
+    Table parent = getReferencedTable(table, name, primaryKeys);
+    if (parent != null) {
+      long parents = counts.get(parent.name);
+      long children = counts.get(table.name);
+      if (parents > Long.getLong("synthetic.other_rows", 10L) || parent.name.equals("seq_region")) {
+        // the rank of a row laid out within a feature is its rank within the feature
+        final ParentSequence sequence = new ParentSequence(parents, children, parent.name.equals("seq_region"),
+            placedIn == null);
+        return new Value() {
+          Object next(Row row) {
+            return sequence.next(row);
+          }
+        };
+      }
+      return new LookupValue(parents);
+    }
+
+    if (name.equals("species_id")) {
+      return new ConstantValue(1);
+    }
+    if (name.equals("stable_id")) {
+      String prefix = STABLE_ID_PREFIXES.get(table.name);
+      final String format = (prefix == null ? "SYN" : prefix) + "%011d";
+      return new Value() {
+        Object next(Row row) {
+          return String.format(format, row.id);
+        }
+      };
+    }
+    if (name.equals("seq_region_start")) {
+      final long length = getFeatureLength(table.name);
+      return new Value() {
+        Object next(Row row) {
+          row.start += 1 + (long) (random.nextDouble() * length * 2);
+          row.end = row.start + length / 2 + (long) (random.nextDouble() * length);
+          return row.start;
+        }
+      };
+    }
+    if (name.equals("seq_region_end")) {
+      return new Value() {
+        Object next(Row row) {
+          return row.end;
+        }
+      };
+    }
+    if (name.equals("seq_region_strand")) {
+      return new Value() {
+        Object next(Row row) {
+          row.strand = random.nextBoolean() ? 1 : -1;
+          return row.strand;
+        }
+      };
+    }
+    if (name.endsWith("strand")) {
+      return new Value() {
+        Object next(Row row) {
+          return random.nextBoolean() ? 1 : -1;
+        }
+      };
+    }
+    if (name.endsWith("_start") || name.equals("start")) {
+      return new Value() {
+        Object next(Row row) {
+          row.otherStart = 1 + random.nextInt(1000);
+          return row.otherStart;
+        }
+      };
+    }
+    if (name.endsWith("_end") || name.equals("end")) {
+      return new Value() {
+        Object next(Row row) {
+          return row.otherStart + random.nextInt(500);
+        }
+      };
+    }
+    if (name.equals("length") && table.name.equals("seq_region")) {
+      return new Value() {
+        Object next(Row row) {
+          return 50000000 + random.nextInt(200000000);
+        }
+      };
+    }
+    if (name.equals("rank")) {
+      return new Value() {
+        Object next(Row row) {
+          return row.rank;
+        }
+      };
+    }
+    if (name.equals("phase") || name.equals("end_phase")) {
+      return new Value() {
+        Object next(Row row) {
+          return random.nextInt(4) - 1;
+        }
+      };
+    }
+    if (name.equals("version")) {
+      return new LookupValue(5);
+    }
+    if (name.equals("is_current")) {
+      return new ConstantValue(1);
+    }
+    if (name.equals("biotype")) {
+      return new Value() {
+        Object next(Row row) {
+          return BIOTYPES[random.nextInt(BIOTYPES.length)];
+        }
+      };
+    }
+    if (name.equals("allele_string")) {
+      return new Value() {
+        Object next(Row row) {
+          return ALLELES[random.nextInt(ALLELES.length)];
+        }
+      };
+    }
+    return createValue(table, column);
+  }
+
+  /**
+   * @return what fills a column whose name says nothing about it
+   */
+  private Value createValue(final Table table, final Column column) {
+    if (column.values != null) {
+      final List<String> values = column.values;
+      return new Value() {
+        Object next(Row row) {
+          // the first value is the most common, like the default of an enum
+          return values.get(random.nextBoolean() ? 0 : random.nextInt(values.size()));
+        }
+      };
+    }
+    String type = column.type;
+    if (type.endsWith("int") || type.equals("integer")) {
+      final int max = type.equals("tinyint") ? 2 : 1000;
+      return new Value() {
+        Object next(Row row) {
+          return random.nextInt(max);
+        }
+      };
+    }
+    if (type.equals("float") || type.equals("double") || type.equals("real") || type.equals("decimal")) {
+      return new Value() {
+        Object next(Row row) {
+          return Math.round(random.nextDouble() * 10000) / 100.0;
+        }
+      };
+    }
+    if (type.equals("date") || type.equals("datetime") || type.equals("timestamp")) {
+      return new ConstantValue(date);
+    }
+    if (type.endsWith("blob") || type.endsWith("binary")) {
+      return new ConstantValue(new byte[] { 0 });
+    }
+    final String prefix = table.name + "_" + column.name + "_";
+    final int length = column.length > 0 ? column.length : Integer.MAX_VALUE;
+    return new Value() {
+      Object next(Row row) {
+        // unique, as the column may be part of a unique key
+        String value = prefix + row.id;
+        return value.length() > length ? value.substring(value.length() - length) : value;
+      }
+    };
+  }
+
+  /**
+   * @return the table column refers to, by the name of its single column
+   *         primary key, e.g. gene for both gene_id and canonical_gene_id
+   */
+  private static Table getReferencedTable(Table table, String column, Map<String, Table> primaryKeys) {
+    Table referenced = primaryKeys.get(column);
+    if (referenced == null) {
+      for (Map.Entry<String, Table> primaryKey : primaryKeys.entrySet()) {
+        if (column.endsWith("_" + primaryKey.getKey())
+            && (referenced == null || primaryKey.getKey().length() > referenced.primaryKey.length())) {
+          referenced = primaryKey.getValue();
+        }
+      }
+    }
+    return referenced == table ? null : referenced;
+  }
+
+  private static long getFeatureLength(String table) {
+    if (table.equals("gene")) {
+      return 30000;
+    }
+    if (table.equals("transcript")) {
+      return 10000;
+    }
+    if (table.equals("variation_feature")) {
+      return 2;
+    }
+    return 300;
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * The row being written, with what its columns share.
+   */
+  static class Row {
+
+    long id;
+
+    long start;
+
+    long end;
+
+    long otherStart;
+
+    int strand = 1;
+
+    /** Position of the row among the rows with the same parent */
+    int rank = 1;
+
+    /** The number of rows with the same parent */
+    int siblings = 1;
+
+    long parent = 0;
+
+    long seqRegion = 0;
+  }
+
+  /**
+   * Where the rows of a table of features are, by id, for the features
+   * within them.
+   */
+  static class Locations {
+
+    final long[] seqRegion;
+
+    final long[] start;
+
+    final long[] end;
+
+    final int[] strand;
+
+    final long[] parent;
+
+    final int[] rank;
+
+    final int[] siblings;
+
+    Locations(long rows) {
+      int n = (int) rows;
+      seqRegion = new long[n];
+      start = new long[n];
+      end = new long[n];
+      strand = new int[n];
+      parent = new long[n];
+      rank = new int[n];
+      siblings = new int[n];
+    }
+
+    void set(long id, Row row) {
+      int i = (int) (id - 1);
+      seqRegion[i] = row.seqRegion;
+      start[i] = row.start;
+      end[i] = row.end;
+      strand[i] = row.strand;
+      parent[i] = row.parent;
+      rank[i] = row.rank;
+      siblings[i] = row.siblings;
+    }
+
+    void get(long id, Row row) {
+      int i = (int) (id - 1);
+      row.seqRegion = seqRegion[i];
+      row.start = start[i];
+      row.end = end[i];
+      row.strand = strand[i];
+      row.parent = parent[i];
+      row.rank = rank[i];
+      row.siblings = siblings[i];
+    }
+  }
+
+  abstract class Value {
+    abstract Object next(Row row);
+  }
+
+  class ConstantValue extends Value {
+
+    private final Object value;
+
+    ConstantValue(Object value) {
+      this.value = value;
+    }
+
+    Object next(Row row) {
+      return value;
+    }
+  }
+
+  /**
+   * A reference to a small table, favouring its first rows.
+   */
+  class LookupValue extends Value {
+
+    private final long rows;
+
+    LookupValue(long rows) {
+      this.rows = rows;
+    }
+
+    Object next(Row row) {
+      double r = random.nextDouble();
+      return 1 + (long) (rows * r * r * r);
+    }
+  }
+
+  /**
+   * References to a big table, giving each of its rows a number of
+   * consecutive children: at least one if there are as many children as
+   * parents, and the rest exponentially distributed. The children add up to
+   * the number asked for, so no parent is used twice and ranks are unique
+   * within each parent.
+   */
+  class ParentSequence {
+
+    /** Whether this is where the features of the row are */
+    private final boolean seqRegion;
+
+    /** Whether this gives the rank of the row */
+    private final boolean ranks;
+
+    /** The number of children of each parent */
+    private final int[] children;
+
+    private long parent = 0;
+
+    private long remaining = 0;
+
+    private int rank = 0;
+
+    ParentSequence(long parents, long children, boolean seqRegion, boolean ranks) {
+      this.seqRegion = seqRegion;
+      this.ranks = ranks;
+      this.children = new int[(int) parents];
+      if (children < parents) {
+        // one child for a random choice of the parents
+        long left = children;
+        for (int i = 0; i < parents && left > 0; i++) {
+          if (random.nextDouble() * (parents - i) < left) {
+            this.children[i] = 1;
+            left--;
+          }
+        }
+        return;
+      }
+      double[] weights = new double[(int) parents];
+      double total = 0;
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] = -Math.log(1 - random.nextDouble());
+        total += weights[i];
+      }
+      long spare = children - parents;
+      double cumulative = 0;
+      long given = 0;
+      for (int i = 0; i < weights.length; i++) {
+        cumulative += weights[i];
+        long upTo = i == weights.length - 1 ? spare : Math.round(spare * cumulative / total);
+        this.children[i] = (int) (1 + upTo - given);
+        given = upTo;
+      }
+    }
+
+    long next(Row row) {
+      while (remaining <= 0 && parent < children.length) {
+        parent++;
+        remaining = children[(int) (parent - 1)];
+        rank = 0;
+      }
+      remaining--;
+      rank++;
+      if (seqRegion) {
+        if (row.seqRegion != parent) {
+          row.seqRegion = parent;
+          row.start = 0;
+        }
+      } else if (ranks) {
+        row.rank = rank;
+        row.siblings = children[(int) (parent - 1)];
+      }
+      return parent;
+    }
+  }
+
+  // -------------------------------------------------------------------------
+  /**
+   * A column of a CREATE TABLE statement.
+   */
+  static class Column {
+
+    String name;
+
+    /** Lower case, without its length or options */
+    String type;
+
+    int length = 0;
+
+    /** The values of an enum or set */
+    List<String> values;
+
+    boolean notNull;
+
+    boolean autoIncrement;
+
+    String h2Type() {
+      if (values != null) {
+        return "VARCHAR(255)";
+      }
+      if (type.equals("bigint")) {
+        return "BIGINT";
+      }
+      if (type.endsWith("int") || type.equals("integer")) {
+        return "INT";
+      }
+      if (type.equals("float") || type.equals("double") || type.equals("real") || type.equals("decimal")) {
+        return "DOUBLE";
+      }
+      if (type.equals("date")) {
+        return "DATE";
+      }
+      if (type.equals("datetime") || type.equals("timestamp")) {
+        return "TIMESTAMP";
+      }
+      if (type.endsWith("blob") || type.endsWith("binary")) {
+        return "BLOB";
+      }
+      if ((type.equals("char") || type.equals("varchar")) && length > 0) {
+        return "VARCHAR(" + length + ")";
+      }
+      return "VARCHAR";
+    }
+  }
+
+  /**
+   * A table of a CREATE TABLE statement.
+   */
+  static class Table {
+
+    final String name;
+
+    final List<Column> columns = new ArrayList<Column>();
+
+    /** The primary key if it is a single column */
+    String primaryKey;
+
+    /** The columns of each key, including a composite primary key */
+    final List<String> keys = new ArrayList<String>();
+
+    Table(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @param definitions
+     *          what is between the brackets of the CREATE TABLE statement
+     */
+    static Table parse(String name, String definitions) {
+      Table table = new Table(name);
+      for (String definition : split(definitions)) {
+        definition = definition.replaceAll("\\s+", " ");
+        String upper = definition.toUpperCase(Locale.ENGLISH);
+        if (upper.startsWith("PRIMARY KEY")) {
+          String keyColumns = columnsOf(definition);
+          if (keyColumns.indexOf(',') < 0) {
+            table.primaryKey = keyColumns.toLowerCase(Locale.ENGLISH);
+          } else {
+            table.keys.add(keyColumns);
+          }
+        } else if (upper.startsWith("KEY") || upper.startsWith("INDEX") || upper.startsWith("UNIQUE")
+            || upper.startsWith("FULLTEXT") || upper.startsWith("SPATIAL") || upper.startsWith("CONSTRAINT")
+            || upper.startsWith("FOREIGN")) {
+          if (upper.indexOf("FOREIGN") < 0) {
+            table.keys.add(columnsOf(definition));
+          }
+        } else {
+          Column column = new Column();
+          String[] words = definition.split("\\s+", 2);
+          column.name = words[0].replace("`", "");
+          String type = words.length > 1 ? words[1] : "varchar";
+          column.type = type.split("[\\s(]", 2)[0].toLowerCase(Locale.ENGLISH);
+          Matcher length = LENGTH.matcher(type);
+          if (length.find()) {
+            column.length = Integer.parseInt(length.group(1));
+          }
+          if (column.type.equals("enum") || column.type.equals("set")) {
+            column.values = new ArrayList<String>();
+            Matcher value = QUOTED.matcher(type.substring(0, type.indexOf(')') + 1));
+            while (value.find()) {
+              column.values.add(value.group(1).replace("''", "'"));
+            }
+          }
+          String upperType = type.toUpperCase(Locale.ENGLISH);
+          column.notNull = upperType.indexOf("NOT NULL") >= 0;
+          column.autoIncrement = upperType.indexOf("AUTO_INCREMENT") >= 0;
+          if (upperType.indexOf("PRIMARY KEY") >= 0) {
+            table.primaryKey = column.name.toLowerCase(Locale.ENGLISH);
+          }
+          table.columns.add(column);
+        }
+      }
+      return table;
+    }
+
+    /**
+     * Split on the commas outside brackets and quotes.
+     */
+    private static List<String> split(String definitions) {
+      List<String> parts = new ArrayList<String>();
+      int depth = 0;
+      boolean quoted = false;
+      int start = 0;
+      for (int i = 0; i < definitions.length(); i++) {
+        char c = definitions.charAt(i);
+        if (c == '\'') {
+          quoted = !quoted;
+        } else if (!quoted && c == '(') {
+          depth++;
+        } else if (!quoted && c == ')') {
+          depth--;
+        } else if (!quoted && depth == 0 && c == ',') {
+          parts.add(definitions.substring(start, i).trim());
+          start = i + 1;
+        }
+      }
+      String last = definitions.substring(start).trim();
+      if (last.length() > 0) {
+        parts.add(last);
+      }
+      return parts;
+    }
+
+    /**
+     * @return the columns of a key, without the lengths of their prefixes
+     */
+    private static String columnsOf(String key) {
+      String columns = key.substring(key.indexOf('(') + 1, key.lastIndexOf(')'));
+      return columns.replaceAll("\\(\\s*\\d+\\s*\\)", "").replace("`", "").replaceAll("\\s+", "");
+    }
+
+    boolean hasColumn(String name) {
+      for (Column column : columns) {
+        if (column.name.equalsIgnoreCase(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @return the statements creating the table in H2, with its keys as
+     *         plain indexes so that the synthetic rows cannot break them
+     */
+    List<String> getH2Ddl() {
+      List<String> ddl = new ArrayList<String>();
+      StringBuilder create = new StringBuilder("CREATE TABLE ").append(name).append(" (");
+      for (int i = 0; i < columns.size(); i++) {
+        Column column = columns.get(i);
+        create.append(i > 0 ? ", " : "").append(column.name).append(' ').append(column.h2Type());
+        if (column.notNull) {
+          create.append(" NOT NULL");
+        }
+        if (column.autoIncrement) {
+          create.append(" AUTO_INCREMENT");
+        }
+      }
+      if (primaryKey != null) {
+        create.append(", PRIMARY KEY (").append(primaryKey).append(')');
+      }
+      ddl.add(create.append(')').toString());
+      for (int i = 0; i < keys.size(); i++) {
+        ddl.add("CREATE INDEX " + name + "_key" + i + " ON " + name + " (" + keys.get(i) + ")");
+      }
+      return ddl;
+    }
+
+    /**
+     * @param ignore
+     *          whether to skip rows which would break a unique key, which
+     *          only MySQL can do
+     */
+    String getInsert(boolean ignore) {
+      StringBuilder insert = new StringBuilder(ignore ? "INSERT IGNORE INTO " : "INSERT INTO ").append(name)
+          .append(" (");
+      StringBuilder parameters = new StringBuilder();
+      for (int i = 0; i < columns.size(); i++) {
+        insert.append(i > 0 ? ", " : "").append(columns.get(i).name);
+        parameters.append(i > 0 ? ", ?" : "?");
+      }
+      return insert.append(") VALUES (").append(parameters).append(')').toString();
+    }
+  }
+}
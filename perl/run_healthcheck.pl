@@ -20,15 +20,33 @@
 #
 # script to execute the specified healthcheck module
 #
+# With -worker, runs healthchecks one after another as long as requests are
+# read from STDIN, so perl and the API are only loaded once. Each request is
+# a line of tab separated fields:
+#
+#   host port user pass dbname species_id module
+#
+# where tabs, newlines and backslashes in a field are escaped as \t, \n and
+# \\, and species_id may be empty. STDERR is sent to STDOUT, so the output of
+# a healthcheck arrives in order, followed by a line
+#
+#   JOB_DONE_MARKER exit_code
+#
+# with the exit code the healthcheck would have exited with if run on its own.
+#
 use warnings;
 use strict;
 use Getopt::Long;
 use Log::Log4perl qw(:easy);
 use Bio::EnsEMBL::DBSQL::DBAdaptor;
+use Bio::EnsEMBL::Registry;
 use Bio::EnsEMBL::Utils::ScriptUtils qw(inject);
 use Carp;
 
-my ( $host, $user, $pass, $port, $dbname, $species_id, $module );
+# Must match org.ensembl.healthcheck.testcase.PerlWorkerPool.JOB_DONE_MARKER
+my $JOB_DONE_MARKER = '__RUN_HEALTHCHECK_JOB_DONE__';
+
+my ( $host, $user, $pass, $port, $dbname, $species_id, $module, $worker );
 
 # Allow password to be passed by setting the environment variable 'pass'.
 #
@@ -41,38 +59,101 @@ GetOptions(
 	"port=i",       \$port,
 	"dbname=s",     \$dbname,
 	"species_id=s", \$species_id,
-	"module=s",     \$module
+	"module=s",     \$module,
+	"worker",       \$worker
 );
 
+if ($worker) {
+	run_worker();
+	exit 0;
+}
+
 if (   !defined $host
 	|| !defined $port
 	|| !defined $user
 	|| !defined $module
 	|| !defined $dbname ) {
 	croak (
-		"Usage: $0 -host host -port port -user user [-pass password] -dbname db [-species_id species_id] -module module"
+		"Usage: $0 -host host -port port -user user [-pass password] -dbname db [-species_id species_id] -module module\n"
+		. "       $0 -worker"
 	);
 }
 
-my %args = (
-	-HOST   => $host,
-	-USER   => $user,
-	-PORT   => $port,
-	-PASS   => $pass,
-	-DBNAME => $dbname
-);
-if ( defined $species_id ) {
-	$args{-SPECIES_ID}      = $species_id;
-	$args{-MULTISPECIES_DB} = 1;
-}
-my $dba         = new Bio::EnsEMBL::DBSQL::DBAdaptor(%args);
-inject($module);
-my $healthcheck = $module->new( dba => $dba );
-
-my $healthcheck_passed = $healthcheck->run();
+my $healthcheck_passed = run_healthcheck( $host, $port, $user, $pass, $dbname, $species_id, $module );
 
 if ($healthcheck_passed) {
 	exit 0;
 } else {
 	exit 1;
 }
+
+sub run_healthcheck {
+	my ( $host, $port, $user, $pass, $dbname, $species_id, $module ) = @_;
+
+	my %args = (
+		-HOST   => $host,
+		-USER   => $user,
+		-PORT   => $port,
+		-PASS   => $pass,
+		-DBNAME => $dbname
+	);
+	if ( defined $species_id ) {
+		$args{-SPECIES_ID}      = $species_id;
+		$args{-MULTISPECIES_DB} = 1;
+	}
+	my $dba         = new Bio::EnsEMBL::DBSQL::DBAdaptor(%args);
+	inject($module);
+	my $healthcheck = $module->new( dba => $dba );
+
+	return $healthcheck->run();
+}
+
+sub run_worker {
+
+	open( STDERR, '>&', \*STDOUT ) or croak("Cannot send STDERR to STDOUT: $!");
+	select(STDERR); $| = 1;
+	select(STDOUT); $| = 1;
+
+	while ( my $request = <STDIN> ) {
+
+		chomp $request;
+		next if $request eq '';
+
+		my @fields = map { unescape($_) } split( /\t/, $request, -1 );
+		my ( $host, $port, $user, $pass, $dbname, $species_id, $module ) = @fields;
+		$species_id = undef if defined $species_id && $species_id eq '';
+
+		my $exit_code;
+		if ( @fields != 7 ) {
+			print STDERR "Malformed request: $request\n";
+			$exit_code = 255;
+		} else {
+			my $passed = eval {
+				run_healthcheck( $host, $port, $user, $pass, $dbname, $species_id, $module );
+			};
+			if ($@) {
+				# What croak would have printed before exiting.
+				print STDERR $@;
+				$exit_code = 255;
+			} else {
+				$exit_code = $passed ? 0 : 1;
+			}
+		}
+
+		# Do not keep connections or adaptors of finished healthchecks.
+		eval {
+			foreach my $dba ( @{ Bio::EnsEMBL::Registry->get_all_DBAdaptors() } ) {
+				$dba->dbc()->disconnect_if_idle();
+			}
+			Bio::EnsEMBL::Registry->clear();
+		};
+
+		print STDOUT "$JOB_DONE_MARKER $exit_code\n";
+	}
+}
+
+sub unescape {
+	my ($field) = @_;
+	$field =~ s/\\(.)/$1 eq 't' ? "\t" : $1 eq 'n' ? "\n" : $1/ge;
+	return $field;
+}
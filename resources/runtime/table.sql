@@ -39,6 +39,7 @@ CREATE TABLE report (
   text					TEXT,
   team_responsible                      VARCHAR(255),
   created                               DATETIME,
+  digest                                BINARY(16),
   
   PRIMARY KEY (report_id),
   KEY first_session_idx(first_session_id),
@@ -47,7 +48,8 @@ CREATE TABLE report (
   KEY database_name_idx(database_name),
   KEY species_idx(species),
   KEY result_idx(result),
-  KEY text_idx(text(255))
+  KEY text_idx(text(255)),
+  UNIQUE KEY digest_idx(digest)
 
 );
 
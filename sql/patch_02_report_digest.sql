@@ -0,0 +1,57 @@
+-- Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Identify reports by a digest of database_name, testcase, result and text
+-- so that existing reports can be found with a unique index lookup instead
+-- of a range scan on text_idx.
+-- The digest is the MD5 of the UTF-8 encoded fields separated by NUL, which
+-- must match ReportLine.getDigest() in the Java code.
+-- Output databases created from sql/table.sql also have a report_session
+-- table; run patch_02_report_digest_report_session.sql on those first.
+-- The output databases created by the runtime, from
+-- resources/runtime/table.sql, have no report_session table.
+
+ALTER TABLE report ADD COLUMN digest BINARY(16) AFTER created;
+
+UPDATE report SET digest = UNHEX(MD5(CONCAT_WS(CONVERT(CHAR(0) USING utf8),
+  CONVERT(database_name USING utf8), CONVERT(testcase USING utf8),
+  CONVERT(result USING utf8), CONVERT(text USING utf8))));
+
+-- Older sessions may have stored the same report more than once. Keep the
+-- first copy, spanning all the sessions of its duplicates, and move any
+-- annotations over to it.
+
+CREATE TEMPORARY TABLE report_digest_keep AS
+  SELECT digest, MIN(report_id) AS report_id,
+         MIN(first_session_id) AS first_session_id,
+         MAX(last_session_id) AS last_session_id
+    FROM report
+   GROUP BY digest
+  HAVING COUNT(*) > 1;
+
+UPDATE annotation a, report r, report_digest_keep k
+   SET a.report_id = k.report_id
+ WHERE a.report_id = r.report_id AND r.digest = k.digest;
+
+UPDATE report r, report_digest_keep k
+   SET r.first_session_id = k.first_session_id,
+       r.last_session_id = k.last_session_id
+ WHERE r.report_id = k.report_id;
+
+DELETE r FROM report r, report_digest_keep k
+ WHERE r.digest = k.digest AND r.report_id <> k.report_id;
+
+DROP TEMPORARY TABLE report_digest_keep;
+
+ALTER TABLE report ADD UNIQUE KEY digest_idx(digest);
@@ -0,0 +1,36 @@
+-- Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+--
+-- Licensed under the Apache License, Version 2.0 (the "License");
+-- you may not use this file except in compliance with the License.
+-- You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- Only for output databases created from sql/table.sql, which have a
+-- report_session table, and to be run BEFORE patch_02_report_digest.sql.
+-- Points the sessions of duplicate reports at the first copy, which is the
+-- one patch_02_report_digest.sql keeps, using the same digest.
+
+CREATE TEMPORARY TABLE report_session_keep AS
+  SELECT MD5(CONCAT_WS(CONVERT(CHAR(0) USING utf8),
+           CONVERT(database_name USING utf8), CONVERT(testcase USING utf8),
+           CONVERT(result USING utf8), CONVERT(text USING utf8))) AS digest,
+         MIN(report_id) AS report_id
+    FROM report
+   GROUP BY digest
+  HAVING COUNT(*) > 1;
+
+UPDATE report_session rs, report r, report_session_keep k
+   SET rs.report_id = k.report_id
+ WHERE rs.report_id = r.report_id
+   AND MD5(CONCAT_WS(CONVERT(CHAR(0) USING utf8),
+         CONVERT(r.database_name USING utf8), CONVERT(r.testcase USING utf8),
+         CONVERT(r.result USING utf8), CONVERT(r.text USING utf8))) = k.digest;
+
+DROP TEMPORARY TABLE report_session_keep;
@@ -49,6 +49,8 @@ import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.ConnectionBasedSqlTemplateImpl;
 import org.ensembl.healthcheck.util.CreateHealthCheckDB;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.Metrics;
 import org.ensembl.healthcheck.util.SqlTemplate;
 
 /**
@@ -784,6 +786,9 @@ public class ConfigurableTestRunner extends TestRunner {
 			logger.warning("Warning: no tests were run.");
 		}
 
+		Metrics.finishRun();
+		GeneModelSnapshot.clearCache();
+
 		return new TestRunStats(testsRun, trackCompletionStatus, exceptionToDb);
 	} // runAllTests
 	
@@ -33,6 +33,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -179,6 +181,11 @@ public class DatabaseRegistryEntry implements Comparable<DatabaseRegistryEntry>
 	protected final static Pattern MYSQL_DB = Pattern
 			.compile("^(mysql|information_schema)");
 
+	/** Upper bound on the number of names whose {@link DatabaseInfo} is kept */
+	private static final int MAX_CACHED_INFO = 10000;
+
+	private static final ConcurrentMap<String, DatabaseInfo> infoByName = new ConcurrentHashMap<String, DatabaseInfo>();
+
 	protected final static Pattern[] patterns = { EC_DB, UA_DB, UC_DB, UCM_DB,
 			EA_DB, EGC_DB, EG_DB, E_DB, PE_DB, EM_DB, EE_DB, EEL_DB, U_DB,
 			V_DB, MYSQL_DB, BLAST_DB, UD_DB, TAX_DB, EW_DB, HELP_DB, GB_DB, MASTER_DB };
@@ -190,7 +197,22 @@ public class DatabaseRegistryEntry implements Comparable<DatabaseRegistryEntry>
 	 * @return object containing information about a database
 	 */
 	public static DatabaseInfo getInfoFromName(String name) {
-		return getInfoFromName(name, null, null);
+
+		// names are matched against every pattern in turn, so remember the
+		// result: the same few names are looked up for every report line
+		DatabaseInfo info = infoByName.get(name);
+		if (info == null) {
+			info = getInfoFromName(name, null, null);
+			if (infoByName.size() >= MAX_CACHED_INFO) {
+				infoByName.clear();
+			}
+			DatabaseInfo existing = infoByName.putIfAbsent(name, info);
+			if (existing != null) {
+				info = existing;
+			}
+		}
+		return info;
+
 	}
 
 	/**
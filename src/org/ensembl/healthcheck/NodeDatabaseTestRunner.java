@@ -29,6 +29,7 @@
 
 package org.ensembl.healthcheck;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Handler;
@@ -83,7 +84,20 @@ public class NodeDatabaseTestRunner extends DatabaseTestRunner implements Report
 			logger.warning("Warning: no database names matched any of the database regexps given");
 		}
 
-		ReportManager.connectToOutputDatabase();
+		// with a journal directory, nodes write their reports locally and the
+		// session end job loads them all into the output database
+		String journalDir = System.getProperty("output.journaldir");
+		boolean journal = journalDir != null && journalDir.length() > 0;
+
+		if (journal && !endDbSession && !deletePrevious) {
+
+			ReportManager.openJournal(new File(journalDir));
+
+		} else {
+
+			ReportManager.connectToOutputDatabase();
+
+		}
 
 		if (deletePrevious) {
 			ReportManager.deletePrevious();
@@ -91,12 +105,21 @@ public class NodeDatabaseTestRunner extends DatabaseTestRunner implements Report
 
 		if (endDbSession) {
 			
+			if (journal) {
+				int count = ReportManager.mergeJournals(new File(journalDir));
+				logger.info("Merged " + count + " reports from journals in " + journalDir);
+			}
+
 			ReportManager.endDatabaseSession();
 			
 		}
 		
 		runAllTests(mainDatabaseRegistry, testRegistry, false);
 
+		ReportManager.closeJournal();
+
+		ReportManager.flushDatabaseReports();
+
 		ConnectionPool.closeAll();
 
 	} // run
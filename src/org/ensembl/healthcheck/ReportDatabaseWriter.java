@@ -0,0 +1,431 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
+
+/**
+ * <p>
+ * Writes {@link ReportLine}s to the report table of the output database from a
+ * background thread so that test cases do not wait on a round trip for every
+ * line they report.
+ * </p>
+ *
+ * <p>
+ * Lines are queued with {@link #add(ReportLine)}, which blocks when the queue
+ * is full so a very verbose test case cannot exhaust memory. The writer thread
+ * drains the queue in batches and writes each batch as a set, keyed on the
+ * unique digest column (see {@link ReportLine#getDigest()}): one multi-row
+ * INSERT ... ON DUPLICATE KEY UPDATE adds the new reports and moves
+ * last_session_id on for those which already exist, so writers racing on the
+ * same report cannot make the batch fail. Databases other than MySQL, like the
+ * H2 databases of the unit tests, have no such statement and get an UPDATE
+ * and, if it found nothing, an INSERT for each report instead.
+ * </p>
+ *
+ * <p>
+ * The writer thread has a connection of its own to the output database, so it
+ * does not share one with the caller, which goes on writing the session. A
+ * batch which cannot be written is tried again a few times before its reports
+ * are given up as lost.
+ * </p>
+ *
+ * <p>
+ * {@link #flush()} blocks until everything queued so far has been written,
+ * and throws if any of it was lost. ReportManager calls it when a test case
+ * finishes and when the session ends.
+ * </p>
+ */
+class ReportDatabaseWriter {
+
+	/** Maximum number of lines waiting to be written before add() blocks */
+	static final int QUEUE_CAPACITY = 10000;
+
+	/** Maximum number of lines sent in one batch */
+	static final int BATCH_SIZE = 500;
+
+	private static final String INSERT_SQL = "INSERT INTO report (first_session_id, last_session_id, database_name, species, database_type, testcase, result, text, digest, timestamp, team_responsible, created) VALUES ";
+
+	private static final String INSERT_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?, ?, NOW(), ?, NOW())";
+
+	private static final String UPDATE_SQL = "UPDATE report SET last_session_id=?, timestamp=NOW() WHERE digest=?";
+
+	private static final String ON_DUPLICATE_SQL = " ON DUPLICATE KEY UPDATE last_session_id=VALUES(last_session_id), timestamp=NOW()";
+
+	/** Approximate limit on the text sent in one multi-row INSERT */
+	private static final long MAX_INSERT_CHARS = 256 * 1024;
+
+	/** Number of times a batch is written before its reports are lost */
+	static final int ATTEMPTS = 3;
+
+	/** Milliseconds to wait before writing a failed batch again, times the attempt */
+	private static final long RETRY_DELAY = 200;
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private final Connection connection;
+
+	/** Whether connection was opened for the writer, and is closed with it */
+	private final boolean ownConnection;
+
+	private final long sessionID;
+
+	/** Whether the database has INSERT ... ON DUPLICATE KEY UPDATE */
+	private final boolean upsert;
+
+	private final BlockingQueue<ReportLine> queue = new ArrayBlockingQueue<ReportLine>(QUEUE_CAPACITY);
+
+	/** Lines added but not yet written; guarded by this */
+	private long pending = 0;
+
+	/** Lines lost since the last flush; guarded by this */
+	private long lost = 0;
+
+	/** Why the last of them were lost; guarded by this */
+	private Exception lostCause = null;
+
+	private volatile boolean closed = false;
+
+	private final Thread thread;
+
+	private final Thread shutdownHook;
+
+	/**
+	 * @param connection
+	 *          a connection to the output database, opened by the
+	 *          {@link ConnectionPool}; the writer opens one of its own to the
+	 *          same database with the same credentials
+	 */
+	ReportDatabaseWriter(Connection connection, long sessionID) {
+
+		Connection own = null;
+		try {
+			own = ConnectionPool.openSideConnection(connection.getMetaData().getURL());
+		} catch (SQLException e) {
+			logger.warning("Cannot open a connection for writing reports, sharing the output database connection: " + e.getMessage());
+		}
+		this.ownConnection = own != null;
+		this.connection = ownConnection ? own : connection;
+		this.sessionID = sessionID;
+		this.upsert = isMySQL(connection);
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeLoop();
+			}
+		}, "ReportDatabaseWriter");
+		thread.setDaemon(true);
+		thread.start();
+
+		// make sure nothing is lost if a runner exits without ending the session
+		shutdownHook = new Thread(new Runnable() {
+			public void run() {
+				try {
+					flush();
+				} catch (SqlUncheckedException e) {
+					logger.severe(e.getMessage());
+				}
+			}
+		}, "ReportDatabaseWriter-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+	}
+
+	long getSessionID() {
+		return sessionID;
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Queue a report for writing, blocking while the queue is full.
+	 */
+	void add(ReportLine report) {
+
+		if (closed) {
+			throw new IllegalStateException("Cannot add reports to a closed writer");
+		}
+
+		synchronized (this) {
+			pending++;
+		}
+
+		// keep trying rather than lose the report, but preserve the interrupt
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(report);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Wait until every report added so far has been written.
+	 *
+	 * @throws SqlUncheckedException
+	 *           if reports were lost since the last flush, which are only
+	 *           reported once
+	 */
+	synchronized void flush() {
+
+		while (pending > 0 && thread.isAlive()) {
+			try {
+				wait(1000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		if (lost > 0) {
+			String message = lost + " reports could not be written to the output database";
+			Exception cause = lostCause;
+			lost = 0;
+			lostCause = null;
+			throw new SqlUncheckedException(message, cause);
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Flush outstanding reports and stop the writer thread.
+	 */
+	void close() {
+
+		try {
+			flush();
+		} finally {
+			closed = true;
+			thread.interrupt();
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// already shutting down
+			}
+			if (ownConnection) {
+				try {
+					thread.join(1000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				DBUtils.closeQuietly(connection);
+			}
+		}
+
+	}
+
+	private synchronized void done(int count) {
+
+		pending -= count;
+		notifyAll();
+
+	}
+
+	private synchronized void lost(int count, Exception cause) {
+
+		lost += count;
+		lostCause = cause;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	private void writeLoop() {
+
+		List<ReportLine> batch = new ArrayList<ReportLine>(BATCH_SIZE);
+
+		while (!closed) {
+
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(batch, BATCH_SIZE - 1);
+
+			try {
+				writeBatch(batch);
+			} finally {
+				done(batch.size());
+				batch.clear();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Write a batch, trying again if it fails, and count its reports as lost
+	 * if it never succeeds.
+	 */
+	private void writeBatch(List<ReportLine> batch) {
+
+		for (int attempt = 1;; attempt++) {
+			try {
+				writeReports(batch);
+				return;
+			} catch (Exception e) {
+				if (attempt >= ATTEMPTS) {
+					logger.log(Level.SEVERE, "Could not write " + batch.size() + " reports to the output database", e);
+					lost(batch.size(), e);
+					return;
+				}
+				logger.warning("Could not write " + batch.size() + " reports to the output database, trying again: " + e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY * attempt);
+				} catch (InterruptedException ie) {
+					// closing, but the batch is still written
+				}
+			}
+		}
+
+	}
+
+	private void writeReports(List<ReportLine> batch) throws SQLException {
+
+		// identical lines within a batch only need writing once
+		Map<ByteBuffer, ReportLine> reports = new LinkedHashMap<ByteBuffer, ReportLine>();
+		for (ReportLine report : batch) {
+			ByteBuffer digest = ByteBuffer.wrap(report.getDigest());
+			if (!reports.containsKey(digest)) {
+				reports.put(digest, report);
+			}
+		}
+
+		insert(new ArrayList<ReportLine>(reports.values()));
+
+		logger.fine("Wrote " + reports.size() + " reports to the output database");
+
+	}
+
+	private static boolean isMySQL(Connection connection) {
+
+		try {
+			return connection.getMetaData().getDatabaseProductName().toLowerCase().indexOf("mysql") >= 0;
+		} catch (SQLException e) {
+			return true;
+		}
+
+	}
+
+	private void insert(List<ReportLine> reports) throws SQLException {
+
+		if (!upsert) {
+			updateOrInsert(reports);
+			return;
+		}
+
+		// keep each statement well inside max_allowed_packet
+		int from = 0;
+		while (from < reports.size()) {
+			int to = from;
+			long size = 0;
+			while (to < reports.size() && (to == from || size < MAX_INSERT_CHARS)) {
+				String message = reports.get(to).getMessage();
+				size += message == null ? 0 : message.length();
+				to++;
+			}
+			insertRows(reports.subList(from, to));
+			from = to;
+		}
+
+	}
+
+	private void insertRows(List<ReportLine> reports) throws SQLException {
+
+		StringBuilder sql = new StringBuilder(INSERT_SQL);
+		for (int i = 0; i < reports.size(); i++) {
+			sql.append(i == 0 ? "" : ", ").append(INSERT_VALUES);
+		}
+		sql.append(ON_DUPLICATE_SQL);
+
+		PreparedStatement stmt = null;
+		try {
+			stmt = connection.prepareStatement(sql.toString());
+			setValues(stmt, 1, reports);
+			stmt.executeUpdate();
+		} finally {
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	private void updateOrInsert(List<ReportLine> reports) throws SQLException {
+
+		PreparedStatement update = null;
+		PreparedStatement insert = null;
+		try {
+			update = connection.prepareStatement(UPDATE_SQL);
+			insert = connection.prepareStatement(INSERT_SQL + INSERT_VALUES);
+			for (ReportLine report : reports) {
+				update.setLong(1, sessionID);
+				update.setBytes(2, report.getDigest());
+				if (update.executeUpdate() == 0) {
+					setValues(insert, 1, Collections.singletonList(report));
+					insert.executeUpdate();
+				}
+			}
+		} finally {
+			DBUtils.closeQuietly(update);
+			DBUtils.closeQuietly(insert);
+		}
+
+	}
+
+	private void setValues(PreparedStatement stmt, int i, List<ReportLine> reports) throws SQLException {
+
+		for (ReportLine report : reports) {
+			stmt.setLong(i++, sessionID);
+			stmt.setLong(i++, sessionID);
+			stmt.setString(i++, report.getDatabaseName());
+			// EG Store species name and db type from explicit report line, not from database
+			stmt.setString(i++, report.getSpeciesName());
+			stmt.setString(i++, report.getType().toString());
+			stmt.setString(i++, report.getShortTestCaseName());
+			stmt.setString(i++, report.getLevelAsString());
+			stmt.setString(i++, report.getMessage());
+			stmt.setBytes(i++, report.getDigest());
+			stmt.setString(i++, report.getPrintableTeamResponsibleString());
+		}
+
+	}
+
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * <p>
+ * Local journal of the {@link ReportLine}s of one NodeDatabaseTestRunner, so
+ * that the many nodes of a parallel run do not each write to the output
+ * database as they go.
+ * </p>
+ *
+ * <p>
+ * Each node writes a gzipped file of JSON lines, one per report, named after
+ * the session, to a directory shared by all nodes (the output.journaldir
+ * property). When every node has finished, {@link #merge(File, long,
+ * ReportDatabaseWriter)} loads all the journals of the session into the
+ * report table in batches, with the same digest based de-duplication as
+ * reports written directly, and marks them as merged.
+ * </p>
+ */
+class ReportJournal {
+
+	static final String SUFFIX = ".jsonl.gz";
+
+	static final String MERGED_SUFFIX = ".merged";
+
+	static final String FAILED_SUFFIX = ".failed";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private final File file;
+
+	private final Writer writer;
+
+	private final Gson gson = new Gson();
+
+	private final Thread shutdownHook;
+
+	/**
+	 * Create a new journal for the session in the directory.
+	 */
+	ReportJournal(File dir, long sessionID) throws IOException {
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create journal directory " + dir);
+		}
+		file = File.createTempFile(prefix(sessionID), SUFFIX, dir);
+		writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file), 64 * 1024), UTF8));
+
+		// a journal which is not closed cannot be read to the end
+		shutdownHook = new Thread(new Runnable() {
+			public void run() {
+				closeQuietly();
+			}
+		}, "ReportJournal-shutdown");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+	}
+
+	static String prefix(long sessionID) {
+		return "session_" + sessionID + "_";
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	// -------------------------------------------------------------------------
+
+	synchronized void add(ReportLine report) throws IOException {
+
+		writer.write(gson.toJson(new Entry(report)));
+		writer.write('\n');
+
+	}
+
+	/**
+	 * Finish writing the journal.
+	 */
+	void close() throws IOException {
+
+		synchronized (this) {
+			writer.close();
+		}
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {
+			// already shutting down
+		}
+
+	}
+
+	private synchronized void closeQuietly() {
+
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// nothing more can be done
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Load every unmerged journal of the session in the directory into the
+	 * output database, and rename each one to end in {@link #MERGED_SUFFIX}
+	 * once it has been written. A journal which cannot be read to its end is
+	 * renamed to end in {@link #FAILED_SUFFIX} instead, after the reports
+	 * before the error have been written, so that it is not merged again.
+	 *
+	 * @return the number of reports read from the journals
+	 */
+	static int merge(File dir, long sessionID, ReportDatabaseWriter writer) {
+
+		final String prefix = prefix(sessionID);
+		File[] journals = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File d, String name) {
+				return name.startsWith(prefix) && name.endsWith(SUFFIX);
+			}
+		});
+		if (journals == null) {
+			logger.warning("Cannot read journal directory " + dir);
+			return 0;
+		}
+		Arrays.sort(journals);
+
+		Map<String, EnsTestCase> testCases = new HashMap<String, EnsTestCase>();
+		int total = 0;
+
+		for (File journal : journals) {
+
+			int count = 0;
+			boolean failed = false;
+			BufferedReader reader = null;
+			try {
+				reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(journal)), UTF8));
+				Gson gson = new Gson();
+				String line;
+				while ((line = reader.readLine()) != null) {
+					ReportLine report = gson.fromJson(line, Entry.class).toReportLine(testCases);
+					if (report != null) {
+						writer.add(report);
+						count++;
+					}
+				}
+			} catch (EOFException e) {
+				// the node died before closing its journal; keep what it wrote
+				logger.warning("Journal " + journal + " is incomplete; merged the first " + count + " reports");
+			} catch (IOException e) {
+				logger.severe("Cannot read journal " + journal + " after " + count + " reports: " + e.getMessage());
+				failed = true;
+			} catch (JsonParseException e) {
+				logger.severe("Cannot read journal " + journal + " after " + count + " reports: " + e.getMessage());
+				failed = true;
+			} finally {
+				if (reader != null) {
+					try {
+						reader.close();
+					} catch (IOException e) {
+						// only reading
+					}
+				}
+			}
+
+			writer.flush();
+			if (!journal.renameTo(new File(journal.getPath() + (failed ? FAILED_SUFFIX : MERGED_SUFFIX)))) {
+				logger.warning("Cannot rename " + (failed ? "failed" : "merged") + " journal " + journal);
+			}
+			logger.info("Merged " + count + " reports from " + journal);
+			total += count;
+
+		}
+
+		return total;
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * One line of a journal.
+	 */
+	static class Entry {
+
+		String testCaseName;
+		String databaseName;
+		String species;
+		String type;
+		int level;
+		String message;
+		Team teamResponsible;
+		Team secondTeamResponsible;
+
+		Entry() {
+		}
+
+		Entry(ReportLine report) {
+			testCaseName = report.getTestCaseName();
+			databaseName = report.getDatabaseName();
+			species = report.getSpeciesName();
+			type = report.getType() == null ? null : report.getType().getName();
+			level = report.getLevel();
+			message = report.getMessage();
+			teamResponsible = report.getTeamResponsible();
+			secondTeamResponsible = report.getSecondTeamResponsible();
+		}
+
+		/**
+		 * @return the report, or null if its test case cannot be found
+		 */
+		ReportLine toReportLine(Map<String, EnsTestCase> testCases) {
+
+			if (!testCases.containsKey(testCaseName)) {
+				EnsTestCase testCase = null;
+				try {
+					testCase = (EnsTestCase) Class.forName(testCaseName).getDeclaredConstructor().newInstance();
+				} catch (Exception e) {
+					logger.warning("Cannot create test case " + testCaseName + "; its reports will not be merged");
+				}
+				testCases.put(testCaseName, testCase);
+			}
+			EnsTestCase testCase = testCases.get(testCaseName);
+			if (testCase == null) {
+				return null;
+			}
+
+			ReportLine report = new ReportLine(testCase, databaseName, level, message, teamResponsible, secondTeamResponsible);
+			report.setTestCaseName(testCaseName);
+			report.setSpecies(species);
+			if (type != null && !type.equals(report.getType().getName())) {
+				report.setType(DatabaseType.resolveAlias(type));
+			}
+			return report;
+
+		}
+
+	}
+
+}
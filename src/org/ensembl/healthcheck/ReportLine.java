@@ -17,6 +17,10 @@
 
 package org.ensembl.healthcheck;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import org.ensembl.healthcheck.DatabaseRegistryEntry.DatabaseInfo;
 import org.ensembl.healthcheck.testcase.EnsTestCase;
 
@@ -50,6 +54,9 @@ public class ReportLine {
 	protected String speciesName;
 	protected DatabaseType type;
 
+	/** The database that this report refers to, as resolved from its name */
+	protected DatabaseInfo databaseInfo;
+
 	/** The message that this report contains */
 	protected String message;
 
@@ -57,6 +64,8 @@ public class ReportLine {
 	protected Team teamResponsible;
 	protected Team secondTeamResponsible;
 	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	/** Output level that is higher than all the others */
 	public static final int NONE = 2000;
 
@@ -96,9 +105,31 @@ public class ReportLine {
 	public ReportLine(EnsTestCase testCase, String name, int level,
 			String message, Team teamResponsible, Team secondTeamResponsible) {
 
+		this(testCase, DatabaseRegistryEntry.getInfoFromName(name), level,
+				message, teamResponsible, secondTeamResponsible);
+
+	} // constructor
+
+	/**
+	 * Creates a new instance of ReportLine for a database whose name has
+	 * already been resolved, so that the lines for one database share a
+	 * single {@link DatabaseInfo}.
+	 * 
+	 * @param testCase
+	 *            The test case to refer to.
+	 * @param info
+	 *            The database involved.
+	 * @param level
+	 *            The level of this report.
+	 * @param message
+	 *            The message to report.
+	 */
+	public ReportLine(EnsTestCase testCase, DatabaseInfo info, int level,
+			String message, Team teamResponsible, Team secondTeamResponsible) {
+
 		this.testCase     = testCase;
 		this.testCaseName = testCase.getTestName();
-		DatabaseInfo info = DatabaseRegistryEntry.getInfoFromName(name);
+		this.databaseInfo = info;
 		this.databaseName = info.getName();
 		if (info.getSpecies() != Species.UNKNOWN) {
 			speciesName = info.getSpecies().toString();
@@ -183,6 +214,18 @@ public class ReportLine {
 
 	}
 
+	/**
+	 * Get the database that this report line is associated with. Note that
+	 * this is not updated by {@link #setDatabaseName(String)}.
+	 * 
+	 * @return The database information
+	 */
+	public DatabaseInfo getDatabaseInfo() {
+
+		return databaseInfo;
+
+	}
+
 	/**
 	 * Get the name of the database that this report line is associated with.
 	 * 
@@ -308,5 +351,42 @@ public class ReportLine {
 	}
 
 	// -------------------------------------------------------------------------
+	/**
+	 * Get the digest which identifies this report in the report table of the
+	 * output database. This is the MD5 of the UTF-8 encoded database name,
+	 * short test case name, level and message separated by NUL characters,
+	 * and must match how sql/patch_02_report_digest.sql fills in the column
+	 * for existing rows.
+	 * 
+	 * @return The 16 byte digest.
+	 */
+	public byte[] getDigest() {
+
+		MessageDigest md5;
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("MD5 is not available", e);
+		}
+
+		// nulls are skipped in the same way as by MySQL's CONCAT_WS
+		String[] fields = { getDatabaseName(), getShortTestCaseName(), getLevelAsString(), getMessage() };
+		boolean first = true;
+		for (String field : fields) {
+			if (field == null) {
+				continue;
+			}
+			if (!first) {
+				md5.update((byte) 0);
+			}
+			md5.update(field.getBytes(UTF8));
+			first = false;
+		}
+
+		return md5.digest();
+
+	}
+
+	// -------------------------------------------------------------------------
 
 } // ReportLine
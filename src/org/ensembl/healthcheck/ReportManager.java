@@ -17,22 +17,28 @@
 
 package org.ensembl.healthcheck;
 
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
+import org.ensembl.healthcheck.DatabaseRegistryEntry.DatabaseInfo;
 import org.ensembl.healthcheck.testcase.EnsTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.Metrics;
 import org.ensembl.healthcheck.util.Utils;
 
 /**
@@ -41,6 +47,9 @@ import org.ensembl.healthcheck.util.Utils;
  */
 public class ReportManager {
 
+	/** Marks the reports of checks which only looked at a sample of the rows */
+	public static final String SAMPLED = "[SAMPLED] ";
+
 	/**
 	 * <p>
 	 * Resets attributes of the ReportManager. This way the ReportManager can be used for running more than one session. (Not at the
@@ -51,28 +60,29 @@ public class ReportManager {
 	 */
 	public static void initialise() {
 
-		reportsByTest = new HashMap();
-		reportsByDatabase = new HashMap();
+		ReportStore previous = store;
+		store = new ReportStore(MAX_BUFFER_SIZE);
+		previous.close();
+		bufferSizeWarningPrinted = false;
 
+		closeDatabaseWriter();
 		outputDatabaseConnection = null;
 		sessionID = -1;
 	}
 
-	/** A hash of lists keyed on the test name. */
-	protected static Map reportsByTest = new HashMap();
-
-	/** A hash of lists keyed on the database name */
-	protected static Map reportsByDatabase = new HashMap();
-
 	/** The logger to use for this class */
 	protected static Logger logger = Logger.getLogger("HealthCheckLogger");
 
 	/**
-	 * The maximum number of lines to store to prevent very verbose test cases causing memory problems
+	 * The maximum number of lines to keep in memory for each test case and each database, to prevent very verbose test cases
+	 * causing memory problems. Further lines are written to a temporary file.
 	 */
 	protected static final int MAX_BUFFER_SIZE = 2000;
 
-	private static boolean bufferSizeWarningPrinted = false;
+	/** Reports keyed on test name and on database name */
+	private static volatile ReportStore store = new ReportStore(MAX_BUFFER_SIZE);
+
+	private static volatile boolean bufferSizeWarningPrinted = false;
 
 	private static Reporter reporter;
 
@@ -82,6 +92,18 @@ public class ReportManager {
 
 	private static long sessionID = -1;
 
+	/** Writes reports to the output database in the background */
+	private static ReportDatabaseWriter databaseWriter;
+
+	/** If set, reports are written here instead of to the output database */
+	private static volatile ReportJournal journal;
+
+	/**
+	 * The database each connection reported on refers to, so its URL is only
+	 * fetched and parsed once. Weak keys let closed connections go.
+	 */
+	private static final Map<Connection, DatabaseInfo> infoByConnection = Collections.synchronizedMap(new WeakHashMap<Connection, DatabaseInfo>());
+
 	// hide constructor to stop instantiation
 	private ReportManager() {
 
@@ -108,6 +130,10 @@ public class ReportManager {
 	 */
 	public static void startTestCase(EnsTestCase testCase, DatabaseRegistryEntry dbre) {
 
+		if (Metrics.isEnabled()) {
+			Metrics.startTest(testCase.getTestName(), metricsDatabase(dbre), metricsServer(dbre));
+		}
+
 		if (reporter != null) {
 			reporter.startTestCase(testCase, dbre);
 		}
@@ -125,9 +151,27 @@ public class ReportManager {
 	 */
 	public static void finishTestCase(EnsTestCase testCase, boolean result, DatabaseRegistryEntry dbre) {
 
+		flushDatabaseReports();
+
 		if (reporter != null) {
 			reporter.finishTestCase(testCase, result, dbre);
 		}
+
+		if (Metrics.isEnabled()) {
+			Metrics.finishTest(testCase.getTestName(), metricsDatabase(dbre), metricsServer(dbre));
+		}
+	}
+
+	private static String metricsDatabase(DatabaseRegistryEntry dbre) {
+		return dbre == null ? null : dbre.getName();
+	}
+
+	private static String metricsServer(DatabaseRegistryEntry dbre) {
+
+		if (dbre == null || dbre.getDatabaseServer() == null) {
+			return null;
+		}
+		return dbre.getDatabaseServer().getHost() + ":" + dbre.getDatabaseServer().getPort();
 	}
 
 	// -------------------------------------------------------------------------
@@ -139,60 +183,37 @@ public class ReportManager {
 	 */
 	public static void add(ReportLine report) {
 
+		ReportJournal currentJournal = journal;
+		if (currentJournal != null) {
+
+			try {
+				currentJournal.add(report);
+			} catch (IOException e) {
+				System.err.println("Error writing report to journal " + currentJournal.getFile());
+				e.printStackTrace();
+			}
+			return;
+
+		}
+
 		if (usingDatabase) {
 
-			checkAndAddToDatabase(report);
+			getDatabaseWriter().add(report);
 			return;
 
 		}
 
 		String testCaseName = report.getTestCaseName();
-		String databaseName = report.getDatabaseName();
-
-		ArrayList lines;
-
-		// add to each hash
-		if (testCaseName != null && testCaseName.length() > 0) {
-			// create the lists if they're not there already
-			if (reportsByTest.get(testCaseName) == null) {
-				lines = new ArrayList();
-				lines.add(report);
-				reportsByTest.put(testCaseName, lines);
-			} else {
-				// get the relevant list, update it, and re-add it
-				lines = (ArrayList) reportsByTest.get(testCaseName);
-
-				// prevent the buffer getting too big
-				if (lines.size() > MAX_BUFFER_SIZE) {
-					if (!bufferSizeWarningPrinted) {
-						System.err.println("\n\nReportManager has reached its maximum buffer size (" + MAX_BUFFER_SIZE + " lines) - no more output will be stored\n");
-						bufferSizeWarningPrinted = true;
-					}
-				} else {
-					// buffer small enough, add it
-					lines.add(report);
-					reportsByTest.put(testCaseName, lines);
-				}
 
-			}
-
-		} else {
+		if (testCaseName == null || testCaseName.length() == 0) {
 			logger.warning("Cannot add report with test case name not set");
 		}
 
-		if (databaseName != null && databaseName.length() > 0) {
-			// create the lists if they're not there already
-			if (reportsByDatabase.get(databaseName) == null) {
-				lines = new ArrayList();
-				lines.add(report);
-				reportsByDatabase.put(databaseName, lines);
-			} else {
-				// get the relevant list, update it, and re-add it
-				lines = (ArrayList) reportsByDatabase.get(databaseName);
-				lines.add(report);
-				reportsByDatabase.put(databaseName, lines);
-			}
-
+		// lines beyond the buffer size are written to disk
+		if (!store.add(report) && !bufferSizeWarningPrinted) {
+			bufferSizeWarningPrinted = true;
+			System.err.println("\n\nReportManager has reached its maximum buffer size (" + MAX_BUFFER_SIZE + " lines) - further output will be stored in "
+					+ store.getSpillFile() + "\n");
 		}
 
 		if (reporter != null) {
@@ -215,12 +236,25 @@ public class ReportManager {
 	 */
 	public static void report(EnsTestCase testCase, Connection con, int level, String message) {
 
+		add(new ReportLine(testCase, getDatabaseInfo(con), level, message, testCase.getTeamResponsible(), testCase.getSecondTeamResponsible()));
+
+	} // report
+
+	private static DatabaseInfo getDatabaseInfo(Connection con) {
+
 		// this may be called when there is no DB connection
-		String dbName = (con == null) ? "no_database" : DBUtils.getShortDatabaseName(con);
+		if (con == null) {
+			return DatabaseRegistryEntry.getInfoFromName("no_database");
+		}
 
-		add(new ReportLine(testCase, dbName, level, message, testCase.getTeamResponsible(), testCase.getSecondTeamResponsible()));
+		DatabaseInfo info = infoByConnection.get(con);
+		if (info == null) {
+			info = DatabaseRegistryEntry.getInfoFromName(DBUtils.getShortDatabaseName(con));
+			infoByConnection.put(con, info);
+		}
+		return info;
 
-	} // report
+	}
 
 	// -------------------------------------------------------------------------
 	/**
@@ -370,6 +404,25 @@ public class ReportManager {
 
 	} // summary
 
+	/**
+	 * Store a ReportLine about a check which only looked at a sample of the rows, marked with {@link #SAMPLED} so that it is not
+	 * mistaken for the result of a full check.
+	 * 
+	 * @param testCase
+	 *          The test case filing the report.
+	 * @param con
+	 *          The database connection involved.
+	 * @param level
+	 *          The level of this report.
+	 * @param message
+	 *          The message to be reported.
+	 */
+	public static void sampled(EnsTestCase testCase, Connection con, int level, String message) {
+
+		report(testCase, con, level, SAMPLED + message);
+
+	} // sampled
+
 	// -------------------------------------------------------------------------
 	/**
 	 * Get a HashMap of all the reports, keyed on test case name.
@@ -378,7 +431,7 @@ public class ReportManager {
 	 */
 	public static Map getAllReportsByTestCase() {
 
-		return reportsByTest;
+		return store.getAllByTest(ReportLine.ALL);
 
 	} // getAllReportsByTestCase
 
@@ -392,7 +445,7 @@ public class ReportManager {
 	 */
 	public static Map getAllReportsByTestCase(int level) {
 
-		return filterMap(reportsByTest, level);
+		return store.getAllByTest(level);
 
 	} // getAllReportsByTestCase
 
@@ -404,7 +457,7 @@ public class ReportManager {
 	 */
 	public static Map getAllReportsByDatabase() {
 
-		return reportsByDatabase;
+		return store.getAllByDatabase(ReportLine.ALL);
 
 	} // getReportsByDatabase
 
@@ -418,7 +471,7 @@ public class ReportManager {
 	 */
 	public static Map getAllReportsByDatabase(int level) {
 
-		return filterMap(reportsByDatabase, level);
+		return store.getAllByDatabase(level);
 
 	} // getAllReportsByTestCase
 
@@ -434,9 +487,7 @@ public class ReportManager {
 	 */
 	public static List getReportsByTestCase(String testCaseName, int level) {
 
-		List allReports = (List) reportsByTest.get(testCaseName);
-
-		return filterList(allReports, level);
+		return store.getByTest(testCaseName, level);
 
 	} // getReportsByTestCase
 
@@ -452,7 +503,7 @@ public class ReportManager {
 	 */
 	public static List getReportsByDatabase(String databaseName, int level) {
 
-		return filterList((List) reportsByDatabase.get(databaseName), level);
+		return store.getByDatabase(databaseName, level);
 
 	} // getReportsByDatabase
 
@@ -521,38 +572,7 @@ public class ReportManager {
 	 */
 	public static int[] countPassesAndFailsDatabase(String database) {
 
-		int[] result = new int[2];
-
-		List testsRun = new ArrayList();
-
-		// get all of them to build a list of the tests that were run
-		List reports = getReportsByDatabase(database, ReportLine.ALL);
-		Iterator it = reports.iterator();
-		while (it.hasNext()) {
-			ReportLine line = (ReportLine) it.next();
-			String test = line.getTestCaseName();
-			if (!testsRun.contains(test)) {
-				testsRun.add(test);
-			}
-		}
-
-		// count those that failed
-		List testsFailed = new ArrayList();
-		reports = getReportsByDatabase(database, ReportLine.PROBLEM);
-		it = reports.iterator();
-		while (it.hasNext()) {
-			ReportLine line = (ReportLine) it.next();
-			String test = line.getTestCaseName();
-			if (!testsFailed.contains(test)) {
-				testsFailed.add(test);
-			}
-		}
-
-		result[1] = testsFailed.size();
-		result[0] = testsRun.size() - testsFailed.size(); // if it didn't
-		// fail, it passed
-
-		return result;
+		return store.countPassesAndFailsDatabase(database);
 
 	}
 
@@ -567,38 +587,7 @@ public class ReportManager {
 	 */
 	public static int[] countPassesAndFailsTest(String test) {
 
-		int[] result = new int[2];
-
-		List allDBs = new ArrayList();
-
-		// get all of them to build a list of the tests that were run
-		List reports = getReportsByTestCase(test, ReportLine.ALL);
-		Iterator it = reports.iterator();
-		while (it.hasNext()) {
-			ReportLine line = (ReportLine) it.next();
-			String database = line.getDatabaseName();
-			if (!allDBs.contains(database)) {
-				allDBs.add(database);
-			}
-		}
-
-		// count those that failed
-		List dbsFailed = new ArrayList();
-		reports = getReportsByTestCase(test, ReportLine.PROBLEM);
-		it = reports.iterator();
-		while (it.hasNext()) {
-			ReportLine line = (ReportLine) it.next();
-			String database = line.getDatabaseName();
-			if (!dbsFailed.contains(database)) {
-				dbsFailed.add(database);
-			}
-		}
-
-		result[1] = dbsFailed.size();
-		result[0] = allDBs.size() - dbsFailed.size(); // if it didn't fail, it
-		// passed
-
-		return result;
+		return store.countPassesAndFailsTest(test);
 
 	}
 
@@ -612,19 +601,7 @@ public class ReportManager {
 	 */
 	public static int[] countPassesAndFailsAll() {
 
-		int[] result = new int[2];
-
-		Map allByDB = getAllReportsByDatabase();
-		Set dbs = allByDB.keySet();
-		Iterator it = dbs.iterator();
-		while (it.hasNext()) {
-			String database = (String) it.next();
-			int[] dbResult = countPassesAndFailsDatabase(database);
-			result[0] += dbResult[0];
-			result[1] += dbResult[1];
-		}
-
-		return result;
+		return store.countPassesAndFailsAll();
 
 	}
 
@@ -641,16 +618,7 @@ public class ReportManager {
 	 */
 	public static boolean databasePassed(String test, String database) {
 
-		List reports = getReportsByTestCase(test, ReportLine.PROBLEM);
-		Iterator it = reports.iterator();
-		while (it.hasNext()) {
-			ReportLine line = (ReportLine) it.next();
-			if (database.equals(line.getDatabaseName())) {
-				return false;
-			}
-		}
-
-		return true;
+		return store.databasePassed(test, database);
 
 	}
 
@@ -664,12 +632,7 @@ public class ReportManager {
 	 */
 	public static boolean allDatabasesPassed(String test) {
 
-		List reports = getReportsByTestCase(test, ReportLine.PROBLEM);
-		if (reports.size() > 0) {
-			return false;
-		}
-
-		return true;
+		return store.allDatabasesPassed(test);
 
 	}
 
@@ -687,7 +650,7 @@ public class ReportManager {
 
 		List result = new ArrayList();
 
-		List allReports = (List) reportsByTest.get(test);
+		List allReports = store.getByTest(test, ReportLine.ALL);
 
 		Iterator it = allReports.iterator();
 		while (it.hasNext()) {
@@ -881,6 +844,8 @@ public class ReportManager {
 	 */
 	public static void endDatabaseSession() {
 
+		closeDatabaseWriter();
+
 		String sql = "UPDATE session SET end_time=NOW() WHERE session_id=" + sessionID;
 
 		try {
@@ -929,143 +894,101 @@ public class ReportManager {
 
 	// -------------------------------------------------------------------------
 	/**
-	 * Update a report in the database. Two possible actions: 1. If the report already exists and hasn't changed, just update it. 2.
-	 * If the report is new, add a new record.
+	 * Get the writer for the current session, creating it if necessary.
 	 */
-	public static void checkAndAddToDatabase(ReportLine report) {
-
-		long reportID = reportExistsInDatabase(report);
-
-		if (reportID > -1) {
+	private static synchronized ReportDatabaseWriter getDatabaseWriter() {
 
-			updateReportInDatabase(report, reportID);
-
-		} else {
-
-			addReportToDatabase(report);
+		if (databaseWriter != null && databaseWriter.getSessionID() != sessionID) {
+			databaseWriter.close();
+			databaseWriter = null;
+		}
 
+		if (databaseWriter == null) {
+			databaseWriter = new ReportDatabaseWriter(outputDatabaseConnection, sessionID);
 		}
 
+		return databaseWriter;
+
 	}
 
 	// -------------------------------------------------------------------------
 	/**
-	 * Check if a report exists (i.e. same database, testcase, result and text).
+	 * Block until all reports added so far have been written to the output database. Reports are written in the background, so call
+	 * this before reading them back or exiting.
 	 * 
-	 * @return -1 if the report does not exist, report_id if it does.
+	 * @throws org.ensembl.healthcheck.util.SqlUncheckedException
+	 *           if reports could not be written since the last flush
 	 */
-	public static long reportExistsInDatabase(ReportLine report) {
+	public static void flushDatabaseReports() {
 
-		String sql = "SELECT report_id FROM report WHERE database_name=? AND testcase=? AND result=? AND BINARY(text)=BINARY(?)";
+		ReportDatabaseWriter writer;
+		synchronized (ReportManager.class) {
+			writer = databaseWriter;
+		}
+		if (writer != null) {
+			writer.flush();
+		}
 
-		long reportID = -1;
+	}
 
-		try {
+	private static synchronized void closeDatabaseWriter() {
 
-			PreparedStatement stmt = outputDatabaseConnection.prepareStatement(sql);
-			stmt.setString(1, report.getDatabaseName());
-			stmt.setString(2, report.getShortTestCaseName());
-			stmt.setString(3, report.getLevelAsString());
-			stmt.setString(4, report.getMessage());
-			ResultSet rs = stmt.executeQuery();
-			if (rs != null) {
-				if (rs.first()) {
-					reportID = rs.getLong(1);
-				} else {
-					reportID = -1; // probably signifies an empty ResultSet
-				}
+		if (databaseWriter != null) {
+			try {
+				databaseWriter.close();
+			} finally {
+				databaseWriter = null;
 			}
-			rs.close();
-			stmt.close();
-
-		} catch (SQLException e) {
-
-			System.err.println("Error executing:\n" + sql);
-			e.printStackTrace();
-
-		}
-
-		if (reportID > -1) {
-			logger.finest("Report already exists (ID " + reportID + "): " + report.getDatabaseName() + " " + report.getTestCaseName() + " " + report.getLevelAsString() + " " + report.getMessage());
-		} else {
-			logger.finest("Report does not already exist: " + report.getDatabaseName() + " " + report.getTestCaseName() + " " + report.getLevelAsString() + " " + report.getMessage());
 		}
 
-		return reportID;
-
 	}
 
 	// -------------------------------------------------------------------------
 	/**
-	 * Store a report in the database.
+	 * Write reports to a journal file in the given directory instead of to the output database, which need not be connected. The
+	 * journals of a session are loaded into the output database with {@link #mergeJournals(File)}.
 	 */
-	public static void addReportToDatabase(ReportLine report) {
-
-		if (outputDatabaseConnection == null) {
-			logger.severe("No connection to output database!");
-			return;
-		}
-
-		logger.fine("Adding report for: " + report.getDatabaseName() + " " + report.getTestCaseName() + " " + report.getLevelAsString() + " " + report.getMessage());
+	public static synchronized void openJournal(File dir) {
 
-		String sql = "INSERT INTO report (first_session_id, last_session_id, database_name, species, database_type, testcase, result, text, timestamp, team_responsible, created) VALUES (?, ?, ?, ?, ?, ?, ?, ?, NOW(), ?, NOW())";
+		closeJournal();
 
 		try {
-
-			PreparedStatement stmt = outputDatabaseConnection.prepareStatement(sql);
-			stmt.setLong(1, sessionID);
-			stmt.setLong(2, sessionID);
-			stmt.setString(3, report.getDatabaseName());
-			// EG Store species name and db type from explicit report line, not from database
-			stmt.setString(4, report.getSpeciesName());
-			stmt.setString(5, report.getType().toString());
-			stmt.setString(6, report.getShortTestCaseName());
-			stmt.setString(7, report.getLevelAsString());
-			stmt.setString(8, report.getMessage());
-			stmt.setString(9, report.getPrintableTeamResponsibleString());
-			stmt.executeUpdate();
-
-			stmt.close();
-
-		} catch (SQLException e) {
-
-			System.err.println("Error executing:\n" + sql);
-			e.printStackTrace();
-
+			journal = new ReportJournal(dir, sessionID);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot create report journal in " + dir, e);
 		}
+		logger.fine("Writing reports to " + journal.getFile());
 
 	}
 
-	// -------------------------------------------------------------------------
 	/**
-	 * Update the last_session_id of a report in the database.
+	 * Finish writing the journal opened by {@link #openJournal(File)}, if any.
 	 */
-	public static void updateReportInDatabase(ReportLine report, long reportID) {
+	public static synchronized void closeJournal() {
 
-		if (outputDatabaseConnection == null) {
-			logger.severe("No connection to output database!");
-			return;
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				System.err.println("Error closing journal " + journal.getFile());
+				e.printStackTrace();
+			}
+			journal = null;
 		}
 
-		logger.fine("Updating report for: " + report.getDatabaseName() + " " + report.getTestCaseName() + " " + report.getLevelAsString() + " " + report.getMessage() + ", new last_session_id="
-				+ sessionID);
-
-		String sql = "UPDATE report SET last_session_id=?, timestamp=NOW() WHERE report_id=?";
-
-		try {
-
-			PreparedStatement stmt = outputDatabaseConnection.prepareStatement(sql);
-			stmt.setLong(1, sessionID);
-			stmt.setLong(2, reportID);
-			stmt.executeUpdate();
-			stmt.close();
-
-		} catch (SQLException e) {
+	}
 
-			System.err.println("Error executing:\n" + sql);
-			e.printStackTrace();
+	/**
+	 * Load the journals written for the current session in the given directory into the output database. Reports already in the
+	 * database are carried forward rather than duplicated, as when they are written directly.
+	 * 
+	 * @return the number of reports read from the journals
+	 */
+	public static int mergeJournals(File dir) {
 
-		}
+		int count = ReportJournal.merge(dir, sessionID, getDatabaseWriter());
+		flushDatabaseReports();
+		return count;
 
 	}
 
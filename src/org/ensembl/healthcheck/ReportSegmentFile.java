@@ -0,0 +1,235 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+
+/**
+ * <p>
+ * Append-only file of {@link ReportLine}s which did not fit in memory, used by
+ * {@link ReportStore}. The file is mapped into memory in regions; lines are
+ * appended to the last region and read back from anywhere by the offset
+ * {@link #append(ReportLine)} returned.
+ * </p>
+ *
+ * <p>
+ * Lines are stored as their test case name, database name, species, type,
+ * level, message and teams. Test cases and database types are not stored
+ * themselves, so the objects seen when lines were appended are kept and given
+ * to the lines read back. A line read back is a copy: changing it does not
+ * change what is stored.
+ * </p>
+ *
+ * <p>
+ * The file is deleted by {@link #close()}, or when the JVM exits.
+ * </p>
+ */
+final class ReportSegmentFile {
+
+	/** Size of each mapped region; larger lines get a region of their own */
+	static final int REGION_SIZE = 16 * 1024 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private final RandomAccessFile raf;
+
+	private final FileChannel channel;
+
+	/** Mapped regions in file order; guarded by this */
+	private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+
+	/** Writes to the last region; guarded by this */
+	private ByteBuffer writeBuffer = null;
+
+	/** Start of the next region; guarded by this */
+	private long mappedEnd = 0;
+
+	private final ConcurrentMap<String, EnsTestCase> testCases = new ConcurrentHashMap<String, EnsTestCase>();
+
+	private final ConcurrentMap<String, DatabaseType> types = new ConcurrentHashMap<String, DatabaseType>();
+
+	ReportSegmentFile() throws IOException {
+
+		file = File.createTempFile("healthcheck-reports", ".seg");
+		file.deleteOnExit();
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Append a line to the file. Lines without a test case cannot be read back
+	 * and should be kept in memory instead.
+	 *
+	 * @return the offset to pass to {@link #read(long)}
+	 */
+	long append(ReportLine report) throws IOException {
+
+		byte[] record = encode(report);
+
+		synchronized (this) {
+			int needed = 4 + record.length;
+			if (writeBuffer == null || writeBuffer.remaining() < needed) {
+				map(Math.max(REGION_SIZE, needed));
+			}
+			int position = writeBuffer.position();
+			writeBuffer.putInt(record.length);
+			writeBuffer.put(record);
+			return ((long) (regions.size() - 1) << 32) | position;
+		}
+
+	}
+
+	private void map(int size) throws IOException {
+
+		MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, mappedEnd, size);
+		mappedEnd += size;
+		regions.add(region);
+		writeBuffer = region.duplicate();
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Read back a line written by {@link #append(ReportLine)}.
+	 */
+	ReportLine read(long offset) {
+
+		ByteBuffer region;
+		synchronized (this) {
+			region = regions.get((int) (offset >>> 32)).duplicate();
+		}
+		region.position((int) offset);
+		byte[] record = new byte[region.getInt()];
+		region.get(record);
+		return decode(ByteBuffer.wrap(record));
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Stop using the file and delete it. Lines already read back are not
+	 * affected.
+	 */
+	synchronized void close() {
+
+		regions.clear();
+		writeBuffer = null;
+		try {
+			channel.close();
+			raf.close();
+		} catch (IOException e) {
+			// nothing more to write
+		}
+		file.delete();
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	private byte[] encode(ReportLine report) throws IOException {
+
+		EnsTestCase testCase = report.getTestCase();
+		testCases.putIfAbsent(testCase.getTestName(), testCase);
+		DatabaseType type = report.getType();
+		if (type != null) {
+			types.putIfAbsent(type.getName(), type);
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (report.getMessage() == null ? 0 : report.getMessage().length()));
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(report.getLevel());
+		writeString(out, testCase.getTestName());
+		writeString(out, report.getTestCaseName());
+		writeString(out, report.getDatabaseName());
+		writeString(out, report.getSpeciesName());
+		writeString(out, type == null ? null : type.getName());
+		writeString(out, report.getMessage());
+		writeString(out, report.getTeamResponsible() == null ? null : report.getTeamResponsible().name());
+		writeString(out, report.getSecondTeamResponsible() == null ? null : report.getSecondTeamResponsible().name());
+		out.close();
+		return bytes.toByteArray();
+
+	}
+
+	private ReportLine decode(ByteBuffer in) {
+
+		int level = in.getInt();
+		EnsTestCase testCase = testCases.get(readString(in));
+		String testCaseName = readString(in);
+		String databaseName = readString(in);
+		String speciesName = readString(in);
+		String typeName = readString(in);
+		String message = readString(in);
+		String team = readString(in);
+		String secondTeam = readString(in);
+
+		ReportLine report = new ReportLine(testCase, databaseName, level, message, team == null ? null : Team.valueOf(team),
+				secondTeam == null ? null : Team.valueOf(secondTeam));
+		report.setTestCaseName(testCaseName);
+		report.setSpecies(speciesName);
+		report.setType(typeName == null ? null : types.get(typeName));
+		return report;
+
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+	}
+
+	private static String readString(ByteBuffer in) {
+
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+
+	}
+
+}
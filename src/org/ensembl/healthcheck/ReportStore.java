@@ -0,0 +1,490 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * In-memory store of {@link ReportLine}s for {@link ReportManager}, indexed by
+ * test case and by database. Safe for any number of threads adding reports
+ * while others read them.
+ * </p>
+ *
+ * <p>
+ * Each test case and database has its own {@link Bucket}; appends lock only
+ * that bucket and reads do not lock at all. Every bucket also records which
+ * databases (or test cases) it has seen and which of them had a
+ * {@link ReportLine#PROBLEM}, with atomic counters, so pass and fail counts are
+ * available without walking the stored lines.
+ * </p>
+ *
+ * <p>
+ * Only the first lines of each bucket are kept in memory. Later lines are
+ * appended to a {@link ReportSegmentFile} and the bucket keeps just their
+ * offsets, so nothing is lost however much a test case reports. The lists
+ * returned read those lines back from the file as they are iterated.
+ * </p>
+ */
+final class ReportStore {
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private final int maxLinesInMemory;
+
+	/** Created when the first line does not fit in memory; guarded by this */
+	private ReportSegmentFile segment = null;
+
+	private volatile boolean segmentFailed = false;
+
+	private final ConcurrentMap<String, Bucket> byTest = new ConcurrentHashMap<String, Bucket>();
+
+	private final ConcurrentMap<String, Bucket> byDatabase = new ConcurrentHashMap<String, Bucket>();
+
+	/** Passes and fails of every test on every database */
+	private final AtomicInteger allPassed = new AtomicInteger();
+
+	private final AtomicInteger allFailed = new AtomicInteger();
+
+	/**
+	 * @param maxLinesInMemory
+	 *          The number of lines kept in memory for each test case and each
+	 *          database; further lines are written to disk.
+	 */
+	ReportStore(int maxLinesInMemory) {
+		this.maxLinesInMemory = maxLinesInMemory;
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Add a report.
+	 *
+	 * @return false if the report did not fit in memory and was written to
+	 *         disk.
+	 */
+	boolean add(ReportLine report) {
+
+		String testCaseName = report.getTestCaseName();
+		String databaseName = report.getDatabaseName();
+		boolean problem = report.getLevel() >= ReportLine.PROBLEM;
+
+		// written to disk at most once, however many buckets it overflows
+		long offset = -1;
+
+		if (testCaseName != null && testCaseName.length() > 0) {
+			Bucket bucket = bucket(byTest, testCaseName);
+			offset = add(bucket, report, offset);
+			bucket.record(databaseName, problem);
+		}
+
+		if (databaseName != null && databaseName.length() > 0) {
+			Bucket bucket = bucket(byDatabase, databaseName);
+			offset = add(bucket, report, offset);
+			int change = bucket.record(testCaseName, problem);
+			if (change == Bucket.NEW_PASS) {
+				allPassed.incrementAndGet();
+			} else if (change == Bucket.NEW_FAIL) {
+				allFailed.incrementAndGet();
+			} else if (change == Bucket.PASS_TO_FAIL) {
+				allPassed.decrementAndGet();
+				allFailed.incrementAndGet();
+			}
+		}
+
+		return offset < 0;
+
+	}
+
+	/**
+	 * Add a report to a bucket, writing it to disk if the bucket is full and
+	 * it has not been written already.
+	 *
+	 * @return the offset of the report on disk, or -1 if it is not there
+	 */
+	private long add(Bucket bucket, ReportLine report, long offset) {
+
+		if (bucket.add(report, maxLinesInMemory)) {
+			return offset;
+		}
+		if (offset < 0) {
+			offset = spill(report);
+		}
+		if (offset < 0) {
+			bucket.add(report, Integer.MAX_VALUE);
+		} else {
+			bucket.addSpilled(offset, report.getLevel());
+		}
+		return offset;
+
+	}
+
+	/**
+	 * @return the offset of the report on disk, or -1 if it could not be
+	 *         written and must stay in memory
+	 */
+	private long spill(ReportLine report) {
+
+		if (segmentFailed || report.getTestCase() == null) {
+			return -1;
+		}
+		try {
+			return segment().append(report);
+		} catch (IOException e) {
+			segmentFailed = true;
+			logger.warning("Cannot write reports to disk, keeping them in memory: " + e.getMessage());
+			return -1;
+		}
+
+	}
+
+	private synchronized ReportSegmentFile segment() throws IOException {
+
+		if (segment == null) {
+			segment = new ReportSegmentFile();
+		}
+		return segment;
+
+	}
+
+	/**
+	 * @return the file that reports which do not fit in memory are written to,
+	 *         or null if there have not been any
+	 */
+	synchronized File getSpillFile() {
+		return segment == null ? null : segment.getFile();
+	}
+
+	/**
+	 * Delete the file of reports which did not fit in memory. Lists already
+	 * returned must not be read afterwards.
+	 */
+	synchronized void close() {
+
+		if (segment != null) {
+			segment.close();
+			segment = null;
+		}
+
+	}
+
+	private static Bucket bucket(ConcurrentMap<String, Bucket> map, String key) {
+
+		Bucket bucket = map.get(key);
+		if (bucket == null) {
+			Bucket created = new Bucket();
+			bucket = map.putIfAbsent(key, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	/*
+	 * The lists returned hold the lines in memory and read the rest from disk
+	 * one at a time, so iterating them once is cheap however long they are.
+	 */
+
+	List<ReportLine> getByTest(String testCaseName, int level) {
+		return lines(byTest.get(testCaseName), level);
+	}
+
+	List<ReportLine> getByDatabase(String databaseName, int level) {
+		return lines(byDatabase.get(databaseName), level);
+	}
+
+	Map<String, List<ReportLine>> getAllByTest(int level) {
+		return lines(byTest, level);
+	}
+
+	Map<String, List<ReportLine>> getAllByDatabase(int level) {
+		return lines(byDatabase, level);
+	}
+
+	private List<ReportLine> lines(Bucket bucket, int level) {
+
+		if (bucket == null) {
+			return new ArrayList<ReportLine>();
+		}
+		List<ReportLine> inMemory = bucket.lines(level);
+		long[] offsets = bucket.spilled(level);
+		if (offsets.length == 0) {
+			return inMemory;
+		}
+		ReportSegmentFile file;
+		synchronized (this) {
+			file = segment;
+		}
+		return new SpilledList(inMemory, offsets, file);
+
+	}
+
+	private Map<String, List<ReportLine>> lines(Map<String, Bucket> map, int level) {
+
+		Map<String, List<ReportLine>> result = new HashMap<String, List<ReportLine>>();
+		for (Map.Entry<String, Bucket> entry : map.entrySet()) {
+			result.put(entry.getKey(), lines(entry.getValue(), level));
+		}
+		return result;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	/**
+	 * @return the number of test cases which passed [0] and failed [1] on the
+	 *         database
+	 */
+	int[] countPassesAndFailsDatabase(String databaseName) {
+		return counts(byDatabase.get(databaseName));
+	}
+
+	/**
+	 * @return the number of databases which passed [0] and failed [1] the test
+	 *         case
+	 */
+	int[] countPassesAndFailsTest(String testCaseName) {
+		return counts(byTest.get(testCaseName));
+	}
+
+	/**
+	 * @return the number of test case and database combinations which passed
+	 *         [0] and failed [1]
+	 */
+	int[] countPassesAndFailsAll() {
+		return new int[] { allPassed.get(), allFailed.get() };
+	}
+
+	private static int[] counts(Bucket bucket) {
+
+		if (bucket == null) {
+			return new int[2];
+		}
+		int failed = bucket.failed.get();
+		return new int[] { bucket.seen.get() - failed, failed };
+
+	}
+
+	/**
+	 * @return true if the database has no problems reported by the test case
+	 */
+	boolean databasePassed(String testCaseName, String databaseName) {
+
+		Bucket bucket = byTest.get(testCaseName);
+		return bucket == null || !Boolean.TRUE.equals(bucket.problems.get(databaseName));
+
+	}
+
+	/**
+	 * @return true if the test case has not reported a problem on any database
+	 */
+	boolean allDatabasesPassed(String testCaseName) {
+
+		Bucket bucket = byTest.get(testCaseName);
+		return bucket == null || bucket.failed.get() == 0;
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * The reports for one test case or database. Lines are appended under the
+	 * bucket's lock and published through the volatile sizes, so readers see a
+	 * consistent prefix without locking. Lines written to disk are held as
+	 * their offsets and levels.
+	 */
+	private static final class Bucket {
+
+		static final int UNCHANGED = 0;
+		static final int NEW_PASS = 1;
+		static final int NEW_FAIL = 2;
+		static final int PASS_TO_FAIL = 3;
+
+		private volatile ReportLine[] lines = new ReportLine[16];
+
+		private volatile int size = 0;
+
+		private volatile long[] spilledOffsets = new long[0];
+
+		private volatile int[] spilledLevels = new int[0];
+
+		private volatile int spilledSize = 0;
+
+		/** Other key (database or test case) to whether it had a problem */
+		final ConcurrentMap<String, Boolean> problems = new ConcurrentHashMap<String, Boolean>();
+
+		final AtomicInteger seen = new AtomicInteger();
+
+		final AtomicInteger failed = new AtomicInteger();
+
+		synchronized boolean add(ReportLine report, int maxLines) {
+
+			if (size >= maxLines) {
+				return false;
+			}
+			if (size == lines.length) {
+				ReportLine[] grown = new ReportLine[lines.length * 2];
+				System.arraycopy(lines, 0, grown, 0, size);
+				lines = grown;
+			}
+			lines[size] = report;
+			size = size + 1;
+			return true;
+
+		}
+
+		synchronized void addSpilled(long offset, int level) {
+
+			if (spilledSize == spilledOffsets.length) {
+				int capacity = Math.max(16, spilledSize * 2);
+				long[] offsets = new long[capacity];
+				int[] levels = new int[capacity];
+				System.arraycopy(spilledOffsets, 0, offsets, 0, spilledSize);
+				System.arraycopy(spilledLevels, 0, levels, 0, spilledSize);
+				spilledOffsets = offsets;
+				spilledLevels = levels;
+			}
+			spilledOffsets[spilledSize] = offset;
+			spilledLevels[spilledSize] = level;
+			spilledSize = spilledSize + 1;
+
+		}
+
+		/**
+		 * Record that a report was seen for the other key.
+		 *
+		 * @return how the pass/fail state of that key changed
+		 */
+		int record(String key, boolean problem) {
+
+			if (key == null) {
+				return UNCHANGED;
+			}
+
+			Boolean previous = problems.putIfAbsent(key, problem);
+			if (previous == null) {
+				seen.incrementAndGet();
+				if (problem) {
+					failed.incrementAndGet();
+					return NEW_FAIL;
+				}
+				return NEW_PASS;
+			}
+
+			if (problem && !previous && problems.replace(key, Boolean.FALSE, Boolean.TRUE)) {
+				failed.incrementAndGet();
+				return PASS_TO_FAIL;
+			}
+
+			return UNCHANGED;
+
+		}
+
+		ArrayList<ReportLine> lines(int level) {
+
+			int n = size;
+			ReportLine[] snapshot = lines;
+			ArrayList<ReportLine> result = new ArrayList<ReportLine>(level <= ReportLine.ALL ? n : 16);
+			for (int i = 0; i < n; i++) {
+				if (snapshot[i].getLevel() >= level) {
+					result.add(snapshot[i]);
+				}
+			}
+			return result;
+
+		}
+
+		/**
+		 * @return the offsets on disk of the lines at or above the level
+		 */
+		long[] spilled(int level) {
+
+			int n = spilledSize;
+			long[] offsets = spilledOffsets;
+			int[] levels = spilledLevels;
+			long[] result = new long[n];
+			int count = 0;
+			for (int i = 0; i < n; i++) {
+				if (levels[i] >= level) {
+					result[count++] = offsets[i];
+				}
+			}
+			if (count < n) {
+				long[] trimmed = new long[count];
+				System.arraycopy(result, 0, trimmed, 0, count);
+				result = trimmed;
+			}
+			return result;
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Read-only list of the lines of a bucket held in memory followed by those
+	 * on disk, which are read each time they are asked for.
+	 */
+	private static final class SpilledList extends AbstractList<ReportLine> implements RandomAccess {
+
+		private final List<ReportLine> inMemory;
+
+		private final long[] offsets;
+
+		private final ReportSegmentFile file;
+
+		SpilledList(List<ReportLine> inMemory, long[] offsets, ReportSegmentFile file) {
+			this.inMemory = inMemory;
+			this.offsets = offsets;
+			this.file = file;
+		}
+
+		@Override
+		public ReportLine get(int index) {
+
+			int n = inMemory.size();
+			if (index < n) {
+				return inMemory.get(index);
+			}
+			if (index - n >= offsets.length) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			return file.read(offsets[index - n]);
+
+		}
+
+		@Override
+		public int size() {
+			return inMemory.size() + offsets.length;
+		}
+
+	}
+
+}
@@ -30,6 +30,8 @@ import org.ensembl.healthcheck.testcase.MultiDatabaseTestCase;
 import org.ensembl.healthcheck.testcase.OrderedDatabaseTestCase;
 import org.ensembl.healthcheck.testcase.Repair;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.Metrics;
 
 /**
  * <p>
@@ -233,6 +235,9 @@ public class TestRunner {
 			logger.warning("Warning: no tests were run.");
 		}
 
+		Metrics.finishRun();
+		GeneModelSnapshot.clearCache();
+
 	} // runAllTests
 
 	// ---------------------------------------------------------------------
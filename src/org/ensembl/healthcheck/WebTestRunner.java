@@ -29,13 +29,25 @@
 
 package org.ensembl.healthcheck;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -48,6 +60,12 @@ import org.ensembl.healthcheck.util.Utils;
 
 /**
  * TestRunner optimised for outputting results to HTML.
+ * 
+ * The detailed reports are written out as each test case finishes, to a file
+ * next to the output file (with .partial.html appended) which can be viewed
+ * while the run continues, and to a temporary file. When all tests have run the
+ * page is put together from these and the pass and fail counts kept by
+ * ReportManager, so reports are not held in memory until the end.
  */
 public class WebTestRunner extends TestRunner implements Reporter {
 
@@ -59,6 +77,27 @@ public class WebTestRunner extends TestRunner implements Reporter {
 
 	private static String TIMINGS_FILE = "timings.txt";
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Reports held for the test being run before they are written out */
+	private static final int MAX_PENDING_REPORTS = 1000;
+
+	/** Reports at or above the output level not yet written out, by test and database */
+	private final Map<String, List<ReportLine>> pendingReports = new LinkedHashMap<String, List<ReportLine>>();
+
+	private int pendingCount = 0;
+
+	/** Every database and test reported on, whatever the level */
+	private final Set<String> databases = new TreeSet<String>();
+
+	private final Set<String> tests = new TreeSet<String>();
+
+	private Spool reportsByDatabase;
+
+	private Spool reportsByTest;
+
+	private PrintWriter timings;
+
 	// ---------------------------------------------------------------------
 	/**
 	 * Main run method.
@@ -97,6 +136,8 @@ public class WebTestRunner extends TestRunner implements Reporter {
 			logger.warning("Warning: no database names matched any of the database regexps given");
 		}
 
+		openOutput();
+
 		runAllTests(databaseRegistry, testRegistry, false);
 
 		printOutput();
@@ -193,7 +234,30 @@ public class WebTestRunner extends TestRunner implements Reporter {
 	 * @param reportLine
 	 *          The message to store.
 	 */
-	public void message(ReportLine reportLine) {
+	public synchronized void message(ReportLine reportLine) {
+
+		String database = reportLine.getDatabaseName();
+		// tests on several databases report with no database name
+		if (database != null && database.length() > 0) {
+			databases.add(database);
+		}
+		tests.add(reportLine.getTestCaseName());
+
+		if (reportLine.getLevel() < outputLevel) {
+			return;
+		}
+
+		String key = reportLine.getTestCaseName() + "\t" + database;
+		List<ReportLine> lines = pendingReports.get(key);
+		if (lines == null) {
+			lines = new ArrayList<ReportLine>();
+			pendingReports.put(key, lines);
+		}
+		lines.add(reportLine);
+
+		if (++pendingCount >= MAX_PENDING_REPORTS) {
+			writePendingReports();
+		}
 
 	}
 
@@ -227,7 +291,7 @@ public class WebTestRunner extends TestRunner implements Reporter {
 	 *          The database which testCase was run on, or null of no/several
 	 *          databases.
 	 */
-	public void finishTestCase(EnsTestCase testCase, boolean result, DatabaseRegistryEntry dbre) {
+	public synchronized void finishTestCase(EnsTestCase testCase, boolean result, DatabaseRegistryEntry dbre) {
 
 		long duration = System.currentTimeMillis() - testStartTime;
 
@@ -238,7 +302,92 @@ public class WebTestRunner extends TestRunner implements Reporter {
 		str += testCase.getShortTestName() + "\t";
 		str += Utils.formatTimeString(duration);
 
-		Utils.writeStringToFile(TIMINGS_FILE, str, true, true);
+		timings.println(str);
+		timings.flush();
+
+		writePendingReports();
+
+	}
+
+	// ---------------------------------------------------------------------
+
+	/**
+	 * Open the files the reports are written to as tests finish.
+	 */
+	private void openOutput() {
+
+		String file = System.getProperty("webtestrunner.file");
+
+		try {
+
+			timings = new PrintWriter(new BufferedWriter(new FileWriter(TIMINGS_FILE, true)));
+
+			reportsByTest = new Spool(new File(file + ".partial.html"));
+			reportsByTest.write("<html><head><title>" + System.getProperty("webtestrunner.title") + " (in progress)</title></head><body>\n");
+			reportsByTest.write("<h2>Reports so far, by test case</h2>\n");
+
+			File byDatabase = File.createTempFile("webtestrunner", ".html");
+			byDatabase.deleteOnExit();
+			reportsByDatabase = new Spool(byDatabase);
+
+		} catch (IOException e) {
+			System.err.println("Error opening output files for " + file);
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+	}
+
+	// ---------------------------------------------------------------------
+
+	/**
+	 * Write out the reports held so far, one fragment for each test and
+	 * database in each of the detailed sections.
+	 */
+	private void writePendingReports() {
+
+		if (pendingCount == 0) {
+			return;
+		}
+
+		try {
+
+			for (List<ReportLine> lines : pendingReports.values()) {
+
+				String database = lines.get(0).getDatabaseName();
+				String test = lines.get(0).getTestCaseName();
+				String shortTest = lines.get(0).getShortTestCaseName();
+
+				StringBuffer byDatabase = new StringBuffer("<p>\n");
+				StringBuffer byTest = new StringBuffer("<p>\n");
+				for (ReportLine line : lines) {
+					byDatabase.append("<a name=\"" + database + ":" + shortTest + "\"></a> " + getFontForReport(line) + "<strong>"
+							+ shortTest + ": </strong>" + line.getMessage() + "</font>" + "<br>\n");
+					byTest.append("<a name=\"" + shortTest + ":" + database + "\"></a> " + getFontForReport(line) + "<strong>"
+							+ database + ": </strong>" + line.getMessage() + "</font>" + "<br>\n");
+				}
+				byDatabase.append("</p>\n");
+				byTest.append("</p>\n");
+
+				if (database != null && database.length() > 0) {
+					reportsByDatabase.add(database, byDatabase.toString());
+				}
+
+				// the heading only appears in the partial page
+				reportsByTest.write("<h3>" + test + "</h3>\n");
+				reportsByTest.add(test, byTest.toString());
+
+			}
+
+			reportsByTest.flush();
+
+		} catch (IOException e) {
+			System.err.println("Error writing reports");
+			e.printStackTrace();
+		}
+
+		pendingReports.clear();
+		pendingCount = 0;
 
 	}
 
@@ -329,6 +478,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 
 		String file = System.getProperty("webtestrunner.file");
 
+		writePendingReports();
+		timings.close();
+
 		try {
 
 			PrintWriter pw = new PrintWriter(new FileOutputStream(file));
@@ -351,6 +503,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 
 			pw.close();
 
+			reportsByDatabase.delete();
+			reportsByTest.delete();
+
 		} catch (Exception e) {
 			System.err.println("Error writing to " + file);
 			e.printStackTrace();
@@ -383,104 +538,42 @@ public class WebTestRunner extends TestRunner implements Reporter {
 	}
 
 	// ---------------------------------------------------------------------
-	private void printReportsByDatabase(PrintWriter pw) {
+	private void printReportsByDatabase(PrintWriter pw) throws IOException {
 
 		print(pw, "<h2>Detailed reports by database</h2>");
 
-		Map reportsByDB = ReportManager.getAllReportsByDatabase(outputLevel);
+		for (String database : databases) {
 
-		TreeSet dbs = new TreeSet(reportsByDB.keySet());
-		Iterator it = dbs.iterator();
-		while (it.hasNext()) {
-
-			String database = (String) it.next();
-
-			List reports = (List) reportsByDB.get(database);
-			Iterator it2 = reports.iterator();
-
-			if (!reports.isEmpty()) {
+			if (reportsByDatabase.contains(database)) {
 
 				String link = "<a name=\"" + database + "\">";
 				print(pw, "<h3 class='boxed'>" + link + database + "</a></h3>");
-				print(pw, "<p>");
-
-				String lastTest = "";
-				while (it2.hasNext()) {
-
-					ReportLine line = (ReportLine) it2.next();
-					String test = line.getShortTestCaseName();
-
-					if (!lastTest.equals("") && !test.equals(lastTest)) {
-						print(pw, "</p><p>");
-					}
-					lastTest = test;
-
-					String linkTarget = "<a name=\"" + database + ":" + test + "\"></a> ";
-					String s = linkTarget + getFontForReport(line) + "<strong>" + test + ": </strong>" + line.getMessage() + "</font>"
-							+ "<br>";
-
-					print(pw, s);
-
-				} // while it2
-
-				print(pw, "</p>");
+				reportsByDatabase.copy(database, pw);
 
 			}
 
-		} // while it
+		}
 
 		print(pw, "<hr>");
 
 	}
 
 	// ---------------------------------------------------------------------
-	private void printReportsByTest(PrintWriter pw) {
+	private void printReportsByTest(PrintWriter pw) throws IOException {
 
 		print(pw, "<h2>Detailed reports by test case</h2>");
 
-		Map reportsByTC = ReportManager.getAllReportsByTestCase(outputLevel);
-
-		TreeSet dbs = new TreeSet(reportsByTC.keySet());
-		
-		Iterator it = dbs.iterator();
-		while (it.hasNext()) {
-
-			String test = (String) it.next();
+		for (String test : tests) {
 
-			List reports = (List) reportsByTC.get(test);
-			Iterator it2 = reports.iterator();
-
-			if (!reports.isEmpty()) {
+			if (reportsByTest.contains(test)) {
 
 				String link = "<a name=\"" + test + "\">";
 				print(pw, "<h3 class='boxed'>" + link + test + "</a></h3>");
-
-				print(pw, "<p>");
-
-				String lastDB = "";
-				while (it2.hasNext()) {
-
-					ReportLine line = (ReportLine) it2.next();
-					String database = line.getDatabaseName();
-
-					if (!lastDB.equals("") && !database.equals(lastDB)) {
-						print(pw, "</p><p>");
-					}
-					lastDB = database;
-
-					String linkTarget = "<a name=\"" + line.getShortTestCaseName() + ":" + database + "\"></a> ";
-					String s = linkTarget + getFontForReport(line) + "<strong>" + database + ": </strong>" + line.getMessage() + "</font>"
-							+ "<br>";
-
-					print(pw, s);
-
-				} // while it2
-
-				print(pw, "</p>");
+				reportsByTest.copy(test, pw);
 
 			}
 
-		} // while it
+		}
 
 		print(pw, "<hr>");
 	}
@@ -555,11 +648,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 		print(pw, "<p><table class='ss'>");
 		print(pw, "<tr><th>Database</th><th>Passed</th><th>Failed</th></tr>");
 
-		Map reportsByDB = ReportManager.getAllReportsByDatabase();
-		TreeSet databases = new TreeSet(reportsByDB.keySet());
-		Iterator it = databases.iterator();
+		Iterator<String> it = databases.iterator();
 		while (it.hasNext()) {
-			String database = (String) it.next();
+			String database = it.next();
 			String link = "<a href=\"#" + database + "\">";
 			int[] passesAndFails = ReportManager.countPassesAndFailsDatabase(database);
 			String s = (passesAndFails[1] == 0) ? passFont() : failFont();
@@ -583,11 +674,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 		print(pw, "<p><table class='ss'>");
 		print(pw, "<tr><th>Test</th><th>Passed</th><th>Failed</th></tr>");
 
-		Map reports = ReportManager.getAllReportsByTestCase();
-		TreeSet tests = new TreeSet(reports.keySet());
-		Iterator it = tests.iterator();
+		Iterator<String> it = tests.iterator();
 		while (it.hasNext()) {
-			String test = (String) it.next();
+			String test = it.next();
 			String link = "<a href=\"#" + test + "\">";
 			int[] passesAndFails = ReportManager.countPassesAndFailsTest(test);
 			String s = (passesAndFails[1] == 0) ? passFont() : failFont();
@@ -644,11 +733,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 		print(pw, "<h2>Results by database</h2>");
 		print(pw, "<ul>");
 
-		Map reportsByDB = ReportManager.getAllReportsByDatabase();
-		TreeSet databases = new TreeSet(reportsByDB.keySet());
-		Iterator it = databases.iterator();
+		Iterator<String> it = databases.iterator();
 		while (it.hasNext()) {
-			String database = (String) it.next();
+			String database = it.next();
 
 			String link = "<a href=\"#" + database + "\">";
 			print(pw, "<li>" + link + Utils.truncateDatabaseName(database) + "</a></li>");
@@ -658,11 +745,9 @@ public class WebTestRunner extends TestRunner implements Reporter {
 		print(pw, "<h2>Results by test</h2>");
 		print(pw, "<ul>");
 
-		Map reports = ReportManager.getAllReportsByTestCase();
-		TreeSet tests = new TreeSet(reports.keySet());
 		it = tests.iterator();
 		while (it.hasNext()) {
-			String test = (String) it.next();
+			String test = it.next();
 			String name = test.substring(test.lastIndexOf('.') + 1);
 			String link = "<a href=\"#" + name + "\">";
 			print(pw, "<li>" + link + Utils.truncateTestName(name) + "</a></li>");
@@ -690,6 +775,96 @@ public class WebTestRunner extends TestRunner implements Reporter {
 	}
 
 	// ---------------------------------------------------------------------
+	/**
+	 * File of HTML fragments, written as they are produced and indexed by the
+	 * database or test case they belong to, so that they can be copied into
+	 * the output page in order at the end.
+	 */
+	private static class Spool {
+
+		private final File file;
+
+		private final OutputStream out;
+
+		private long length = 0;
+
+		/** Offset and length of each fragment, by key */
+		private final Map<String, List<long[]>> fragments = new HashMap<String, List<long[]>>();
+
+		private RandomAccessFile in = null;
+
+		Spool(File file) throws IOException {
+
+			this.file = file;
+			out = new BufferedOutputStream(new FileOutputStream(file));
+
+		}
+
+		/**
+		 * Write text which is not part of any fragment.
+		 */
+		void write(String s) throws IOException {
+
+			byte[] bytes = s.getBytes(UTF8);
+			out.write(bytes);
+			length += bytes.length;
+
+		}
+
+		void add(String key, String fragment) throws IOException {
+
+			long offset = length;
+			write(fragment);
+			List<long[]> list = fragments.get(key);
+			if (list == null) {
+				list = new ArrayList<long[]>();
+				fragments.put(key, list);
+			}
+			list.add(new long[] { offset, length - offset });
+
+		}
+
+		boolean contains(String key) {
+			return fragments.containsKey(key);
+		}
+
+		void flush() throws IOException {
+			out.flush();
+		}
+
+		/**
+		 * Copy the fragments for the key to the writer, in the order they were
+		 * added.
+		 */
+		void copy(String key, PrintWriter pw) throws IOException {
+
+			if (in == null) {
+				out.close();
+				in = new RandomAccessFile(file, "r");
+			}
+			for (long[] fragment : fragments.get(key)) {
+				byte[] bytes = new byte[(int) fragment[1]];
+				in.seek(fragment[0]);
+				in.readFully(bytes);
+				pw.write(new String(bytes, UTF8));
+			}
+
+		}
+
+		void delete() throws IOException {
+
+			if (in != null) {
+				in.close();
+			} else {
+				out.close();
+			}
+			file.delete();
+
+		}
+
+	}
+
+	// ---------------------------------------------------------------------
 
 	
 } // WebTestRunner
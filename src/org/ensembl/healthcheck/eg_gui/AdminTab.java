@@ -30,8 +30,10 @@ import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
 
 import org.ensembl.healthcheck.eg_gui.AdminTab;
 import org.ensembl.healthcheck.eg_gui.AdminTabActionListener;
@@ -46,6 +48,7 @@ public class AdminTab extends JPanel {
 	protected final JTextField perl5libTextField;
 	protected final JTextField perlOptions;
 	protected final JTextField perlBinary;
+	protected final JSpinner   parallelism;
 	protected final JTextArea  output;
 	
 	/**
@@ -141,6 +144,23 @@ public class AdminTab extends JPanel {
 		return perlBinary.getText();
 	}
 	
+	/**
+	 * @return the number of tests the gui runs at the same time.
+	 */
+	public int getParallelism() {
+		return ((Number) parallelism.getValue()).intValue();
+	}
+	
+	/**
+	 * <p>
+	 * 	One test per processor, but not so many that the database server 
+	 * gets swamped.
+	 * </p>
+	 */
+	protected int createParallelismDefaultValue() {
+		return Math.min(Runtime.getRuntime().availableProcessors(), 4);
+	}
+	
 	public AdminTab() {
 		
 		setLayout(new BorderLayout());
@@ -195,6 +215,11 @@ public class AdminTab extends JPanel {
 		settingsForm.add(GuiTestRunnerFrameComponentBuilder.createLeftJustifiedText("Perl options"));
 		settingsForm.add(perlOptions);
 		
+		parallelism = new JSpinner(new SpinnerNumberModel(createParallelismDefaultValue(), 1, 64, 1));
+		
+		settingsForm.add(GuiTestRunnerFrameComponentBuilder.createLeftJustifiedText("Tests run in parallel"));
+		settingsForm.add(GuiTestRunnerFrameComponentBuilder.createLeftJustifiedComponent(parallelism));
+		
 		settingsForm.add(Box.createVerticalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING));
 		
 		settingsForm.add(GuiTestRunnerFrameComponentBuilder.createLeftJustifiedComponent(checkoutPerlDependenciesButton));		
@@ -16,36 +16,37 @@
 
 package org.ensembl.healthcheck.eg_gui;
 
-import java.awt.BorderLayout;
-import java.awt.FlowLayout;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import javax.swing.BoxLayout;
-import javax.swing.ButtonGroup;
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JLabel;
-import javax.swing.JPanel;
-import javax.swing.JRadioButton;
+import javax.swing.JList;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 
 import org.ensembl.healthcheck.DatabaseRegistry;
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.eg_gui.DatabaseListPanel;
-import org.ensembl.healthcheck.eg_gui.DatabaseRadioButton;
 import org.ensembl.healthcheck.eg_gui.DatabaseTypeGUIComparator;
 import org.ensembl.healthcheck.eg_gui.TabChangeListener;
+import org.ensembl.healthcheck.util.NameIndex;
 
 /**
  * <p>
@@ -53,6 +54,11 @@ import org.ensembl.healthcheck.eg_gui.TabChangeListener;
  * Also highlights currently-selected tab.
  * </p>
  * 
+ * <p>
+ * 	There is one tab per database type, each with a list of the databases
+ * of that type. Only one database can be selected across all the tabs.
+ * </p>
+ * 
  */
 
 public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
@@ -61,12 +67,12 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 	protected final List<ActionListener> actionListener;
 
 	/**
-	 * Updated automatically to always hold the currently selected DbButton.
+	 * Updated automatically to always hold the currently selected database.
 	 */
-	protected DatabaseRadioButton selectedDbButton;
+	protected DatabaseRegistryEntry selectedDatabase;
 
-	public DatabaseRadioButton getSelectedDbButton() {
-		return selectedDbButton;
+	public DatabaseRegistryEntry getSelectedDatabase() {
+		return selectedDatabase;
 	}
 
 	public void addActionListener(ActionListener l) {
@@ -84,8 +90,19 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 
 		String cmd = arg0.getActionCommand();
 		
-		if (cmd.equals(Constants.selectedDatabaseChanged)) {			
-			selectedDbButton = (DatabaseRadioButton) arg0.getSource();
+		if (cmd.equals(Constants.selectedDatabaseChanged)) {
+			
+			DatabaseListPanel source = (DatabaseListPanel) arg0.getSource();
+			selectedDatabase = source.getSelectedDatabase();
+			
+			// Selecting in one tab deselects the database in the others.
+			//
+			for (int i = 0; i < getTabCount(); i++) {
+				Component tab = getComponentAt(i);
+				if (tab != source && tab instanceof DatabaseListPanel) {
+					((DatabaseListPanel) tab).clearSelection();
+				}
+			}
 			
 			ActionEvent actionEvent = new ActionEvent(
 				this, 
@@ -99,52 +116,28 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 	/**
 	 * 
 	 * <p>
-	 * 	Creates a map that maps a DatabaseRegistryEntry to the JRadioButton 
-	 * that will represent for selection in the gui.
-	 * </p>
-	 * 
-	 * @param databaseRegistry
-	 * @return Map<DatabaseRegistryEntry, JRadioButton>
-	 * 
-	 */
-	protected Map<DatabaseRegistryEntry, DatabaseRadioButton> createRadioButtonsForDb(DatabaseRegistryEntry[] allDbEntries) {
-		
-		Map<DatabaseRegistryEntry, DatabaseRadioButton> checkBoxMap = new HashMap<DatabaseRegistryEntry, DatabaseRadioButton>();
-        
-        for (DatabaseRegistryEntry currentEntry : allDbEntries) {
-        	
-        	DatabaseRadioButton dbcb = new DatabaseRadioButton(currentEntry, false);
-        	dbcb.addActionListener(this);
-        	dbcb.setActionCommand(Constants.selectedDatabaseChanged);
-        	
-            checkBoxMap.put(currentEntry, dbcb);
-        }
-        return checkBoxMap;
-	}
-	
-	/**
-	 * 
-	 * <p>
-	 * 	Searches through an array of allDbEntries and creates a list of 
-	 * DatabaseRegistryEntry with the specified filterForType. 
+	 * 	Groups the databases by type in one pass over allDbEntries, keeping
+	 * the order of allDbEntries within each type.
 	 * </p>
 	 * 
 	 * @param allDbEntries
-	 * @param filterForType
-	 * @return
+	 * @return Map<DatabaseType, List<DatabaseRegistryEntry>>
 	 * 
 	 */
-	private List<DatabaseRegistryEntry> filterForDbsOfType(DatabaseRegistryEntry[] allDbEntries, DatabaseType filterForType) {
+	private Map<DatabaseType, List<DatabaseRegistryEntry>> groupByType(DatabaseRegistryEntry[] allDbEntries) {
 		
-    	List<DatabaseRegistryEntry> dbRegistryEntryWithOfType = new ArrayList<DatabaseRegistryEntry>();
+		Map<DatabaseType, List<DatabaseRegistryEntry>> dbsByType = new LinkedHashMap<DatabaseType, List<DatabaseRegistryEntry>>();
 
-        for (DatabaseRegistryEntry currentEntry : allDbEntries) {
-        	
-            if (currentEntry.getType() == filterForType) {
-                dbRegistryEntryWithOfType.add(currentEntry);
-            }
-        }
-		return dbRegistryEntryWithOfType;
+		for (DatabaseRegistryEntry currentEntry : allDbEntries) {
+			
+			List<DatabaseRegistryEntry> dbsOfType = dbsByType.get(currentEntry.getType());
+			if (dbsOfType == null) {
+				dbsOfType = new ArrayList<DatabaseRegistryEntry>();
+				dbsByType.put(currentEntry.getType(), dbsOfType);
+			}
+			dbsOfType.add(currentEntry);
+		}
+		return dbsByType;
 	}
 	
     /**
@@ -173,6 +166,17 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
     	this.addActionListener(radioActionListener);
     }
 
+    /**
+     * <p>
+     * 	Creates an empty tabbed pane, the databases are set later using 
+     * {@link #init(DatabaseRegistry)}.
+     * </p>
+     */
+    public DatabaseTabbedPane() {
+
+    	actionListener = new LinkedList<ActionListener>();
+    }
+
     public void setMessage(String caption, String message) {
 
     	this.removeAll();
@@ -180,6 +184,16 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
     }
 
 
+    /**
+     * <p>
+     * 	Shows the databases in databaseRegistry. Can be called from any 
+     * thread: the databases are grouped and indexed for searching on the 
+     * calling thread and the tabs are then replaced on the event dispatch 
+     * thread.
+     * </p>
+     * 
+     * @param databaseRegistry
+     */
     public void init(DatabaseRegistry databaseRegistry) {
     	this.databaseRegistry = databaseRegistry;
     	init();
@@ -187,55 +201,55 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 
     public synchronized void init() {
     	
-    	this.removeAll();
-    	
-    	selectedDbButton = null;
-    	
-    	DatabaseRegistryEntry[] allDbEntries = databaseRegistry.getAll();
-    	
-    	if (allDbEntries.length==0) {
-    		addTab(
-    			"Problem",
-    			new JLabel("No databases available.")
-    		);
-    	}
+    	final DatabaseRegistryEntry[] allDbEntries = databaseRegistry.getAll();
     	
-    	Map<DatabaseRegistryEntry, DatabaseRadioButton> checkBoxMap = createRadioButtonsForDb(allDbEntries);
+    	final Map<DatabaseType, List<DatabaseRegistryEntry>> dbsByType = groupByType(allDbEntries);
 
-        DatabaseType[] types = databaseRegistry.getTypes();
+    	final DatabaseType[] types = dbsByType.keySet().toArray(new DatabaseType[dbsByType.size()]);
         Arrays.sort(types, new DatabaseTypeGUIComparator());
         
-        // One Buttongroup for all radio buttons across all the database
-        // tabs.
-        //
-        ButtonGroup myOneAndOnlyButtonGroup = new ButtonGroup();
-
+        final List<NameIndex> nameIndices = new ArrayList<NameIndex>(types.length);
         for (DatabaseType currentDbType : types) {
-
-        	// Create a list of databases on the server with the currentDbType.
-        	//
-        	List<DatabaseRegistryEntry> dbsOnServerWithThisType 
-    		= filterForDbsOfType(
-    			databaseRegistry.getAll(), 
-    			currentDbType
-    		);
-
-        	// Create Radiobuttons for them for the user to select.
-        	//
-        	List<DatabaseRadioButton> checkBoxesTabForCurrentType = new ArrayList<DatabaseRadioButton>();
-        	
-	        for (DatabaseRegistryEntry currentEntry : dbsOnServerWithThisType) {
-	            checkBoxesTabForCurrentType.add(checkBoxMap.get(currentEntry));
-	        }
-    	
-            addTab(
-            	currentDbType.toString(), 
-            	new DatabaseListPanel(checkBoxesTabForCurrentType, myOneAndOnlyButtonGroup)
-            );
+        	nameIndices.add(DatabaseListPanel.createNameIndex(dbsByType.get(currentDbType)));
         }
-        addChangeListener(new TabChangeListener());
-        if (getTabCount()>0) {
-        	setEnabledAt(0, true);
+
+        Runnable showDatabases = new Runnable() {
+        	public void run() {
+        		
+        		removeAll();
+        		
+        		selectedDatabase = null;
+        		
+        		if (allDbEntries.length==0) {
+        			addTab(
+        				"Problem",
+        				new JLabel("No databases available.")
+        			);
+        		}
+        		
+        		for (int i = 0; i < types.length; i++) {
+        			
+        			addTab(
+        				types[i].toString(), 
+        				new DatabaseListPanel(
+        					dbsByType.get(types[i]),
+        					nameIndices.get(i),
+        					DatabaseTabbedPane.this
+        				)
+        			);
+        		}
+        		addChangeListener(new TabChangeListener());
+        		if (getTabCount()>0) {
+        			setEnabledAt(0, true);
+        		}
+        		repaint();
+        	}
+        };
+        
+        if (SwingUtilities.isEventDispatchThread()) {
+        	showDatabases.run();
+        } else {
+        	SwingUtilities.invokeLater(showDatabases);
         }
     }
 
@@ -243,6 +257,10 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
     public void applySearchtermFilter(List<String> SearchTerm) {
     	
     	int index = this.getSelectedIndex();
+    	
+    	if (index == -1) {
+    		return;
+    	}
 
     	// Returns a JLabel when the JTabbedPane is not fully initialised yet.
     	//
@@ -262,21 +280,12 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 
     public DatabaseRegistryEntry[] getSelectedDatabases() {
 
-    	return new DatabaseRegistryEntry[] { getSelectedDbButton().getDatabase() };
+    	DatabaseRegistryEntry selected = getSelectedDatabase();
     	
-//        List result = new ArrayList();
-//
-//        // get all the selected databases for each tab in turn
-//        for (int i = 0; i < getTabCount(); i++) {
-//
-//            DatabaseListPanel dblp = (DatabaseListPanel) getComponentAt(i);
-//            DatabaseRegistryEntry[] panelSelected = dblp.getSelected();
-//            for (int j = 0; j < panelSelected.length; j++) {
-//                result.add(panelSelected[j]);
-//            }
-//        }
-//
-//        return (DatabaseRegistryEntry[]) result.toArray(new DatabaseRegistryEntry[result.size()]);
+    	if (selected == null) {
+    		return new DatabaseRegistryEntry[0];
+    	}
+    	return new DatabaseRegistryEntry[] { selected };
 
     } // getSelectedDatabases
 
@@ -285,110 +294,129 @@ public class DatabaseTabbedPane extends JTabbedPane implements ActionListener {
 } // DatabaseTabbedPane
 
 /**
+ * 
  * <p>
- * A JRadioButton with a reference to a DatabaseRegistryEntry.
+ * 	A class that creates a list (in a JScrollPane) of the databases of one
+ * type, and provides methods for accessing the selected one.
  * </p>
- * 
- */
-
-class DatabaseRadioButton extends JRadioButton {
-
-	private DatabaseRegistryEntry database;
-
-	public DatabaseRadioButton(DatabaseRegistryEntry database, boolean selected) {
-		super(database.getName(), selected);
-		this.database = database;
-	}
-
-	public DatabaseRegistryEntry getDatabase() {
-		return database;
-	}
-
-	public void setDatabase(DatabaseRegistryEntry database) {
-		this.database = database;
-	}
-}
-
-/**
  * 
  * <p>
- * 	A class that creates a panel (in a JScrollPane) containing a list of 
- * DatabaseRadioButton, and provides methods for accessing the selected ones.
+ * 	Only the rows that are scrolled into view are rendered, and filtering 
+ * by search terms uses a {@link NameIndex} of the database names, so 
+ * servers with thousands of databases stay responsive.
  * </p>
  * 
  */
 
-class DatabaseListPanel extends JScrollPane {
+class DatabaseListPanel extends JScrollPane implements ListSelectionListener {
 
-	private List<DatabaseRadioButton> dbSelectionRadioButtons;
-	private final ButtonGroup buttonGroup;
+	private final List<DatabaseRegistryEntry> databases;
+	private final NameIndex nameIndex;
+	private final FilteredDatabaseListModel model;
+	private final JList<DatabaseRegistryEntry> list;
+	private final ActionListener actionListener;
+	
+	/**
+	 * The selected database, kept while it is hidden by the filter.
+	 */
+	private DatabaseRegistryEntry selectedDatabase = null;
+	
+	private List<String> currentSearchTerms = null;
+	
+	static NameIndex createNameIndex(List<DatabaseRegistryEntry> databases) {
+		
+		List<String> names = new ArrayList<String>(databases.size());
+		for (DatabaseRegistryEntry currentEntry : databases) {
+			names.add(currentEntry.getName());
+		}
+		return new NameIndex(names);
+	}
 
 	/**
 	 * 
 	 * <p>
-	 * 	This constructor allows the user to set a ButtonGroup explicitly. That
-	 * way the same ButtonGroup can be used
+	 * 	The actionListener is told whenever the user selects a database with
+	 * the action command Constants.selectedDatabaseChanged.
 	 * </p>
 	 * 
-	 * @param dbSelectionRadioButtons
-	 * @param buttonGroup
+	 * @param databases
+	 * @param nameIndex index of the names of databases, in the same order
+	 * @param actionListener
 	 * 
 	 */
-	public DatabaseListPanel(List<DatabaseRadioButton> dbSelectionRadioButtons, ButtonGroup buttonGroup) {
+	public DatabaseListPanel(List<DatabaseRegistryEntry> databases, NameIndex nameIndex, ActionListener actionListener) {
 
-		this.dbSelectionRadioButtons = dbSelectionRadioButtons;
-		this.buttonGroup             = buttonGroup;
-	
-		Iterator<DatabaseRadioButton> it = dbSelectionRadioButtons.iterator();
+		this.databases      = databases;
+		this.nameIndex      = nameIndex;
+		this.actionListener = actionListener;
 		
-		JPanel radioButtonPanel = new JPanel();
-		radioButtonPanel.setLayout(new BoxLayout(radioButtonPanel, BoxLayout.Y_AXIS));
+		model = new FilteredDatabaseListModel();
+		list  = new JList<DatabaseRegistryEntry>(model);
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setCellRenderer(new DatabaseCellRenderer());
 		
-		while (it.hasNext()) {
+		// All rows are the same height, so the list does not have to 
+		// measure every one of them.
+		//
+		if (!databases.isEmpty()) {
+			list.setPrototypeCellValue(databases.get(0));
+		}
+		list.addListSelectionListener(this);
 		
-			DatabaseRadioButton currentDatabaseRadioButton = it.next();
+		setViewportView(list);
+	}
 	
-			radioButtonPanel.add(currentDatabaseRadioButton);
-			buttonGroup     .add(currentDatabaseRadioButton);
-		}
-		setViewportView(radioButtonPanel);
+	public DatabaseListPanel(List<DatabaseRegistryEntry> databases, ActionListener actionListener) {
+		
+		this(databases, createNameIndex(databases), actionListener);
 	}
 	
 	public void applySearchtermFilter(List<String> SearchTerm) {
 		
-		Iterator<DatabaseRadioButton> it = dbSelectionRadioButtons.iterator();
+		// The caret moves without the search text changing.
+		//
+		if (SearchTerm.equals(currentSearchTerms)) {
+			return;
+		}
+		currentSearchTerms = new ArrayList<String>(SearchTerm);
 		
-		while (it.hasNext()) {
-			
-			DatabaseRadioButton currentDatabaseRadioButton = it.next();
-			boolean allSearchTermsPresent = true;
-			
-			for (String currentSearchTerm : SearchTerm) {
-				
-				boolean searchTermNotFound = currentDatabaseRadioButton.getDatabase().getName().indexOf(currentSearchTerm)==-1;
-
-				if (searchTermNotFound) {
-					allSearchTermsPresent = false;
-					break;
-				}
-			}
-			currentDatabaseRadioButton.setVisible(allSearchTermsPresent);
+		DatabaseRegistryEntry keepSelected = selectedDatabase;
+		
+		model.setVisible(nameIndex.search(SearchTerm));
+		
+		int row = keepSelected == null ? -1 : model.indexOf(keepSelected);
+		if (row != -1) {
+			list.setSelectedIndex(row);
 		}
 	}
 	
-    
-    /**
-     * <p>
-     * 	Default Constructor.
-     * </p>
-     * 
-     * @param dbSelectionRadioButtons
-     * 
-     */
-    public DatabaseListPanel(List<DatabaseRadioButton> dbSelectionRadioButtons) {
-
-    	this(dbSelectionRadioButtons, new ButtonGroup());
-    }
+	public void valueChanged(ListSelectionEvent e) {
+		
+		if (e.getValueIsAdjusting()) {
+			return;
+		}
+		DatabaseRegistryEntry selected = list.getSelectedValue();
+		
+		// Nothing is selected after the selected database is filtered out 
+		// or a database is selected in another tab.
+		//
+		if (selected == null || selected == selectedDatabase) {
+			return;
+		}
+		selectedDatabase = selected;
+		actionListener.actionPerformed(
+			new ActionEvent(this, ActionEvent.ACTION_PERFORMED, Constants.selectedDatabaseChanged)
+		);
+	}
+	
+	public DatabaseRegistryEntry getSelectedDatabase() {
+		return selectedDatabase;
+	}
+	
+	public void clearSelection() {
+		selectedDatabase = null;
+		list.clearSelection();
+	}
 
     // -------------------------------------------------------------------------
     /**
@@ -398,16 +426,65 @@ class DatabaseListPanel extends JScrollPane {
      */
     public DatabaseRegistryEntry[] getSelected() {
 
-        List selected = new ArrayList();
+    	if (selectedDatabase == null) {
+    		return new DatabaseRegistryEntry[0];
+    	}
+    	return new DatabaseRegistryEntry[] { selectedDatabase };
+    }
+    
+    /**
+     * The databases matching the current search terms.
+     */
+    class FilteredDatabaseListModel extends AbstractListModel<DatabaseRegistryEntry> {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	private int[] visible;
+    	
+    	FilteredDatabaseListModel() {
+    		visible = nameIndex.search(new ArrayList<String>());
+    	}
+    	
+    	void setVisible(int[] visible) {
+    		
+    		int oldSize = this.visible.length;
+    		this.visible = visible;
+    		
+    		if (oldSize > 0) {
+    			fireIntervalRemoved(this, 0, oldSize - 1);
+    		}
+    		if (visible.length > 0) {
+    			fireIntervalAdded(this, 0, visible.length - 1);
+    		}
+    	}
+    	
+    	int indexOf(DatabaseRegistryEntry database) {
+    		
+    		int position = databases.indexOf(database);
+    		int row = Arrays.binarySearch(visible, position);
+    		return row < 0 ? -1 : row;
+    	}
 
-        Iterator it = dbSelectionRadioButtons.iterator();
-        while (it.hasNext()) {
-        	DatabaseRadioButton dbcb = (DatabaseRadioButton) it.next();
-            if (dbcb.isSelected()) {
-                selected.add(dbcb.getDatabase());
-            }
-        }
-        return (DatabaseRegistryEntry[]) selected.toArray(new DatabaseRegistryEntry[selected.size()]);
+		public int getSize() {
+			return visible.length;
+		}
+
+		public DatabaseRegistryEntry getElementAt(int index) {
+			return databases.get(visible[index]);
+		}
+    }
+    
+    static class DatabaseCellRenderer extends DefaultListCellRenderer {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	@Override
+    	public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+    		
+    		return super.getListCellRendererComponent(
+    			list, ((DatabaseRegistryEntry) value).getName(), index, isSelected, cellHasFocus
+    		);
+    	}
     }
 }
 
@@ -416,16 +493,9 @@ class DatabaseListPanel extends JScrollPane {
  * 	Fiddle things so that generic database types are moved to the front.
  * </p>
  */
-class DatabaseTypeGUIComparator implements Comparator {
-
-    public int compare(Object o1, Object o2) {
-
-        if (!(o1 instanceof DatabaseType) || !(o2 instanceof DatabaseType)) {
-            throw new RuntimeException("Arguments to DatabaseTypeGUIComparator must be DatabaseType!");
-        }
+class DatabaseTypeGUIComparator implements Comparator<DatabaseType> {
 
-        DatabaseType t1 = (DatabaseType) o1;
-        DatabaseType t2 = (DatabaseType) o2;
+    public int compare(DatabaseType t1, DatabaseType t2) {
 
         if (t1.isGeneric() && !t2.isGeneric()) {
             return -1;
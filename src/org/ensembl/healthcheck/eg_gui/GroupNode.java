@@ -16,19 +16,36 @@
 
 package org.ensembl.healthcheck.eg_gui;
 
+import java.util.Enumeration;
+
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreeNode;
 
 import org.ensembl.healthcheck.GroupOfTests;
 
+/**
+ * <p>
+ * 	Tree node for a group of tests. The nodes for the groups and tests in the
+ * group are only created when the tree first asks for them, usually when
+ * the node is expanded, so the tree of every group on the classpath can be
+ * shown without walking all of them first.
+ * </p>
+ */
 public class GroupNode extends DefaultMutableTreeNode {
 	  
 	final private GroupOfTests groupOfTests;
 	
+	private boolean childrenLoaded = false;
+	
 	public GroupNode(GroupOfTests groupOfTests) {
 		super(groupOfTests.getName());
 		this.groupOfTests = groupOfTests;
 	}
 	
+	public GroupOfTests getGroupOfTests() {
+		return groupOfTests;
+	}
+	
 	public String getToolTipText() {
 		
 		if (groupOfTests.getDescription().isEmpty()) {
@@ -37,4 +54,44 @@ public class GroupNode extends DefaultMutableTreeNode {
 			return groupOfTests.getDescription();
 		}
 	}
+	
+	protected synchronized void loadChildren() {
+		
+		if (childrenLoaded) {
+			return;
+		}
+		// Set first, inserting the children asks for them again.
+		//
+		childrenLoaded = true;
+		TreeModelFromListOfGroupsBuilder.addChildNodes(this, groupOfTests);
+	}
+
+	@Override
+	public boolean isLeaf() {
+		return getChildCount() == 0;
+	}
+
+	@Override
+	public int getChildCount() {
+		loadChildren();
+		return super.getChildCount();
+	}
+
+	@Override
+	public TreeNode getChildAt(int index) {
+		loadChildren();
+		return super.getChildAt(index);
+	}
+
+	@Override
+	public int getIndex(TreeNode child) {
+		loadChildren();
+		return super.getIndex(child);
+	}
+
+	@Override
+	public Enumeration<TreeNode> children() {
+		loadChildren();
+		return super.children();
+	}
 }
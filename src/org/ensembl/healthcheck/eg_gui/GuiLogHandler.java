@@ -38,21 +38,46 @@ import com.mysql.jdbc.Connection;
 public class GuiLogHandler extends Handler {
 	
 	/**
-	 * Messages sent to the logger will be associated with this testcase.
+	 * Messages sent to the logger will be associated with this testcase,
+	 * unless one has been set for the thread logging them.
 	 */
 	protected EnsTestCase ensTestCase;
 	
+	/**
+	 * The testcase run by the current thread. Inherited by threads started
+	 * from it, so messages they log are associated with the same testcase.
+	 */
+	protected final InheritableThreadLocal<EnsTestCase> threadEnsTestCase = new InheritableThreadLocal<EnsTestCase>();
+	
 	/**
 	 * Messages sent to the logger will be forwarded to this reporter. 
 	 */
 	protected Reporter reporter;
 	
 	public EnsTestCase getEnsTestCase() {
+		
+		EnsTestCase threadTestCase = threadEnsTestCase.get();
+		
+		if (threadTestCase != null) {
+			return threadTestCase;
+		}
 		return ensTestCase;
 	}
 
+	/**
+	 * <p>
+	 * 	Associates the messages logged by the current thread, and threads
+	 * it starts, with ensTestCase. Messages logged by other threads are
+	 * associated with the last testcase set.
+	 * </p>
+	 */
 	public void setEnsTestCase(EnsTestCase ensTestCase) {
 		this.ensTestCase = ensTestCase;
+		threadEnsTestCase.set(ensTestCase);
+	}
+	
+	public void removeEnsTestCase() {
+		threadEnsTestCase.remove();
 	}
 
 	public Reporter getReporter() {
@@ -64,6 +89,8 @@ public class GuiLogHandler extends Handler {
 	}
 	
 	public void publish(LogRecord logRecord) {
+		
+		EnsTestCase ensTestCase = getEnsTestCase();
     	  
 		reporter.message(
 			new ReportLine(
@@ -16,8 +16,20 @@
 
 package org.ensembl.healthcheck.eg_gui;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.ensembl.healthcheck.ReportLine;
 
+/**
+ * <p>
+ * 	The output of one test case as shown in the reporter tab. Report lines 
+ * are added by the thread running the tests and read by the event dispatch 
+ * thread, so the text of each one is kept separately and can be fetched by 
+ * index. That way the reporter tab only has to fetch the lines it has not 
+ * shown yet or the page of lines the user is looking at.
+ * </p>
+ */
 class GuiReportPanelData {
 
 	public String getTestName() {
@@ -52,12 +64,31 @@ class GuiReportPanelData {
 		this.speciesName = speciesName;
 	}
 
-	public String getMessage() {
+	/**
+	 * @return the whole output of the test case
+	 */
+	public synchronized String getMessage() {
+		return getMessage(0, lines.size());
+	}
+
+	/**
+	 * @return the text of the report lines from index from (inclusive) to 
+	 * index to (exclusive)
+	 */
+	public synchronized String getMessage(int from, int to) {
+		
+		StringBuffer message = new StringBuffer();
+		for (int i = from; i < to; i++) {
+			message.append(lines.get(i));
+		}
 		return message.toString();
 	}
 
-	public void setMessage(StringBuffer message) {
-		this.message = message;
+	/**
+	 * @return the number of report lines added so far
+	 */
+	public synchronized int getLineCount() {
+		return lines.size();
 	}
 
 	String testName;
@@ -65,7 +96,7 @@ class GuiReportPanelData {
 	String teamResponsible;
 	String speciesName;
 	
-	StringBuffer message;
+	final List<String> lines;
 	
 	boolean messageEndsWithCR;
 	
@@ -82,22 +113,20 @@ class GuiReportPanelData {
 		}
 		messageEndsWithCR = false;
 		
-		message = new StringBuffer();
+		lines = new ArrayList<String>();
 		
 		addReportLine(reportLine);
 	}
 	
-	public final void addReportLine(ReportLine reportLine) {
+	public final synchronized void addReportLine(ReportLine reportLine) {
 		
 		String currentMessage = reportLine.getMessage();
 		
-		if (!messageEndsWithCR) {
-			message.append("\n");
-		}
+		String line = messageEndsWithCR ? currentMessage : "\n" + currentMessage;
 
 		messageEndsWithCR = currentMessage.endsWith("\n");
 
-		message.append(currentMessage);
+		lines.add(line);
 	}
 }
 
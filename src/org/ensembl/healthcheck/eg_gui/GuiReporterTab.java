@@ -32,20 +32,25 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.swing.Box;
 
+import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportLine;
@@ -57,6 +62,12 @@ import org.ensembl.healthcheck.testcase.EnsTestCase;
 
 public class GuiReporterTab extends JPanel implements Reporter {
 	
+	/**
+	 * Milliseconds between updates of the report panel while tests are 
+	 * running. Report lines arriving in between are shown together.
+	 */
+	protected static final int REFRESH_INTERVAL = 100;
+	
 	final protected TestClassList               testList;
 	final protected JScrollPane                 testListScrollPane;
 	final protected TestClassListModel          listModel;
@@ -65,7 +76,9 @@ public class GuiReporterTab extends JPanel implements Reporter {
 	
 	protected boolean userClickedOnTestList = false;
 	
-	final protected Map<Class<? extends EnsTestCase>,GuiReportPanelData> reportData;
+	final protected Timer refreshTimer;
+	
+	final protected ConcurrentMap<Class<? extends EnsTestCase>,GuiReportPanelData> reportData;
 	
 	/**
 	 * <p>
@@ -110,7 +123,7 @@ public class GuiReporterTab extends JPanel implements Reporter {
 
 		this.setBorder(GuiTestRunnerFrameComponentBuilder.defaultEmptyBorder);
 		
-		reportData  = new HashMap<Class<? extends EnsTestCase>,GuiReportPanelData>();
+		reportData  = new ConcurrentHashMap<Class<? extends EnsTestCase>,GuiReportPanelData>();
 		
 		testList    = new TestClassList(TestClassList.TestClassListToolTipType.CLASS);		
 		listModel   = new TestClassListModel();
@@ -178,6 +191,18 @@ public class GuiReporterTab extends JPanel implements Reporter {
 				}
 			}
 		);
+		
+		// Rather than updating the report panel for every line reported, 
+		// new lines of the selected test are picked up at a fixed rate. The 
+		// timer runs on the event dispatch thread.
+		//
+		refreshTimer = new Timer(REFRESH_INTERVAL, new ActionListener() {
+			@Override public void actionPerformed(ActionEvent e) {
+				reportPanel.refresh();
+			}
+		});
+		refreshTimer.setCoalesce(true);
+		refreshTimer.start();
 	}
 	
 	@Override
@@ -185,9 +210,13 @@ public class GuiReporterTab extends JPanel implements Reporter {
 		
 		final Class<? extends EnsTestCase> currentKey = reportLine.getTestCase().getClass();
 		
-		if (!reportData.containsKey(currentKey)) {
+		// Several workers may report the first line of a test at the same 
+		// time, only the one whose data was put adds the test to the list.
+		//
+		GuiReportPanelData existing = reportData.putIfAbsent(currentKey, new GuiReportPanelData(reportLine));
+		
+		if (existing == null) {
 			
-			reportData.put(currentKey, new GuiReportPanelData(reportLine));
 			testCaseCellRenderer.setOutcome(currentKey, null);
 
 			// This method will be called from a different thread. Therefore
@@ -212,7 +241,7 @@ public class GuiReporterTab extends JPanel implements Reporter {
 				);
 		} else {
 		
-			reportData.get(currentKey).addReportLine(reportLine);
+			existing.addReportLine(reportLine);
 		}
 		
 		// If anything was reported as a problem, the outcome is false.
@@ -221,25 +250,7 @@ public class GuiReporterTab extends JPanel implements Reporter {
 			testCaseCellRenderer.setOutcome(currentKey, false);
 		}
 
-		// If a testcase has been selected, then display the new data in the 
-		// GUI so the user can see the new line in real time.
-		//
-		if (!testList.isSelectionEmpty()) {
-
-			SwingUtilities.invokeLater(
-					new Runnable() {
-						@Override public void run() {
-							
-							reportPanel.setData(
-									
-									reportData.get(
-											( (TestClassListItem) listModel.getElementAt(testList.getSelectedIndex()) ).getTestClass()
-									)
-								);
-						}
-					}
-			);
-		}
+		// The new line is shown by refreshTimer, if its test is selected.
 	}
 
 	@Override
@@ -275,7 +286,30 @@ class ReportPanel extends JPanel implements ActionListener {
 	
 	final String copy_selected_text_action = "copy_selected_text_action";
 
-	protected boolean updateInProgress;
+	/**
+	 * The number of report lines shown at once. Longer output is shown a 
+	 * page at a time so the text area does not hold all of it.
+	 */
+	static final int PAGE_SIZE = 2000;
+	
+	final String previous_page_action = "previous_page_action";
+	final String next_page_action     = "next_page_action";
+	
+	final protected JButton previousPage;
+	final protected JButton nextPage;
+	final protected JLabel  pageInfo;
+	
+	/** The data shown, or null */
+	protected GuiReportPanelData data;
+	
+	/** The page shown */
+	protected int page;
+	
+	/** The index after the last report line shown */
+	protected int shownTo;
+	
+	/** The number of report lines when the panel was last updated */
+	protected int lineCount;
 	
 	protected Component createVerticalSpacing() {
 		return Box.createVerticalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING);
@@ -352,8 +386,24 @@ class ReportPanel extends JPanel implements ActionListener {
 		
 		singleLineInfo.add(g.createLeftJustifiedText("Output from test:"));
 		
+		previousPage = new JButton("Previous page");
+		previousPage.setActionCommand(previous_page_action);
+		previousPage.addActionListener(this);
+		nextPage = new JButton("Next page");
+		nextPage.setActionCommand(next_page_action);
+		nextPage.addActionListener(this);
+		pageInfo = new JLabel();
+		
+		Box pageControls = Box.createHorizontalBox();
+		pageControls.add(previousPage);
+		pageControls.add(nextPage);
+		pageControls.add(Box.createHorizontalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING));
+		pageControls.add(pageInfo);
+		pageControls.add(Box.createHorizontalGlue());
+		
 		add(singleLineInfo,           BorderLayout.NORTH);
 		add(new JScrollPane(message), BorderLayout.CENTER);
+		add(pageControls,             BorderLayout.SOUTH);
 		
 		// This has to be set to something small otherwise we will get problems when
 		// wrapping this in a JSplitPane:
@@ -368,57 +418,135 @@ class ReportPanel extends JPanel implements ActionListener {
 		//
 		this.setMinimumSize(new Dimension(200,300));
 		
-		updateInProgress = false;
+	}
+	
+	/**
+	 * Show the output of a test case, starting with its last page. Must be 
+	 * called on the event dispatch thread.
+	 */
+	public void setData(final GuiReportPanelData reportData) {
+		
+		if (reportData == null) {
+			return;
+		}
+		
+		data = reportData;
 		
+		testName        .setText (reportData.getTestName());
+		description     .setText (reportData.getDescription());
+		speciesName     .setText (reportData.getSpeciesName());
+		teamResponsible .setText (reportData.getTeamResponsible());
+		
+		lineCount = data.getLineCount();
+		showPage(lastPage(lineCount));
 	}
 	
-	public synchronized void setData(final GuiReportPanelData reportData) {
-		
-		/*
-		 * Updating the reporter tab may be slow especially when setting the
-		 * message to a long string.
-		 * 
-		 * Therefore the update is put into a new Thread to keep the gui 
-		 * responsive.
-		 * 
-		 * Additional updates are prevented in the meantime. In the worst case
-		 * this could lead to an StackOverflorError, if the method gets 
-		 * repeatedly called before it can complete.
-		 * 
-		 */
-		if (updateInProgress) {
+	/**
+	 * <p>
+	 * 	Show report lines added since the last update. Must be called on the 
+	 * event dispatch thread.
+	 * </p>
+	 * <p>
+	 * 	If the last page is being shown, the new lines are appended to the 
+	 * text area, moving on to a new page when it is full unless the user is 
+	 * working in the text area. Otherwise only the page information changes.
+	 * </p>
+	 */
+	public void refresh() {
+		
+		if (data == null) {
 			return;
 		}
 		
-		Thread t = new Thread() {
+		int count = data.getLineCount();
+		
+		if (count == lineCount) {
+			return;
+		}
+		
+		boolean onLastPage = page == lastPage(lineCount);
+		lineCount = count;
+		
+		if (onLastPage) {
 			
-			public void run() {
-				
-				testName        .setText (reportData.getTestName());
-				description     .setText (reportData.getDescription());
-				speciesName     .setText (reportData.getSpeciesName());
-				teamResponsible .setText (reportData.getTeamResponsible());
+			if (page == lastPage(count) || messageFieldHasFocus) {
 				
-				String msg = reportData.getMessage();
+				int to = Math.min(count, (page + 1) * PAGE_SIZE);
+				append(data.getMessage(shownTo, to));
+				shownTo = to;
 				
-				message.setText (msg);
-				
-				if (!messageFieldHasFocus) {
-					message.setCaretPosition(msg.length());
-				}
+			} else {
 				
-				updateInProgress = false;				
+				showPage(lastPage(count));
+				return;
 			}
-		};
-		t.setName("Updating data in reporter tab.");
-		updateInProgress = true;
-		t.start();
+		}
+		
+		updatePageControls();
+	}
+	
+	protected static int lastPage(int count) {
+		return count == 0 ? 0 : (count - 1) / PAGE_SIZE;
+	}
+	
+	protected void showPage(int newPage) {
+		
+		page    = newPage;
+		shownTo = Math.min(lineCount, (page + 1) * PAGE_SIZE);
+		
+		message.setText(data.getMessage(page * PAGE_SIZE, shownTo));
+		
+		if (!messageFieldHasFocus) {
+			message.setCaretPosition(message.getDocument().getLength());
+		}
 		
+		updatePageControls();
+	}
+	
+	protected void append(String text) {
+		
+		Document document = message.getDocument();
+		
+		try {
+			document.insertString(document.getLength(), text, null);
+		} catch (BadLocationException e) {
+			// Inserting at the end of the document is always possible.
+			throw new RuntimeException(e);
+		}
+		
+		if (!messageFieldHasFocus) {
+			message.setCaretPosition(document.getLength());
+		}
+	}
+	
+	protected void updatePageControls() {
+		
+		int last = lastPage(lineCount);
+		
+		previousPage.setEnabled(page > 0);
+		nextPage    .setEnabled(page < last);
+		
+		if (lineCount <= PAGE_SIZE) {
+			pageInfo.setText("");
+		} else {
+			pageInfo.setText(
+				"Lines " + (page * PAGE_SIZE + 1) + " to " + shownTo + " of " + lineCount
+			);
+		}
 	}
 	
 	@Override
 	public void actionPerformed(ActionEvent arg0) {
 
+		if (data != null && arg0.getActionCommand().equals(previous_page_action)) {
+			showPage(page - 1);
+			return;
+		}
+		if (data != null && arg0.getActionCommand().equals(next_page_action)) {
+			showPage(page + 1);
+			return;
+		}
+
 		if (arg0.paramString().equals(copy_selected_text_action)) {
 			
 			String selection = message.getSelectedText();
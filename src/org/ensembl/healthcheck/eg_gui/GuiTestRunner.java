@@ -19,8 +19,17 @@ package org.ensembl.healthcheck.eg_gui;
 import java.awt.BorderLayout;
 import java.io.PrintStream;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
@@ -38,6 +47,8 @@ import org.ensembl.healthcheck.testcase.OrderedDatabaseTestCase;
 import org.ensembl.healthcheck.testcase.PerlScriptConfig;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.Metrics;
 
 import com.mysql.jdbc.Connection;
 
@@ -83,9 +94,18 @@ public class GuiTestRunner {
      * 	Run all the tests in a list.
      * </p>
      * 
+     * <p>
+     * 	Each test is run against each database as a separate task, multi 
+     * database tests as one task against all of them. Up to parallelism 
+     * tasks are run at the same time, each in its own worker thread with 
+     * its own instance of the test case. Log messages and anything written 
+     * to stderr by a task are reported for the test case of that task.
+     * </p>
+     * 
      * @param ltests The tests to run.
      * @param ldatabases The databases to run the tests on.
      * @param lgtrf The test runner frame in which to display the results.
+     * @param parallelism The maximum number of tasks run at the same time.
      */
     public static Thread runAllTests(
     		final List<Class<? extends EnsTestCase>> tests,
@@ -94,258 +114,151 @@ public class GuiTestRunner {
     		//final JComponent resultDisplayComponent,
     		final String PERL5LIB,
     		final PerlScriptConfig psc,
-    		final GuiLogHandler guiLogHandler
+    		final GuiLogHandler guiLogHandler,
+    		final int parallelism
     ) {
 
         // Tests are run in a separate thread
         //
         Thread t = new Thread() {
+        	
+        	private final AtomicInteger testsRun = new AtomicInteger(0);
 
         	public void run() {
         		
-        		PrintStream stderrSaved = System.err;
+        		final PrintStream stderrSaved = System.err;
+        		Logger            savedLogger = EnsTestCase.getLogger();
+        		
+        		final int workers = Math.max(1, parallelism);
 
         		testProgressDialog.reset();
+        		testProgressDialog.setWorkers(workers);
+        		
+        		// The GUI stays up between runs, so the metrics reported at 
+        		// the end of this run should not include the ones before.
+        		//
+        		Metrics.reset();
             	testProgressDialog.setVisible(true);
 
-                int totalTestsToRun = tests.size() * databases.length;
+                final int totalTestsToRun = tests.size() * databases.length;
 
                 testProgressDialog.setMaximum(totalTestsToRun);
 
-                int testsRun = 0;
+				// Create a logger with this handler
+				final Logger guiLogger = createGuiLogger(guiLogHandler);
+
+				// Inject into the testcases. The logger property is static, 
+				// so it is set once for all tasks. The handler looks up the
+				// testcase of the task logging the message. It should be 
+				// set before instantiation in case something is done with 
+				// the logger in the constructor. (As in 
+				// AbstractPerlModuleBasedTestCase)
+				//
+				EnsTestCase.setLogger(guiLogger);
+				
+				// Stack traces are written to stderr by tests. Stderr is 
+				// redirected to the logger of the task writing to it.
+				//
+				final TaskPrintStream taskStderr = new TaskPrintStream(stderrSaved);
+				System.setErr(taskStderr);
+				
+				final ExecutorService pool = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+				List<Future<?>> futures = new ArrayList<Future<?>>();
                 
                 // for each test, if it's a single database test we run it against each
                 // selected database in turn
                 // for multi-database tests, we create a new DatabaseRegistry containing
                 // the selected tests and use that
                 //
-                for (Class<? extends EnsTestCase> currentTest : tests) {
+                for (final Class<? extends EnsTestCase> currentTest : tests) {
+                	
+                	if (OrderedDatabaseTestCase.class.isAssignableFrom(currentTest)) {
+                		
+                		JOptionPane.showMessageDialog(
+                			testProgressDialog, 
+                			"Functionality for running OrderedDatabaseTestCases has not been implemented!", 
+                			"Error",
+                			JOptionPane.ERROR_MESSAGE
+                		);
+                		continue;
+                	}
+                	
+                	if (SingleDatabaseTestCase.class.isAssignableFrom(currentTest)) {
+                		
+                		final TestOutcome outcome = new TestOutcome(databases.length);
+                		
+                		for (final DatabaseRegistryEntry currentDbre : databases) {
+                			futures.add(pool.submit(new TestTask(currentTest, outcome) {
+                				
+                				protected String describe(EnsTestCase testCase) {
+                					return testCase.getShortTestName() + ": " + currentDbre.getName();
+                				}
+                				
+                				protected boolean run(EnsTestCase testCase) {
+                					return runSingleDatabaseTest(testCase, currentDbre);
+                				}
+                				
+                				protected int size() {
+                					return 1;
+                				}
+                			}));
+                		}
+                		
+                	} else if (MultiDatabaseTestCase.class.isAssignableFrom(currentTest)) {
+                		
+                		futures.add(pool.submit(new TestTask(currentTest, new TestOutcome(1)) {
+                			
+                			protected String describe(EnsTestCase testCase) {
+                				return testCase.getShortTestName() + " ( " + databases.length + " databases)";
+                			}
+                			
+                			protected boolean run(EnsTestCase testCase) {
+                				return runMultiDatabaseTest(testCase, new DatabaseRegistry(databases));
+                			}
+                			
+                			protected int size() {
+                				return databases.length;
+                			}
+                		}));
+                	}
+                }
+                pool.shutdown();
+                
+                try {
+                	for (Future<?> future : futures) {
+                		try {
+                			future.get();
+                		} catch (ExecutionException e) {
+                			// The test could not be run at all
+                			e.getCause().printStackTrace(stderrSaved);
+                		} catch (CancellationException e) {
+                			// Cancelled by the user
+                		}
+                	}
+                } catch (InterruptedException e) {
                 	
                 	// If there was an interrupt request for this thread, no
-                	// more tests are executed.
+                	// more tests are executed. Running tests are interrupted
+                	// and waited for, so they don't log to the restored 
+                	// logger.
                 	//
-                	if (isInterrupted()) {
-                		break;
+                	pool.shutdownNow();
+                	try {
+                		pool.awaitTermination(1, TimeUnit.MINUTES);
+                	} catch (InterruptedException e1) {
+                		// Give up waiting
                 	}
-					
-					// Create a logger with this handler
-					Logger guiLogger   = createGuiLogger(guiLogHandler);
-
-					// Inject into the current testcase. The logger property 
-					// is static. It should be set before instantiation in
-					// case something is done with the logger in the 
-					// constructor. (As in AbstractPerlModuleBasedTestCase)
-					//
-					EnsTestCase.setLogger(guiLogger);
-                	
-                    EnsTestCase testCase = null;
-					try {
-						testCase = currentTest.newInstance();
-					} 
-					catch (InstantiationException e) { throw new RuntimeException(e); } 
-					catch (IllegalAccessException e) {
-						e.printStackTrace();
-						throw new RuntimeException(e); 
-					}
-
-					// Inject a logger that will forward all logging messages 
-					// to the gui.
-					//
-					Logger savedLogger = testCase.getLogger();
-					
-					// Tell the guiloghandler to associate all log messages 
-					// with the current testcase.
-					//
-					guiLogHandler.setEnsTestCase(testCase);
-					
-					// System properties are set by the GUI. This prevents
-					// EnsTestCase.importSchema from overwriting settings
-					// by the user with the defaults from the configuration
-					// file.
-					//
-					testCase.setSetSystemProperties(false);
-					
-					// Stack traces are written to stderr by tests. Stderr is 
-					// redirected to the logger.
-					//
-					System.setErr(new ReporterPrintStream(guiLogger, Level.SEVERE, testCase));
-					
-					// If PERL5LIB parameter has been set and this is a perl 
-					// based test case, then set the PERL5LIB attribute.
-					//
-                    if (testCase instanceof AbstractPerlBasedTestCase) {
-                    	
-                    	AbstractPerlBasedTestCase at = (AbstractPerlBasedTestCase) testCase; 
-                    	
-                    	if (PERL5LIB != null) {                    	
-                    		at.setPERL5LIB(PERL5LIB);                    	
-                    	}
-                    	
-                    	if (psc != null) {
-                    		at.setConfig(psc);
-                    	}
-                    }
-
-                    boolean passed = false;
-                    
-                    if (testCase instanceof SingleDatabaseTestCase) {
-
-                        for (DatabaseRegistryEntry currentDbre : databases) {
-                        	
-                            String message = testCase.getShortTestName() + ": " + currentDbre.getName();
-                            
-                            ReportManager.startTestCase(testCase, currentDbre);
-                            
-                            testProgressDialog.setNote(message);
-                            
-                            testCase.types();                            
-                            
-                            try {
-                            	passed = ((SingleDatabaseTestCase) testCase).run(currentDbre);
-                            }
-                            catch (Exception e) {
-                            	
-                            	ReportManager.report(
-                            			testCase, 
-                            			currentDbre.getConnection(), 
-                            			ReportLine.PROBLEM,
-                            			testCase.getShortTestName() + " threw an exception:"
-                            			+ e.getClass().getCanonicalName() + "\n\n"
-                            			+ stackTraceToString(e.getStackTrace()) + "\n\n" 
-                            			+ e.getMessage()
-                            	);
-                            }
-                            catch (java.lang.Error e) {
-                            	
-                            	String errorMsg = testCase.getShortTestName() + " threw a java error:"
-                            			+ e.getClass().getCanonicalName() + "\n\n"
-                            			+ stackTraceToString(e.getStackTrace()) + "\n\n" 
-                            			+ e.getMessage();
-                            	
-                            	System.err.println(errorMsg);
-                            	System.out.println(errorMsg);
-                            	stderrSaved.println(errorMsg);
-                            	
-                            	ReportManager.report(
-                            			testCase, 
-                            			currentDbre.getConnection(), 
-                            			ReportLine.PROBLEM,
-                            			errorMsg
-                            	);
-                            	
-                            }
-                            // If a test has not reported anything to the 
-                            // report manager, there will not be any report. 
-                            // The user may think that the test was not run.
-                            // So in this case a standard line is generated.
-                            //
-                            boolean testHasReportedSomething = ReportManager.getAllReportsByTestCase().containsKey(testCase.getTestName()); 
-                            
-                            if (!testHasReportedSomething) { 
-	                            if (passed) {
-	                            	ReportManager.report(
-	                            			testCase, 
-	                            			currentDbre.getConnection(), 
-	                            			ReportLine.INFO,
-	                            			testCase.getShortTestName() + " did not produce any output, but reported that the database has passed."
-	                            	);
-	                            } else {
-	                            	ReportManager.report(
-	                            			testCase, 
-	                            			currentDbre.getConnection(), 
-	                            			ReportLine.PROBLEM,
-	                            			testCase.getShortTestName() + " did not produce any output, but reported that the database has failed."
-	                            	);
-	                            }
-                            }
-                            
-                            ReportManager.finishTestCase(testCase, passed, currentDbre);
-                            
-                            testsRun += 1;
-                            
-                            testProgressDialog.setProgress(testsRun);
-                            testProgressDialog.repaint();
-                        }
-
-                    } else if (testCase instanceof MultiDatabaseTestCase) {
-
-                        DatabaseRegistry dbr = new DatabaseRegistry(databases);
-                        
-                        ReportManager.startTestCase(testCase, null);
-                        
-                        String message = testCase.getShortTestName() + " ( " + dbr.getEntryCount() + " databases)";
-                        
-                        testProgressDialog.setNote(message);
-                        
-                        testCase.types();
-                                              
-                        try {
-                        	passed = ((MultiDatabaseTestCase) testCase).run(dbr);
-	                    }
-	                    catch (Exception e) {
-	                    	
-	                    	ReportManager.report(
-	                    			testCase, 
-	                    			(Connection) null, 
-	                    			ReportLine.PROBLEM,
-	                    			testCase.getShortTestName() + " threw an exception:"
-	                    			+ e.getClass().getCanonicalName() + "\n\n"
-	                    			+ stackTraceToString(e.getStackTrace()) + "\n\n" 
-	                    			+ e.getMessage()
-	                    	);
-	                    }
-
-                        ReportManager.finishTestCase(testCase, passed, null);
-                        
-                        // If a test has not reported anything to the 
-                        // report manager, there will not be any report. 
-                        // The user may think that the test was not run.
-                        // So in this case a standard line is generated.
-                        //
-                        boolean testHasReportedSomething = ReportManager.getAllReportsByTestCase().containsKey(testCase.getTestName()); 
-                        
-                        if (passed && !testHasReportedSomething) {
-                        	ReportManager.report(
-                        			testCase, 
-                        			dbr.getAll()[0].getConnection(), 
-                        			ReportLine.INFO,
-                        			testCase.getShortTestName() + " did not produce any output, but reported that the database has passed."
-                        	);
-                        }
-
-                        testsRun += dbr.getEntryCount();
-                        
-                        testProgressDialog.setProgress(testsRun);
-                        testProgressDialog.repaint();
-
-                    } else if (testCase instanceof OrderedDatabaseTestCase) {
-                    	
-                    	JOptionPane.showMessageDialog(
-                    		testProgressDialog, 
-                    		"Functionality for running OrderedDatabaseTestCases has not been implemented!", 
-                    		"Error",
-                            JOptionPane.ERROR_MESSAGE
-                         );
-                    }
-                    
-                    // Retore the original logger. Actually unnecessary, 
-                    // because the testcase will not be used anymore.
-                    //
-                    testCase.setLogger(savedLogger);
-                    
-                    // Restore stderr
-                    //
-                    System.setErr(stderrSaved);
-                        
-                    ReportManager.finishTestCase(
-                        	testCase, 
-                        	passed, 
-                        	null
-                        );
-                        
                 }
+                
+                // Restore the original logger and stderr.
+                //
+                EnsTestCase.setLogger(savedLogger);
+                System.setErr(stderrSaved);
+                
                 testProgressDialog.setVisible(false);
                 ConnectionPool.closeAll();
+                Metrics.finishRun();
+                GeneModelSnapshot.clearCache();
                 
                 // Open in the legacy result window, because it is really 
                 // nice.
@@ -363,6 +276,251 @@ public class GuiTestRunner {
                 //
                 //resultDisplayComponent.revalidate();
             }
+        	
+        	/**
+        	 * <p>
+        	 * 	One test case run against one or more databases in a worker
+        	 * thread. The testcase is created by the task, so tasks running 
+        	 * at the same time do not share test case instances.
+        	 * </p>
+        	 */
+        	abstract class TestTask implements Runnable {
+        		
+        		private final Class<? extends EnsTestCase> testClass;
+        		private final TestOutcome outcome;
+        		
+        		TestTask(Class<? extends EnsTestCase> testClass, TestOutcome outcome) {
+        			this.testClass = testClass;
+        			this.outcome   = outcome;
+        		}
+        		
+        		protected abstract String describe(EnsTestCase testCase);
+        		
+        		protected abstract boolean run(EnsTestCase testCase);
+        		
+        		/**
+        		 * @return the number of test runs this task counts for in the
+        		 * progress bar.
+        		 */
+        		protected abstract int size();
+        		
+        		public void run() {
+        			
+        			int worker = ((WorkerThread) Thread.currentThread()).getIndex();
+        			
+        			EnsTestCase testCase = null;
+        			try {
+        				testCase = testClass.getDeclaredConstructor().newInstance();
+        			} 
+        			catch (Exception e) {
+        				notCreated(worker, e);
+        				return;
+        			}
+        			catch (LinkageError e) {
+        				notCreated(worker, e);
+        				return;
+        			}
+        			
+        			// Tell the guiloghandler to associate all log messages 
+        			// of this thread with the current testcase.
+        			//
+        			guiLogHandler.setEnsTestCase(testCase);
+        			
+        			// Stack traces written to stderr by this thread are 
+        			// logged for the current testcase.
+        			//
+        			TaskPrintStream.setTarget(
+        				new ReporterPrintStream(EnsTestCase.getLogger(), Level.SEVERE, testCase)
+        			);
+        			
+        			// System properties are set by the GUI. This prevents
+        			// EnsTestCase.importSchema from overwriting settings
+        			// by the user with the defaults from the configuration
+        			// file.
+        			//
+        			testCase.setSetSystemProperties(false);
+        			
+        			// If PERL5LIB parameter has been set and this is a perl 
+        			// based test case, then set the PERL5LIB attribute.
+        			//
+        			if (testCase instanceof AbstractPerlBasedTestCase) {
+        				
+        				AbstractPerlBasedTestCase at = (AbstractPerlBasedTestCase) testCase; 
+        				
+        				if (PERL5LIB != null) {                    	
+        					at.setPERL5LIB(PERL5LIB);                    	
+        				}
+        				
+        				if (psc != null) {
+        					at.setConfig(psc);
+        				}
+        			}
+        			
+        			String message = describe(testCase);
+        			testProgressDialog.setWorkerNote(worker, message);
+        			testProgressDialog.setNote(message);
+        			
+        			boolean passed = false;
+        			try {
+        				passed = run(testCase);
+        			} finally {
+        				
+        				guiLogHandler.removeEnsTestCase();
+        				TaskPrintStream.removeTarget();
+        				finish(worker, testCase, passed);
+        			}
+        		}
+        		
+        		/**
+        		 * The test case could not be instantiated, so this task fails 
+        		 * without running. The test case is still finished if this 
+        		 * was its last task, so it is not left running with the 
+        		 * results of its other tasks.
+        		 */
+        		private void notCreated(int worker, Throwable e) {
+        			
+        			TaskPrintStream.getDefault().println("Could not create an instance of " + testClass.getName());
+        			e.printStackTrace(TaskPrintStream.getDefault());
+        			finish(worker, null, false);
+        		}
+        		
+        		/**
+        		 * @param testCase The instance this task ran, or null if it 
+        		 * could not be created.
+        		 */
+        		private void finish(int worker, EnsTestCase testCase, boolean passed) {
+        			
+        			testProgressDialog.setWorkerNote(worker, "");
+        			
+        			if (outcome.finished(testCase, passed)) {
+        				if (outcome.getTestCase() != null) {
+        					ReportManager.finishTestCase(
+        						outcome.getTestCase(), 
+        						outcome.allPassed(), 
+        						null
+        					);
+        				} else {
+        					TaskPrintStream.getDefault().println(testClass.getName() + " failed, as no instance of it could be created");
+        				}
+        			}
+        			testProgressDialog.setProgress(testsRun.addAndGet(size()));
+        		}
+        	}
+        	
+        	private boolean runSingleDatabaseTest(EnsTestCase testCase, DatabaseRegistryEntry currentDbre) {
+        		
+        		boolean passed = false;
+        		
+        		ReportManager.startTestCase(testCase, currentDbre);
+        		
+        		testCase.types();                            
+        		
+        		try {
+        			passed = ((SingleDatabaseTestCase) testCase).run(currentDbre);
+        		}
+        		catch (Exception e) {
+        			
+        			ReportManager.report(
+        					testCase, 
+        					currentDbre.getConnection(), 
+        					ReportLine.PROBLEM,
+        					testCase.getShortTestName() + " threw an exception:"
+        					+ e.getClass().getCanonicalName() + "\n\n"
+        					+ stackTraceToString(e.getStackTrace()) + "\n\n" 
+        					+ e.getMessage()
+        			);
+        		}
+        		catch (java.lang.Error e) {
+        			
+        			String errorMsg = testCase.getShortTestName() + " threw a java error:"
+        					+ e.getClass().getCanonicalName() + "\n\n"
+        					+ stackTraceToString(e.getStackTrace()) + "\n\n" 
+        					+ e.getMessage();
+        			
+        			System.err.println(errorMsg);
+        			System.out.println(errorMsg);
+        			TaskPrintStream.getDefault().println(errorMsg);
+        			
+        			ReportManager.report(
+        					testCase, 
+        					currentDbre.getConnection(), 
+        					ReportLine.PROBLEM,
+        					errorMsg
+        			);
+        			
+        		}
+        		// If a test has not reported anything to the 
+        		// report manager, there will not be any report. 
+        		// The user may think that the test was not run.
+        		// So in this case a standard line is generated.
+        		//
+        		boolean testHasReportedSomething = !ReportManager.getReports(testCase.getTestName(), currentDbre.getName()).isEmpty(); 
+        		
+        		if (!testHasReportedSomething) { 
+        			if (passed) {
+        				ReportManager.report(
+        						testCase, 
+        						currentDbre.getConnection(), 
+        						ReportLine.INFO,
+        						testCase.getShortTestName() + " did not produce any output, but reported that the database has passed."
+        				);
+        			} else {
+        				ReportManager.report(
+        						testCase, 
+        						currentDbre.getConnection(), 
+        						ReportLine.PROBLEM,
+        						testCase.getShortTestName() + " did not produce any output, but reported that the database has failed."
+        				);
+        			}
+        		}
+        		
+        		ReportManager.finishTestCase(testCase, passed, currentDbre);
+        		
+        		return passed;
+        	}
+        	
+        	private boolean runMultiDatabaseTest(EnsTestCase testCase, DatabaseRegistry dbr) {
+        		
+        		boolean passed = false;
+        		
+        		ReportManager.startTestCase(testCase, null);
+        		
+        		testCase.types();
+        		
+        		try {
+        			passed = ((MultiDatabaseTestCase) testCase).run(dbr);
+        		}
+        		catch (Exception e) {
+        			
+        			ReportManager.report(
+        					testCase, 
+        					(Connection) null, 
+        					ReportLine.PROBLEM,
+        					testCase.getShortTestName() + " threw an exception:"
+        					+ e.getClass().getCanonicalName() + "\n\n"
+        					+ stackTraceToString(e.getStackTrace()) + "\n\n" 
+        					+ e.getMessage()
+        			);
+        		}
+        		
+        		// If a test has not reported anything to the 
+        		// report manager, there will not be any report. 
+        		// The user may think that the test was not run.
+        		// So in this case a standard line is generated.
+        		//
+        		boolean testHasReportedSomething = !ReportManager.getReportsByTestCase(testCase.getTestName(), ReportLine.ALL).isEmpty(); 
+        		
+        		if (passed && !testHasReportedSomething) {
+        			ReportManager.report(
+        					testCase, 
+        					dbr.getAll()[0].getConnection(), 
+        					ReportLine.INFO,
+        					testCase.getShortTestName() + " did not produce any output, but reported that the database has passed."
+        			);
+        		}
+        		
+        		return passed;
+        	}
         };
         testProgressDialog.setRunner(t);
         
@@ -461,4 +619,147 @@ class ReporterPrintStream extends PrintStream {
 		//
 		this.print("\n");
 	}
-}
\ No newline at end of file
+}
+
+/**
+ * <p>
+ * 	Counts the tasks of a test case still to finish, so the test case is 
+ * finished in the ReportManager once, when the last one is done.
+ * </p>
+ */
+class TestOutcome {
+	
+	private int remaining;
+	private boolean allPassed = true;
+	private EnsTestCase testCase = null;
+	
+	TestOutcome(int tasks) {
+		remaining = tasks;
+	}
+	
+	/**
+	 * @param testCase The instance the task ran, or null if it could not 
+	 * be created.
+	 * @return true if this was the last task of the test case.
+	 */
+	synchronized boolean finished(EnsTestCase testCase, boolean passed) {
+		if (testCase != null) {
+			this.testCase = testCase;
+		}
+		allPassed &= passed;
+		return --remaining == 0;
+	}
+	
+	/**
+	 * @return An instance the tasks of the test case ran, to report the 
+	 * outcome for, or null if none could be created.
+	 */
+	synchronized EnsTestCase getTestCase() {
+		return testCase;
+	}
+	
+	synchronized boolean allPassed() {
+		return allPassed;
+	}
+}
+
+/**
+ * <p>
+ * 	A worker thread of the GuiTestRunner. Knows its index, so the 
+ * TestProgressDialog can show what each worker is doing.
+ * </p>
+ */
+class WorkerThread extends Thread {
+	
+	private final int index;
+	
+	WorkerThread(Runnable r, int index) {
+		super(r, "GuiTestRunner-worker-" + index);
+		this.index = index;
+	}
+	
+	int getIndex() {
+		return index;
+	}
+}
+
+class WorkerThreadFactory implements ThreadFactory {
+	
+	private int next = 0;
+	
+	public synchronized Thread newThread(Runnable r) {
+		return new WorkerThread(r, next++);
+	}
+}
+
+/**
+ * 
+ * <p>
+ * 	The stderr used while the GuiTestRunner runs tests. Forwards to the 
+ * stream set for the current thread by {@link #setTarget(PrintStream)}, 
+ * so each task can report what it writes to stderr for its own test case. 
+ * Threads started by a task inherit its target. Everything else goes to 
+ * the stderr that was replaced.
+ * </p>
+ * 
+ */
+class TaskPrintStream extends PrintStream {
+	
+	private static final InheritableThreadLocal<PrintStream> target = new InheritableThreadLocal<PrintStream>();
+	
+	private static volatile PrintStream defaultStream = System.err;
+	
+	public TaskPrintStream(PrintStream defaultStream) {
+		super(defaultStream);
+		TaskPrintStream.defaultStream = defaultStream;
+	}
+	
+	public static void setTarget(PrintStream stream) {
+		target.set(stream);
+	}
+	
+	public static void removeTarget() {
+		target.remove();
+	}
+	
+	public static PrintStream getDefault() {
+		return defaultStream;
+	}
+	
+	private static PrintStream current() {
+		PrintStream stream = target.get();
+		return stream == null ? defaultStream : stream;
+	}
+	
+	public void print(String s) {
+		current().print(s);
+	}
+	
+	public void print(Object o) {
+		current().print(String.valueOf(o));
+	}
+
+	public void println(String s) {
+		current().println(s);
+	}
+	
+	public void println(Object o) {
+		current().println(String.valueOf(o));
+	}
+	
+	public void println() {
+		current().println();
+	}
+	
+	public void write(int b) {
+		current().write(b);
+	}
+	
+	public void write(byte[] buf, int off, int len) {
+		current().write(buf, off, len);
+	}
+	
+	public void flush() {
+		current().flush();
+	}
+}
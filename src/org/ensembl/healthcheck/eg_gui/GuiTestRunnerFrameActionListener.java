@@ -360,7 +360,8 @@ public class GuiTestRunnerFrameActionListener implements ActionListener {
 						//guiTestRunnerFrame.legacyResultTab,
 						guiTestRunnerFrame.adminTab.getPerl5Lib(),
 						psc,
-						guiLogHandler
+						guiLogHandler,
+						guiTestRunnerFrame.adminTab.getParallelism()
 					);
 				}
 				if (cmd.equals(Constants.RUN_ALL_TESTS)) {
@@ -371,7 +372,8 @@ public class GuiTestRunnerFrameActionListener implements ActionListener {
 						//guiTestRunnerFrame.legacyResultTab,
 						guiTestRunnerFrame.adminTab.getPerl5Lib(),
 						psc,
-						guiLogHandler
+						guiLogHandler,
+						guiTestRunnerFrame.adminTab.getParallelism()
 					);
 				}
 			}
@@ -22,6 +22,7 @@ import java.util.List;
 import javax.swing.JComponent;
 import javax.swing.JList;
 import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
 
 import org.ensembl.healthcheck.DatabaseRegistry;
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
@@ -68,6 +69,26 @@ public class GuiTestRunnerFrameActionPerformer {
 		DBUtils.initialise();
 		DBUtils.setHostConfiguration(dbDetails);
 		
+		databaseTabbedPane.setMessage(
+			"Changing database server", 
+			"Connecting and loading database entries, please wait"
+		);
+		return loadDatabasePane(databaseTabbedPane);
+	}
+
+	/**
+	 * <p>
+	 * 	Lists the databases on the currently configured server in a 
+	 * background thread and shows them in the databaseTabbedPane when done,
+	 * so the gui stays responsive while the server is queried.
+	 * </p>
+	 * 
+	 * @param databaseTabbedPane
+	 * @return the thread loading the databases
+	 * 
+	 */
+	public static Thread loadDatabasePane(final DatabaseTabbedPane databaseTabbedPane) {
+		
 		final List<String> regexps = new ArrayList<String>();
 		regexps.add(".*");
 
@@ -75,8 +96,21 @@ public class GuiTestRunnerFrameActionPerformer {
 
 			public void run() {
 			
-				DatabaseRegistry databaseRegistry = new DatabaseRegistry(regexps, null,
+				final DatabaseRegistry databaseRegistry;
+				try {
+					databaseRegistry = new DatabaseRegistry(regexps, null,
 						null, false);
+				} catch (final RuntimeException e) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							databaseTabbedPane.setMessage(
+								"Problem", 
+								"Could not load the databases: " + e.getMessage()
+							);
+						}
+					});
+					throw e;
+				}
 				
 				// Prevent holding lots of extra connections that might never be used.
 				//
@@ -89,18 +123,12 @@ public class GuiTestRunnerFrameActionPerformer {
 				//	logger.warning("Warning: no databases found!");
 				//}
 				
+				// Indexes the databases on this thread, then shows them on the
+				// event dispatch thread.
+				//
 				databaseTabbedPane.init(databaseRegistry);
-				databaseTabbedPane.repaint();
-				
-				//List<String> searchTerm = new ArrayList<String>();
-				//searchTerm.add("ara");
-				//databaseTabbedPane.applySearchtermFilter(searchTerm);
 			}
 		};
-		databaseTabbedPane.setMessage(
-			"Changing database server", 
-			"Connecting and loading database entries, please wait"
-		);
 		t.start();
 		return t;
 	}
@@ -122,7 +150,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//final JComponent resultDisplayComponent,
 			final String PERL5LIB,
 			final PerlScriptConfig psc,
-			final GuiLogHandler guiLogHandler
+			final GuiLogHandler guiLogHandler,
+			final int parallelism
 	) {
 		
 		Object[] whatsthis = listOfTestsToBeRun.getSelectedValues();
@@ -144,7 +173,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//resultDisplayComponent,
 			PERL5LIB,
 			psc,
-			guiLogHandler
+			guiLogHandler,
+			parallelism
 		);
 	}
 	
@@ -155,7 +185,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//final JComponent resultDisplayComponent,
 			final String PERL5LIB,
 			final PerlScriptConfig psc,
-			final GuiLogHandler guiLogHandler
+			final GuiLogHandler guiLogHandler,
+			final int parallelism
 	) {
 		
 		ListModel lm = listOfTestsToBeRun.getModel();
@@ -173,7 +204,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//resultDisplayComponent,
 			PERL5LIB,
 			psc,
-			guiLogHandler
+			guiLogHandler,
+			parallelism
 		);
 	}
 	
@@ -184,7 +216,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//final JComponent resultDisplayComponent,
 			final String PERL5LIB,
 			final PerlScriptConfig psc,
-			final GuiLogHandler guiLogHandler
+			final GuiLogHandler guiLogHandler,
+			final int parallelism
 	) {
 		
 		List<Class<? extends EnsTestCase>> selectedTests = new ArrayList();
@@ -203,7 +236,8 @@ public class GuiTestRunnerFrameActionPerformer {
 			//resultDisplayComponent, 
 			PERL5LIB,
 			psc,
-			guiLogHandler
+			guiLogHandler,
+			parallelism
 		);
 	}
 	
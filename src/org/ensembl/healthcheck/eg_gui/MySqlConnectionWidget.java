@@ -35,6 +35,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
+import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.configuration.ConfigureHost;
 import org.ensembl.healthcheck.util.ActionAppendable;
 import org.ensembl.healthcheck.util.ProcessExec;
@@ -235,16 +236,14 @@ public class MySqlConnectionWidget extends JPanel implements ActionListener {
 
 	protected String getSelectedDatabaseName() {
 		
-		DatabaseRadioButton selectedDbButton
+		DatabaseRegistryEntry selectedDatabase
 			= databaseTabbedPane
-				.getSelectedDbButton(); 
+				.getSelectedDatabase(); 
 		
-		if (selectedDbButton==null) {
+		if (selectedDatabase==null) {
 			return null;
 		}
-		return databaseTabbedPane
-			.getSelectedDbButton()
-			.getText();
+		return selectedDatabase.getName();
 	}
 	
 	public void runMysqlConsole() {
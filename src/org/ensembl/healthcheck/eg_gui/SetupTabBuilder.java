@@ -20,7 +20,6 @@ import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.BorderFactory;
@@ -34,7 +33,6 @@ import javax.swing.JSplitPane;
 import javax.swing.JTextField;
 import javax.swing.border.Border;
 
-import org.ensembl.healthcheck.DatabaseRegistry;
 import org.ensembl.healthcheck.GroupOfTests;
 import org.ensembl.healthcheck.configuration.ConfigureHost;
 import org.ensembl.healthcheck.testcase.EnsTestCase;
@@ -400,13 +398,16 @@ public class SetupTabBuilder {
 
 		DBUtils.initialise(false);
 		
-		List<String> regexps = new ArrayList<String>();
-		regexps.add(".*");
-
-		DatabaseRegistry databaseRegistry = new DatabaseRegistry(regexps, null, null, false);
-
-		DatabaseTabbedPane databaseTabbedPane = new DatabaseTabbedPane(databaseRegistry);
+		// The databases are listed in the background, so the gui can be 
+		// shown before the server has answered.
+		//
+		DatabaseTabbedPane databaseTabbedPane = new DatabaseTabbedPane();
 		databaseTabbedPane.addActionListener(setupTab.actionListener);
+		databaseTabbedPane.setMessage(
+			"Loading", 
+			"Connecting and loading database entries, please wait"
+		);
+		GuiTestRunnerFrameActionPerformer.loadDatabasePane(databaseTabbedPane);
 
 		setupTab.databaseTabbedPaneWithSearchBox = new DatabaseTabbedPaneWithSearchBox(databaseTabbedPane);
 	}
@@ -33,6 +33,7 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
 
 public class TestProgressDialog extends JPanel implements ActionListener {
 
@@ -40,6 +41,12 @@ public class TestProgressDialog extends JPanel implements ActionListener {
     private JLabel       noteLabel;
     private JButton      cancelButton;
     
+    /**
+     * One line per worker of the GuiTestRunner showing what it is running.
+     */
+    private Box          workerNotes;
+    private JLabel[]     workerLabels = new JLabel[0];
+    
     /**
      * If this is set, then the thread will be stopped using the interrupt
      * method, when this window closes.
@@ -84,6 +91,10 @@ public class TestProgressDialog extends JPanel implements ActionListener {
         this.add(Box.createVerticalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING));
         this.add(progressBar);
         this.add(Box.createVerticalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING));
+        
+        workerNotes = Box.createVerticalBox();
+        this.add(workerNotes);
+        
         this.add(cancelButton);
 
     }
@@ -114,6 +125,54 @@ public class TestProgressDialog extends JPanel implements ActionListener {
         noteLabel.setText(s);
     }
 
+    /**
+     * <p>
+     * 	Shows one line for each of the workers running tests. Can be called
+     * from any thread.
+     * </p>
+     */
+    public void setWorkers(final int workers) {
+    	
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			
+    			workerNotes.removeAll();
+    			workerLabels = new JLabel[workers];
+    			
+    			// A single worker is already described by the note.
+    			//
+    			if (workers > 1) {
+    				for (int i = 0; i < workers; i++) {
+    					workerLabels[i] = new JLabel(workerName(i));
+    					workerNotes.add(workerLabels[i]);
+    				}
+    				workerNotes.add(Box.createVerticalStrut(Constants.DEFAULT_VERTICAL_COMPONENT_SPACING));
+    			}
+    			workerNotes.revalidate();
+    		}
+    	});
+    }
+    
+    /**
+     * <p>
+     * 	Sets what a worker is running. Can be called from any thread.
+     * </p>
+     */
+    public void setWorkerNote(final int worker, final String s) {
+    	
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			if (worker < workerLabels.length && workerLabels[worker] != null) {
+    				workerLabels[worker].setText(workerName(worker) + s);
+    			}
+    		}
+    	});
+    }
+    
+    private static String workerName(int worker) {
+    	return "Worker " + (worker + 1) + ": ";
+    }
+
     public void update(String s, int p) {
 
         setNote(s);
@@ -77,7 +77,9 @@ public class TreeModelFromListOfGroupsBuilder {
 	/**
 	 * <p>
 	 * 	Creates tree node with the same structure as the group of tests
-	 * given as the parameter.
+	 * given as the parameter. The nodes below it are created by 
+	 * {@link #addChildNodes(GroupNode, GroupOfTests)} when the tree first
+	 * needs them.
 	 * </p>
 	 * 
 	 * @param g
@@ -86,7 +88,20 @@ public class TreeModelFromListOfGroupsBuilder {
 	 */
 	public static MutableTreeNode GroupOfTestsToTreeModel(GroupOfTests g) {
 		
-		MutableTreeNode root = new GroupNode(g);
+		return new GroupNode(g);
+	}
+	
+	/**
+	 * <p>
+	 * 	Adds a node for each group of tests in g and for each test in g
+	 * that is not in one of those groups.
+	 * </p>
+	 * 
+	 * @param root
+	 * @param g
+	 * 
+	 */
+	static void addChildNodes(GroupNode root, GroupOfTests g) {
 		
 		// A group of tests to keep track of which tests are present in the 
 		// groups of which the current group comprises. Tests will not be
@@ -126,6 +141,5 @@ public class TreeModelFromListOfGroupsBuilder {
 				index++;
 			}
 		}		
-		return root;
 	}
 }
@@ -67,7 +67,7 @@ public class DatabaseReporter implements Reporter {
 	 * 
 	 * 	if (usingDatabase) {
 	 * 
-	 * 	   checkAndAddToDatabase(report);
+	 * 	   getDatabaseWriter().add(report);
 	 *     return;
 	 * 
 	 *  }
@@ -84,7 +84,15 @@ public abstract class AbstractPerlBasedTestCase extends
 
 	protected String createCommandLine(final DatabaseRegistryEntry dbre,
 			int speciesId) {
-		String commandLine = getPerlScript(dbre, speciesId);
+		return createPerlCommandLine(getPerlScript(dbre, speciesId));
+	}
+
+	/**
+	 * @return the command line running script with the perl binary and 
+	 *         options from {@link AbstractPerlBasedTestCase#getConfig()}
+	 */
+	protected String createPerlCommandLine(String script) {
+		String commandLine = script;
 		
 		if (getConfig() != null) {
 
@@ -29,6 +29,7 @@ import org.ensembl.healthcheck.util.LogMapperPerl2Java;
 import org.ensembl.healthcheck.util.ActionAppendable;
 import org.ensembl.healthcheck.util.TemplateBuilder;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -47,6 +48,14 @@ public abstract class AbstractPerlModuleBasedTestCase extends AbstractPerlBasedT
 
 	//private static final String SCRIPT = "./perl/run_healthcheck.pl -host $host$ -port $port$ -user $user$ -pass $pass$ -dbname $dbname$ -species_id $species_id$ -module $module$";
 	private static final String SCRIPT = "./perl/run_healthcheck.pl -host $host$ -port $port$ -user $user$ -dbname $dbname$ -species_id $species_id$ -module $module$";
+	private static final String WORKER_SCRIPT = "./perl/run_healthcheck.pl -worker";
+	
+	/**
+	 * System property with the maximum number of perl workers kept running
+	 * for these tests. If 0, each test starts perl itself.
+	 */
+	public static final String PERL_WORKERS = "perl.workers";
+	
 	private final LogMapperPerl2Java logMapper;
 	private final Formatter perlLogMessagesFormatter;
 
@@ -206,6 +215,78 @@ public abstract class AbstractPerlModuleBasedTestCase extends AbstractPerlBasedT
 			h.setFormatter(savedFormatter.get(h));
 		}
 	}
+	/**
+	 * @return the maximum number of perl workers, from the {@link #PERL_WORKERS}
+	 *         system property, or the number of processors if it is not set.
+	 */
+	protected int getMaxPerlWorkers() {
+		
+		String maxWorkers = System.getProperty(PERL_WORKERS);
+		
+		if (maxWorkers == null || maxWorkers.trim().length() == 0) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		try {
+			return Integer.parseInt(maxWorkers.trim());
+		} catch (NumberFormatException e) {
+			logger.warning("Ignoring " + PERL_WORKERS + "=" + maxWorkers + ", it is not a number");
+			return Runtime.getRuntime().availableProcessors();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * 	Runs the healthcheck on a perl worker, which has the API loaded 
+	 * already, instead of starting perl for every database and species. 
+	 * The password is sent to the worker with the request, so it is not 
+	 * part of its environment.
+	 * </p>
+	 */
+	@Override
+	protected int execute(
+			String shellCmd, 
+			DatabaseRegistryEntry dbre, 
+			int speciesId, 
+			boolean useSpeciesId, 
+			Appendable out, 
+			Appendable err
+	) throws IOException {
+		
+		int maxWorkers = getMaxPerlWorkers();
+		
+		if (maxWorkers <= 0) {
+			return super.execute(shellCmd, dbre, speciesId, useSpeciesId, out, err);
+		}
+		
+		Map<String,String> environment = environmentVarsToSet();
+		environment.remove("pass");
+		
+		PerlWorkerPool pool = PerlWorkerPool.getPool(
+			createPerlCommandLine(WORKER_SCRIPT), 
+			environment, 
+			maxWorkers
+		);
+		
+		DatabaseServer srv = dbre.getDatabaseServer();
+		
+		// Everything the worker writes arrives on one stream, which is fine 
+		// as stdout and stderr are processed the same way.
+		//
+		return pool.run(
+			new String[] {
+				srv.getHost(),
+				srv.getPort(),
+				srv.getUser(),
+				this.pass,
+				dbre.getName(),
+				// Same as the species_id passed on the command line
+				Integer.toString(speciesId),
+				getModule()
+			}, 
+			out
+		);
+	}
+	
 	@Override
 	public boolean run(final DatabaseRegistryEntry dbre) {
 		
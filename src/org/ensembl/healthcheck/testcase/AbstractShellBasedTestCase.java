@@ -18,15 +18,26 @@ package org.ensembl.healthcheck.testcase;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang.StringUtils;
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.util.ActionAppendable;
 import org.ensembl.healthcheck.util.ProcessExec;
+import org.ensembl.healthcheck.util.ServerGovernor;
 
 /**
  * <p>
@@ -39,6 +50,19 @@ import org.ensembl.healthcheck.util.ProcessExec;
  */
 public abstract class AbstractShellBasedTestCase extends SingleDatabaseTestCase {
 
+	/**
+	 * System property with the maximum number of species of a database 
+	 * tested at the same time on any one database server. If 1, species are 
+	 * tested one after another.
+	 */
+	public static final String SPECIES_PARALLELISM = "species.parallelism";
+	
+	/**
+	 * Limits the species tested at the same time on each database server, 
+	 * shared by all tests and databases. Keyed by host and port.
+	 */
+	private static final Map<String, Semaphore> serverPermits = new HashMap<String, Semaphore>();
+
 	/**
 	 * <p>
 	 * Specify here, if the test implementing this class uses speciesIds. If 
@@ -158,15 +182,67 @@ public abstract class AbstractShellBasedTestCase extends SingleDatabaseTestCase
 		return environmentVars;
 	}
 
-	public boolean runShellTest(final DatabaseRegistryEntry dbre, int speciesId, boolean useSpeciesId) {
+	/**
+	 * <p>
+	 * 	Runs shellCmd, created for dbre and speciesId, and sends its output 
+	 * to out and err. Runs the command in a new bash by default. Override 
+	 * this method to run the test in some other way.
+	 * </p>
+	 * 
+	 * @return the exit code of the command
+	 */
+	protected int execute(
+			String shellCmd, 
+			DatabaseRegistryEntry dbre, 
+			int speciesId, 
+			boolean useSpeciesId, 
+			Appendable out, 
+			Appendable err
+	) throws IOException {
 		
-		boolean passes = true;
+		//
+		// Running the command by creating an array avoids the 
+		// problem of java breaking the command down at spaces to
+		// divide it into command and arguments.
+		//
+		// The command is passed to the bash so things like pipes and
+		// backticks are interpreted. 
+		//
+		String[] cmdLineItems = new String[] {
+				"/bin/bash",
+				"-c",
+				shellCmd,
+		};
+		
+		return ProcessExec.exec(
+			cmdLineItems, 
+			out, 
+			err, 
+			false, 
+			environmentVarsToSet()
+		);
+	}
+
+	public boolean runShellTest(final DatabaseRegistryEntry dbre, int speciesId, boolean useSpeciesId) {
 		
 		final EnsTestCase currentTestCase = this;
 		
 		Appendable out = createStdoutProcessor(currentTestCase, dbre.getConnection());
 		Appendable err = createStderrProcessor(currentTestCase, dbre.getConnection());
 		
+		return runShellTest(dbre, speciesId, useSpeciesId, out, err);
+	}
+	
+	private boolean runShellTest(
+			final DatabaseRegistryEntry dbre, 
+			int speciesId, 
+			boolean useSpeciesId, 
+			Appendable out, 
+			Appendable err
+	) {
+		
+		boolean passes = true;
+		
 		String lastCmdThatWasRun = "";
 		
 		try {
@@ -189,27 +265,7 @@ public abstract class AbstractShellBasedTestCase extends SingleDatabaseTestCase
 			
 			if (!StringUtils.isEmpty(shellCmd)) {
 				
-				//
-				// Running the command by creating an array avoids the 
-				// problem of java breaking the command down at spaces to
-				// divide it into command and arguments.
-				//
-				// The command is passed to the bash so things like pipes and
-				// backticks are interpreted. 
-				//
-				String[] cmdLineItems = new String[] {
-						"/bin/bash",
-						"-c",
-						shellCmd,
-				};
-				
-				exit = ProcessExec.exec(
-					cmdLineItems, 
-					out, 
-					err, 
-					false, 
-					environmentVarsToSet()
-				);
+				exit = execute(shellCmd, dbre, speciesId, useSpeciesId, out, err);
 				
 				lastCmdThatWasRun = shellCmd;
 				
@@ -271,12 +327,21 @@ public abstract class AbstractShellBasedTestCase extends SingleDatabaseTestCase
 				passes = false;
 			}
 
-			for (int speciesId : dbre_speciesIds) {
+			int parallelism = Math.min(getSpeciesParallelism(), dbre_speciesIds.size());
+			
+			if (parallelism > 1) {
 				
-				// Once a test has failed, should not do anymore tests on  
-				// other species ids.
-				//
-				passes = passes && runShellTest(dbre, speciesId, true);
+				passes = passes && runShellTestsConcurrently(dbre, dbre_speciesIds, parallelism);
+				
+			} else {
+			
+				for (int speciesId : dbre_speciesIds) {
+					
+					// Once a test has failed, should not do anymore tests on  
+					// other species ids.
+					//
+					passes = passes && runShellTest(dbre, speciesId, true);
+				}
 			}
 
 		} else {
@@ -284,4 +349,203 @@ public abstract class AbstractShellBasedTestCase extends SingleDatabaseTestCase
 		}
 		return passes;
 	}
+	
+	/**
+	 * @return the maximum number of species tested at the same time on one
+	 *         database server, from the {@link #SPECIES_PARALLELISM} system 
+	 *         property, or the number of processors if it is not set.
+	 */
+	protected int getSpeciesParallelism() {
+		
+		String parallelism = System.getProperty(SPECIES_PARALLELISM);
+		
+		if (parallelism == null || parallelism.trim().length() == 0) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		try {
+			return Math.max(1, Integer.parseInt(parallelism.trim()));
+		} catch (NumberFormatException e) {
+			logger.warning("Ignoring " + SPECIES_PARALLELISM + "=" + parallelism + ", it is not a number");
+			return Runtime.getRuntime().availableProcessors();
+		}
+	}
+	
+	private static Semaphore getServerPermits(DatabaseRegistryEntry dbre, int parallelism) {
+		
+		String server = dbre.getDatabaseServer().getHost() + ":" + dbre.getDatabaseServer().getPort();
+		
+		synchronized (serverPermits) {
+			Semaphore permits = serverPermits.get(server);
+			if (permits == null) {
+				permits = new Semaphore(parallelism, true);
+				serverPermits.put(server, permits);
+			}
+			return permits;
+		}
+	}
+	
+	/**
+	 * <p>
+	 * 	Tests up to parallelism species of dbre at the same time. The number 
+	 * of species tested at the same time on the server of dbre, by this and 
+	 * any other test, is limited by {@link #SPECIES_PARALLELISM} as well,
+	 * and by the {@link ServerGovernor} of the server as it gets busy.
+	 * </p>
+	 * 
+	 * <p>
+	 * 	The output of each species is held back until the species has been 
+	 * tested and then passed on in one go, so the output of different species
+	 * is not mixed up. Like when species are tested one after another, no 
+	 * more species are started once one has failed.
+	 * </p>
+	 */
+	private boolean runShellTestsConcurrently(
+			final DatabaseRegistryEntry dbre, 
+			List<Integer> speciesIds, 
+			int parallelism
+	) {
+		
+		final EnsTestCase currentTestCase = this;
+		final Appendable out = createStdoutProcessor(currentTestCase, dbre.getConnection());
+		final Appendable err = createStderrProcessor(currentTestCase, dbre.getConnection());
+		
+		final Semaphore permits = getServerPermits(dbre, getSpeciesParallelism());
+		final ServerGovernor governor = ServerGovernor.forServer(dbre.getDatabaseServer());
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		
+		final String threadName = getShortTestName() + "-" + dbre.getName() + "-species-";
+		
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			
+			private final AtomicInteger count = new AtomicInteger();
+			
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		
+		for (final int speciesId : speciesIds) {
+			
+			results.add(executor.submit(new Callable<Boolean>() {
+				
+				public Boolean call() throws InterruptedException, IOException {
+					
+					permits.acquire();
+					try {
+						governor.acquire();
+					} catch (InterruptedException e) {
+						permits.release();
+						throw e;
+					}
+					try {
+						if (failed.get()) {
+							logger.fine("Not testing species " + speciesId + " of " + dbre.getName() + ", another species has failed");
+							return Boolean.TRUE;
+						}
+						
+						SpeciesOutput speciesOutput = new SpeciesOutput();
+						boolean passes = runShellTest(
+							dbre, 
+							speciesId, 
+							true, 
+							speciesOutput.forward(out), 
+							speciesOutput.forward(err)
+						);
+						speciesOutput.flush();
+						
+						if (!passes) {
+							failed.set(true);
+						}
+						return passes;
+					} finally {
+						governor.release();
+						permits.release();
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+		
+		boolean passes = true;
+		
+		try {
+			for (Future<Boolean> result : results) {
+				passes &= result.get();
+			}
+		} catch (InterruptedException e) {
+			
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			passes = false;
+			
+		} catch (ExecutionException e) {
+			
+			executor.shutdownNow();
+			ReportManager.problem(
+				this, 
+				dbre.getConnection(),
+				"Could not test all species: " + e.getCause()
+			);
+			passes = false;
+		}
+		return passes;
+	}
+	
+	/**
+	 * <p>
+	 * 	Holds back what is written to the Appendables of one species, in the 
+	 * order it was written, until it is flushed to the Appendables it was 
+	 * meant for.
+	 * </p>
+	 */
+	private static class SpeciesOutput {
+		
+		/** Only one species is flushed at a time */
+		private static final Object flushLock = new Object();
+		
+		private final List<Appendable> targets = new ArrayList<Appendable>();
+		
+		private final List<CharSequence> written = new ArrayList<CharSequence>();
+		
+		Appendable forward(final Appendable target) {
+			
+			return new Appendable() {
+				
+				public Appendable append(CharSequence csq) {
+					add(target, csq == null ? "null" : csq.toString());
+					return this;
+				}
+				
+				public Appendable append(CharSequence csq, int start, int end) {
+					add(target, (csq == null ? "null" : csq).subSequence(start, end).toString());
+					return this;
+				}
+				
+				public Appendable append(char c) {
+					add(target, Character.toString(c));
+					return this;
+				}
+			};
+		}
+		
+		private synchronized void add(Appendable target, String s) {
+			targets.add(target);
+			written.add(s);
+		}
+		
+		synchronized void flush() throws IOException {
+			
+			synchronized (flushLock) {
+				for (int i = 0; i < written.size(); i++) {
+					targets.get(i).append(written.get(i));
+				}
+			}
+			targets.clear();
+			written.clear();
+		}
+	}
 };
@@ -47,12 +47,16 @@ import org.apache.commons.lang.StringUtils;
 import org.ensembl.healthcheck.DatabaseRegistry;
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
+import org.ensembl.healthcheck.ReportLine;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Species;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.TestRunner;
+import org.ensembl.healthcheck.util.ChunkedScan;
 import org.ensembl.healthcheck.util.CollectionUtils;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.KeySample;
+import org.ensembl.healthcheck.util.LongKeyedMap;
 import org.ensembl.healthcheck.util.MapRowMapper;
 import org.ensembl.healthcheck.util.SQLParser;
 import org.ensembl.healthcheck.util.SqlTemplate;
@@ -1103,15 +1107,19 @@ public abstract class EnsTestCase {
 
 		int orphans = 0;
 		boolean result = true;
+		boolean[] sampled = new boolean[1];
 
-		orphans = countOrphans(con, table1, col1, table2, col2, true);
+		orphans = countOrphans(con, table1, col1, table2, col2, true, sampled);
 
 		String useful_sql = "SELECT " + table1 + "." + col1 + " FROM " + table1
 				+ " LEFT JOIN " + table2 + " ON " + table1 + "." + col1 + " = "
 				+ table2 + "." + col2 + " WHERE " + table2 + "." + col2
 				+ " iS NULL";
 
-		if (orphans > 0) {
+		if (orphans > 0 && sampled[0]) {
+			reportSampledOrphans(con, table1, col1, table2, col2, useful_sql);
+			result = false;
+		} else if (orphans > 0) {
 			ReportManager.problem(this, con, "FAILED " + table1 + " -> "
 					+ table2 + " using FK " + col1 + "(" + col2 + ")"
 					+ " relationships");
@@ -1148,11 +1156,27 @@ public abstract class EnsTestCase {
 	 * @param oneWayOnly
 	 *            If false, only a "left join" is performed on table1 and
 	 *            table2. If false, the
-	 * @return The number of "orphans"
+	 * @return The number of "orphans", counted in all the rows even if the
+	 *         checkForOrphans methods only look at a sample (see
+	 *         {@link KeySample})
 	 */
 	public int countOrphans(Connection con, String table1, String col1,
 			String table2, String col2, boolean oneWayOnly) {
 
+		return countOrphans(con, table1, col1, table2, col2, oneWayOnly,
+				null);
+
+	}
+
+	/**
+	 * @param sampled
+	 *            null to count all the rows, otherwise set to true in
+	 *            sampled[0] if a sample of the rows was counted rather than
+	 *            all of them
+	 */
+	private int countOrphans(Connection con, String table1, String col1,
+			String table2, String col2, boolean oneWayOnly, boolean[] sampled) {
+
 		if (con == null) {
 			logger.severe("countOrphans: Database connection is null");
 		}
@@ -1163,11 +1187,15 @@ public abstract class EnsTestCase {
 				+ table1 + "." + col1 + " = " + table2 + "." + col2 + " WHERE "
 				+ table2 + "." + col2 + " IS NULL";
 
-		resultLeft = DBUtils.getRowCount(con, "SELECT COUNT(*)" + sql);
+		Integer inSample = sampled == null ? null : countOrphansInSample(con, table1, col1, table2, col2, null);
+		if (inSample != null) {
+			sampled[0] = true;
+		}
+		resultLeft = inSample != null ? inSample.intValue() : ChunkedScan.getRowCount(con, table1, table1, "SELECT COUNT(*)" + sql);
 
 		logger.finest("Left: " + resultLeft);
 
-		if (resultLeft > 0) {
+		if (resultLeft > 0 && inSample == null) {
 			String[] values = DBUtils.getColumnValues(con, "SELECT " + table1
 					+ "." + col1 + sql + " LIMIT 20");
 			for (int i = 0; i < values.length; i++) {
@@ -1182,9 +1210,13 @@ public abstract class EnsTestCase {
 					+ "." + col2 + " = " + table1 + "." + col1 + " WHERE "
 					+ table1 + "." + col1 + " IS NULL";
 
-			resultRight = DBUtils.getRowCount(con, "SELECT COUNT(*)" + sql);
+			inSample = sampled == null ? null : countOrphansInSample(con, table2, col2, table1, col1, null);
+			if (inSample != null) {
+				sampled[0] = true;
+			}
+			resultRight = inSample != null ? inSample.intValue() : ChunkedScan.getRowCount(con, table2, table2, "SELECT COUNT(*)" + sql);
 
-			if (resultRight > 0) {
+			if (resultRight > 0 && inSample == null) {
 				String[] values = DBUtils.getColumnValues(con, "SELECT "
 						+ table2 + "." + col2 + sql + " LIMIT 20");
 				for (int i = 0; i < values.length; i++) {
@@ -1201,6 +1233,9 @@ public abstract class EnsTestCase {
 
 		// logger.finest("Left: " + resultLeft + " Right: " + resultRight);
 
+		if (resultLeft < 0 || resultRight < 0) {
+			return -1;
+		}
 		return resultLeft + resultRight;
 
 	} // countOrphans
@@ -1222,11 +1257,22 @@ public abstract class EnsTestCase {
 	 *            Column in table2 to check.
 	 * @param constraint1
 	 *            additional constraint on a column in table1
-	 * @return The number of "orphans"
+	 * @return The number of "orphans", counted in all the rows even if the
+	 *         checkForOrphans methods only look at a sample (see
+	 *         {@link KeySample})
 	 */
 	public int countOrphansWithConstraint(Connection con, String table1,
 			String col1, String table2, String col2, String constraint1) {
 
+		return countOrphansWithConstraint(con, table1, col1, table2, col2,
+				constraint1, null);
+
+	}
+
+	private int countOrphansWithConstraint(Connection con, String table1,
+			String col1, String table2, String col2, String constraint1,
+			boolean[] sampled) {
+
 		if (con == null) {
 			logger.severe("countOrphans: Database connection is null");
 		}
@@ -1239,8 +1285,12 @@ public abstract class EnsTestCase {
 
 		sql = sql + " AND " + table1 + "." + constraint1;
 
-		resultLeft = DBUtils.getRowCount(con, "SELECT COUNT(*)" + sql);
-		if (resultLeft > 0) {
+		Integer inSample = sampled == null ? null : countOrphansInSample(con, table1, col1, table2, col2, constraint1);
+		if (inSample != null) {
+			sampled[0] = true;
+		}
+		resultLeft = inSample != null ? inSample.intValue() : ChunkedScan.getRowCount(con, table1, table1, "SELECT COUNT(*)" + sql);
+		if (resultLeft > 0 && inSample == null) {
 			String[] values = DBUtils.getColumnValues(con, "SELECT " + table1
 					+ "." + col1 + sql + " LIMIT 20");
 			for (int i = 0; i < values.length; i++) {
@@ -1255,6 +1305,61 @@ public abstract class EnsTestCase {
 
 	} // countOrphans
 
+	// -------------------------------------------------------------------------
+	/**
+	 * Count the orphans in a sample of the rows of table1, if scan heavy
+	 * checks only look at a sample (see {@link KeySample}). The estimate for
+	 * the whole table is reported as sampled.
+	 * 
+	 * @param constraint1
+	 *            additional constraint on a column in table1, or null
+	 * @return The number of orphans found in the sample, -1 if they could not
+	 *         be counted, or null if table1 is to be checked in full.
+	 */
+	private Integer countOrphansInSample(Connection con, String table1,
+			String col1, String table2, String col2, String constraint1) {
+
+		KeySample sample = KeySample.isEnabled() ? KeySample.forTable(con,
+				table1) : null;
+		if (sample == null) {
+			return null;
+		}
+
+		String violation = table2 + "." + col2 + " IS NULL";
+		if (constraint1 != null) {
+			violation += " AND " + table1 + "." + constraint1;
+		}
+		KeySample.Estimate estimate = sample.countViolations(con, "FROM "
+				+ table1 + " LEFT JOIN " + table2 + " ON " + table1 + "."
+				+ col1 + " = " + table2 + "." + col2, violation);
+		if (estimate == null) {
+			return -1;
+		}
+
+		ReportManager.sampled(this, con,
+				estimate.getViolations() > 0 ? ReportLine.PROBLEM
+						: ReportLine.INFO, table1 + "." + col1
+						+ " not linked to " + table2 + "." + col2 + ": "
+						+ estimate);
+		return (int) Math.min(Integer.MAX_VALUE, estimate.getViolations());
+
+	} // countOrphansInSample
+
+	/**
+	 * Report orphans found in a sample of the rows. How many there are is
+	 * only estimated, and countOrphansInSample has reported the estimate.
+	 */
+	private void reportSampledOrphans(Connection con, String table1,
+			String col1, String table2, String col2, String useful_sql) {
+
+		ReportManager.sampled(this, con, ReportLine.PROBLEM, "FAILED "
+				+ table1 + " -> " + table2 + " using FK " + col1 + "(" + col2
+				+ ")" + " relationships");
+		ReportManager.sampled(this, con, ReportLine.PROBLEM, "USEFUL SQL: "
+				+ useful_sql);
+
+	} // reportSampledOrphans
+
 	// -------------------------------------------------------------------------
 	/**
 	 * Generic way to check for orphan foreign key relationships.
@@ -1267,7 +1372,9 @@ public abstract class EnsTestCase {
 		logger.finest("Checking for orphans with:\t" + table1 + "." + col1
 				+ " " + table2 + "." + col2 + ". oneWay is " + oneWay);
 
-		int orphans = countOrphans(con, table1, col1, table2, col2, oneWay);
+		boolean[] sampled = new boolean[1];
+		int orphans = countOrphans(con, table1, col1, table2, col2, oneWay,
+				sampled);
 
 		boolean result = true;
 
@@ -1276,7 +1383,10 @@ public abstract class EnsTestCase {
 				+ table2 + "." + col2 + " WHERE " + table2 + "." + col2
 				+ " IS NULL";
 
-		if (orphans > 0) {
+		if (orphans > 0 && sampled[0]) {
+			reportSampledOrphans(con, table1, col1, table2, col2, useful_sql);
+			result = false;
+		} else if (orphans > 0) {
 			ReportManager.problem(this, con, "FAILED " + table1 + " -> "
 					+ table2 + " using FK " + col1 + "(" + col2 + ")"
 					+ " relationships");
@@ -1424,9 +1534,10 @@ public abstract class EnsTestCase {
 
 		int orphans = 0;
 		boolean result = true;
+		boolean[] sampled = new boolean[1];
 
 		orphans = countOrphansWithConstraint(con, table1, col1, table2, col2,
-				constraint1);
+				constraint1, sampled);
 
 		String useful_sql = "SELECT " + table1 + "." + col1 + " FROM " + table1
 				+ " LEFT JOIN " + table2 + " ON " + table1 + "." + col1 + " = "
@@ -1439,7 +1550,10 @@ public abstract class EnsTestCase {
 			useful_sql = useful_sql + " AND " + table1 + "." + constraint1;
 		}
 
-		if (orphans > 0) {
+		if (orphans > 0 && sampled[0]) {
+			reportSampledOrphans(con, table1, col1, table2, col2, useful_sql);
+			result = false;
+		} else if (orphans > 0) {
 			ReportManager.problem(this, con, "FAILED " + table1 + " -> "
 					+ table2 + " using FK " + col1 + "(" + col2 + ")"
 					+ " relationships");
@@ -1452,6 +1566,10 @@ public abstract class EnsTestCase {
 					+ " -> " + table2 + " using FK " + col1
 					+ ", look at the StackTrace if any");
 			result = false;
+		} else if (sampled[0]) {
+			ReportManager.sampled(this, con, ReportLine.CORRECT, "SUCCESS: All sampled rows in " + table1
+					+ " (constraint is: " + constraint1 + ") refer to valid "
+					+ table2 + "s");
 		} else {
 			ReportManager.correct(this, con, "SUCCESS: All rows in " + table1
 					+ " (constraint is: " + constraint1 + ") refer to valid "
@@ -1503,6 +1621,20 @@ public abstract class EnsTestCase {
 
 		boolean result = true;
 
+		KeySample sample = KeySample.isEnabled() ? KeySample.forTable(con,
+				table) : null;
+		if (sample != null) {
+			KeySample.Estimate estimate = sample.countViolations(con, "FROM "
+					+ table, column + " IS NULL");
+			if (estimate != null) {
+				result = estimate.getViolations() == 0;
+				ReportManager.sampled(this, con, result ? ReportLine.CORRECT
+						: ReportLine.PROBLEM, "NULL values in " + table + "."
+						+ column + ": " + estimate);
+			}
+			return result;
+		}
+
 		String sql = String.format("SELECT COUNT(*) FROM %s WHERE %s IS NULL",
 				table, column);
 		int nulls = DBUtils.getRowCount(con, sql);
@@ -2022,6 +2154,15 @@ public abstract class EnsTestCase {
 		return DBUtils.getSqlTemplate(conn);
 	}
 
+	/**
+	 * Run a grouped query once and key its results by the first column. Use
+	 * this instead of running one keyed query per seq_region, species set etc.
+	 * See {@link SqlTemplate#queryForLongMap(String, Object...)}.
+	 */
+	public LongKeyedMap getLongMap(Connection conn, String sql, Object... args) {
+		return DBUtils.getSqlTemplate(conn).queryForLongMap(sql, args);
+	}
+
 	// -------------------------------------------------------------------------
 	/**
 	 * Count the number of rows in a table.
@@ -0,0 +1,365 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.testcase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Long-lived <code>perl/run_healthcheck.pl -worker</code> processes, so that
+ * perl modules based tests pay for starting perl and loading the API once per
+ * worker instead of once per database and species.
+ * </p>
+ *
+ * <p>
+ * There is one pool for each worker command line and environment. A pool
+ * starts workers as they are needed, up to its maximum, and keeps them
+ * running until the JVM exits. A worker whose process fails, or which takes
+ * longer than <code>perl.worker.timeout</code> seconds (default 3600) to run
+ * a healthcheck, is killed and replaced by a new one when next needed.
+ * </p>
+ */
+final class PerlWorkerPool {
+
+	/** Must match $JOB_DONE_MARKER in perl/run_healthcheck.pl */
+	static final String JOB_DONE_MARKER = "__RUN_HEALTHCHECK_JOB_DONE__";
+
+	/** System property with the seconds a healthcheck may run on a worker */
+	static final String TIMEOUT = "perl.worker.timeout";
+
+	/** Queued after the last line of output of a worker; compared by identity */
+	private static final String END_OF_OUTPUT = new String("end of output");
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private static final Map<String, PerlWorkerPool> pools = new HashMap<String, PerlWorkerPool>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				closeAll();
+			}
+		}, "PerlWorkerPool-shutdown"));
+	}
+
+	private final String command;
+
+	private final Map<String, String> environment;
+
+	private final int maxWorkers;
+
+	/** Milliseconds */
+	private final long timeout;
+
+	private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<Worker>();
+
+	/** Workers started and not discarded; guarded by this */
+	private final List<Worker> workers = new ArrayList<Worker>();
+
+	private PerlWorkerPool(String command, Map<String, String> environment, int maxWorkers) {
+		this.command = command;
+		this.environment = environment;
+		this.maxWorkers = maxWorkers;
+		this.timeout = TimeUnit.SECONDS.toMillis(Long.getLong(TIMEOUT, 3600).longValue());
+	}
+
+	/**
+	 * @return the pool of workers run by command in environment; maxWorkers
+	 *         only applies if the pool is created by this call
+	 */
+	static PerlWorkerPool getPool(String command, Map<String, String> environment, int maxWorkers) {
+
+		String key = command + '\0' + new TreeMap<String, String>(environment);
+		synchronized (pools) {
+			PerlWorkerPool pool = pools.get(key);
+			if (pool == null) {
+				pool = new PerlWorkerPool(command, new HashMap<String, String>(environment), Math.max(1, maxWorkers));
+				pools.put(key, pool);
+			}
+			return pool;
+		}
+
+	}
+
+	/**
+	 * Stop the workers of every pool.
+	 */
+	static void closeAll() {
+
+		synchronized (pools) {
+			for (PerlWorkerPool pool : pools.values()) {
+				pool.close();
+			}
+			pools.clear();
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Run a healthcheck on the next free worker, waiting for one if all are
+	 * busy.
+	 *
+	 * @param fields
+	 *          host, port, user, password, database name, species id (empty if
+	 *          not used) and module
+	 * @param out
+	 *          receives stdout and stderr of the healthcheck, line by line
+	 * @return the exit code the healthcheck would have exited with if it had
+	 *         been run in a process of its own
+	 */
+	int run(String[] fields, Appendable out) throws IOException {
+
+		String request = createRequest(fields);
+
+		Worker worker;
+		try {
+			worker = borrow();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a perl worker");
+		}
+
+		boolean healthy = false;
+		try {
+			int exit = worker.run(request, out);
+			healthy = true;
+			return exit;
+		} finally {
+			if (healthy) {
+				idle.add(worker);
+			} else {
+				discard(worker);
+			}
+		}
+
+	}
+
+	private Worker borrow() throws IOException, InterruptedException {
+
+		while (true) {
+
+			Worker worker = idle.poll();
+			if (worker != null) {
+				return worker;
+			}
+
+			synchronized (this) {
+				if (workers.size() < maxWorkers) {
+					worker = new Worker();
+					workers.add(worker);
+					logger.fine("Started perl worker " + workers.size() + " of " + maxWorkers + ": " + command);
+					return worker;
+				}
+			}
+
+			// Also wakes up now and again in case a busy worker was discarded
+			worker = idle.poll(1, TimeUnit.SECONDS);
+			if (worker != null) {
+				return worker;
+			}
+
+		}
+
+	}
+
+	private synchronized void discard(Worker worker) {
+
+		workers.remove(worker);
+		worker.kill();
+
+	}
+
+	private synchronized void close() {
+
+		for (Worker worker : workers) {
+			worker.close();
+		}
+		workers.clear();
+		idle.clear();
+
+	}
+
+	/**
+	 * Tabs, newlines and backslashes are escaped, so each request is one line
+	 * of tab separated fields.
+	 */
+	static String createRequest(String[] fields) {
+
+		StringBuilder request = new StringBuilder();
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				request.append('\t');
+			}
+			String field = fields[i] == null ? "" : fields[i];
+			for (int j = 0; j < field.length(); j++) {
+				char c = field.charAt(j);
+				switch (c) {
+				case '\t':
+					request.append("\\t");
+					break;
+				case '\n':
+					request.append("\\n");
+					break;
+				case '\\':
+					request.append("\\\\");
+					break;
+				default:
+					request.append(c);
+				}
+			}
+		}
+		return request.toString();
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * One perl process running healthchecks one after another.
+	 */
+	private class Worker {
+
+		private final Process process;
+
+		private final Writer requests;
+
+		private final BufferedReader output;
+
+		/** The lines of output, read by a thread of their own so waiting for them can time out */
+		private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+
+		Worker() throws IOException {
+
+			// Run by the bash like the commands of other shell based tests,
+			// so the perl binary and options are interpreted the same way.
+			//
+			ProcessBuilder builder = new ProcessBuilder("/bin/bash", "-c", command);
+			builder.environment().clear();
+			for (Map.Entry<String, String> variable : environment.entrySet()) {
+				if (variable.getKey() != null && variable.getValue() != null) {
+					builder.environment().put(variable.getKey(), variable.getValue());
+				}
+			}
+			// The worker sends its stderr to stdout itself, this is in case
+			// it dies before doing so.
+			//
+			builder.redirectErrorStream(true);
+			process = builder.start();
+			requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream()));
+			output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+
+			Thread pump = new Thread(new Runnable() {
+				public void run() {
+					try {
+						String line;
+						while ((line = output.readLine()) != null) {
+							lines.add(line);
+						}
+					} catch (IOException e) {
+						// killed, or died
+					} finally {
+						lines.add(END_OF_OUTPUT);
+					}
+				}
+			}, "PerlWorker-output");
+			pump.setDaemon(true);
+			pump.start();
+
+		}
+
+		int run(String request, Appendable out) throws IOException {
+
+			requests.write(request);
+			requests.write('\n');
+			requests.flush();
+
+			long deadline = System.currentTimeMillis() + timeout;
+			while (true) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					throw new IOException("Perl worker took more than " + TimeUnit.MILLISECONDS.toSeconds(timeout)
+							+ "s to run a healthcheck: " + command);
+				}
+				String line;
+				try {
+					line = lines.poll(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while waiting for a perl worker");
+				}
+				if (line == null) {
+					continue;
+				}
+				if (line == END_OF_OUTPUT) {
+					break;
+				}
+				if (line.startsWith(JOB_DONE_MARKER)) {
+					try {
+						return Integer.parseInt(line.substring(JOB_DONE_MARKER.length()).trim());
+					} catch (NumberFormatException e) {
+						throw new IOException("Unexpected reply from perl worker: " + line);
+					}
+				}
+				out.append(line);
+				out.append('\n');
+			}
+			throw new IOException("Perl worker exited while running a healthcheck: " + command);
+
+		}
+
+		/**
+		 * Stop a worker which failed or is stuck in a healthcheck.
+		 */
+		void kill() {
+
+			process.destroy();
+			try {
+				requests.close();
+			} catch (IOException e) {
+				// destroyed already
+			}
+
+		}
+
+		void close() {
+
+			try {
+				// The worker exits when it runs out of requests
+				requests.close();
+			} catch (IOException e) {
+				process.destroy();
+			}
+
+		}
+
+	}
+
+}
@@ -19,13 +19,18 @@ package org.ensembl.healthcheck.testcase.compara;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.LongKeyedMap;
+import org.ensembl.healthcheck.util.SqlTemplate.ResultSetCallback;
 
 /**
  * An EnsEMBL Healthcheck test case that checks that all the genome_dbs for a
@@ -87,15 +92,14 @@ public class CheckGenomicAlignGenomeDBs extends SingleDatabaseTestCase {
 
 		if (method_link_species_set_ids.length > 0) {
 
-			for (int i = 0; i < method_link_species_set_ids.length; i++) {
-				/**
-				 * Expected number of genome_db_ids
-				 */
+			/**
+			 * Expected number of genome_db_ids for every
+			 * method_link_species_set, fetched in one go
+			 */
+			LongKeyedMap num_genome_db_ids = getLongMap(con,
+					"SELECT method_link_species_set_id, COUNT(*) FROM species_set LEFT JOIN method_link_species_set USING (species_set_id) GROUP BY method_link_species_set_id");
 
-				String gdb_sql = "SELECT COUNT(*) FROM species_set LEFT JOIN method_link_species_set USING (species_set_id) WHERE method_link_species_set_id = "
-						+ method_link_species_set_ids[i];
-				String[] num_genome_db_ids = DBUtils.getColumnValues(con,
-						gdb_sql);
+			for (int i = 0; i < method_link_species_set_ids.length; i++) {
 
 				/**
 				 * Find genome_db_ids in genomic_aligns. For speed, only look at
@@ -106,21 +110,17 @@ public class CheckGenomicAlignGenomeDBs extends SingleDatabaseTestCase {
 				 * have an ancestor when the number from the genomic_aligns will
 				 * be one larger. Don't specifically test for this, just check
 				 * if it's equal to or larger - more worried if it's smaller ie
-				 * missed some expected genome_db_ids.
+				 * missed some expected genome_db_ids. The sample is limited per
+				 * method_link_species_set so this query stays in the loop.
 				 */
 				String useful_sql;
 				useful_sql = "SELECT COUNT(DISTINCT genome_db_id) FROM (SELECT * FROM genomic_align_block WHERE method_link_species_set_id = "
 						+ method_link_species_set_ids[i]
-						+ " limit 100) t1 LEFT JOIN genomic_align USING (genomic_align_block_id) LEFT JOIN dnafrag USING (dnafrag_id) HAVING COUNT(DISTINCT genome_db_id) >= (SELECT COUNT(*) FROM species_set LEFT JOIN method_link_species_set USING (species_set_id) WHERE method_link_species_set_id = "
-						+ method_link_species_set_ids[i] + " )";
-				String[] success = DBUtils.getColumnValues(con, useful_sql);
-
-				if (success.length > 0) {
-					/**
-					 * System.out.println("MLSS " +
-					 * method_link_species_set_ids[i] + " real " + success[0] +
-					 * " expected " + num_genome_db_ids[0]);
-					 */
+						+ " limit 100) t1 LEFT JOIN genomic_align USING (genomic_align_block_id) LEFT JOIN dnafrag USING (dnafrag_id)";
+				long found = DBUtils.getRowCount(con, useful_sql);
+				long expected = num_genome_db_ids.get(Long.parseLong(method_link_species_set_ids[i]), 0);
+
+				if (found >= expected) {
 					ReportManager
 							.correct(
 									this,
@@ -157,24 +157,41 @@ public class CheckGenomicAlignGenomeDBs extends SingleDatabaseTestCase {
 				+ " LEFT JOIN genome_db USING (genome_db_id)"
 				+ " LEFT JOIN dnafrag ON (genome_db.genome_db_id = dnafrag.genome_db_id AND dnafrag.name = 'MT')"
 				+ " WHERE (class LIKE 'GenomicAlignTree%' OR class LIKE 'GenomicAlign%multiple%') AND dnafrag.name = 'MT'";
+		/**
+		 * Number of genomic_aligns on each MT dnafrag, per
+		 * method_link_species_set, in one query
+		 */
+		final Map<Long, LongKeyedMap> mtCounts = new HashMap<Long, LongKeyedMap>();
+		String sql2 = "SELECT ga.method_link_species_set_id, ga.dnafrag_id, COUNT(*) FROM genomic_align ga JOIN dnafrag USING (dnafrag_id)"
+				+ " WHERE dnafrag.name = 'MT' GROUP BY ga.method_link_species_set_id, ga.dnafrag_id";
+		getSqlTemplate(comparaCon).execute(sql2, new ResultSetCallback<Void>() {
+			@Override
+			public Void process(ResultSet rs) throws SQLException {
+				while (rs.next()) {
+					LongKeyedMap counts = mtCounts.get(rs.getLong(1));
+					if (counts == null) {
+						counts = new LongKeyedMap();
+						mtCounts.put(rs.getLong(1), counts);
+					}
+					counts.put(rs.getLong(2), rs.getLong(3));
+				}
+				return null;
+			}
+		});
+
 		try {
 			Statement stmt1 = comparaCon.createStatement();
 			ResultSet rs1 = stmt1.executeQuery(sql1);
 			while (rs1.next()) {
-				String sql2 = "SELECT count(*) FROM genomic_align WHERE method_link_species_set_id = "
-						+ rs1.getInt(3) + " AND dnafrag_id = " + rs1.getInt(4);
-				Statement stmt2 = comparaCon.createStatement();
-				ResultSet rs2 = stmt2.executeQuery(sql2);
-				while (rs2.next()) {
-					if (rs2.getInt(1) == 0) {
-						result = false;
-						ReportManager.problem(
-								this,
-								comparaCon,
-								"The MT chromosome from " + rs1.getString(2)
-										+ " is not present in the "
-										+ rs1.getString(1) + " alignments");
-					}
+				LongKeyedMap counts = mtCounts.get(rs1.getLong(3));
+				if (counts == null || counts.get(rs1.getLong(4), 0) == 0) {
+					result = false;
+					ReportManager.problem(
+							this,
+							comparaCon,
+							"The MT chromosome from " + rs1.getString(2)
+									+ " is not present in the "
+									+ rs1.getString(1) + " alignments");
 				}
 			}
 			rs1.close();
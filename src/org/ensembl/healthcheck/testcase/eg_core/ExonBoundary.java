@@ -22,8 +22,13 @@
  */
 package org.ensembl.healthcheck.testcase.eg_core;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportManager;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
 
 /**
  * Test to detect if exon boundaries are at the expected locations
@@ -32,17 +37,27 @@ import org.ensembl.healthcheck.ReportManager;
  */
 public class ExonBoundary extends AbstractEgCoreTestCase {
 
-	public final static String[] Qs = {
-			"select t.transcript_id, t.seq_region_start, t.seq_region_end, e.seq_region_start from transcript t join exon_transcript et using (transcript_id) join exon e using (exon_id) where et.rank=1 and t.seq_region_start<>e.seq_region_start and t.seq_region_strand=1",
-			"select t.transcript_id, t.seq_region_start, t.seq_region_end, e.seq_region_start from transcript t join exon_transcript et using (transcript_id) join exon e using (exon_id) where et.rank=1 and t.seq_region_end<>e.seq_region_end and t.seq_region_strand=-1",
-			"select t.transcript_id, t.seq_region_start, t.seq_region_end, e.seq_region_start from transcript t join exon_transcript et using (transcript_id) join exon e using (exon_id) where et.rank=(select max(tt.rank) from exon_transcript tt where tt.transcript_id=t.transcript_id) and t.seq_region_end<>e.seq_region_end and t.seq_region_strand=1",
-			"select t.transcript_id, t.seq_region_start, t.seq_region_end, e.seq_region_start from transcript t join exon_transcript et using (transcript_id) join exon e using (exon_id) where et.rank=(select max(tt.rank) from exon_transcript tt where tt.transcript_id=t.transcript_id) and t.seq_region_start<>e.seq_region_start and t.seq_region_strand=-1" };
+	/**
+	 * The four boundary checks: first exon start (forward strand), first exon
+	 * end (reverse strand), last exon end (forward strand) and last exon start
+	 * (reverse strand) must match the transcript.
+	 */
+	private final static int FIRST_FORWARD = 0;
+	private final static int FIRST_REVERSE = 1;
+	private final static int LAST_FORWARD = 2;
+	private final static int LAST_REVERSE = 3;
 
 	protected boolean runTest(DatabaseRegistryEntry dbre) {
 		boolean success = true;
-		for (String q : Qs) {
-			for (Integer i : getTemplate(dbre).queryForDefaultObjectList(q,
-					Integer.class)) {
+		GeneModelSnapshot snapshot;
+		try {
+			snapshot = GeneModelSnapshot.getSnapshot(dbre);
+		} catch (SqlUncheckedException e) {
+			ReportManager.problem(this, dbre.getConnection(), "Could not read the gene models: " + e.getMessage());
+			return false;
+		}
+		for (int check = FIRST_FORWARD; check <= LAST_REVERSE; check++) {
+			for (long i : findBadTranscripts(snapshot, check)) {
 				success = false;
 				ReportManager
 						.problem(
@@ -56,6 +71,45 @@ public class ExonBoundary extends AbstractEgCoreTestCase {
 		return success;
 	}
 
+	private List<Long> findBadTranscripts(GeneModelSnapshot snapshot, int check) {
+		List<Long> transcriptIds = new ArrayList<Long>();
+		int row = 0;
+		while (row < snapshot.getExonTranscriptCount()) {
+			int end = snapshot.getExonTranscriptBlockEnd(row);
+			int transcript = snapshot.getExonTranscriptTranscript(row);
+			if (transcript >= 0) {
+				int maxRank = 0;
+				for (int i = row; i < end; i++) {
+					maxRank = Math.max(maxRank,
+							snapshot.getExonTranscriptRank(i));
+				}
+				boolean first = (check == FIRST_FORWARD || check == FIRST_REVERSE);
+				int strand = (check == FIRST_FORWARD || check == LAST_FORWARD) ? 1
+						: -1;
+				int expectedRank = first ? 1 : maxRank;
+				for (int i = row; i < end; i++) {
+					int exon = snapshot.getExonTranscriptExon(i);
+					if (exon < 0
+							|| snapshot.getExonTranscriptRank(i) != expectedRank
+							|| snapshot.getTranscriptStrand(transcript) != strand) {
+						continue;
+					}
+					boolean checkStart = (check == FIRST_FORWARD || check == LAST_REVERSE);
+					boolean bad = checkStart ? snapshot
+							.getTranscriptStart(transcript) != snapshot
+							.getExonStart(exon) : snapshot
+							.getTranscriptEnd(transcript) != snapshot
+							.getExonEnd(exon);
+					if (bad) {
+						transcriptIds.add(snapshot.getTranscriptId(transcript));
+					}
+				}
+			}
+			row = end;
+		}
+		return transcriptIds;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.ensembl.healthcheck.testcase.AbstractTemplatedTestCase#getEgDescription()
 	 */
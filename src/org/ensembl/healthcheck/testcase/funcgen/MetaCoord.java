@@ -35,7 +35,7 @@ import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.LongKeyedMap;
 
 /**
  * Check that meta_coord table contains entries for all the coordinate systems
@@ -89,12 +89,13 @@ public class MetaCoord extends SingleDatabaseTestCase {
 				logger.finest("Getting feature coordinate systems for " + tableName);
 				ResultSet rs = stmt.executeQuery(sql);
 
+				LongKeyedMap metaCoordCounts = getLongMap(con, "SELECT coord_system_id, COUNT(*) FROM meta_coord WHERE table_name=? GROUP BY coord_system_id", tableName);
+
 				while (rs.next()) {
 					String coordSystemID = rs.getString(1);
 					logger.finest("Added feature coordinate system for " + tableName + ": " + coordSystemID);
 					// check that the meta_coord table has an entry corresponding to this
-					int mc = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM meta_coord WHERE coord_system_id=" + coordSystemID + " AND table_name='"
-							+ tableName + "'");
+					long mc = metaCoordCounts.get(rs.getLong(1), 0);
 					if (mc == 0) {
 						ReportManager.problem(this, con, "No entry for coordinate system with ID " + coordSystemID + " for " + tableName
 								+ " in meta_coord");
@@ -18,9 +18,8 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,7 +27,8 @@ import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.Utils;
+import org.ensembl.healthcheck.util.IntervalIndex;
+import org.ensembl.healthcheck.util.SqlTemplate.ResultSetCallback;
 
 /**
  * Check for multiple components which overlap and are assembled to the same thing. Note that multiple assembly is OK, overlapping
@@ -67,72 +67,75 @@ public class AssemblyMultipleOverlap extends SingleDatabaseTestCase {
 
 		Connection con = dbre.getConnection();
 
-		// get list of all multiply-assembled components
-		String sql = "SELECT sr1.name AS cmp_sr_name, cs1.name AS cmp_cs, sr2.name AS asm_sr_name, cs2.name AS asm_cs, a.asm_seq_region_id, a.cmp_seq_region_id, COUNT(*) AS count "
-				+ "FROM assembly a, seq_region sr1, seq_region sr2, coord_system cs1, coord_system cs2 " + "WHERE a.cmp_seq_region_id = sr1.seq_region_id AND a.asm_seq_region_id = sr2.seq_region_id "
-				+ "AND sr1.coord_system_id = cs1.coord_system_id AND sr2.coord_system_id = cs2.coord_system_id " + "GROUP BY asm_seq_region_id, cmp_seq_region_id, asm_start, cmp_start, ori HAVING count > 1;";
+		// stream the whole assembly table once; each (asm_seq_region_id, cmp_seq_region_id, ori)
+		// combination gets its own key in the index, and pairs holds the first and last key used
+		// for each (asm_seq_region_id, cmp_seq_region_id)
+		final List<long[]> pairs = new ArrayList<long[]>();
 
-		int overlapCount = 0;
+		long overlapCount = 0;
 
 		try {
 
-			Statement stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql);
-
-			PreparedStatement cmpStmt = con.prepareStatement("SELECT asm_start, asm_end, ori FROM assembly WHERE asm_seq_region_id=? AND cmp_seq_region_id=? ORDER BY asm_start");
-
-			while (rs.next()) {
-
-				long asm_seq_region_id = rs.getLong("asm_seq_region_id");
-				long cmp_seq_region_id = rs.getLong("cmp_seq_region_id");
-
-				// get start, end for each component
-				cmpStmt.setLong(1, asm_seq_region_id);
-				cmpStmt.setLong(2, cmp_seq_region_id);
-				ResultSet cmpRS = cmpStmt.executeQuery();
-
-				// read all start/end/strand
-				List startsL = new ArrayList();
-				List endsL = new ArrayList();
-				List strandsL = new ArrayList();
-				while (cmpRS.next()) {
+			IntervalIndex index = getSqlTemplate(con).execute(
+					"SELECT asm_seq_region_id, cmp_seq_region_id, ori, asm_start, asm_end, cmp_start FROM assembly ORDER BY asm_seq_region_id, cmp_seq_region_id, ori, asm_start",
+					new ResultSetCallback<IntervalIndex>() {
+						public IntervalIndex process(ResultSet rs) throws SQLException {
+							IntervalIndex.Builder builder = new IntervalIndex.Builder();
+							long key = -1;
+							long lastAsm = -1, lastCmp = -1, lastOri = 0;
+							while (rs.next()) {
+								long asm = rs.getLong(1);
+								long cmp = rs.getLong(2);
+								long ori = rs.getLong(3);
+								if (key < 0 || asm != lastAsm || cmp != lastCmp || ori != lastOri) {
+									key++;
+									if (asm != lastAsm || cmp != lastCmp) {
+										pairs.add(new long[] { key, key });
+									}
+									pairs.get(pairs.size() - 1)[1] = key;
+									lastAsm = asm;
+									lastCmp = cmp;
+									lastOri = ori;
+								}
+								// keep cmp_start as the id so that duplicate placements can be spotted
+								builder.add(key, rs.getLong(4), rs.getLong(5), rs.getLong(6));
+							}
+							return builder.build();
+						}
+					});
 
-					startsL.add(cmpRS.getLong("asm_start"));
-					endsL.add(cmpRS.getLong("asm_end"));
-					strandsL.add(cmpRS.getLong("ori"));
+			// Each multiply-assembled placement (same asm_start, cmp_start and ori) of a component
+			// triggers a check of all the placements of that component on the same assembled
+			// region; overlaps are pairs on the same strand where the later one starts before
+			// the end of the earlier one.
+			for (long[] pair : pairs) {
 
-				}
+				long duplicatePlacements = 0;
+				long overlappingPairs = 0;
 
-				cmpRS.close();
+				for (long key = pair[0]; key <= pair[1]; key++) {
 
-				// convert to arrays - easier to keep track
-				long starts[] = Utils.listToArrayLong(startsL);
-				long ends[] = Utils.listToArrayLong(endsL);
-				long strands[] = Utils.listToArrayLong(strandsL);
+					int first = index.getFirstIndex(key);
+					int end = index.getEndIndex(key);
 
-				// check pairs for overlaps
-				// note ORDER BY asm_start means we have less comparisons to do
-				for (int i = 0; i < starts.length; i++) {
-					for (int j = i + 1; j < starts.length; j++) {
+					for (int i = first; i < end; i++) {
 
-						if (strands[i] == strands[j]) {
+						// intervals are ordered by start, so the ones that start before the end of i follow it
+						int following = index.getFirstIndexStartingAfter(key, index.getEnd(i) - 1);
+						overlappingPairs += Math.max(0, following - i - 1);
 
-							if (starts[j] < ends[i]) {
-								overlapCount++;
-								if (overlapCount < MAX) {
-									// System.out.println("Overlap: cmp " + cmp_seq_region_id + " asm " + asm_seq_region_id + " " + starts[i] + " " +
-									// ends[i] + " " + starts[j] + " " + ends[j]);
-								}
-							}
+						// count each group of identical placements once
+						if (isFirstOfDuplicateGroup(index, first, end, i)) {
+							duplicatePlacements++;
 						}
 
 					}
 
 				}
 
-			}
+				overlapCount += duplicatePlacements * overlappingPairs;
 
-			rs.close();
+			}
 
 		} catch (Exception e) {
 			result = false;
@@ -155,5 +158,25 @@ public class AssemblyMultipleOverlap extends SingleDatabaseTestCase {
 	} // run
 
 	// -------------------------------------------------------------------------
+	/**
+	 * Check if interval i is the first of at least two intervals in [first, end) with the same start (asm_start) and id (cmp_start).
+	 */
+	private boolean isFirstOfDuplicateGroup(IntervalIndex index, int first, int end, int i) {
+
+		for (int j = i - 1; j >= first && index.getStart(j) == index.getStart(i); j--) {
+			if (index.getId(j) == index.getId(i)) {
+				return false;
+			}
+		}
+		for (int j = i + 1; j < end && index.getStart(j) == index.getStart(i); j++) {
+			if (index.getId(j) == index.getId(i)) {
+				return true;
+			}
+		}
+		return false;
+
+	}
+
+	// -------------------------------------------------------------------------
 
 } // AssemblyMultipleOverlap
@@ -17,6 +17,8 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
@@ -24,6 +26,8 @@ import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
 
 /**
  * Check for any genes/exons that are suspiciously large; > 2Mb for genes, > 0.5Mb for exons. Length assumed to be end-start+1, i.e.
@@ -81,12 +85,41 @@ public class BigGeneExon extends SingleDatabaseTestCase {
 
 		Connection con = dbre.getConnection();
 
-		// gene - warning
-		String sql = "SELECT COUNT(*) FROM gene WHERE (seq_region_end-seq_region_start+1) >= " + GENE_WARN + " AND (seq_region_end-seq_region_start+1) < " + GENE_ERROR;
-		if (dbre.getType() == DatabaseType.SANGER_VEGA) {// for sangervega ignore genes that do not have source havana or WU
-			sql += " and (source='havana' or source='WU')";
+		GeneModelSnapshot snapshot;
+		try {
+			snapshot = GeneModelSnapshot.getSnapshot(dbre);
+		} catch (SqlUncheckedException e) {
+			ReportManager.problem(this, con, "Could not read the gene models: " + e.getMessage());
+			return false;
+		}
+
+		// for sangervega ignore genes that do not have source havana or WU
+		boolean sangerVega = dbre.getType() == DatabaseType.SANGER_VEGA;
+
+		int rows = 0;
+		List<String> longIDs = new ArrayList<String>();
+		List<String> enormousIDs = new ArrayList<String>();
+
+		for (int i = 0; i < snapshot.getGeneCount(); i++) {
+
+			if (sangerVega && !("havana".equalsIgnoreCase(snapshot.getGeneSource(i)) || "WU".equalsIgnoreCase(snapshot.getGeneSource(i)))) {
+				continue;
+			}
+
+			long length = (long) snapshot.getGeneEnd(i) - snapshot.getGeneStart(i) + 1;
+			if (length >= GENE_WARN && length < GENE_ERROR) {
+				rows++;
+			}
+			if (length >= GENE_ERROR) {
+				longIDs.add(Long.toString(snapshot.getGeneId(i)));
+			}
+			if (length >= GENE_ENORMOUS) {
+				enormousIDs.add(Long.toString(snapshot.getGeneId(i)));
+			}
+
 		}
-		int rows = DBUtils.getRowCount(con, sql);
+
+		// gene - warning
 		if (rows > 0) {
 
 			ReportManager.info(this, con, rows + " genes are longer than " + GENE_WARN + " bases but less than " + GENE_ERROR + " bases");
@@ -98,17 +131,10 @@ public class BigGeneExon extends SingleDatabaseTestCase {
 		}
 
 		// gene - error
-		sql = "SELECT gene_id FROM gene WHERE (seq_region_end-seq_region_start+1) >= " + GENE_ERROR;
-		if (dbre.getType() == DatabaseType.SANGER_VEGA) {// for sangervega ignore genes that do not have source havana or WU
-			sql += " and (source='havana' or source='WU')";
-		}
+		if (longIDs.size() > 0) {
 
-		String[] longIDs = DBUtils.getColumnValues(con, sql);
-
-		if (longIDs.length > 0) {
-
-			String s = longIDs.length > 1 ? "s are " : " is ";
-			ReportManager.problem(this, con, longIDs.length + " gene" + s + "longer than " + GENE_ERROR + " bases");
+			String s = longIDs.size() > 1 ? "s are " : " is ";
+			ReportManager.problem(this, con, longIDs.size() + " gene" + s + "longer than " + GENE_ERROR + " bases");
 			printLongGeneDetails(con, longIDs);
 			result = false;
 
@@ -119,18 +145,11 @@ public class BigGeneExon extends SingleDatabaseTestCase {
 		}
 
 		// gene - really long
-		sql = "SELECT gene_id FROM gene WHERE (seq_region_end-seq_region_start+1) >= " + GENE_ENORMOUS;
-		if (dbre.getType() == DatabaseType.SANGER_VEGA) {// for sangervega ignore genes that do not have source havana or WU
-			sql += " and (source='havana' or source='WU')";
-		}
+		if (enormousIDs.size() > 0) {
 
-		longIDs = DBUtils.getColumnValues(con, sql);
-
-		if (longIDs.length > 0) {
-
-			String s = longIDs.length > 1 ? "s are " : " is ";
-			ReportManager.problem(this, con, longIDs.length + " gene" + s + "longer than " + GENE_ENORMOUS + " bases - this can't be right!");
-			printLongGeneDetails(con, longIDs);
+			String s = enormousIDs.size() > 1 ? "s are " : " is ";
+			ReportManager.problem(this, con, enormousIDs.size() + " gene" + s + "longer than " + GENE_ENORMOUS + " bases - this can't be right!");
+			printLongGeneDetails(con, enormousIDs);
 			result = false;
 
 		} else {
@@ -140,9 +159,13 @@ public class BigGeneExon extends SingleDatabaseTestCase {
 		}
 
 		// exon - error
-		sql = "SELECT COUNT(*) FROM exon WHERE (seq_region_end-seq_region_start+1) >= " + EXON_ERROR;
+		rows = 0;
+		for (int i = 0; i < snapshot.getExonCount(); i++) {
+			if ((long) snapshot.getExonEnd(i) - snapshot.getExonStart(i) + 1 >= EXON_ERROR) {
+				rows++;
+			}
+		}
 
-		rows = DBUtils.getRowCount(con, sql);
 		if (rows > 0) {
 
 			ReportManager.problem(this, con, rows + " exons are longer than " + EXON_ERROR + " bases");
@@ -160,11 +183,9 @@ public class BigGeneExon extends SingleDatabaseTestCase {
 
 	// ------------------------------------------------------------------------------------
 
-	private void printLongGeneDetails(Connection con, String[] longIDs) {
-
-		for (int i = 0; i < longIDs.length; i++) {
+	private void printLongGeneDetails(Connection con, List<String> longIDs) {
 
-			String id = longIDs[i];
+		for (String id : longIDs) {
 
 			// can't do one single query as not all genes may have
 			// display_xrefs/descriptions
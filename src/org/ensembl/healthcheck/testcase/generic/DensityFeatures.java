@@ -30,6 +30,7 @@ import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.LongKeyedMap;
 import org.ensembl.healthcheck.util.SqlTemplate;
 
 
@@ -152,6 +153,30 @@ public class DensityFeatures extends SingleDatabaseTestCase {
 
 			ResultSet rs = stmt.executeQuery("SELECT s.seq_region_id, s.name, CASE WHEN ae.seq_region_id IS NULL THEN 0 ELSE 1 END as exception FROM seq_region_attrib sa, attrib_type at, seq_region s LEFT JOIN assembly_exception ae ON s.seq_region_id = ae.seq_region_id WHERE s.seq_region_id = sa.seq_region_id AND sa.attrib_type_id = at.attrib_type_id AND at.code = 'karyotype_rank' AND coord_system_id=" + topLevelCSID + " AND (exc_type IN ('HAP', 'PAR') or exc_type IS NULL) GROUP BY s.seq_region_id, s.name, exception");
 
+			// fetch everything needed for the per-region checks up front, one
+			// grouped query per table / analysis rather than several per region
+			LongKeyedMap dfCounts = getLongMap(con, "SELECT seq_region_id, COUNT(*) FROM density_feature GROUP BY seq_region_id");
+
+			Map<String, LongKeyedMap> densitySums = new HashMap<String, LongKeyedMap>();
+			Map<String, LongKeyedMap> attribValues = new HashMap<String, LongKeyedMap>();
+			Iterator it = logicNameToAttribCode.keySet().iterator();
+			while (it.hasNext()) {
+
+				String logicName = (String) it.next();
+				String attribCode = (String) logicNameToAttribCode.get(logicName);
+
+				// check if this species has appropriate density features
+				int analRows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM analysis WHERE logic_name='" + logicName + "'");
+				if (analRows == 0) {
+					logger.fine(DBUtils.getShortDatabaseName(con) + " has no " + logicName + " analysis type, skipping checks for these features");
+					continue;
+				}
+
+				densitySums.put(logicName, getLongMap(con, "SELECT df.seq_region_id, SUM(df.density_value) FROM density_type dt, density_feature df, analysis a WHERE dt.density_type_id=df.density_type_id AND dt.analysis_id=a.analysis_id AND a.logic_name=? GROUP BY df.seq_region_id", logicName));
+				attribValues.put(logicName, getLongMap(con, "SELECT sra.seq_region_id, sra.value FROM seq_region_attrib sra, attrib_type at WHERE sra.attrib_type_id=at.attrib_type_id AND at.code=?", attribCode));
+
+			}
+
 			int numTopLevel = 0;
                         int noDensity = 0;
 
@@ -162,67 +187,48 @@ public class DensityFeatures extends SingleDatabaseTestCase {
 				boolean assemblyException = rs.getBoolean("exception");
 				logger.fine("Counting density features on seq_region " + seqRegionName);
 
-				sql = "SELECT COUNT(*) FROM density_feature WHERE seq_region_id=" + seqRegionID;
-				int dfRows = DBUtils.getRowCount(con, sql);
-				if (dfRows == 0) {
+				if (dfCounts.get(seqRegionID, 0) == 0) {
 
                                         noDensity++;
 				}
 
 				// check each analysis type
-				Iterator it = logicNameToAttribCode.keySet().iterator();
+				it = densitySums.keySet().iterator();
 				while (it.hasNext()) {
 
 					String logicName = (String) it.next();
 					String attribCode = (String) logicNameToAttribCode.get(logicName);
 
-					// check if this species has appropriate density features
-					int analRows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM analysis WHERE logic_name='" + logicName + "'");
-					if (analRows == 0) {
-						logger.fine(DBUtils.getShortDatabaseName(con) + " has no " + logicName + " analysis type, skipping checks for these features");
-					} else {
-
-						// check that the sum of the density_feature.density_value matches
-						// what
-						// is in the seq_region_attrib table
-
-						logger.fine("Comparing density_feature.density_value with seq_region_attrib for " + logicName + " features on " + seqRegionName);
-
-						sql = "SELECT SUM(df.density_value) FROM density_type dt, density_feature df, analysis a WHERE dt.density_type_id=df.density_type_id AND dt.analysis_id=a.analysis_id AND a.logic_name='"
-								+ logicName + "' AND seq_region_id=" + seqRegionID;
-
-						String sumDF = DBUtils.getRowColumnValue(con, sql);
-						// System.out.println(sql + " " + sumDF);
-						//don't check the sum for haplotypes or PAR regions
-						if (sumDF != null && sumDF.length() > 0 && !assemblyException) {
+					// check that the sum of the density_feature.density_value matches
+					// what is in the seq_region_attrib table
 
-							long sumFromDensityFeature = Long.parseLong(sumDF);
+					logger.fine("Comparing density_feature.density_value with seq_region_attrib for " + logicName + " features on " + seqRegionName);
 
-							sql = "SELECT value FROM seq_region_attrib sra, attrib_type at WHERE sra.attrib_type_id=at.attrib_type_id AND at.code='" + attribCode + "' AND seq_region_id=" + seqRegionID;
+					LongKeyedMap sums = densitySums.get(logicName);
+					//don't check the sum for haplotypes or PAR regions
+					if (sums.containsKey(seqRegionID) && !assemblyException) {
 
-							String sumSRA = DBUtils.getRowColumnValue(con, sql);
-							// System.out.println(sql + " " + sumSRA);
-							if (sumSRA != null && sumSRA.length() > 0) {
+						long sumFromDensityFeature = sums.get(seqRegionID, 0);
 
-								long valueFromSeqRegionAttrib = Long.parseLong(sumSRA);
+						LongKeyedMap values = attribValues.get(logicName);
+						if (values.containsKey(seqRegionID)) {
 
-								if (Math.abs(sumFromDensityFeature - valueFromSeqRegionAttrib) > 1000) { // allow a bit of leeway
+							long valueFromSeqRegionAttrib = values.get(seqRegionID, 0);
 
-									ReportManager.problem(this, con, "Sum of values for " + logicName + " from density_feature (" + sumFromDensityFeature + ") doesn't agree with value from seq_region_attrib ("
-											+ valueFromSeqRegionAttrib + ") for " + seqRegionName);
-									result = false;
+							if (Math.abs(sumFromDensityFeature - valueFromSeqRegionAttrib) > 1000) { // allow a bit of leeway
 
-								}
+								ReportManager.problem(this, con, "Sum of values for " + logicName + " from density_feature (" + sumFromDensityFeature + ") doesn't agree with value from seq_region_attrib ("
+										+ valueFromSeqRegionAttrib + ") for " + seqRegionName);
+								result = false;
 
-							} // if sumSRA
-                                                        if (sumSRA.length() == 0) {
-                                                                ReportManager.problem(this, con, seqRegionName + " has no seq_region_attrib for " + attribCode);
-                                                                result = false;
-                                                        }
+							}
 
-						} // if sumDF
+						} else {
+							ReportManager.problem(this, con, seqRegionName + " has no seq_region_attrib for " + attribCode);
+							result = false;
+						}
 
-					} // if rows
+					} // if sums
 
 				} // while it
 
@@ -18,14 +18,14 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.util.Arrays;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
 
 /**
  * An EnsEMBL Healthcheck test case which checks all exon of a gene are on the same strand and in the correct order in their
@@ -74,71 +74,49 @@ public class DuplicateExons extends SingleDatabaseTestCase {
 
 		boolean result = true;
 
-		String sql = "SELECT e.exon_id, e.phase, e.seq_region_start AS start, e.seq_region_end AS end, e.seq_region_id AS chromosome_id, e.end_phase, e.seq_region_strand AS strand "
-				+ ", t.gene_id AS gene_id " + "  FROM exon e, exon_transcript et, transcript t " + " WHERE e.exon_id=et.exon_id and et.transcript_id = t.transcript_id "
-				+ " ORDER BY chromosome_id, gene_id, strand, start, end, phase, end_phase";
-
 		Connection con = dbre.getConnection();
 		try {
 
-			Statement stmt = con.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_READ_ONLY);
-			stmt.setFetchSize(1000);
-			ResultSet rs = stmt.executeQuery(sql);
-
-			int exonStart, exonEnd, exonPhase, exonChromosome, exonID, exonEndPhase, exonStrand, exonGeneId;
-			int lastExonStart = -1;
-			int lastExonEnd = -1;
-			int lastExonPhase = -1;
-			int lastExonChromosome = -1;
-			int lastExonEndPhase = -1;
-			int lastExonStrand = -1;
-			int lastExonID = -1;
-			int lastExonGeneId = -1;
+			GeneModelSnapshot snapshot = GeneModelSnapshot.getSnapshot(dbre);
+
+			// one entry per exon_transcript row whose exon and transcript both exist,
+			// ordered as chromosome_id, gene_id, strand, start, end, phase, end_phase
+			int n = 0;
+			int[] rows = new int[snapshot.getExonTranscriptCount()];
+			for (int row = 0; row < rows.length; row++) {
+				if (snapshot.getExonTranscriptExon(row) >= 0 && snapshot.getExonTranscriptTranscript(row) >= 0) {
+					rows[n++] = row;
+				}
+			}
+			rows = Arrays.copyOf(rows, n);
+			sortRows(snapshot, rows, new int[n], 0, n);
+
 			int duplicateExon = 0;
 
-			boolean first = true;
-
-			while (rs.next()) {
-
-				// load the vars
-				exonID = rs.getInt("exon_id");
-				exonPhase = rs.getInt("phase");
-				exonStart = rs.getInt("start");
-				exonEnd = rs.getInt("end");
-				exonChromosome = rs.getInt("chromosome_id");
-				exonEndPhase = rs.getInt("end_phase");
-				exonStrand = rs.getInt("strand");
-				exonGeneId = rs.getInt("gene_id");
-
-				if (!first) {
-					if (lastExonChromosome == exonChromosome && lastExonStart == exonStart && lastExonEnd == exonEnd && lastExonPhase == exonPhase && lastExonStrand == exonStrand
-							&& lastExonEndPhase == exonEndPhase && lastExonGeneId != exonGeneId) {
-						duplicateExon++;
-						if (duplicateExon <= MAX_WARNINGS) {
-							ReportManager.warning(this, con, "Exon " + exonID + " in gene " + exonGeneId + " is a duplicate of exon " + lastExonID);
-						}
+			for (int i = 1; i < rows.length; i++) {
+
+				int row = rows[i];
+				int lastRow = rows[i - 1];
+				int exon = snapshot.getExonTranscriptExon(row);
+				int lastExon = snapshot.getExonTranscriptExon(lastRow);
+				long exonGeneId = geneId(snapshot, row);
+
+				if (snapshot.getExonSeqRegionId(lastExon) == snapshot.getExonSeqRegionId(exon) && snapshot.getExonStart(lastExon) == snapshot.getExonStart(exon)
+						&& snapshot.getExonEnd(lastExon) == snapshot.getExonEnd(exon) && snapshot.getExonPhase(lastExon) == snapshot.getExonPhase(exon)
+						&& snapshot.getExonStrand(lastExon) == snapshot.getExonStrand(exon) && snapshot.getExonEndPhase(lastExon) == snapshot.getExonEndPhase(exon)
+						&& geneId(snapshot, lastRow) != exonGeneId) {
+					duplicateExon++;
+					if (duplicateExon <= MAX_WARNINGS) {
+						ReportManager.warning(this, con, "Exon " + snapshot.getExonId(exon) + " in gene " + exonGeneId + " is a duplicate of exon " + snapshot.getExonId(lastExon));
 					}
-				} else {
-					first = false;
 				}
 
-				lastExonStart = exonStart;
-				lastExonEnd = exonEnd;
-				lastExonChromosome = exonChromosome;
-				lastExonPhase = exonPhase;
-				lastExonEndPhase = exonEndPhase;
-				lastExonStrand = exonStrand;
-				lastExonID = exonID;
-				lastExonGeneId = exonGeneId;
-
-			} // while rs
+			}
 
 			if (duplicateExon > 0) {
 				ReportManager.problem(this, con, "Has at least " + duplicateExon + " duplicated exons.");
 				result = false;
 			}
-			rs.close();
-			stmt.close();
 
 		} catch (Exception e) {
 			result = false;
@@ -153,4 +131,79 @@ public class DuplicateExons extends SingleDatabaseTestCase {
 
 	}
 
+	/**
+	 * Merge sort of exon_transcript rows [lo, hi) without boxing them.
+	 */
+	private static void sortRows(GeneModelSnapshot snapshot, int[] rows, int[] tmp, int lo, int hi) {
+
+		if (hi - lo < 2) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		sortRows(snapshot, rows, tmp, lo, mid);
+		sortRows(snapshot, rows, tmp, mid, hi);
+		if (compareRows(snapshot, rows[mid - 1], rows[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(rows, lo, tmp, lo, hi - lo);
+		int i = lo;
+		int j = mid;
+		for (int k = lo; k < hi; k++) {
+			if (j >= hi || (i < mid && compareRows(snapshot, tmp[i], tmp[j]) <= 0)) {
+				rows[k] = tmp[i++];
+			} else {
+				rows[k] = tmp[j++];
+			}
+		}
+
+	}
+
+	private static int compareRows(GeneModelSnapshot snapshot, int row1, int row2) {
+
+		int e1 = snapshot.getExonTranscriptExon(row1);
+		int e2 = snapshot.getExonTranscriptExon(row2);
+		int c = compareInts(snapshot.getExonSeqRegionId(e1), snapshot.getExonSeqRegionId(e2));
+		if (c == 0) {
+			c = compareLongs(geneId(snapshot, row1), geneId(snapshot, row2));
+		}
+		if (c == 0) {
+			c = compareInts(snapshot.getExonStrand(e1), snapshot.getExonStrand(e2));
+		}
+		if (c == 0) {
+			c = compareInts(snapshot.getExonStart(e1), snapshot.getExonStart(e2));
+		}
+		if (c == 0) {
+			c = compareInts(snapshot.getExonEnd(e1), snapshot.getExonEnd(e2));
+		}
+		if (c == 0) {
+			c = compareInts(snapshot.getExonPhase(e1), snapshot.getExonPhase(e2));
+		}
+		if (c == 0) {
+			c = compareInts(snapshot.getExonEndPhase(e1), snapshot.getExonEndPhase(e2));
+		}
+		return c;
+
+	}
+
+	/**
+	 * The gene_id column of the transcript of an exon_transcript row.
+	 */
+	private static long geneId(GeneModelSnapshot snapshot, int row) {
+
+		return snapshot.getTranscriptGeneId(snapshot.getExonTranscriptTranscript(row));
+
+	}
+
+	private static int compareInts(int a, int b) {
+
+		return a < b ? -1 : (a == b ? 0 : 1);
+
+	}
+
+	private static int compareLongs(long a, long b) {
+
+		return a < b ? -1 : (a == b ? 0 : 1);
+
+	}
+
 } // DuplicateExons
@@ -29,13 +29,15 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
+import java.util.Arrays;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
 
 /**
  * Look for entries in the exon_transcript table that are duplicates apart from the rank.
@@ -80,7 +82,15 @@ public class ExonRank extends SingleDatabaseTestCase {
 
 		Connection con = dbre.getConnection();
 
-		int rows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM exon_transcript et1, exon_transcript et2 WHERE et1.exon_id=et2.exon_id AND et1.transcript_id=et2.transcript_id AND et1.rank != et2.rank");
+		GeneModelSnapshot snapshot;
+		try {
+			snapshot = GeneModelSnapshot.getSnapshot(dbre);
+		} catch (SqlUncheckedException e) {
+			ReportManager.problem(this, con, "Could not read the gene models: " + e.getMessage());
+			return false;
+		}
+
+		int rows = countRepeatedExons(snapshot);
 
 		if (rows > 0) {
 
@@ -98,6 +108,47 @@ public class ExonRank extends SingleDatabaseTestCase {
 	} // run
 
 	// ----------------------------------------------------------------------
+	/**
+	 * Equivalent of SELECT COUNT(*) FROM exon_transcript et1, exon_transcript et2
+	 * WHERE et1.exon_id=et2.exon_id AND et1.transcript_id=et2.transcript_id AND
+	 * et1.rank != et2.rank, i.e. each exon that appears k times in a transcript
+	 * contributes k*(k-1) rows.
+	 */
+	private int countRepeatedExons(GeneModelSnapshot snapshot) {
+
+		int rows = 0;
+
+		int row = 0;
+		while (row < snapshot.getExonTranscriptCount()) {
+
+			int end = snapshot.getExonTranscriptBlockEnd(row);
+
+			long[] exonIDs = new long[end - row];
+			for (int i = row; i < end; i++) {
+				exonIDs[i - row] = snapshot.getExonTranscriptExonId(i);
+			}
+			Arrays.sort(exonIDs);
+
+			int i = 0;
+			while (i < exonIDs.length) {
+				int j = i + 1;
+				while (j < exonIDs.length && exonIDs[j] == exonIDs[i]) {
+					j++;
+				}
+				int k = j - i;
+				rows += k * (k - 1);
+				i = j;
+			}
+
+			row = end;
+
+		}
+
+		return rows;
+
+	}
+
+	// ----------------------------------------------------------------------
 
 } // ExonRank
 
@@ -18,15 +18,13 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
 
 /**
  * An EnsEMBL Healthcheck test case which checks all exon of a gene are on the same strand and in the correct order in their
@@ -73,55 +71,9 @@ public class ExonStrandOrder extends SingleDatabaseTestCase {
 
 		int singleExonTranscripts = 0, transcriptCount = 0;
 
-		String sql = "SELECT g.gene_id, g.seq_region_start, g.seq_region_end, g.seq_region_strand, tr.transcript_id, tr.seq_region_start, tr.seq_region_end, tr.seq_region_strand,e.exon_id, e.seq_region_start, e.seq_region_end, e.seq_region_strand, et.rank,  g.stable_id, tr.stable_id "
-				+ "FROM   gene g, transcript tr, exon_transcript et, exon e "
-				+ "WHERE  e.exon_id = et.exon_id "
-				+ "AND    et.transcript_id = tr.transcript_id "
-				+ "AND    tr.gene_id = g.gene_id " + "ORDER BY et.transcript_id, et.rank";
-/*
-
-The sql is:
-
-SELECT 
-	g.gene_id, 
-	g.seq_region_start, 
-	g.seq_region_end, 
-	g.seq_region_strand, 
-	tr.transcript_id, 
-	tr.seq_region_start, 
-	tr.seq_region_end, 
-	tr.seq_region_strand,
-	e.exon_id, 
-	e.seq_region_start, 
-	e.seq_region_end, 
-	e.seq_region_strand, 
-	et.rank, 
-	gsi.stable_id, 
-	tsi.stable_id
-FROM   
-	gene g, 
-	transcript tr, 
-	exon_transcript et, 
-	exon e, 
-	gene_stable_id gsi, 
-	transcript_stable_id tsi 
-WHERE  
-	e.exon_id = et.exon_id 
-	AND    et.transcript_id = tr.transcript_id  
-	AND    tr.gene_id = g.gene_id 
-	AND    g.gene_id = gsi.gene_id  
-	AND    tr.transcript_id=tsi.transcript_id 
-ORDER BY 
-	et.transcript_id, et.rank
-
- */
 		Connection con = dbre.getConnection();
-		Statement st = null;
-		ResultSet rs = null;
 		try {
-			st = con.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_READ_ONLY);
-			st.setFetchSize(Integer.MIN_VALUE);
-			rs = st.executeQuery(sql);
+			GeneModelSnapshot snapshot = GeneModelSnapshot.getSnapshot(dbre);
 
 			long lastTranscriptID = -1;
 			long lastExonStart = -1;
@@ -130,25 +82,26 @@ ORDER BY
 			long lastExonID = -1;
 			int lastExonRank = 0;
 
-			// ResultSet is ordered by transcript ID and rank, so we can loop through
-			// and look at the grouped exons for each transcript
-			while (rs.next()) {
-
-				long geneID = rs.getLong(1);
-				// long geneStart = rs.getLong(2);
-				// long geneEnd = rs.getLong(3);
-				// int geneStrand = rs.getInt(4);
-				long transcriptID = rs.getLong(5);
-				long transcriptStart = rs.getLong(6);
-				long transcriptEnd = rs.getLong(7);
-				int transcriptStrand = rs.getInt(8);
-				long exonID = rs.getLong(9);
-				long exonStart = rs.getLong(10);
-				long exonEnd = rs.getLong(11);
-				int exonStrand = rs.getInt(12);
-				int exonRank = rs.getInt(13);
-				String geneStableID = rs.getString(14);
-				String transcriptStableID = rs.getString(15);
+			// exon_transcript rows are ordered by transcript ID and rank, so we can loop
+			// through and look at the grouped exons for each transcript
+			for (int row = 0; row < snapshot.getExonTranscriptCount(); row++) {
+
+				int transcript = snapshot.getExonTranscriptTranscript(row);
+				int exon = snapshot.getExonTranscriptExon(row);
+				if (transcript < 0 || exon < 0 || snapshot.getTranscriptGene(transcript) < 0) {
+					continue;
+				}
+				int gene = snapshot.getTranscriptGene(transcript);
+
+				long geneID = snapshot.getGeneId(gene);
+				long transcriptID = snapshot.getTranscriptId(transcript);
+				int transcriptStrand = snapshot.getTranscriptStrand(transcript);
+				long exonID = snapshot.getExonId(exon);
+				long exonStart = snapshot.getExonStart(exon);
+				long exonEnd = snapshot.getExonEnd(exon);
+				int exonStrand = snapshot.getExonStrand(exon);
+				int exonRank = snapshot.getExonTranscriptRank(row);
+				String geneStableID = snapshot.getGeneStableId(gene);
 
 				if ("CG32491".equalsIgnoreCase(geneStableID)) {
 					continue;
@@ -226,7 +179,7 @@ ORDER BY
 
 				}
 
-			} // while rs
+			} // for row
 			
 			if ((double) singleExonTranscripts / transcriptCount > 0.2) {
 				ReportManager.warning(this, con, "High single exon transcript count. (" + singleExonTranscripts + "/" + transcriptCount + ")");
@@ -234,10 +187,6 @@ ORDER BY
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		finally {
-			DBUtils.closeQuietly(rs);
-			DBUtils.closeQuietly(st);
-		}
 		ReportManager.correct(this, con, "Exon strand order seems OK");
 
 		return result;
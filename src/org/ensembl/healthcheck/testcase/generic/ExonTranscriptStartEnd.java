@@ -18,15 +18,13 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
 
 /**
  * Check that the start and end of genes and transcripts make sense.
@@ -72,33 +70,46 @@ public class ExonTranscriptStartEnd extends SingleDatabaseTestCase {
 		// transcript's start
 		// and that the maximum exon seq_region_start in a transcript it the same as the
 		// transcript's end
-		// The SQL below will return cases where this is not true
-		String sql = " SELECT tr.transcript_id, e.exon_id, tr.seq_region_start AS transcript_start, tr.seq_region_end AS transcript_end, MIN(e.seq_region_start) as min_exon_start, MAX(e.seq_region_end) AS max_exon_end FROM exon e, transcript tr, exon_transcript et WHERE e.exon_id=et.exon_id AND et.transcript_id=tr.transcript_id GROUP BY et.transcript_id HAVING min_exon_start != transcript_start OR max_exon_end != transcript_end ";
-
 		Connection con = dbre.getConnection();
-		Statement stmt = null;
-		ResultSet rs = null;
-		
+
 		try {
 
-			stmt = dbre.getConnection().createStatement();
-			rs = stmt.executeQuery(sql);
+			GeneModelSnapshot snapshot = GeneModelSnapshot.getSnapshot(dbre);
 
-			while (rs.next()) {
-				ReportManager.problem(this, con, "Min/max exon start/ends do not agree with transcript start/end in transcript " + rs.getLong(1));
-				result = false;
-			}
+			int row = 0;
+			while (row < snapshot.getExonTranscriptCount()) {
+
+				int end = snapshot.getExonTranscriptBlockEnd(row);
+				int transcript = snapshot.getExonTranscriptTranscript(row);
+
+				if (transcript >= 0) {
 
-			rs.close();
-			stmt.close();
+					long minExonStart = Long.MAX_VALUE;
+					long maxExonEnd = Long.MIN_VALUE;
+					boolean hasExons = false;
+					for (int i = row; i < end; i++) {
+						int exon = snapshot.getExonTranscriptExon(i);
+						if (exon >= 0) {
+							minExonStart = Math.min(minExonStart, snapshot.getExonStart(exon));
+							maxExonEnd = Math.max(maxExonEnd, snapshot.getExonEnd(exon));
+							hasExons = true;
+						}
+					}
+
+					if (hasExons && (minExonStart != snapshot.getTranscriptStart(transcript) || maxExonEnd != snapshot.getTranscriptEnd(transcript))) {
+						ReportManager.problem(this, con, "Min/max exon start/ends do not agree with transcript start/end in transcript " + snapshot.getTranscriptId(transcript));
+						result = false;
+					}
+
+				}
+
+				row = end;
+
+			}
 
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		finally {
-			DBUtils.closeQuietly(rs);
-			DBUtils.closeQuietly(stmt);
-		}
 
 		if (result) {
 			ReportManager.correct(this, con, "All exon/transcript start/ends agree");
@@ -18,8 +18,8 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
@@ -27,6 +27,7 @@ import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Species;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
 
 /**
  * Check that the start and end of genes and transcripts make sense.
@@ -76,31 +77,51 @@ public class GeneTranscriptStartEnd extends SingleDatabaseTestCase {
 		// and that the highest transcript end of a gene's transcripts is the same
 		// as the gene's
 		// end
-		// the SQL below will return any where this is /not/ the case
-		String sql = "SELECT g.gene_id, g.stable_id, g.seq_region_start AS gene_start, g.seq_region_end AS gene_end, MIN(tr.seq_region_start) AS min_transcript_start, MAX(tr.seq_region_end) AS max_transcript_end FROM gene g, transcript tr WHERE tr.gene_id=g.gene_id GROUP BY tr.gene_id HAVING (gene_start <> min_transcript_start OR gene_end <> max_transcript_end)";
 
 		Connection con = dbre.getConnection();
 
 		try {
 
-			Statement stmt = con.createStatement();
-			ResultSet rs = stmt.executeQuery(sql);
+			GeneModelSnapshot snapshot = GeneModelSnapshot.getSnapshot(dbre);
 
-			rs.beforeFirst();
+			int geneCount = snapshot.getGeneCount();
+			int[] minTranscriptStart = new int[geneCount];
+			int[] maxTranscriptEnd = new int[geneCount];
+			boolean[] hasTranscripts = new boolean[geneCount];
+
+			for (int transcript = 0; transcript < snapshot.getTranscriptCount(); transcript++) {
+				int gene = snapshot.getTranscriptGene(transcript);
+				if (gene < 0) {
+					continue;
+				}
+				int start = snapshot.getTranscriptStart(transcript);
+				int end = snapshot.getTranscriptEnd(transcript);
+				if (!hasTranscripts[gene]) {
+					minTranscriptStart[gene] = start;
+					maxTranscriptEnd[gene] = end;
+					hasTranscripts[gene] = true;
+				} else {
+					minTranscriptStart[gene] = Math.min(minTranscriptStart[gene], start);
+					maxTranscriptEnd[gene] = Math.max(maxTranscriptEnd[gene], end);
+				}
+			}
+
+			List<Integer> badGenes = new ArrayList<Integer>();
+			for (int gene = 0; gene < geneCount; gene++) {
+				if (hasTranscripts[gene] && (snapshot.getGeneStart(gene) != minTranscriptStart[gene] || snapshot.getGeneEnd(gene) != maxTranscriptEnd[gene])) {
+					badGenes.add(gene);
+				}
+			}
 
 			// gene GC32491 in drosophila is allowed to have all sorts of things wrong
 			// with it
-			if (rs != null && !rs.isAfterLast() && rs.next() && dbre.getSpecies() != Species.DROSOPHILA_MELANOGASTER && rs.getString("stable_id") != null
-					&& !rs.getString("stable_id").equalsIgnoreCase("CG32491")) {
-
-				ReportManager.problem(this, con, "Gene ID " + rs.getLong(1) + " has start/end that does not agree with transcript start/end");
-				startEndResult = false;
+			if (!badGenes.isEmpty() && dbre.getSpecies() != Species.DROSOPHILA_MELANOGASTER && snapshot.getGeneStableId(badGenes.get(0)) != null
+					&& !snapshot.getGeneStableId(badGenes.get(0)).equalsIgnoreCase("CG32491")) {
 
-				while (rs.next()) {
-					ReportManager.problem(this, con, "Gene ID " + rs.getLong(1) + " has start/end that does not agree with transcript start/end");
+				for (int gene : badGenes) {
+					ReportManager.problem(this, con, "Gene ID " + snapshot.getGeneId(gene) + " has start/end that does not agree with transcript start/end");
 					startEndResult = false;
 				}
-				rs.close();
 
 				if (startEndResult) {
 					ReportManager.correct(this, con, "All gene/transcript start/end agree");
@@ -108,15 +129,13 @@ public class GeneTranscriptStartEnd extends SingleDatabaseTestCase {
 
 				// also check that all gene's transcripts have the same strand as the
 				// gene
-				sql = "SELECT g.gene_id FROM gene g, transcript tr WHERE tr.gene_id=g.gene_id AND tr.seq_region_strand != g.seq_region_strand";
-				rs = stmt.executeQuery(sql);
-
-				while (rs.next()) {
-					ReportManager.problem(this, con, "Gene ID " + rs.getLong(1) + " has strand that does not agree with transcript strand");
-					strandResult = false;
+				for (int transcript = 0; transcript < snapshot.getTranscriptCount(); transcript++) {
+					int gene = snapshot.getTranscriptGene(transcript);
+					if (gene >= 0 && snapshot.getTranscriptStrand(transcript) != snapshot.getGeneStrand(gene)) {
+						ReportManager.problem(this, con, "Gene ID " + snapshot.getGeneId(gene) + " has strand that does not agree with transcript strand");
+						strandResult = false;
+					}
 				}
-				rs.close();
-				stmt.close();
 
 				if (strandResult) {
 					ReportManager.correct(this, con, "All gene/transcript strands agree");
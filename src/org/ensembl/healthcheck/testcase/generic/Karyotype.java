@@ -23,10 +23,6 @@
 package org.ensembl.healthcheck.testcase.generic;
 
 import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.PreparedStatement;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -39,8 +35,8 @@ import org.ensembl.healthcheck.Species;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.LongKeyedMap;
 import org.ensembl.healthcheck.util.SqlTemplate;
-import org.apache.commons.collections.ListUtils;
 import org.ensembl.healthcheck.util.CollectionUtils;
 
 
@@ -119,49 +115,41 @@ public class Karyotype extends SingleDatabaseTestCase {
                 Connection con = dbre.getConnection();
                 boolean result = true;
 
-                 String[] seqRegionNames = DBUtils.getColumnValues(con,
-                                "SELECT s.name FROM seq_region s, coord_system cs WHERE s.coord_system_id=cs.coord_system_id AND cs.name='chromosome' AND cs.attrib='default_version' AND s.name NOT LIKE 'LRG%' AND s.name != 'MT'");
+                 List<String[]> seqRegions = DBUtils.getRowValuesList(con,
+                                "SELECT s.seq_region_id, s.name, s.length FROM seq_region s, coord_system cs WHERE s.coord_system_id=cs.coord_system_id AND cs.name='chromosome' AND cs.attrib='default_version' AND s.name NOT LIKE 'LRG%' AND s.name != 'MT'");
 
                  String[] patches = DBUtils.getColumnValues(con, "SELECT sr.name FROM seq_region sr, assembly_exception ae WHERE sr.seq_region_id=ae.seq_region_id AND ae.exc_type IN ('PATCH_NOVEL', 'PATCH_FIX', 'HAP')");
                  List<String> patchList = Arrays.asList(patches);
-                 List<String> nonPatchSeqRegions = ListUtils.removeAll(Arrays.asList(seqRegionNames), patchList);
+
+                 // one grouped query for all chromosomes rather than one per chromosome
+                 LongKeyedMap karyotypeEnds = getLongMap(con, "SELECT seq_region_id, MAX(seq_region_end) FROM karyotype GROUP BY seq_region_id");
 
 		int count = 0;
-		try {
-			PreparedStatement stmt = con.prepareStatement("SELECT sr.name, MAX(kar.seq_region_end), sr.length FROM seq_region sr, karyotype kar WHERE sr.seq_region_id=kar.seq_region_id AND sr.name = ? GROUP BY kar.seq_region_id");
-
-                        for (String seqRegion : seqRegionNames) {
-                                stmt.setString(1, seqRegion);
-        			ResultSet rs = stmt.executeQuery();
-                                boolean hasKaryotype = false;
-                                while (rs.next() && count < 50) {
-                                        hasKaryotype = true;
-                                        if (patchList.contains(seqRegion)) { continue; }
-		        		String chrName = rs.getString(1);
-			        	int karLen = rs.getInt(2);
-				        int chrLen = rs.getInt(3);
-       					String prob = "";
-        				int bp = 0;
-	        			if (karLen > chrLen) {
-		        			bp = karLen - chrLen;
-			        		prob = "longer";
-				        } else {
-       						bp = chrLen - karLen;
-        					prob = "shorter";
-	        			}
-                                        if (bp > 0) {
-        		        		result = false;
-                                                count++;
-        					ReportManager.problem(this, con, "Chromosome " + chrName + " is " + bp + "bp " + prob + " in the karyotype table than " + "in the seq_region table");
-                                        }
-                                }
-                                if (!hasKaryotype) {
-                                        result = false;
-                                        ReportManager.problem(this, con, "Chromosome " + seqRegion + " has no karyotype data");
-                                }
-			}
-		} catch (SQLException e) {
-			e.printStackTrace();
+                for (String[] seqRegion : seqRegions) {
+                        long seqRegionId = Long.parseLong(seqRegion[0]);
+                        String chrName = seqRegion[1];
+                        if (!karyotypeEnds.containsKey(seqRegionId)) {
+                                result = false;
+                                ReportManager.problem(this, con, "Chromosome " + chrName + " has no karyotype data");
+                                continue;
+                        }
+                        if (count >= 50 || patchList.contains(chrName)) { continue; }
+                        long karLen = karyotypeEnds.get(seqRegionId, 0);
+                        long chrLen = Long.parseLong(seqRegion[2]);
+                        String prob = "";
+                        long bp = 0;
+                        if (karLen > chrLen) {
+                                bp = karLen - chrLen;
+                                prob = "longer";
+                        } else {
+                                bp = chrLen - karLen;
+                                prob = "shorter";
+                        }
+                        if (bp > 0) {
+                                result = false;
+                                count++;
+                                ReportManager.problem(this, con, "Chromosome " + chrName + " is " + bp + "bp " + prob + " in the karyotype table than " + "in the seq_region table");
+                        }
 		}
 		if (count == 0) {
 			ReportManager.correct(this, con, "Chromosome lengths are the same" + " in karyotype and seq_region tables");
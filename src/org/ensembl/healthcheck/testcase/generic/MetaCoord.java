@@ -31,7 +31,7 @@ import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.LongKeyedMap;
 
 /**
  * Check that meta_coord table contains entries for all the coordinate systems that all the features are stored in.
@@ -76,26 +76,49 @@ public class MetaCoord extends SingleDatabaseTestCase {
 
 			Statement stmt = con.createStatement();
 
+			// read meta_coord once; count and max_length per table and coordinate system
+			Map<String, LongKeyedMap> metaCoordCounts = new HashMap<String, LongKeyedMap>();
+			Map<String, Map<Long, String>> metaCoordMaxLengths = new HashMap<String, Map<Long, String>>();
+			ResultSet mcrs = stmt.executeQuery("SELECT table_name, coord_system_id, max_length FROM meta_coord");
+			while (mcrs.next()) {
+				String tableName = mcrs.getString(1);
+				long coordSystemID = mcrs.getLong(2);
+				LongKeyedMap counts = metaCoordCounts.get(tableName);
+				if (counts == null) {
+					counts = new LongKeyedMap();
+					metaCoordCounts.put(tableName, counts);
+					metaCoordMaxLengths.put(tableName, new HashMap<Long, String>());
+				}
+				if (counts.increment(coordSystemID, 1) == 1) {
+					metaCoordMaxLengths.get(tableName).put(coordSystemID, mcrs.getString(3));
+				}
+			}
+			mcrs.close();
+
 			// build up a list of all the coordinate systems that are in the various feature tables
 			for (String tableName : featureTables) {
 				String sql = "";
 				if (dbre.getType() == DatabaseType.SANGER_VEGA) {
-					sql = "SELECT DISTINCT(sr.coord_system_id) FROM seq_region sr join coord_system cs on sr.coord_system_id = cs.coord_system_id, " + tableName
-							+ " f WHERE sr.seq_region_id = f.seq_region_id and cs.version like 'VEGA%' ";
+					sql = "SELECT sr.coord_system_id, ABS(MAX(f.seq_region_end - f.seq_region_start) + 1) FROM seq_region sr join coord_system cs on sr.coord_system_id = cs.coord_system_id, " + tableName
+							+ " f WHERE sr.seq_region_id = f.seq_region_id and cs.version like 'VEGA%' GROUP BY sr.coord_system_id";
 				} else {
-					sql = "SELECT DISTINCT(sr.coord_system_id) FROM seq_region sr, " + tableName + " f WHERE sr.seq_region_id = f.seq_region_id";
+					sql = "SELECT sr.coord_system_id, ABS(MAX(f.seq_region_end - f.seq_region_start) + 1) FROM seq_region sr, " + tableName + " f WHERE sr.seq_region_id = f.seq_region_id GROUP BY sr.coord_system_id";
 				}
 
 				logger.finest("Getting feature coordinate systems and max_length for " + tableName);
 				ResultSet rs = stmt.executeQuery(sql);
 
+				LongKeyedMap counts = metaCoordCounts.get(tableName);
+				Map<Long, String> maxLengths = metaCoordMaxLengths.get(tableName);
+
 				while (rs.next()) {
 
 					String coordSystemID = rs.getString(1);
+					long csID = rs.getLong(1);
 					logger.finest("Added feature coordinate system for " + tableName + ": " + coordSystemID);
 
 					// check that the meta_coord table has an entry corresponding to this
-					int mc = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM meta_coord WHERE coord_system_id=" + coordSystemID + " AND table_name='" + tableName + "'");
+					long mc = counts == null ? 0 : counts.get(csID, 0);
 
 					if (mc == 0) {
 
@@ -126,8 +149,11 @@ public class MetaCoord extends SingleDatabaseTestCase {
 					coordSystems.put(tableName, csList);
 									
 					// check that the max_length value in meta_coord corresponds to max feature length in each table per coord_system 
-					String mc_max_length = DBUtils.getRowColumnValue(con, "SELECT max_length FROM meta_coord WHERE coord_system_id=" + coordSystemID + " AND table_name='" + tableName + "'");					
-					String f_max_length = DBUtils.getRowColumnValue(con, "SELECT ABS(MAX(f.seq_region_end - f.seq_region_start) + 1) FROM " + tableName + " f JOIN seq_region s USING(seq_region_id) WHERE s.coord_system_id=" + coordSystemID);
+					String mc_max_length = maxLengths == null ? null : maxLengths.get(csID);
+					if (mc_max_length == null) {
+						mc_max_length = "";
+					}
+					String f_max_length = rs.getString(2);
 					
 					if (mc_max_length.equals(f_max_length)) {
 						ReportManager.correct(this, con, "max_length value correct for coordinate system with ID " + coordSystemID + " for table " + tableName + " in meta_coord");
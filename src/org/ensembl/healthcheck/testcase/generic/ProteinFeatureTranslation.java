@@ -29,11 +29,13 @@ import java.util.Map;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
 import org.ensembl.healthcheck.DatabaseType;
+import org.ensembl.healthcheck.ReportLine;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.Repair;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.KeySample;
 
 /**
  * An EnsEMBL Healthcheck test case which checks that the protein_feature table agrees with the translation table.
@@ -108,6 +110,13 @@ public class ProteinFeatureTranslation extends SingleDatabaseTestCase implements
 				return false; // shoud we return true or false in this case?
 			}
 
+			// in the pre-flight mode only look at random ranges of the
+			// translations, and at the features on them
+			KeySample sample = KeySample.isEnabled() ? KeySample.forColumn(con, "translation", "translation_id") : null;
+			if (sample != null) {
+				sql = sql.replace("ORDER  BY", "AND    " + sample.getCondition("tl") + " ORDER  BY");
+			}
+
 			// NOTE: By default the MM MySQL JDBC driver reads and stores *all*
 			// rows in the
 			// ResultSet.
@@ -187,12 +196,18 @@ public class ProteinFeatureTranslation extends SingleDatabaseTestCase implements
 			// find protein features where seq_end is > than the length of the
 			// translation
 			List thisDBFeatures = new ArrayList();
-			rs = stmt.executeQuery("SELECT protein_feature_id, translation_id, seq_end FROM protein_feature");
+			// the features looked at and too long in each sampled range
+			long[] featuresInRange = new long[sample != null ? sample.getRanges().length : 1];
+			long[] longInRange = new long[featuresInRange.length];
+			rs = stmt.executeQuery("SELECT protein_feature_id, translation_id, seq_end FROM protein_feature"
+					+ (sample != null ? " WHERE " + sample.getCondition("protein_feature") : ""));
 
 			while (rs.next()) {
 
 				Integer translationID = new Integer(rs.getInt("translation_id"));
 				Integer proteinFeatureID = new Integer(rs.getInt("protein_feature_id"));
+				int range = sample != null ? Math.max(0, sample.getRange(translationID.intValue())) : 0;
+				featuresInRange[range]++;
 
 				if (translationLengths.get(translationID) != null) {
 					// some codons can only be 2 bp
@@ -201,6 +216,7 @@ public class ProteinFeatureTranslation extends SingleDatabaseTestCase implements
 					// translationLengths.get(translationID)).intValue();
 					if (rs.getInt("seq_end") > minTranslationLength) {
 						thisDBFeatures.add(proteinFeatureID);
+						longInRange[range]++;
 						// System.out.println("proteinFeatureID: " + proteinFeatureID);
 					}
 				} else {
@@ -210,17 +226,31 @@ public class ProteinFeatureTranslation extends SingleDatabaseTestCase implements
 				}
 			}
 
-			featuresToDelete.put(DBUtils.getShortDatabaseName(con), thisDBFeatures);
-			if (thisDBFeatures.size() > THRESHOLD) {
-				ReportManager.problem(this, con, "protein_feature table has " + thisDBFeatures.size() + " features that are longer than the translation");
-				result = false;
-			} else if (thisDBFeatures.size() == 0) {
-				ReportManager.correct(this, con, "protein_feature table has no features that are longer than the translation");
+			rs.close();
+
+			if (sample != null) {
+				// the features found in a sample are not all there are to repair
+				KeySample.Estimate estimate = new KeySample.Estimate(longInRange, featuresInRange, DBUtils.getRowCount(con,
+						"SELECT COUNT(*) FROM protein_feature"));
+				if (estimate.getEstimatedViolations() > THRESHOLD) {
+					ReportManager.sampled(this, con, ReportLine.PROBLEM, "protein_feature features longer than the translation: " + estimate);
+					result = false;
+				} else {
+					ReportManager.sampled(this, con, ReportLine.CORRECT, "protein_feature features longer than the translation: " + estimate
+							+ "; this is less than the threshold of " + THRESHOLD);
+				}
 			} else {
-				ReportManager.correct(this, con, "protein_feature table has " + thisDBFeatures.size() + " features that are longer than the translation; this is less than the threshold of " + THRESHOLD);
+				featuresToDelete.put(DBUtils.getShortDatabaseName(con), thisDBFeatures);
+				if (thisDBFeatures.size() > THRESHOLD) {
+					ReportManager.problem(this, con, "protein_feature table has " + thisDBFeatures.size() + " features that are longer than the translation");
+					result = false;
+				} else if (thisDBFeatures.size() == 0) {
+					ReportManager.correct(this, con, "protein_feature table has no features that are longer than the translation");
+				} else {
+					ReportManager.correct(this, con, "protein_feature table has " + thisDBFeatures.size() + " features that are longer than the translation; this is less than the threshold of " + THRESHOLD);
+				}
 			}
 
-			rs.close();
 			stmt.close();
 
 			if (problems >= OUTPUT_LIMIT) {
@@ -24,7 +24,8 @@ import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
 
 /**
  * Check that if the start and end of translation is on the same exon, that start < end. Also check that translation ends aren't
@@ -67,42 +68,75 @@ public class TranslationStartEnd extends SingleDatabaseTestCase {
 
 		boolean result = true;
 
-		// check start < end
 		Connection con = dbre.getConnection();
-		int rows = DBUtils.getRowCount(con, "SELECT COUNT(translation_id) FROM translation WHERE start_exon_id = end_exon_id AND seq_start > seq_end");
-		if (rows > 0) {
+		GeneModelSnapshot snapshot;
+		try {
+			snapshot = GeneModelSnapshot.getSnapshot(dbre);
+		} catch (SqlUncheckedException e) {
+			ReportManager.problem(this, con, "Could not read the gene models: " + e.getMessage());
+			return false;
+		}
+
+		int startAfterEnd = 0;
+		int overrunExon = 0;
+		int startExonBadEndPhase = 0;
+		int endExonBadPhase = 0;
+
+		for (int i = 0; i < snapshot.getTranslationCount(); i++) {
+
+			boolean singleExon = snapshot.getTranslationStartExonId(i) == snapshot.getTranslationEndExonId(i);
+			int startExon = snapshot.getTranslationStartExon(i);
+			int endExon = snapshot.getTranslationEndExon(i);
+
+			if (singleExon && snapshot.getTranslationSeqStart(i) > snapshot.getTranslationSeqEnd(i)) {
+				startAfterEnd++;
+			}
+
+			if (endExon >= 0) {
+				if ((long) snapshot.getExonEnd(endExon) - snapshot.getExonStart(endExon) + 1 < snapshot.getTranslationSeqEnd(i)) {
+					overrunExon++;
+				}
+				if (!singleExon && snapshot.getExonPhase(endExon) == -1) {
+					endExonBadPhase++;
+				}
+			}
+
+			if (startExon >= 0 && !singleExon && snapshot.getExonEndPhase(startExon) == -1) {
+				startExonBadEndPhase++;
+			}
+
+		}
+
+		// check start < end
+		if (startAfterEnd > 0) {
 			result = false;
-			ReportManager.problem(this, con, rows + " translations have start > end");
+			ReportManager.problem(this, con, startAfterEnd + " translations have start > end");
 		} else {
 			ReportManager.correct(this, con, "No translations have start > end");
 		}
 
 		// check no translations overrun their exons
-		rows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM translation t, exon e WHERE t.end_exon_id=e.exon_id AND cast(e.seq_region_end as signed int)-cast(e.seq_region_start as signed int)+1 < t.seq_end");
-		if (rows > 0) {
+		if (overrunExon > 0) {
 			result = false;
-			ReportManager.problem(this, con, rows + " translations end beyond the end of their exons");
+			ReportManager.problem(this, con, overrunExon + " translations end beyond the end of their exons");
 		} else {
 			ReportManager.correct(this, con, "No translations overrun exons");
 		}
 
-                // check the start and end exon have a correct phase
-                rows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM translation t, exon e WHERE t.start_exon_id=e.exon_id AND start_exon_id <> end_exon_id and end_phase = -1");
-                if (rows > 0) {
-                        result = false;
-                        ReportManager.problem(this, con, rows + " translations have start exon with a -1 end phase");
-                } else {
-                        ReportManager.correct(this, con, "Start exons for translations have correct end phase");
-                }
-
-                rows = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM translation t, exon e WHERE t.end_exon_id=e.exon_id AND start_exon_id <> end_exon_id and phase = -1");
-                if (rows > 0) {
-                        result = false;
-                        ReportManager.problem(this, con, rows + " translations have end exon with -1 phase");
-                } else {
-                        ReportManager.correct(this, con, "End exons for translations have correct phase");
-                }
+		// check the start and end exon have a correct phase
+		if (startExonBadEndPhase > 0) {
+			result = false;
+			ReportManager.problem(this, con, startExonBadEndPhase + " translations have start exon with a -1 end phase");
+		} else {
+			ReportManager.correct(this, con, "Start exons for translations have correct end phase");
+		}
 
+		if (endExonBadPhase > 0) {
+			result = false;
+			ReportManager.problem(this, con, endExonBadPhase + " translations have end exon with -1 phase");
+		} else {
+			ReportManager.correct(this, con, "End exons for translations have correct phase");
+		}
 
 		return result;
 
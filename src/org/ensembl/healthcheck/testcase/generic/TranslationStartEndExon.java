@@ -24,7 +24,8 @@ import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
-import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.GeneModelSnapshot;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
 
 /**
  * Check that if the start and end of translation is on the same exon, that start < end. Also check that translation ends aren't
@@ -67,22 +68,38 @@ public class TranslationStartEndExon extends SingleDatabaseTestCase {
 
 		boolean result = true;
 
-		// check if the start_exon of a translation exists in the exon_table
-
 		Connection con = dbre.getConnection();
-		int rows = DBUtils.getRowCount(con, " SELECT COUNT(*) FROM translation tl  LEFT JOIN exon e ON e.exon_id=tl.start_exon_id WHERE e.exon_id IS NULL");
-		if (rows > 0) {
+		GeneModelSnapshot snapshot;
+		try {
+			snapshot = GeneModelSnapshot.getSnapshot(dbre);
+		} catch (SqlUncheckedException e) {
+			ReportManager.problem(this, con, "Could not read the gene models: " + e.getMessage());
+			return false;
+		}
+
+		int missingStartExons = 0;
+		int missingEndExons = 0;
+		for (int i = 0; i < snapshot.getTranslationCount(); i++) {
+			if (snapshot.getTranslationStartExon(i) < 0) {
+				missingStartExons++;
+			}
+			if (snapshot.getTranslationEndExon(i) < 0) {
+				missingEndExons++;
+			}
+		}
+
+		// check if the start_exon of a translation exists in the exon_table
+		if (missingStartExons > 0) {
 			result = false;
-			ReportManager.problem(this, con, rows + " translations refer to an start_exon which doesn't exist ");
+			ReportManager.problem(this, con, missingStartExons + " translations refer to an start_exon which doesn't exist ");
 		} else {
 			ReportManager.correct(this, con, "All translations refer to existing start_exons");
 		}
 
 		// check if the end_exon of a translation exists in the exon_table
-		rows = DBUtils.getRowCount(con, " SELECT COUNT(*) FROM translation tl  LEFT JOIN exon e ON e.exon_id=tl.end_exon_id WHERE e.exon_id IS NULL");
-		if (rows > 0) {
+		if (missingEndExons > 0) {
 			result = false;
-			ReportManager.problem(this, con, rows + " translations refer to an end_exon which doesn't exist in the exon-table");
+			ReportManager.problem(this, con, missingEndExons + " translations refer to an end_exon which doesn't exist in the exon-table");
 		} else {
 			ReportManager.correct(this, con, "All translations refer to existing end_exons");
 		}
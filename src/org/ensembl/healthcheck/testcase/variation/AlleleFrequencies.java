@@ -23,10 +23,12 @@ import java.sql.Statement;
 import java.util.ArrayList;
 
 import org.ensembl.healthcheck.DatabaseRegistryEntry;
+import org.ensembl.healthcheck.ReportLine;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
 import org.ensembl.healthcheck.util.DBUtils;
+import org.ensembl.healthcheck.util.KeySample;
 
 /**
  * Check that allele frequencies add up to 1
@@ -83,90 +85,120 @@ public class AlleleFrequencies extends SingleDatabaseTestCase {
 				// The query to get the data
 				sql = "SELECT s.variation_id, s.subsnp_id, s.population_id, s.frequency FROM " + tables[i]
 						+ " s USE INDEX (variation_idx,subsnp_idx) WHERE s.variation_id BETWEEN VIDLOWER AND VIDUPPER ORDER BY s.variation_id, s.subsnp_id, s.population_id";
-				int offset = 1;
+				// In the pre-flight mode only look at random ranges of the variations,
+				// counting every failure so that their rate can be estimated
+				KeySample sample = KeySample.isEnabled() ? KeySample.forColumn(con, tables[i], "variation_id") : null;
+				long[][] ranges = sample != null ? sample.getRanges() : new long[][] { { 1, maxId } };
+				// Count the frequency groups and rows looked at
+				int groups = 0;
+				long rows = 0;
 
 				// Count the number of failed
 				int failed = 0;
 				// Keep the failed entries
 				ArrayList failedEntries = new ArrayList();
-
-				// Loop until we've reached the maximum variation_id
-				while (offset <= maxId) {
-
-					// long s = System.currentTimeMillis();
-
-					// Replace the offsets in the SQL query
-					ResultSet rs = stmt.executeQuery(sql.replaceFirst("VIDLOWER", String.valueOf(offset)).replaceFirst("VIDUPPER", String.valueOf(offset + chunk)));
-
-					// long e = System.currentTimeMillis();
-					// System.out.println("Got " + String.valueOf(chunk) + " variations in " + String.valueOf(((e-s)/1000)) +
-					// " seconds. Offset is " + String.valueOf(offset));
-
-					// Increase the offset with the chunk size and add 1
-					offset += chunk + 1;
-
-					int lastVid = 0;
-					int lastSSid = 0;
-					int lastSid = 0;
-					int curVid;
-					int curSSid;
-					int curSid;
-					float freq;
-					float sum = 1.f;
-					int count = 0;
-
-					while (rs.next()) {
-
-						// Get the variation_id, subsnp_id, population_id and frequency. If any of these are NULL, they will be returned as 0
-						curVid = rs.getInt(1);
-						curSSid = rs.getInt(2);
-						curSid = rs.getInt(3);
-						freq = rs.getFloat(4);
-
-						// If any of the values was NULL, skip processing the row. For the frequency, we have to use the wasNull() function to
-						// check this. The ids it is sufficient to check if they were 0
-						if (curVid != 0 && curSSid != 0 && curSid != 0 && !rs.wasNull()) {
-
-							// If any of the ids is different from the last one, stop summing and check the sum of the latest variation
-							if (curVid != lastVid || curSSid != lastSSid || curSid != lastSid) {
-								// See if the sum of the frequencies deviates from 1 more than what we tolerate. In that case, count it as a failed
-								if (Math.abs(1.f - sum) > tol) {
-									// Store the failed data in failedEntries
-									failedEntries.add(new int[] { lastVid, lastSSid, lastSid, Math.round(1000 * sum) });
-									failed++;
+				// The groups looked at and failed in each range
+				long[] groupsInRange = new long[ranges.length];
+				long[] failedInRange = new long[ranges.length];
+
+				for (int r = 0; r < ranges.length; r++) {
+					int offset = (int) ranges[r][0];
+					int upper = (int) ranges[r][1];
+					int groupsBefore = groups;
+					int failedBefore = failed;
+
+					// Loop until we've reached the end of the range
+					while (offset <= upper) {
+
+						// long s = System.currentTimeMillis();
+
+						// Replace the offsets in the SQL query
+						ResultSet rs = stmt.executeQuery(sql.replaceFirst("VIDLOWER", String.valueOf(offset)).replaceFirst("VIDUPPER", String.valueOf(Math.min(offset + chunk, upper))));
+
+						// long e = System.currentTimeMillis();
+						// System.out.println("Got " + String.valueOf(chunk) + " variations in " + String.valueOf(((e-s)/1000)) +
+						// " seconds. Offset is " + String.valueOf(offset));
+
+						// Increase the offset with the chunk size and add 1
+						offset += chunk + 1;
+
+						int lastVid = 0;
+						int lastSSid = 0;
+						int lastSid = 0;
+						int curVid;
+						int curSSid;
+						int curSid;
+						float freq;
+						float sum = 1.f;
+						int count = 0;
+
+						while (rs.next()) {
+
+							// Get the variation_id, subsnp_id, population_id and frequency. If any of these are NULL, they will be returned as 0
+							curVid = rs.getInt(1);
+							curSSid = rs.getInt(2);
+							curSid = rs.getInt(3);
+							freq = rs.getFloat(4);
+
+							// If any of the values was NULL, skip processing the row. For the frequency, we have to use the wasNull() function to
+							// check this. The ids it is sufficient to check if they were 0
+							if (curVid != 0 && curSSid != 0 && curSid != 0 && !rs.wasNull()) {
+
+								// If any of the ids is different from the last one, stop summing and check the sum of the latest variation
+								if (curVid != lastVid || curSSid != lastSSid || curSid != lastSid) {
+									// See if the sum of the frequencies deviates from 1 more than what we tolerate. In that case, count it as a failed
+									if (Math.abs(1.f - sum) > tol) {
+										// Store the failed data in failedEntries
+										failedEntries.add(new int[] { lastVid, lastSSid, lastSid, Math.round(1000 * sum) });
+										failed++;
+									}
+
+									// Set the last ids to this one and reset the sum
+									lastVid = curVid;
+									lastSSid = curSSid;
+									lastSid = curSid;
+									sum = 0.f;
+									groups++;
 								}
-
-								// Set the last ids to this one and reset the sum
-								lastVid = curVid;
-								lastSSid = curSSid;
-								lastSid = curSid;
-								sum = 0.f;
+								// Add the frequency to the sum
+								sum += freq;
+							}
+							count++;
+							
+							// Break if we've encountered a failed frequency (unless flagged not to)
+							if (failed > 0 && !countAll && sample == null) {
+								break;
 							}
-							// Add the frequency to the sum
-							sum += freq;
-						}
-						count++;
-						
-						// Break if we've encountered a failed frequency (unless flagged not to)
-						if (failed > 0 && !countAll) {
-							break;
 						}
-					}
 
-					rs.close();
+						rs.close();
+						rows += count;
 
-					// s = System.currentTimeMillis();
-					// System.out.println("Processed " + String.valueOf(count) + " rows in " + String.valueOf(((s-e)/1000)) + " seconds");
+						// s = System.currentTimeMillis();
+						// System.out.println("Processed " + String.valueOf(count) + " rows in " + String.valueOf(((s-e)/1000)) + " seconds");
+					}
+					groupsInRange[r] = groups - groupsBefore;
+					failedInRange[r] = failed - failedBefore;
+				}
+				String sampled = "";
+				if (sample != null) {
+					// Scale the groups looked at by the share of the rows they came from
+					int total = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM " + tables[i]);
+					long estimatedGroups = rows == 0 ? 0 : Math.round((double) groups * total / rows);
+					KeySample.Estimate estimate = new KeySample.Estimate(failedInRange, groupsInRange, Math.max(groups, estimatedGroups));
+					ReportManager.sampled(this, con, failed == 0 ? ReportLine.INFO : ReportLine.PROBLEM, "Frequency groups in "
+							+ tables[i] + " not adding up to 1 +/- " + String.valueOf(tol) + ": " + estimate);
+					sampled = ReportManager.SAMPLED;
 				}
 				if (failed == 0) {
 					// Report that the current table is ok
-					ReportManager.correct(this, con, "Frequencies in " + tables[i] + " all add up to 1");
+					ReportManager.correct(this, con, sampled + "Frequencies in " + tables[i] + " all add up to 1");
 				} else {
 					// Get an example and print it
 					int[] entry = (int[]) failedEntries.get(0);
 					String example = "variation_id = " + String.valueOf(entry[0]) + ", subsnp_id = " + String.valueOf(entry[1]) + ", population_id = " + String.valueOf(entry[2]) + ", sum is "
 							+ String.valueOf((0.001f * entry[3]));
-					ReportManager.problem(this, con, "There are " + String.valueOf(failed) + " variations in " + tables[i] + " where the frequencies don't add up to 1 +/- " + String.valueOf(tol) + " (e.g. "
+					ReportManager.problem(this, con, sampled + "There are " + String.valueOf(failed) + " variations in " + tables[i] + " where the frequencies don't add up to 1 +/- " + String.valueOf(tol) + " (e.g. "
 							+ example + ")");
 					result = false;
 
@@ -43,6 +43,7 @@ import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.Species;
 import org.ensembl.healthcheck.testcase.SingleDatabaseTestCase;
+import org.ensembl.healthcheck.util.DBUtils;
 
 
 /**
@@ -84,12 +85,12 @@ public class CompressedGenotypeRegion extends SingleDatabaseTestCase {
     Properties sqlQueries = new Properties();
     String query;
 
-    // Query getting the id of a population
-    query = "SELECT population_id FROM population vs WHERE name = ? LIMIT 1";
-    sqlQueries.setProperty("popId", query);    
-    
-    // Query counting the number of genotypes of a population, by chromosome
-    query = "SELECT s.name, COUNT(*) FROM compressed_genotype_region c, seq_region s WHERE s.seq_region_id=c.seq_region_id AND c.individual_id IN (SELECT individual_id FROM individual_population WHERE population_id=?) GROUP BY s.seq_region_id";  
+    // Query counting the number of genotypes of a population, by chromosome. The population is
+    // joined by name so that no separate lookup of its id is needed, and the join replaces an
+    // IN (subquery) which MySQL re-evaluates per row
+    query = "SELECT s.name, COUNT(*) FROM compressed_genotype_region c, seq_region s, individual_population ip, "
+        + "(SELECT population_id FROM population WHERE name = ? LIMIT 1) p "
+        + "WHERE s.seq_region_id=c.seq_region_id AND c.individual_id=ip.individual_id AND ip.population_id=p.population_id GROUP BY s.seq_region_id";
     sqlQueries.setProperty("genotype_region", query);  
     
     return sqlQueries;
@@ -116,26 +117,18 @@ public class CompressedGenotypeRegion extends SingleDatabaseTestCase {
       Properties sqlQueries = getSQLQueries();
       
       int count  = 0;
-      int pop_id = 0;
 			
+      PreparedStatement pStmt = null;
       try {
         
-        PreparedStatement pStmt1 = con.prepareStatement(sqlQueries.getProperty("popId"));
-        pop_id = getPopulationId(pStmt1);
-        
-        
-      } catch (Exception e) {
-        ReportManager.problem(this, con, "HealthCheck caused an exception: " + e.getMessage());
-      }
-      
-      try {
-        
-        PreparedStatement pStmt2 = con.prepareStatement(sqlQueries.getProperty("genotype_region"));
-        count = countGenotypeByRegion(pStmt2,pop_id);
+        pStmt = con.prepareStatement(sqlQueries.getProperty("genotype_region"));
+        count = countGenotypeByRegion(pStmt);
         
         
       } catch (Exception e) {
         ReportManager.problem(this, con, "HealthCheck caused an exception: " + e.getMessage());
+      } finally {
+        DBUtils.closeQuietly(pStmt);
       }
       
       if (count > 0) {
@@ -150,24 +143,9 @@ public class CompressedGenotypeRegion extends SingleDatabaseTestCase {
   
   // -----------------------------------------------------------------
 
-  private int getPopulationId(PreparedStatement pStmt) throws Exception {
+  private int countGenotypeByRegion(PreparedStatement pStmt) throws Exception {
     pStmt.setString(1, POP_NAME);
     ResultSet rs = pStmt.executeQuery();
-  
-    int pop_id = 0;
-    if (rs.next()) {
-      pop_id = rs.getInt(1);
-    }
-      
-    return pop_id;
-  } // getPopulationId
-  
-  
-  // -----------------------------------------------------------------
-
-  private int countGenotypeByRegion(PreparedStatement pStmt, int pop_id) throws Exception {
-    pStmt.setInt(1, pop_id);
-    ResultSet rs = pStmt.executeQuery();
    
     int count = 0;
     String region_name;;
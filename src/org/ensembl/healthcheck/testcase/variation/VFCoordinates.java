@@ -27,6 +27,7 @@ import org.ensembl.healthcheck.DatabaseType;
 import org.ensembl.healthcheck.ReportManager;
 import org.ensembl.healthcheck.Team;
 import org.ensembl.healthcheck.testcase.MultiDatabaseTestCase;
+import org.ensembl.healthcheck.util.ChunkedScan;
 import org.ensembl.healthcheck.util.DBUtils;
 
 /**
@@ -87,8 +88,11 @@ public class VFCoordinates extends MultiDatabaseTestCase {
 
 			System.out.println("Using " + coreName + " as core database and " + variationName + " as variation database");
 
-			int mc = DBUtils.getRowCount(
+			// variation_feature is scanned in chunks, as it has hundreds of millions of rows
+			int mc = ChunkedScan.getRowCount(
 					con,
+					"variation_feature",
+					"vf",
 					"SELECT COUNT(*) FROM "
 							+ variationName
 							+ ".variation_feature vf LEFT JOIN "
@@ -100,12 +104,12 @@ public class VFCoordinates extends MultiDatabaseTestCase {
 				result = false;
 			}
 
-			mc = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM " + coreName + ".seq_region s, " + variationName + ".variation_feature vf WHERE vf.seq_region_id = s.seq_region_id AND vf.seq_region_end > s.length");
+			mc = ChunkedScan.getRowCount(con, "variation_feature", "vf", "SELECT COUNT(*) FROM " + coreName + ".seq_region s, " + variationName + ".variation_feature vf WHERE vf.seq_region_id = s.seq_region_id AND vf.seq_region_end > s.length");
 			if (mc > 0) {
 				ReportManager.problem(this, con, "Variation Features outside range in " + variationName);
 				result = false;
 			}
-			mc = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM " + variationName + ".variation_feature vf WHERE vf.seq_region_start = 1 AND vf.seq_region_end > 1");
+			mc = ChunkedScan.getRowCount(con, "variation_feature", "vf", "SELECT COUNT(*) FROM " + variationName + ".variation_feature vf WHERE vf.seq_region_start = 1 AND vf.seq_region_end > 1");
 			if (mc > 0) {
 				ReportManager.problem(this, con, "Variation Features with coordinates = 1 " + variationName);
 				result = false;
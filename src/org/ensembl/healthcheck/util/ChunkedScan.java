@@ -0,0 +1,504 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Scans a big table in ranges of its primary key, several ranges at a time
+ * on connections of their own, instead of in one query which holds a
+ * connection for as long as it takes to read the whole table.
+ * </p>
+ *
+ * <p>
+ * The key range between MIN and MAX is split into chunks of about
+ * <code>chunkedscan.rows</code> rows (default 1000000), going by the row
+ * count in the index statistics of the table. The chunks are scanned by up
+ * to <code>chunkedscan.threads</code> (default 4) threads, but no more than
+ * the {@link ServerGovernor} of the server lets run at the time the scan
+ * starts: one on the connection passed in, the others on connections opened
+ * by the {@link ConnectionPool} with the same credentials. The partial
+ * result of each chunk is merged by a {@link Combiner}, which must not
+ * depend on the order of the chunks. The governor also decides how many
+ * chunks of all scans run on the server at the same time.
+ * </p>
+ *
+ * <pre>
+ * int orphans = ChunkedScan.getRowCount(con, &quot;variation_feature&quot;, &quot;vf&quot;,
+ * 		&quot;SELECT COUNT(*) FROM variation_feature vf LEFT JOIN variation v USING (variation_id) WHERE v.variation_id IS NULL&quot;);
+ * </pre>
+ */
+public class ChunkedScan {
+
+	public static final String THREADS = "chunkedscan.threads";
+
+	public static final String ROWS = "chunkedscan.rows";
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private static final Pattern WHERE = Pattern.compile("\\sWHERE\\s", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Scans the rows of one chunk.
+	 */
+	public interface Chunk<T> {
+
+		/**
+		 * @param con
+		 *          the connection to use, which must not be closed
+		 * @param lower
+		 *          the lowest key of the chunk
+		 * @param upper
+		 *          the highest key of the chunk
+		 * @return the partial result of the chunk
+		 */
+		T scan(Connection con, long lower, long upper) throws SQLException;
+
+	}
+
+	/**
+	 * Merges the partial results of two sets of chunks.
+	 */
+	public interface Combiner<T> {
+
+		T combine(T first, T second);
+
+	}
+
+	/**
+	 * Told about each chunk when it has been scanned, on the thread which
+	 * scanned it.
+	 */
+	public interface Progress {
+
+		void chunkDone(ChunkedScan scan, int done, int chunks, long lower, long upper);
+
+	}
+
+	public static final Combiner<Integer> SUM = new Combiner<Integer>() {
+		public Integer combine(Integer first, Integer second) {
+			return first.intValue() + second.intValue();
+		}
+	};
+
+	private final Connection con;
+
+	private final String table;
+
+	private final String column;
+
+	private int threads = Integer.getInteger(THREADS, 4).intValue();
+
+	private long rowsPerChunk = Long.getLong(ROWS, 1000000).longValue();
+
+	private Progress progress = null;
+
+	/** Chunks scanned so far */
+	private final AtomicInteger done = new AtomicInteger();
+
+	/**
+	 * Scan a table by the first column of its primary key, which must be
+	 * numeric.
+	 */
+	public ChunkedScan(Connection con, String table) {
+		this(con, table, getKeyColumn(con, table));
+	}
+
+	/**
+	 * Scan a table by a numeric column, which should be indexed.
+	 */
+	public ChunkedScan(Connection con, String table, String column) {
+
+		if (column == null) {
+			throw new IllegalArgumentException(table + " has no numeric primary key to scan it by");
+		}
+		this.con = con;
+		this.table = table;
+		this.column = column;
+
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public ChunkedScan setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	public ChunkedScan setRowsPerChunk(long rowsPerChunk) {
+		this.rowsPerChunk = Math.max(1, rowsPerChunk);
+		return this;
+	}
+
+	public ChunkedScan setProgress(Progress progress) {
+		this.progress = progress;
+		return this;
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Count the rows of a query in chunks of the keys of table, or in one
+	 * query if table has no more than <code>chunkedscan.rows</code> rows going
+	 * by its index statistics, or no numeric primary key.
+	 *
+	 * @param alias
+	 *          the name or alias of table in sql
+	 * @param sql
+	 *          a SELECT COUNT(*) query with a WHERE clause; the first WHERE in it
+	 *          must be the one of the outer query
+	 * @return the count, or 0 if table is empty
+	 */
+	public static int getRowCount(Connection con, String table, String alias, String sql) {
+
+		if (getEstimatedRows(con, table) <= Long.getLong(ROWS, 1000000).longValue()) {
+			return DBUtils.getRowCount(con, sql);
+		}
+		return getRowCountInChunks(con, table, alias, sql);
+
+	}
+
+	/**
+	 * Count the rows of a query in chunks of the keys of table however big it
+	 * is, or in one query if it has no numeric primary key.
+	 */
+	static int getRowCountInChunks(Connection con, String table, String alias, String sql) {
+
+		String column = getKeyColumn(con, table);
+		if (column == null) {
+			return DBUtils.getRowCount(con, sql);
+		}
+		final ChunkedScan scan = new ChunkedScan(con, table, column);
+		Matcher where = WHERE.matcher(sql);
+		if (!where.find()) {
+			throw new IllegalArgumentException("No WHERE clause in " + sql);
+		}
+		final String before = sql.substring(0, where.end()) + alias + "." + scan.getColumn() + " BETWEEN ";
+		final String after = " AND (" + sql.substring(where.end()) + ")";
+
+		try {
+			Integer count = scan.run(new Chunk<Integer>() {
+				public Integer scan(Connection con, long lower, long upper) {
+					return DBUtils.getRowCount(con, before + lower + " AND " + upper + after);
+				}
+			}, SUM);
+			return count == null ? 0 : count.intValue();
+		} catch (SQLException e) {
+			throw new SqlUncheckedException("Could not count the rows of " + sql + " in chunks of " + table, e);
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Scan all the chunks and merge their results.
+	 *
+	 * @return the merged result, or null if the table is empty
+	 * @throws SQLException
+	 *           the first error of a chunk, after which no more chunks are
+	 *           started
+	 */
+	public <T> T run(final Chunk<T> chunk, final Combiner<T> combiner) throws SQLException {
+
+		final long[][] chunks = getChunks();
+		if (chunks.length == 0) {
+			return null;
+		}
+
+		List<Connection> connections = new ArrayList<Connection>();
+		connections.add(con);
+		try {
+			String url = con.getMetaData().getURL();
+			ServerGovernor governor = ServerGovernor.forUrl(url);
+			int wanted = Math.min(Math.min(threads, chunks.length), Math.max(1, governor.getLimit()));
+			while (connections.size() < wanted) {
+				Connection side = ConnectionPool.openSideConnection(url);
+				if (side == null) {
+					logger.fine("No more connections to " + url + ", scanning " + table + " on " + connections.size());
+					break;
+				}
+				connections.add(side);
+			}
+
+			logger.fine("Scanning " + table + " in " + chunks.length + " chunks of " + column + " on "
+					+ connections.size() + " connections");
+
+			if (connections.size() == 1) {
+				return scanChunks(con, governor, chunks, new AtomicInteger(), new AtomicBoolean(), chunk, combiner);
+			}
+			return scanConcurrently(connections, governor, chunks, chunk, combiner);
+
+		} finally {
+			for (int i = 1; i < connections.size(); i++) {
+				try {
+					connections.get(i).close();
+				} catch (SQLException e) {
+					logger.fine("Could not close a connection to " + table + ": " + e.getMessage());
+				}
+			}
+		}
+
+	}
+
+	private <T> T scanConcurrently(List<Connection> connections, final ServerGovernor governor, final long[][] chunks,
+			final Chunk<T> chunk, final Combiner<T> combiner) throws SQLException {
+
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final String threadName = "ChunkedScan-" + table + "-";
+
+		ExecutorService executor = Executors.newFixedThreadPool(connections.size(), new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, threadName + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		List<Future<T>> results = new ArrayList<Future<T>>();
+		for (final Connection connection : connections) {
+			results.add(executor.submit(new Callable<T>() {
+				public T call() throws SQLException {
+					return scanChunks(connection, governor, chunks, next, failed, chunk, combiner);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		T result = null;
+		try {
+			for (Future<T> future : results) {
+				T partial = future.get();
+				if (partial != null) {
+					result = result == null ? partial : combiner.combine(result, partial);
+				}
+			}
+		} catch (InterruptedException e) {
+			failed.set(true);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while scanning " + table);
+		} catch (ExecutionException e) {
+			failed.set(true);
+			executor.shutdownNow();
+			if (e.getCause() instanceof SQLException) {
+				throw (SQLException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new SqlUncheckedException("Could not scan " + table, e.getCause());
+		}
+		return result;
+
+	}
+
+	/**
+	 * Scan chunks on one connection until there are none left or another
+	 * thread has failed, each when the governor of the server lets it.
+	 */
+	private <T> T scanChunks(Connection connection, ServerGovernor governor, long[][] chunks, AtomicInteger next,
+			AtomicBoolean failed, Chunk<T> chunk, Combiner<T> combiner) throws SQLException {
+
+		T result = null;
+		int i;
+		while (!failed.get() && (i = next.getAndIncrement()) < chunks.length) {
+			T partial;
+			try {
+				governor.acquire();
+			} catch (InterruptedException e) {
+				failed.set(true);
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting to scan " + table);
+			}
+			try {
+				partial = chunk.scan(connection, chunks[i][0], chunks[i][1]);
+			} catch (SQLException e) {
+				failed.set(true);
+				throw e;
+			} catch (RuntimeException e) {
+				failed.set(true);
+				throw e;
+			} finally {
+				governor.release();
+			}
+			if (partial != null) {
+				result = result == null ? partial : combiner.combine(result, partial);
+			}
+			chunkDone(chunks, chunks[i]);
+		}
+		return result;
+
+	}
+
+	private void chunkDone(long[][] chunks, long[] range) {
+
+		int count = done.incrementAndGet();
+		logger.finest("Scanned " + table + "." + column + " " + range[0] + " to " + range[1] + ", chunk " + count
+				+ " of " + chunks.length);
+		if (progress != null) {
+			progress.chunkDone(this, count, chunks.length, range[0], range[1]);
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * @return the first column of the primary key of table if it is an integer,
+	 *         or null
+	 */
+	static String getKeyColumn(Connection con, String table) {
+
+		try {
+			DatabaseMetaData meta = con.getMetaData();
+			// H2 keeps the names in upper case
+			for (String name : new String[] { table, table.toUpperCase() }) {
+				String column = null;
+				ResultSet rs = meta.getPrimaryKeys(con.getCatalog(), null, name);
+				try {
+					while (rs.next()) {
+						if (rs.getInt("KEY_SEQ") == 1) {
+							column = rs.getString("COLUMN_NAME");
+						}
+					}
+				} finally {
+					DBUtils.closeQuietly(rs);
+				}
+				if (column == null) {
+					continue;
+				}
+				rs = meta.getColumns(con.getCatalog(), null, name, column);
+				try {
+					if (rs.next()) {
+						switch (rs.getInt("DATA_TYPE")) {
+						case Types.TINYINT:
+						case Types.SMALLINT:
+						case Types.INTEGER:
+						case Types.BIGINT:
+							return column.toLowerCase();
+						}
+					}
+				} finally {
+					DBUtils.closeQuietly(rs);
+				}
+				return null;
+			}
+		} catch (SQLException e) {
+			logger.warning("Cannot get the primary key of " + table + ": " + e.getMessage());
+		}
+		return null;
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * @return the inclusive lower and upper key of each chunk, none if the
+	 *         table is empty
+	 */
+	long[][] getChunks() throws SQLException {
+
+		done.set(0);
+
+		long min;
+		long max;
+		Statement stmt = con.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM " + table);
+			rs.next();
+			min = rs.getLong(1);
+			if (rs.wasNull()) {
+				return new long[0][];
+			}
+			max = rs.getLong(2);
+			rs.close();
+		} finally {
+			stmt.close();
+		}
+
+		long span = max - min + 1;
+		long rows = getEstimatedRows(con, table);
+		if (rows <= 0) {
+			rows = span;
+		}
+		int n = (int) Math.max(1, Math.min(span, Math.min(Integer.MAX_VALUE, (rows + rowsPerChunk - 1) / rowsPerChunk)));
+
+		long[][] chunks = new long[n][];
+		for (int i = 0; i < n; i++) {
+			chunks[i] = new long[] { min + span * i / n, min + span * (i + 1) / n - 1 };
+		}
+		return chunks;
+
+	}
+
+	/**
+	 * @return the number of rows in the index statistics of the table, which
+	 *         need not be exact, or -1 if there are none
+	 */
+	private static long getEstimatedRows(Connection con, String table) {
+
+		long rows = -1;
+		try {
+			DatabaseMetaData meta = con.getMetaData();
+			// H2 keeps the names in upper case
+			for (String name : new String[] { table, table.toUpperCase() }) {
+				ResultSet rs = meta.getIndexInfo(con.getCatalog(), null, name, false, true);
+				try {
+					while (rs.next()) {
+						rows = Math.max(rows, rs.getLong("CARDINALITY"));
+					}
+				} finally {
+					DBUtils.closeQuietly(rs);
+				}
+				if (rows >= 0) {
+					break;
+				}
+			}
+		} catch (SQLException e) {
+			logger.fine("No index statistics for " + table + ": " + e.getMessage());
+		}
+		return rows;
+
+	}
+
+}
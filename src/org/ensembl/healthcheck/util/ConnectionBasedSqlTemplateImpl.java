@@ -164,6 +164,7 @@ public class ConnectionBasedSqlTemplateImpl implements SqlTemplate {
 	public int execute(String sql) {
 		int updatedRows = -1;
 		Statement st = null;
+		long start = System.nanoTime();
 		try {
 			st = connection.createStatement();
 			updatedRows = st.executeUpdate(sql);
@@ -171,6 +172,7 @@ public class ConnectionBasedSqlTemplateImpl implements SqlTemplate {
 			createUncheckedException(sql, new Object[] {}, e);
 		} finally {
 			closeDbObject(st);
+			recordQuery(start, sql, null, 0, 0);
 		}
 		return updatedRows;
 	}
@@ -183,16 +185,23 @@ public class ConnectionBasedSqlTemplateImpl implements SqlTemplate {
 		T object;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
+		long start = System.nanoTime();
+		long[] counter = null;
 		try {
 			ps = connection.prepareStatement(sql);
 			bindParamsToPreparedStatement(ps, args);
 			rs = ps.executeQuery();
+			if (Metrics.isEnabled()) {
+				counter = new long[2];
+				rs = Metrics.countingResultSet(rs, counter);
+			}
 			object = callback.process(rs);
 		} catch (SQLException e) {
 			throw createUncheckedException(sql, args, e);
 		} finally {
 			closeDbObject(rs);
 			closeDbObject(ps);
+			recordQuery(start, sql, args, counter == null ? 0 : counter[0], counter == null ? 0 : counter[1]);
 		}
 		return object;
 	}
@@ -308,11 +317,25 @@ public class ConnectionBasedSqlTemplateImpl implements SqlTemplate {
 		}, args);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public LongKeyedMap queryForLongMap(final String sql, final Object... args)
+			throws SqlUncheckedException {
+		return execute(sql, new ResultSetCallback<LongKeyedMap>() {
+			@Override
+			public LongKeyedMap process(ResultSet rs) throws SQLException {
+				return LongKeyedMap.fromResultSet(rs);
+			}
+		}, args);
+	}
+
   /**
    * {@inheritDoc}
    */
 	public int update(final String sql, final Object... args) {
 	  PreparedStatement ps = null;
+	  long start = System.nanoTime();
 	  try {
       ps = connection.prepareStatement(sql);
       bindParamsToPreparedStatement(ps, args);
@@ -321,9 +344,25 @@ public class ConnectionBasedSqlTemplateImpl implements SqlTemplate {
       throw createUncheckedException(sql, args, e);
     } finally {
       closeDbObject(ps);
+      recordQuery(start, sql, args, 0, 0);
     }
 	}
 
+	/**
+	 * Record a query started at start (from {@link System#nanoTime()}) with
+	 * {@link Metrics}, if they are being recorded, and with the
+	 * {@link SlowQueryLog} if it was slow.
+	 */
+	private void recordQuery(long start, String sql, Object[] args, long rows, long bytes) {
+		long nanos = System.nanoTime() - start;
+		if (Metrics.isEnabled()) {
+			Metrics.recordQuery(uri, nanos, rows, bytes);
+		}
+		if (SlowQueryLog.isSlow(nanos)) {
+			SlowQueryLog.record(uri, sql, args, nanos);
+		}
+	}
+
 	// ----- EXCEPTION HANDLING
 
 	/**
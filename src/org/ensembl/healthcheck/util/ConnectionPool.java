@@ -18,14 +18,14 @@
 package org.ensembl.healthcheck.util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +38,15 @@ public final class ConnectionPool {
     private static Logger logger = Logger.getLogger("HealthCheckLogger");
 
     // store connections; key = database URL (as String), Connection object
-    private static Map<String, Connection> pool = new HashMap<String, Connection>();
+    // concurrent, as the gui runs tests in parallel
+    private static Map<String, Connection> pool = new ConcurrentHashMap<String, Connection>();
+
+    // driver, user and password of each database URL, for side connections
+    private static Map<String, String[]> credentials = new ConcurrentHashMap<String, String[]>();
+
+    // one lock per database URL, so that threads asking for the same database
+    // share one connection rather than each opening one
+    private static ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
 
     // hide constructor to stop people instantiating this
     private ConnectionPool() { }
@@ -63,23 +71,38 @@ public final class ConnectionPool {
     public static Connection getConnection(String driverClassName, String databaseURL, String user, String password) throws SQLException {
 
         Connection con = null;
+        long start = System.nanoTime();
 
-        if (pool.containsKey(databaseURL)) {
+        synchronized (lockFor(databaseURL)) {
 
-		logger.finest("Got connection to " + databaseURL + " from pool");
-		con = getConnectionFromPool(driverClassName, databaseURL, user, password);
-		// mnuhn: Turn off connection pooling, see if this fixes the problems we are having.
-		//
-		//con = getConnectionByClassloader(driverClassName, databaseURL, user, password);
+            if (pool.containsKey(databaseURL)) {
 
-        } else {
+                logger.finest("Got connection to " + databaseURL + " from pool");
+                con = getConnectionFromPool(driverClassName, databaseURL, user, password);
+                // mnuhn: Turn off connection pooling, see if this fixes the problems we are having.
+                //
+                //con = getConnectionByClassloader(driverClassName, databaseURL, user, password);
 
-        	con = getConnectionByClassloader(driverClassName, databaseURL, user, password);
+            } else {
+
+                con = getConnectionByClassloader(driverClassName, databaseURL, user, password);
+            }
+        }
+        
+        if (Metrics.isEnabled()) {
+        	Metrics.recordConnectionWait(databaseURL, System.nanoTime() - start);
         }
         
         return con;
     }
 
+    private static Object lockFor(String databaseURL) {
+
+        Object lock = new Object();
+        Object existing = locks.putIfAbsent(databaseURL, lock);
+        return existing != null ? existing : lock;
+    }
+
   public static boolean isValidConnection(Connection con) {
 
     String url;
@@ -174,7 +197,9 @@ public final class ConnectionPool {
         // create a connection and add it to the pool
         try {
 
-            Class.forName(driverClassName);
+            if (!JdbcRecording.isReplaying()) {
+                Class.forName(driverClassName);
+            }
 
         } catch (ClassNotFoundException e) {
 
@@ -182,8 +207,13 @@ public final class ConnectionPool {
             throw new RuntimeException(e);
 
         }
-       	con = DriverManager.getConnection(databaseURL, user, password);
-        pool.put(databaseURL, con);
+       	con = JdbcRecording.getConnection(databaseURL, user, password);
+        Connection replaced = pool.put(databaseURL, con);
+        if (replaced != null && replaced != con) {
+            // closed or no longer valid, see getConnectionFromPool
+            DBUtils.closeQuietly(replaced);
+        }
+        credentials.put(databaseURL, new String[] { driverClassName, user, password });
         logger.finest("Added connection to " + databaseURL + " to pool");
     	
     	return con;
@@ -191,10 +221,32 @@ public final class ConnectionPool {
 
     // -------------------------------------------------------------------------
     /**
-     * Close all the connections in the pool.
+     * Open a new connection to a database the pool has connected to before, 
+     * with the same credentials. The connection is not pooled, so it can be 
+     * used while the pooled one is busy; the caller must close it.
+     * 
+     * @return The new connection, or null if the pool has never connected to
+     *          databaseURL.
+     */
+    public static Connection openSideConnection(String databaseURL) throws SQLException {
+
+        String[] credential = credentials.get(databaseURL);
+        if (credential == null) {
+            return null;
+        }
+        return JdbcRecording.getConnection(databaseURL, credential[1], credential[2]);
+    }
+
+    // -------------------------------------------------------------------------
+    /**
+     * Close all the connections in the pool, at the end of a run. The
+     * connections the {@link ServerGovernor}s sample the servers with are
+     * closed too.
      */
     public static void closeAll() {
 
+        ServerGovernor.closeAll();
+
         Set<String> keys = pool.keySet();
         Iterator<String> it = keys.iterator();
 
@@ -1445,6 +1445,7 @@ public final class DBUtils {
 		int result = -1;
 		Statement stmt = null;
 		ResultSet rs = null;
+		long start = System.nanoTime();
 		try {
 			stmt = con.createStatement();
 			rs = stmt.executeQuery(sql);
@@ -1457,6 +1458,13 @@ public final class DBUtils {
 			}
 			rs.close();
 			stmt.close();
+			long nanos = System.nanoTime() - start;
+			if (Metrics.isEnabled()) {
+				Metrics.recordQuery(con.getMetaData().getURL(), nanos, result, 0);
+			}
+			if (SlowQueryLog.isSlow(nanos)) {
+				SlowQueryLog.record(con.getMetaData().getURL(), sql, null, nanos);
+			}
 		} catch (Exception e) {
 			throw new SqlUncheckedException("Could not retrieve row count", e);
 		} finally {
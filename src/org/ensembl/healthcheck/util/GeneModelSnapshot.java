@@ -0,0 +1,664 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.ensembl.healthcheck.DatabaseRegistryEntry;
+
+/**
+ * <p>
+ * Read-only, column oriented copy of the gene model tables (gene, transcript,
+ * exon, exon_transcript and translation) of a core database. Each table is
+ * streamed once, ordered by its primary key, into primitive arrays so that the
+ * gene structure tests can run their checks as in-memory passes instead of
+ * each issuing its own genome wide join.
+ * </p>
+ *
+ * <p>
+ * Rows are addressed by their index in the snapshot. Foreign keys are resolved
+ * to indices when the snapshot is loaded; a foreign key that points at a
+ * missing row is stored as -1 so callers can reproduce the semantics of an
+ * inner join by skipping those rows. The raw id is always kept as well.
+ * </p>
+ *
+ * <p>
+ * Snapshots are cached per database (see {@link #getSnapshot(DatabaseRegistryEntry)})
+ * so that all the tests run against one database share a single load, until
+ * the test runner clears the cache with {@link #clearCache()} at the end of the run.
+ * Once built a snapshot is never modified and can be read from several threads.
+ * </p>
+ */
+public final class GeneModelSnapshot {
+
+	/** The logger to use for this class */
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	/**
+	 * Databases are tested one after the other, so only the most recently used
+	 * snapshots need to be kept.
+	 */
+	private static final int MAX_CACHED_SNAPSHOTS = 2;
+
+	private static final Map<String, GeneModelSnapshot> cache = new PoorLruMap<String, GeneModelSnapshot>(MAX_CACHED_SNAPSHOTS);
+
+	/**
+	 * One lock per database, held while its snapshot loads, so that tests of
+	 * other databases are not kept waiting. Guarded by cache.
+	 */
+	private static final Map<String, Object> loadLocks = new HashMap<String, Object>();
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final String databaseName;
+
+	// gene
+	private int geneCount;
+	private long[] geneId = new long[INITIAL_CAPACITY];
+	private int[] geneSeqRegionId = new int[INITIAL_CAPACITY];
+	private int[] geneStart = new int[INITIAL_CAPACITY];
+	private int[] geneEnd = new int[INITIAL_CAPACITY];
+	private byte[] geneStrand = new byte[INITIAL_CAPACITY];
+	private String[] geneStableId = new String[INITIAL_CAPACITY];
+	private String[] geneSource = new String[INITIAL_CAPACITY];
+
+	// transcript
+	private int transcriptCount;
+	private long[] transcriptId = new long[INITIAL_CAPACITY];
+	private long[] transcriptGeneId = new long[INITIAL_CAPACITY];
+	private int[] transcriptGene = new int[INITIAL_CAPACITY];
+	private int[] transcriptSeqRegionId = new int[INITIAL_CAPACITY];
+	private int[] transcriptStart = new int[INITIAL_CAPACITY];
+	private int[] transcriptEnd = new int[INITIAL_CAPACITY];
+	private byte[] transcriptStrand = new byte[INITIAL_CAPACITY];
+
+	// exon
+	private int exonCount;
+	private long[] exonId = new long[INITIAL_CAPACITY];
+	private int[] exonSeqRegionId = new int[INITIAL_CAPACITY];
+	private int[] exonStart = new int[INITIAL_CAPACITY];
+	private int[] exonEnd = new int[INITIAL_CAPACITY];
+	private byte[] exonStrand = new byte[INITIAL_CAPACITY];
+	private byte[] exonPhase = new byte[INITIAL_CAPACITY];
+	private byte[] exonEndPhase = new byte[INITIAL_CAPACITY];
+
+	// exon_transcript, ordered by transcript_id and rank
+	private int exonTranscriptCount;
+	private long[] exonTranscriptTranscriptId = new long[INITIAL_CAPACITY];
+	private long[] exonTranscriptExonId = new long[INITIAL_CAPACITY];
+	private int[] exonTranscriptTranscript = new int[INITIAL_CAPACITY];
+	private int[] exonTranscriptExon = new int[INITIAL_CAPACITY];
+	private int[] exonTranscriptRank = new int[INITIAL_CAPACITY];
+
+	// translation
+	private int translationCount;
+	private long[] translationId = new long[INITIAL_CAPACITY];
+	private int[] translationTranscript = new int[INITIAL_CAPACITY];
+	private long[] translationStartExonId = new long[INITIAL_CAPACITY];
+	private long[] translationEndExonId = new long[INITIAL_CAPACITY];
+	private int[] translationStartExon = new int[INITIAL_CAPACITY];
+	private int[] translationEndExon = new int[INITIAL_CAPACITY];
+	private int[] translationSeqStart = new int[INITIAL_CAPACITY];
+	private int[] translationSeqEnd = new int[INITIAL_CAPACITY];
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Get the snapshot for a database, loading it if it has not been loaded
+	 * already.
+	 *
+	 * @param dbre
+	 *          The database to get the snapshot for.
+	 * @return The (possibly shared) snapshot of the gene model tables.
+	 */
+	public static GeneModelSnapshot getSnapshot(DatabaseRegistryEntry dbre) {
+
+		String key = dbre.getDatabaseServer() + "/" + dbre.getName();
+
+		Object loadLock;
+		synchronized (cache) {
+			GeneModelSnapshot snapshot = cache.get(key);
+			if (snapshot != null) {
+				return snapshot;
+			}
+			loadLock = loadLocks.get(key);
+			if (loadLock == null) {
+				loadLock = new Object();
+				loadLocks.put(key, loadLock);
+			}
+		}
+
+		synchronized (loadLock) {
+			// another test may have loaded it while this one waited
+			synchronized (cache) {
+				GeneModelSnapshot snapshot = cache.get(key);
+				if (snapshot != null) {
+					return snapshot;
+				}
+			}
+			GeneModelSnapshot snapshot = load(dbre.getName(), dbre.getConnection());
+			synchronized (cache) {
+				cache.put(key, snapshot);
+				loadLocks.remove(key);
+			}
+			return snapshot;
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Remove all cached snapshots, e.g. at the end of a session.
+	 */
+	public static void clearCache() {
+
+		synchronized (cache) {
+			cache.clear();
+			loadLocks.clear();
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Load a new snapshot from a connection. The result is not cached.
+	 *
+	 * @param databaseName
+	 *          Name used in log messages.
+	 * @param con
+	 *          Connection to a core-like database.
+	 * @return The new snapshot.
+	 */
+	public static GeneModelSnapshot load(String databaseName, Connection con) {
+
+		long startTime = System.currentTimeMillis();
+
+		GeneModelSnapshot snapshot = new GeneModelSnapshot(databaseName);
+
+		try {
+			snapshot.loadGenes(con);
+			snapshot.loadTranscripts(con);
+			snapshot.loadExons(con);
+			snapshot.loadExonTranscripts(con);
+			snapshot.loadTranslations(con);
+		} catch (SQLException e) {
+			throw new SqlUncheckedException("Could not load gene model snapshot for " + databaseName, e);
+		}
+
+		logger.fine("Loaded gene model snapshot for " + databaseName + " (" + snapshot.geneCount + " genes, " + snapshot.transcriptCount + " transcripts, " + snapshot.exonCount + " exons, "
+				+ snapshot.translationCount + " translations) in " + (System.currentTimeMillis() - startTime) + "ms");
+
+		return snapshot;
+
+	}
+
+	private GeneModelSnapshot(String databaseName) {
+
+		this.databaseName = databaseName;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	private void loadGenes(Connection con) throws SQLException {
+
+		Statement stmt = createStreamingStatement(con);
+		ResultSet rs = null;
+		try {
+			rs = stmt.executeQuery("SELECT gene_id, seq_region_id, seq_region_start, seq_region_end, seq_region_strand, stable_id, source FROM gene ORDER BY gene_id");
+			int i = 0;
+			while (rs.next()) {
+				if (i == geneId.length) {
+					int n = grow(i);
+					geneId = Arrays.copyOf(geneId, n);
+					geneSeqRegionId = Arrays.copyOf(geneSeqRegionId, n);
+					geneStart = Arrays.copyOf(geneStart, n);
+					geneEnd = Arrays.copyOf(geneEnd, n);
+					geneStrand = Arrays.copyOf(geneStrand, n);
+					geneStableId = Arrays.copyOf(geneStableId, n);
+					geneSource = Arrays.copyOf(geneSource, n);
+				}
+				geneId[i] = rs.getLong(1);
+				geneSeqRegionId[i] = rs.getInt(2);
+				geneStart[i] = rs.getInt(3);
+				geneEnd[i] = rs.getInt(4);
+				geneStrand[i] = rs.getByte(5);
+				geneStableId[i] = rs.getString(6);
+				String source = rs.getString(7);
+				// only a handful of distinct sources, so share the instances
+				geneSource[i] = (source == null) ? null : source.intern();
+				i++;
+			}
+			geneCount = i;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	private void loadTranscripts(Connection con) throws SQLException {
+
+		Statement stmt = createStreamingStatement(con);
+		ResultSet rs = null;
+		try {
+			rs = stmt.executeQuery("SELECT transcript_id, gene_id, seq_region_id, seq_region_start, seq_region_end, seq_region_strand FROM transcript ORDER BY transcript_id");
+			int i = 0;
+			while (rs.next()) {
+				if (i == transcriptId.length) {
+					int n = grow(i);
+					transcriptId = Arrays.copyOf(transcriptId, n);
+					transcriptGeneId = Arrays.copyOf(transcriptGeneId, n);
+					transcriptGene = Arrays.copyOf(transcriptGene, n);
+					transcriptSeqRegionId = Arrays.copyOf(transcriptSeqRegionId, n);
+					transcriptStart = Arrays.copyOf(transcriptStart, n);
+					transcriptEnd = Arrays.copyOf(transcriptEnd, n);
+					transcriptStrand = Arrays.copyOf(transcriptStrand, n);
+				}
+				transcriptId[i] = rs.getLong(1);
+				transcriptGeneId[i] = rs.getLong(2);
+				transcriptGene[i] = geneIndex(transcriptGeneId[i]);
+				transcriptSeqRegionId[i] = rs.getInt(3);
+				transcriptStart[i] = rs.getInt(4);
+				transcriptEnd[i] = rs.getInt(5);
+				transcriptStrand[i] = rs.getByte(6);
+				i++;
+			}
+			transcriptCount = i;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	private void loadExons(Connection con) throws SQLException {
+
+		Statement stmt = createStreamingStatement(con);
+		ResultSet rs = null;
+		try {
+			rs = stmt.executeQuery("SELECT exon_id, seq_region_id, seq_region_start, seq_region_end, seq_region_strand, phase, end_phase FROM exon ORDER BY exon_id");
+			int i = 0;
+			while (rs.next()) {
+				if (i == exonId.length) {
+					int n = grow(i);
+					exonId = Arrays.copyOf(exonId, n);
+					exonSeqRegionId = Arrays.copyOf(exonSeqRegionId, n);
+					exonStart = Arrays.copyOf(exonStart, n);
+					exonEnd = Arrays.copyOf(exonEnd, n);
+					exonStrand = Arrays.copyOf(exonStrand, n);
+					exonPhase = Arrays.copyOf(exonPhase, n);
+					exonEndPhase = Arrays.copyOf(exonEndPhase, n);
+				}
+				exonId[i] = rs.getLong(1);
+				exonSeqRegionId[i] = rs.getInt(2);
+				exonStart[i] = rs.getInt(3);
+				exonEnd[i] = rs.getInt(4);
+				exonStrand[i] = rs.getByte(5);
+				exonPhase[i] = rs.getByte(6);
+				exonEndPhase[i] = rs.getByte(7);
+				i++;
+			}
+			exonCount = i;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	private void loadExonTranscripts(Connection con) throws SQLException {
+
+		Statement stmt = createStreamingStatement(con);
+		ResultSet rs = null;
+		try {
+			rs = stmt.executeQuery("SELECT transcript_id, exon_id, rank FROM exon_transcript ORDER BY transcript_id, rank");
+			int i = 0;
+			while (rs.next()) {
+				if (i == exonTranscriptTranscriptId.length) {
+					int n = grow(i);
+					exonTranscriptTranscriptId = Arrays.copyOf(exonTranscriptTranscriptId, n);
+					exonTranscriptExonId = Arrays.copyOf(exonTranscriptExonId, n);
+					exonTranscriptTranscript = Arrays.copyOf(exonTranscriptTranscript, n);
+					exonTranscriptExon = Arrays.copyOf(exonTranscriptExon, n);
+					exonTranscriptRank = Arrays.copyOf(exonTranscriptRank, n);
+				}
+				exonTranscriptTranscriptId[i] = rs.getLong(1);
+				exonTranscriptExonId[i] = rs.getLong(2);
+				exonTranscriptRank[i] = rs.getInt(3);
+				exonTranscriptTranscript[i] = transcriptIndex(exonTranscriptTranscriptId[i]);
+				exonTranscriptExon[i] = exonIndex(exonTranscriptExonId[i]);
+				i++;
+			}
+			exonTranscriptCount = i;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	private void loadTranslations(Connection con) throws SQLException {
+
+		Statement stmt = createStreamingStatement(con);
+		ResultSet rs = null;
+		try {
+			rs = stmt.executeQuery("SELECT translation_id, transcript_id, start_exon_id, end_exon_id, seq_start, seq_end FROM translation ORDER BY translation_id");
+			int i = 0;
+			while (rs.next()) {
+				if (i == translationId.length) {
+					int n = grow(i);
+					translationId = Arrays.copyOf(translationId, n);
+					translationTranscript = Arrays.copyOf(translationTranscript, n);
+					translationStartExonId = Arrays.copyOf(translationStartExonId, n);
+					translationEndExonId = Arrays.copyOf(translationEndExonId, n);
+					translationStartExon = Arrays.copyOf(translationStartExon, n);
+					translationEndExon = Arrays.copyOf(translationEndExon, n);
+					translationSeqStart = Arrays.copyOf(translationSeqStart, n);
+					translationSeqEnd = Arrays.copyOf(translationSeqEnd, n);
+				}
+				translationId[i] = rs.getLong(1);
+				translationTranscript[i] = transcriptIndex(rs.getLong(2));
+				translationStartExonId[i] = rs.getLong(3);
+				translationEndExonId[i] = rs.getLong(4);
+				translationSeqStart[i] = rs.getInt(5);
+				translationSeqEnd[i] = rs.getInt(6);
+				translationStartExon[i] = exonIndex(translationStartExonId[i]);
+				translationEndExon[i] = exonIndex(translationEndExonId[i]);
+				i++;
+			}
+			translationCount = i;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	/**
+	 * Create a forward-only statement. With MySQL Connector/J a fetch size of
+	 * Integer.MIN_VALUE streams rows rather than buffering the whole result in
+	 * memory first; other drivers reject that value so get a normal fetch size.
+	 */
+	private static Statement createStreamingStatement(Connection con) throws SQLException {
+
+		Statement stmt = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		String url = con.getMetaData().getURL();
+		if (url != null && url.startsWith("jdbc:mysql")) {
+			stmt.setFetchSize(Integer.MIN_VALUE);
+		} else {
+			stmt.setFetchSize(1000);
+		}
+		return stmt;
+
+	}
+
+	private static int grow(int size) {
+
+		return size + (size >> 1) + 1;
+
+	}
+
+	private static int search(long[] ids, int count, long id) {
+
+		int i = Arrays.binarySearch(ids, 0, count, id);
+		return i < 0 ? -1 : i;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	public String getDatabaseName() {
+		return databaseName;
+	}
+
+	// -------------------------------------------------------------------------
+	// Lookups by id. Return -1 if there is no such row.
+
+	public int geneIndex(long id) {
+		return search(geneId, geneCount, id);
+	}
+
+	public int transcriptIndex(long id) {
+		return search(transcriptId, transcriptCount, id);
+	}
+
+	public int exonIndex(long id) {
+		return search(exonId, exonCount, id);
+	}
+
+	// -------------------------------------------------------------------------
+	// gene
+
+	public int getGeneCount() {
+		return geneCount;
+	}
+
+	public long getGeneId(int i) {
+		return geneId[i];
+	}
+
+	public int getGeneSeqRegionId(int i) {
+		return geneSeqRegionId[i];
+	}
+
+	public int getGeneStart(int i) {
+		return geneStart[i];
+	}
+
+	public int getGeneEnd(int i) {
+		return geneEnd[i];
+	}
+
+	public int getGeneStrand(int i) {
+		return geneStrand[i];
+	}
+
+	public String getGeneStableId(int i) {
+		return geneStableId[i];
+	}
+
+	public String getGeneSource(int i) {
+		return geneSource[i];
+	}
+
+	// -------------------------------------------------------------------------
+	// transcript
+
+	public int getTranscriptCount() {
+		return transcriptCount;
+	}
+
+	public long getTranscriptId(int i) {
+		return transcriptId[i];
+	}
+
+	public long getTranscriptGeneId(int i) {
+		return transcriptGeneId[i];
+	}
+
+	/**
+	 * @return Index of the gene of transcript i, or -1 if the gene does not
+	 *         exist.
+	 */
+	public int getTranscriptGene(int i) {
+		return transcriptGene[i];
+	}
+
+	public int getTranscriptSeqRegionId(int i) {
+		return transcriptSeqRegionId[i];
+	}
+
+	public int getTranscriptStart(int i) {
+		return transcriptStart[i];
+	}
+
+	public int getTranscriptEnd(int i) {
+		return transcriptEnd[i];
+	}
+
+	public int getTranscriptStrand(int i) {
+		return transcriptStrand[i];
+	}
+
+	// -------------------------------------------------------------------------
+	// exon
+
+	public int getExonCount() {
+		return exonCount;
+	}
+
+	public long getExonId(int i) {
+		return exonId[i];
+	}
+
+	public int getExonSeqRegionId(int i) {
+		return exonSeqRegionId[i];
+	}
+
+	public int getExonStart(int i) {
+		return exonStart[i];
+	}
+
+	public int getExonEnd(int i) {
+		return exonEnd[i];
+	}
+
+	public int getExonStrand(int i) {
+		return exonStrand[i];
+	}
+
+	public int getExonPhase(int i) {
+		return exonPhase[i];
+	}
+
+	public int getExonEndPhase(int i) {
+		return exonEndPhase[i];
+	}
+
+	// -------------------------------------------------------------------------
+	// exon_transcript; rows are ordered by transcript_id then rank so the exons
+	// of a transcript are always contiguous
+
+	public int getExonTranscriptCount() {
+		return exonTranscriptCount;
+	}
+
+	public long getExonTranscriptTranscriptId(int row) {
+		return exonTranscriptTranscriptId[row];
+	}
+
+	public long getExonTranscriptExonId(int row) {
+		return exonTranscriptExonId[row];
+	}
+
+	/**
+	 * @return Index of the transcript of this row, or -1 if the transcript does
+	 *         not exist.
+	 */
+	public int getExonTranscriptTranscript(int row) {
+		return exonTranscriptTranscript[row];
+	}
+
+	/**
+	 * @return Index of the exon of this row, or -1 if the exon does not exist.
+	 */
+	public int getExonTranscriptExon(int row) {
+		return exonTranscriptExon[row];
+	}
+
+	public int getExonTranscriptRank(int row) {
+		return exonTranscriptRank[row];
+	}
+
+	/**
+	 * Find the end of the block of exon_transcript rows that share a transcript
+	 * with row.
+	 *
+	 * @param row
+	 *          First row of a block.
+	 * @return Index one past the last row with the same transcript_id as row.
+	 */
+	public int getExonTranscriptBlockEnd(int row) {
+
+		long id = exonTranscriptTranscriptId[row];
+		int end = row + 1;
+		while (end < exonTranscriptCount && exonTranscriptTranscriptId[end] == id) {
+			end++;
+		}
+		return end;
+
+	}
+
+	// -------------------------------------------------------------------------
+	// translation
+
+	public int getTranslationCount() {
+		return translationCount;
+	}
+
+	public long getTranslationId(int i) {
+		return translationId[i];
+	}
+
+	/**
+	 * @return Index of the transcript of translation i, or -1 if the transcript
+	 *         does not exist.
+	 */
+	public int getTranslationTranscript(int i) {
+		return translationTranscript[i];
+	}
+
+	public long getTranslationStartExonId(int i) {
+		return translationStartExonId[i];
+	}
+
+	public long getTranslationEndExonId(int i) {
+		return translationEndExonId[i];
+	}
+
+	/**
+	 * @return Index of the start exon of translation i, or -1 if the exon does
+	 *         not exist.
+	 */
+	public int getTranslationStartExon(int i) {
+		return translationStartExon[i];
+	}
+
+	/**
+	 * @return Index of the end exon of translation i, or -1 if the exon does not
+	 *         exist.
+	 */
+	public int getTranslationEndExon(int i) {
+		return translationEndExon[i];
+	}
+
+	public int getTranslationSeqStart(int i) {
+		return translationSeqStart[i];
+	}
+
+	public int getTranslationSeqEnd(int i) {
+		return translationSeqEnd[i];
+	}
+
+} // GeneModelSnapshot
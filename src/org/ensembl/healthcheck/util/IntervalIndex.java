@@ -0,0 +1,273 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Static index of closed intervals ([start, end], as used for Ensembl
+ * seq_region coordinates) grouped by a numeric key such as a seq_region_id.
+ * Intervals are held in primitive arrays sorted by key and start, without any
+ * per-interval objects, so the intervals of a key can be swept in order and
+ * those starting up to a position found by binary search.
+ * </p>
+ *
+ * <p>
+ * Build an index with a {@link Builder}. Positions in the index can be passed
+ * to {@link #getKey(int)}, {@link #getStart(int)}, {@link #getEnd(int)} and
+ * {@link #getId(int)}.
+ * </p>
+ */
+public final class IntervalIndex {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long[] keys;
+	private final long[] starts;
+	private final long[] ends;
+	private final long[] ids;
+
+	private final long[] blockKeys;
+	private final int[] blockOffsets;
+
+	/**
+	 * Collects intervals in any order and builds an {@link IntervalIndex}.
+	 */
+	public static class Builder {
+
+		private int size;
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private long[] starts = new long[INITIAL_CAPACITY];
+		private long[] ends = new long[INITIAL_CAPACITY];
+		private long[] ids = new long[INITIAL_CAPACITY];
+
+		/**
+		 * Add an interval.
+		 *
+		 * @param key
+		 *          Group the interval belongs to, e.g. a seq_region_id.
+		 * @param start
+		 *          First position covered.
+		 * @param end
+		 *          Last position covered.
+		 * @param id
+		 *          Caller supplied value returned by {@link IntervalIndex#getId(int)}.
+		 * @return this builder
+		 */
+		public Builder add(long key, long start, long end, long id) {
+
+			if (size == keys.length) {
+				int n = size + (size >> 1) + 1;
+				keys = Arrays.copyOf(keys, n);
+				starts = Arrays.copyOf(starts, n);
+				ends = Arrays.copyOf(ends, n);
+				ids = Arrays.copyOf(ids, n);
+			}
+			keys[size] = key;
+			starts[size] = start;
+			ends[size] = end;
+			ids[size] = id;
+			size++;
+			return this;
+
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public IntervalIndex build() {
+
+			int[] order = sortedOrder(keys, starts, size);
+			long[] k = new long[size];
+			long[] s = new long[size];
+			long[] e = new long[size];
+			long[] d = new long[size];
+			for (int i = 0; i < size; i++) {
+				k[i] = keys[order[i]];
+				s[i] = starts[order[i]];
+				e[i] = ends[order[i]];
+				d[i] = ids[order[i]];
+			}
+			return new IntervalIndex(k, s, e, d);
+
+		}
+
+	}
+
+	private IntervalIndex(long[] keys, long[] starts, long[] ends, long[] ids) {
+
+		this.keys = keys;
+		this.starts = starts;
+		this.ends = ends;
+		this.ids = ids;
+
+		int blockCount = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (i == 0 || keys[i] != keys[i - 1]) {
+				blockCount++;
+			}
+		}
+
+		blockKeys = new long[blockCount];
+		blockOffsets = new int[blockCount + 1];
+
+		int b = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (i == 0 || keys[i] != keys[i - 1]) {
+				blockKeys[b] = keys[i];
+				blockOffsets[b] = i;
+				b++;
+			}
+		}
+		blockOffsets[blockCount] = keys.length;
+
+	}
+
+	// -------------------------------------------------------------------------
+
+	public int size() {
+		return keys.length;
+	}
+
+	public long getKey(int i) {
+		return keys[i];
+	}
+
+	public long getStart(int i) {
+		return starts[i];
+	}
+
+	public long getEnd(int i) {
+		return ends[i];
+	}
+
+	public long getId(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * @return position of the first interval (lowest start) with this key, or
+	 *         -1 if there is none.
+	 */
+	public int getFirstIndex(long key) {
+
+		int b = Arrays.binarySearch(blockKeys, key);
+		return b < 0 ? -1 : blockOffsets[b];
+
+	}
+
+	/**
+	 * @return position one past the last interval with this key, or -1 if there
+	 *         is none.
+	 */
+	public int getEndIndex(long key) {
+
+		int b = Arrays.binarySearch(blockKeys, key);
+		return b < 0 ? -1 : blockOffsets[b + 1];
+
+	}
+
+	/**
+	 * Position of the first interval with this key whose start is strictly
+	 * greater than position. Intervals between {@link #getFirstIndex(long)} and
+	 * the returned position all start at or before position.
+	 *
+	 * @return position in the index, or -1 if there are no intervals with this
+	 *         key.
+	 */
+	public int getFirstIndexStartingAfter(long key, long position) {
+
+		int b = Arrays.binarySearch(blockKeys, key);
+		if (b < 0) {
+			return -1;
+		}
+		int lo = blockOffsets[b];
+		int hi = blockOffsets[b + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (starts[mid] <= position) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Stable merge sort of positions [0, size) by key then start, without
+	 * boxing. Already sorted input (the usual case when the rows come from an
+	 * ORDER BY) is detected and returned as is.
+	 */
+	private static int[] sortedOrder(long[] keys, long[] starts, int size) {
+
+		int[] order = new int[size];
+		boolean sorted = true;
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+			if (i > 0 && compare(keys, starts, i - 1, i) > 0) {
+				sorted = false;
+			}
+		}
+		if (!sorted) {
+			mergeSort(order, new int[size], 0, size, keys, starts);
+		}
+		return order;
+
+	}
+
+	private static void mergeSort(int[] a, int[] tmp, int lo, int hi, long[] keys, long[] starts) {
+
+		if (hi - lo < 2) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		mergeSort(a, tmp, lo, mid, keys, starts);
+		mergeSort(a, tmp, mid, hi, keys, starts);
+		if (compare(keys, starts, a[mid - 1], a[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(a, lo, tmp, lo, hi - lo);
+		int i = lo;
+		int j = mid;
+		for (int k = lo; k < hi; k++) {
+			if (j >= hi || (i < mid && compare(keys, starts, tmp[i], tmp[j]) <= 0)) {
+				a[k] = tmp[i++];
+			} else {
+				a[k] = tmp[j++];
+			}
+		}
+
+	}
+
+	private static int compare(long[] keys, long[] starts, int i, int j) {
+
+		if (keys[i] != keys[j]) {
+			return keys[i] < keys[j] ? -1 : 1;
+		}
+		if (starts[i] != starts[j]) {
+			return starts[i] < starts[j] ? -1 : 1;
+		}
+		return 0;
+
+	}
+
+} // IntervalIndex
@@ -0,0 +1,1459 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>
+ * Records the statements run through the {@link ConnectionPool} and their
+ * results into fixture files, and serves them back later without a database
+ * server, so the Java side of the healthchecks can be profiled and
+ * benchmarked the same way on any machine.
+ * </p>
+ *
+ * <p>
+ * Run with <code>-Djdbc.record=directory</code> to record, and later with
+ * <code>-Djdbc.replay=directory</code> to replay. There is one gzipped
+ * fixture per database URL. A statement is looked up by its SQL and
+ * parameters; if it was run more than once, the results are served in the
+ * order they were recorded, the last one again once they run out. A
+ * statement which was not recorded throws an SQLException.
+ * </p>
+ *
+ * <p>
+ * Result sets are read completely when their statement is run, both when
+ * recording and replaying, so tests see the same scrollable result sets
+ * either way. Connections opened with the DriverManager directly, such as
+ * those to temporary databases, are neither recorded nor replayed.
+ * </p>
+ */
+public final class JdbcRecording {
+
+	public static final String RECORD = "jdbc.record";
+
+	public static final String REPLAY = "jdbc.replay";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte RESULT_SET = 'R';
+
+	private static final byte UPDATE_COUNT = 'U';
+
+	private static final byte BATCH = 'B';
+
+	private static final byte SCALAR = 'S';
+
+	private static final byte EXCEPTION = 'E';
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	/** Guarded by JdbcRecording.class */
+	private static File recordDir = null;
+
+	/** Guarded by JdbcRecording.class */
+	private static File replayDir = null;
+
+	/** Guarded by JdbcRecording.class */
+	private static boolean configured = false;
+
+	/** Fixture of each database URL; guarded by JdbcRecording.class */
+	private static final Map<String, Fixture> fixtures = new HashMap<String, Fixture>();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				closeAll();
+			}
+		}, "JdbcRecording-shutdown"));
+	}
+
+	private JdbcRecording() {
+	}
+
+	private static synchronized void configure() {
+
+		if (!configured) {
+			configured = true;
+			String record = System.getProperty(RECORD);
+			String replay = System.getProperty(REPLAY);
+			if (replay != null && replay.length() > 0) {
+				replayDir = new File(replay);
+			} else if (record != null && record.length() > 0) {
+				recordDir = new File(record);
+			}
+		}
+
+	}
+
+	/**
+	 * @return true if connections are recorded
+	 */
+	public static synchronized boolean isRecording() {
+		configure();
+		return recordDir != null;
+	}
+
+	/**
+	 * @return true if connections are served from fixtures
+	 */
+	public static synchronized boolean isReplaying() {
+		configure();
+		return replayDir != null;
+	}
+
+	/**
+	 * Record the connections opened from now on into directory, regardless of
+	 * the system properties.
+	 */
+	public static synchronized void record(File directory) {
+		closeAll();
+		configured = true;
+		recordDir = directory;
+		replayDir = null;
+	}
+
+	/**
+	 * Serve the connections opened from now on from the fixtures in
+	 * directory, regardless of the system properties.
+	 */
+	public static synchronized void replay(File directory) {
+		closeAll();
+		configured = true;
+		recordDir = null;
+		replayDir = directory;
+	}
+
+	/**
+	 * Finish the fixtures being recorded and connect to databases as usual
+	 * from now on.
+	 */
+	public static synchronized void stop() {
+		closeAll();
+		configured = true;
+		recordDir = null;
+		replayDir = null;
+	}
+
+	/**
+	 * Finish writing the fixtures being recorded.
+	 */
+	public static synchronized void closeAll() {
+
+		for (Fixture fixture : fixtures.values()) {
+			fixture.close();
+		}
+		fixtures.clear();
+
+	}
+
+	/**
+	 * Connect to a database, recording the connection or serving it from a
+	 * fixture if asked to. The JDBC driver must have been loaded, except when
+	 * replaying.
+	 */
+	public static Connection getConnection(String databaseURL, String user, String password) throws SQLException {
+
+		Fixture fixture;
+		synchronized (JdbcRecording.class) {
+			configure();
+			if (recordDir == null && replayDir == null) {
+				fixture = null;
+			} else {
+				fixture = fixtures.get(databaseURL);
+				if (fixture == null) {
+					fixture = recordDir != null ? Fixture.create(recordDir, databaseURL) : Fixture.load(replayDir,
+							databaseURL);
+					fixtures.put(databaseURL, fixture);
+				}
+			}
+		}
+
+		if (fixture == null) {
+			return DriverManager.getConnection(databaseURL, user, password);
+		}
+		Connection con = fixture.recording ? DriverManager.getConnection(databaseURL, user, password) : null;
+		return (Connection) wrap(Connection.class, new ObjectHandler(fixture, con));
+
+	}
+
+	/**
+	 * @return the file recording databaseURL is written to
+	 */
+	static File getFixtureFile(File directory, String databaseURL) {
+		return new File(directory, databaseURL.replaceAll("[^A-Za-z0-9._-]+", "_") + ".jdbc.gz");
+	}
+
+	private static Object wrap(Class<?> type, InvocationHandler handler) {
+		return Proxy.newProxyInstance(JdbcRecording.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private static Object call(Object target, Method method, Object[] args) throws Throwable {
+
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+
+	}
+
+	/**
+	 * @return what a method returns when replaying something which does not
+	 *         need the database, such as setFetchSize
+	 */
+	private static Object defaultValue(Class<?> type) {
+
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		}
+		if (type == int.class) {
+			return Integer.valueOf(0);
+		}
+		if (type == long.class) {
+			return Long.valueOf(0);
+		}
+		if (type == short.class) {
+			return Short.valueOf((short) 0);
+		}
+		if (type == byte.class) {
+			return Byte.valueOf((byte) 0);
+		}
+		if (type == double.class) {
+			return Double.valueOf(0);
+		}
+		if (type == float.class) {
+			return Float.valueOf(0);
+		}
+		if (type == char.class) {
+			return Character.valueOf((char) 0);
+		}
+		return null;
+
+	}
+
+	/**
+	 * Handle equals, hashCode and toString of a proxy.
+	 */
+	private static Object invokeObjectMethod(Object proxy, Method method, Object[] args, String description) {
+
+		String name = method.getName();
+		if (name.equals("equals")) {
+			return Boolean.valueOf(proxy == args[0]);
+		}
+		if (name.equals("hashCode")) {
+			return Integer.valueOf(System.identityHashCode(proxy));
+		}
+		return description;
+
+	}
+
+	private static boolean isObjectMethod(Method method) {
+		return method.getDeclaringClass() == Object.class;
+	}
+
+	private static String keyOf(String kind, Method method, Object[] args) {
+
+		StringBuilder key = new StringBuilder(kind).append('\0').append(method.getName());
+		if (args != null) {
+			for (Object arg : args) {
+				key.append('\0').append(valueOf(arg));
+			}
+		}
+		return key.toString();
+
+	}
+
+	private static String valueOf(Object value) {
+
+		if (value == null) {
+			return "NULL";
+		}
+		if (value instanceof byte[]) {
+			return Arrays.toString((byte[]) value);
+		}
+		if (value instanceof Object[]) {
+			return Arrays.toString((Object[]) value);
+		}
+		return String.valueOf(value);
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * The recorded results of one database URL, either being written or read
+	 * for replaying.
+	 */
+	static class Fixture {
+
+		final String url;
+
+		final boolean recording;
+
+		/** Guarded by this */
+		private DataOutputStream out;
+
+		/** Guarded by this */
+		private final Map<String, List<Result>> results = new HashMap<String, List<Result>>();
+
+		/** Index of the next result of each key; guarded by this */
+		private final Map<String, Integer> served = new HashMap<String, Integer>();
+
+		private Fixture(String url, boolean recording) {
+			this.url = url;
+			this.recording = recording;
+		}
+
+		static Fixture create(File directory, String url) throws SQLException {
+
+			Fixture fixture = new Fixture(url, true);
+			File file = getFixtureFile(directory, url);
+			try {
+				directory.mkdirs();
+				fixture.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+						64 * 1024)));
+				writeString(fixture.out, url);
+			} catch (IOException e) {
+				throw new SQLException("Cannot record " + url + " in " + file + ": " + e.getMessage());
+			}
+			logger.fine("Recording " + url + " in " + file);
+			return fixture;
+
+		}
+
+		static Fixture load(File directory, String url) throws SQLException {
+
+			Fixture fixture = new Fixture(url, false);
+			File file = getFixtureFile(directory, url);
+			if (!file.exists()) {
+				throw new SQLException("No recording of " + url + " in " + directory, "08001");
+			}
+			DataInputStream in = null;
+			int count = 0;
+			try {
+				in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024)));
+				readString(in);
+				while (true) {
+					String key;
+					try {
+						key = readString(in);
+					} catch (EOFException e) {
+						break;
+					}
+					List<Result> list = fixture.results.get(key);
+					if (list == null) {
+						list = new ArrayList<Result>(1);
+						fixture.results.put(key, list);
+					}
+					list.add(Result.read(in));
+					count++;
+				}
+			} catch (IOException e) {
+				// e.g. the recording run was killed; use what was written
+				logger.warning("Recording of " + url + " in " + file + " is incomplete: " + e.getMessage());
+			} finally {
+				InputOutputUtils.closeQuietly(in);
+			}
+			logger.fine("Replaying " + count + " results of " + url + " from " + file);
+			return fixture;
+
+		}
+
+		synchronized void write(String key, Result result) {
+
+			if (out == null) {
+				return;
+			}
+			try {
+				writeString(out, key);
+				result.write(out);
+			} catch (IOException e) {
+				logger.warning("Cannot record " + url + ": " + e.getMessage());
+				close();
+			}
+
+		}
+
+		synchronized Result read(String key) throws SQLException {
+
+			List<Result> list = results.get(key);
+			if (list == null) {
+				throw new SQLException("No recording of " + key.replace('\0', ' ') + " on " + url);
+			}
+			Integer next = served.get(key);
+			int index = next == null ? 0 : next.intValue();
+			served.put(key, Integer.valueOf(index + 1));
+			return list.get(Math.min(index, list.size() - 1));
+
+		}
+
+		synchronized void close() {
+
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					logger.warning("Cannot finish recording of " + url + ": " + e.getMessage());
+				}
+				out = null;
+			}
+
+		}
+
+		private static void writeString(DataOutputStream out, String s) throws IOException {
+
+			if (s == null) {
+				out.writeInt(-1);
+			} else {
+				byte[] bytes = s.getBytes(UTF8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+		}
+
+		private static String readString(DataInputStream in) throws IOException {
+
+			byte[] bytes = readBytes(in);
+			return bytes == null ? null : new String(bytes, UTF8);
+
+		}
+
+		private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+
+			if (bytes == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+
+		}
+
+		private static byte[] readBytes(DataInputStream in) throws IOException {
+
+			int length = in.readInt();
+			if (length < 0) {
+				return null;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			return bytes;
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * What running a statement or calling a method gave.
+	 */
+	static class Result {
+
+		byte kind;
+
+		Table table;
+
+		long updateCount;
+
+		long[] batch;
+
+		/** Class name and string value of a scalar */
+		String className;
+
+		String value;
+
+		String message;
+
+		String sqlState;
+
+		int errorCode;
+
+		static Result of(Table table) {
+			Result result = new Result();
+			result.kind = RESULT_SET;
+			result.table = table;
+			return result;
+		}
+
+		static Result of(long updateCount) {
+			Result result = new Result();
+			result.kind = UPDATE_COUNT;
+			result.updateCount = updateCount;
+			return result;
+		}
+
+		static Result ofBatch(Object counts) {
+
+			Result result = new Result();
+			result.kind = BATCH;
+			if (counts instanceof long[]) {
+				result.batch = (long[]) counts;
+			} else {
+				int[] ints = (int[]) counts;
+				result.batch = new long[ints.length];
+				for (int i = 0; i < ints.length; i++) {
+					result.batch[i] = ints[i];
+				}
+			}
+			return result;
+
+		}
+
+		static Result ofScalar(Object scalar) {
+			Result result = new Result();
+			result.kind = SCALAR;
+			result.className = scalar == null ? null : scalar.getClass().getName();
+			result.value = scalar == null ? null : scalar.toString();
+			return result;
+		}
+
+		static Result of(SQLException e) {
+			Result result = new Result();
+			result.kind = EXCEPTION;
+			result.message = e.getMessage();
+			result.sqlState = e.getSQLState();
+			result.errorCode = e.getErrorCode();
+			return result;
+		}
+
+		/**
+		 * @throws SQLException
+		 *           if this is an exception
+		 */
+		void check() throws SQLException {
+			if (kind == EXCEPTION) {
+				throw new SQLException(message, sqlState, errorCode);
+			}
+		}
+
+		Object getBatch(Class<?> type) {
+
+			if (type == long[].class) {
+				return batch.clone();
+			}
+			int[] counts = new int[batch.length];
+			for (int i = 0; i < batch.length; i++) {
+				counts[i] = (int) batch[i];
+			}
+			return counts;
+
+		}
+
+		Object getScalar(Class<?> type) {
+
+			Object scalar = value == null ? null : Table.convert(value, className);
+			if (type.isPrimitive()) {
+				Object zero = defaultValue(type);
+				return scalar != null && scalar.getClass() == zero.getClass() ? scalar : zero;
+			}
+			return type.isInstance(scalar) ? scalar : null;
+
+		}
+
+		void write(DataOutputStream out) throws IOException {
+
+			out.writeByte(kind);
+			switch (kind) {
+			case RESULT_SET:
+				table.write(out);
+				break;
+			case UPDATE_COUNT:
+				out.writeLong(updateCount);
+				break;
+			case BATCH:
+				out.writeInt(batch.length);
+				for (long count : batch) {
+					out.writeLong(count);
+				}
+				break;
+			case SCALAR:
+				Fixture.writeString(out, className);
+				Fixture.writeString(out, value);
+				break;
+			default:
+				Fixture.writeString(out, message);
+				Fixture.writeString(out, sqlState);
+				out.writeInt(errorCode);
+			}
+
+		}
+
+		static Result read(DataInputStream in) throws IOException {
+
+			Result result = new Result();
+			result.kind = in.readByte();
+			switch (result.kind) {
+			case RESULT_SET:
+				result.table = Table.read(in);
+				break;
+			case UPDATE_COUNT:
+				result.updateCount = in.readLong();
+				break;
+			case BATCH:
+				result.batch = new long[in.readInt()];
+				for (int i = 0; i < result.batch.length; i++) {
+					result.batch[i] = in.readLong();
+				}
+				break;
+			case SCALAR:
+				result.className = Fixture.readString(in);
+				result.value = Fixture.readString(in);
+				break;
+			case EXCEPTION:
+				result.message = Fixture.readString(in);
+				result.sqlState = Fixture.readString(in);
+				result.errorCode = in.readInt();
+				break;
+			default:
+				throw new IOException("Unknown kind of result " + result.kind);
+			}
+			return result;
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * The columns and rows of a result set. Values are kept as the strings
+	 * the driver gives for them, or bytes for binary columns, like the MySQL
+	 * protocol sends them.
+	 */
+	static class Table {
+
+		int columns;
+
+		String[] labels;
+
+		String[] names;
+
+		String[] tables;
+
+		int[] types;
+
+		String[] typeNames;
+
+		String[] classNames;
+
+		int[] nullable;
+
+		boolean[] autoIncrement;
+
+		final List<Object[]> rows = new ArrayList<Object[]>();
+
+		private Table(int columns) {
+
+			this.columns = columns;
+			labels = new String[columns];
+			names = new String[columns];
+			tables = new String[columns];
+			types = new int[columns];
+			typeNames = new String[columns];
+			classNames = new String[columns];
+			nullable = new int[columns];
+			autoIncrement = new boolean[columns];
+
+		}
+
+		/**
+		 * Read the rest of a result set and close it.
+		 */
+		static Table read(ResultSet rs) throws SQLException {
+
+			try {
+				ResultSetMetaData meta = rs.getMetaData();
+				Table table = new Table(meta.getColumnCount());
+				for (int i = 0; i < table.columns; i++) {
+					table.labels[i] = meta.getColumnLabel(i + 1);
+					table.names[i] = meta.getColumnName(i + 1);
+					table.tables[i] = meta.getTableName(i + 1);
+					table.types[i] = meta.getColumnType(i + 1);
+					table.typeNames[i] = meta.getColumnTypeName(i + 1);
+					table.classNames[i] = meta.getColumnClassName(i + 1);
+					table.nullable[i] = meta.isNullable(i + 1);
+					table.autoIncrement[i] = meta.isAutoIncrement(i + 1);
+				}
+				while (rs.next()) {
+					Object[] row = new Object[table.columns];
+					for (int i = 0; i < table.columns; i++) {
+						row[i] = table.isBinary(i) ? rs.getBytes(i + 1) : rs.getString(i + 1);
+					}
+					table.rows.add(row);
+				}
+				return table;
+			} finally {
+				DBUtils.closeQuietly(rs);
+			}
+
+		}
+
+		boolean isBinary(int column) {
+
+			switch (types[column]) {
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+			case Types.BLOB:
+				return true;
+			default:
+				return false;
+			}
+
+		}
+
+		/**
+		 * @return column, 0 based, of a label or name
+		 */
+		int find(String label) throws SQLException {
+
+			for (int i = 0; i < columns; i++) {
+				if (label.equalsIgnoreCase(labels[i])) {
+					return i;
+				}
+			}
+			for (int i = 0; i < columns; i++) {
+				if (label.equalsIgnoreCase(names[i])) {
+					return i;
+				}
+			}
+			throw new SQLException("Column '" + label + "' not found.", "S0022");
+
+		}
+
+		/**
+		 * @return a string value as an instance of className, as getObject
+		 *         would return it
+		 */
+		static Object convert(String value, String className) {
+
+			if (value == null || className == null) {
+				return value;
+			}
+			try {
+				if (className.equals("java.lang.Integer")) {
+					return Integer.valueOf(value);
+				}
+				if (className.equals("java.lang.Long")) {
+					return Long.valueOf(value);
+				}
+				if (className.equals("java.lang.Short")) {
+					return Short.valueOf(value);
+				}
+				if (className.equals("java.lang.Byte")) {
+					return Byte.valueOf(value);
+				}
+				if (className.equals("java.math.BigInteger")) {
+					return new BigInteger(value);
+				}
+				if (className.equals("java.lang.Double")) {
+					return Double.valueOf(value);
+				}
+				if (className.equals("java.lang.Float")) {
+					return Float.valueOf(value);
+				}
+				if (className.equals("java.math.BigDecimal")) {
+					return new BigDecimal(value);
+				}
+				if (className.equals("java.lang.Boolean")) {
+					return Boolean.valueOf(value.equals("1") || value.equalsIgnoreCase("true"));
+				}
+				if (className.equals("java.sql.Date")) {
+					return java.sql.Date.valueOf(value.substring(0, Math.min(10, value.length())));
+				}
+				if (className.equals("java.sql.Time")) {
+					return java.sql.Time.valueOf(value);
+				}
+				if (className.equals("java.sql.Timestamp")) {
+					return java.sql.Timestamp.valueOf(value.length() == 10 ? value + " 00:00:00" : value);
+				}
+			} catch (IllegalArgumentException e) {
+				// e.g. MySQL's zero dates; served as the string
+			}
+			return value;
+
+		}
+
+		void write(DataOutputStream out) throws IOException {
+
+			out.writeInt(columns);
+			for (int i = 0; i < columns; i++) {
+				Fixture.writeString(out, labels[i]);
+				Fixture.writeString(out, names[i]);
+				Fixture.writeString(out, tables[i]);
+				out.writeInt(types[i]);
+				Fixture.writeString(out, typeNames[i]);
+				Fixture.writeString(out, classNames[i]);
+				out.writeInt(nullable[i]);
+				out.writeBoolean(autoIncrement[i]);
+			}
+			out.writeInt(rows.size());
+			for (Object[] row : rows) {
+				for (int i = 0; i < columns; i++) {
+					if (row[i] instanceof byte[]) {
+						Fixture.writeBytes(out, (byte[]) row[i]);
+					} else {
+						Fixture.writeString(out, (String) row[i]);
+					}
+				}
+			}
+
+		}
+
+		static Table read(DataInputStream in) throws IOException {
+
+			Table table = new Table(in.readInt());
+			for (int i = 0; i < table.columns; i++) {
+				table.labels[i] = Fixture.readString(in);
+				table.names[i] = Fixture.readString(in);
+				table.tables[i] = Fixture.readString(in);
+				table.types[i] = in.readInt();
+				table.typeNames[i] = Fixture.readString(in);
+				table.classNames[i] = Fixture.readString(in);
+				table.nullable[i] = in.readInt();
+				table.autoIncrement[i] = in.readBoolean();
+			}
+			int rows = in.readInt();
+			for (int r = 0; r < rows; r++) {
+				Object[] row = new Object[table.columns];
+				for (int i = 0; i < table.columns; i++) {
+					row[i] = table.isBinary(i) ? Fixture.readBytes(in) : Fixture.readString(in);
+				}
+				table.rows.add(row);
+			}
+			return table;
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * A connection or database meta data, recorded or replayed.
+	 */
+	static class ObjectHandler implements InvocationHandler {
+
+		private final Fixture fixture;
+
+		/** The real object when recording, null when replaying */
+		private final Object delegate;
+
+		/** The connection proxy this belongs to, if this is meta data */
+		private final Object connection;
+
+		private boolean closed = false;
+
+		private boolean autoCommit = true;
+
+		ObjectHandler(Fixture fixture, Object delegate) {
+			this(fixture, delegate, null);
+		}
+
+		ObjectHandler(Fixture fixture, Object delegate, Object connection) {
+			this.fixture = fixture;
+			this.delegate = delegate;
+			this.connection = connection;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			if (isObjectMethod(method)) {
+				return invokeObjectMethod(proxy, method, args, "Recorded " + fixture.url);
+			}
+
+			String name = method.getName();
+			Class<?> type = method.getReturnType();
+
+			if (Statement.class.isAssignableFrom(type)) {
+				Object statement = delegate == null ? null : call(delegate, method, args);
+				String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+				return wrap(type, new StatementHandler(fixture, statement, proxy, sql));
+			}
+			if (type == DatabaseMetaData.class) {
+				Object meta = delegate == null ? null : call(delegate, method, args);
+				return wrap(DatabaseMetaData.class, new ObjectHandler(fixture, meta, proxy));
+			}
+			if (type == Connection.class) {
+				return connection;
+			}
+
+			boolean isMetaData = connection != null;
+			if (type == ResultSet.class || (isMetaData && type != void.class) || name.equals("getCatalog")) {
+				String key = keyOf(isMetaData ? "M" : "C", method, args);
+				Result result;
+				if (delegate != null) {
+					try {
+						Object value = call(delegate, method, args);
+						result = value instanceof ResultSet ? Result.of(Table.read((ResultSet) value)) : Result.ofScalar(value);
+					} catch (SQLException e) {
+						result = Result.of(e);
+					}
+					fixture.write(key, result);
+				} else if (isMetaData && name.equals("getURL")) {
+					return fixture.url;
+				} else {
+					result = fixture.read(key);
+				}
+				result.check();
+				if (result.kind == RESULT_SET) {
+					return wrap(ResultSet.class, new ResultSetHandler(result.table, null));
+				}
+				return result.getScalar(type);
+			}
+
+			if (delegate != null) {
+				return call(delegate, method, args);
+			}
+
+			// what a replayed connection does without the database
+			if (name.equals("close")) {
+				closed = true;
+			} else if (name.equals("isClosed")) {
+				return Boolean.valueOf(closed);
+			} else if (name.equals("isValid")) {
+				return Boolean.valueOf(!closed);
+			} else if (name.equals("setAutoCommit")) {
+				autoCommit = ((Boolean) args[0]).booleanValue();
+			} else if (name.equals("getAutoCommit")) {
+				return Boolean.valueOf(autoCommit);
+			} else if (name.equals("nativeSQL")) {
+				return args[0];
+			} else if (name.equals("isWrapperFor")) {
+				return Boolean.FALSE;
+			} else if (name.equals("unwrap")) {
+				throw new SQLException("Replayed connections wrap nothing");
+			}
+			return defaultValue(type);
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * A statement, prepared statement or callable statement, recorded or
+	 * replayed.
+	 */
+	static class StatementHandler implements InvocationHandler {
+
+		private final Fixture fixture;
+
+		/** The real statement when recording, null when replaying */
+		private final Object delegate;
+
+		private final Object connection;
+
+		/** The SQL of a prepared statement */
+		private final String sql;
+
+		private final Map<Integer, String> parameters = new TreeMap<Integer, String>();
+
+		private final List<String> batch = new ArrayList<String>();
+
+		private Object resultSet = null;
+
+		private long updateCount = -1;
+
+		private String lastKey = null;
+
+		StatementHandler(Fixture fixture, Object delegate, Object connection, String sql) {
+			this.fixture = fixture;
+			this.delegate = delegate;
+			this.connection = connection;
+			this.sql = sql;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			if (isObjectMethod(method)) {
+				return invokeObjectMethod(proxy, method, args, "Recorded statement on " + fixture.url);
+			}
+
+			String name = method.getName();
+			Class<?> type = method.getReturnType();
+
+			if (name.startsWith("execute")) {
+				if (name.endsWith("Batch")) {
+					return executeBatch(method, args, type);
+				}
+				return execute(proxy, method, args, name, type);
+			}
+			if (name.equals("getResultSet")) {
+				Object rs = resultSet;
+				resultSet = null;
+				return rs;
+			}
+			if (name.equals("getUpdateCount")) {
+				return Integer.valueOf((int) updateCount);
+			}
+			if (name.equals("getLargeUpdateCount")) {
+				return Long.valueOf(updateCount);
+			}
+			if (name.equals("getMoreResults")) {
+				resultSet = null;
+				updateCount = -1;
+				return Boolean.FALSE;
+			}
+			if (name.equals("getGeneratedKeys")) {
+				return resultOf(proxy, method, null, "G\0" + lastKey);
+			}
+			if (name.equals("getConnection")) {
+				return connection;
+			}
+
+			if (name.equals("addBatch")) {
+				batch.add(args != null && args.length == 1 ? (String) args[0] : keyOfParameters());
+			} else if (name.equals("clearBatch")) {
+				batch.clear();
+			} else if (name.equals("clearParameters")) {
+				parameters.clear();
+			} else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+				parameters.put((Integer) args[0], name.equals("setNull") ? "NULL" : valueOf(args[1]));
+			}
+
+			if (delegate != null) {
+				return call(delegate, method, args);
+			}
+			if (name.equals("isClosed")) {
+				return Boolean.FALSE;
+			}
+			if (name.equals("isWrapperFor")) {
+				return Boolean.FALSE;
+			}
+			return defaultValue(type);
+
+		}
+
+		private String keyOfParameters() {
+
+			StringBuilder key = new StringBuilder(sql);
+			for (Map.Entry<Integer, String> parameter : parameters.entrySet()) {
+				key.append('\0').append(parameter.getKey()).append('=').append(parameter.getValue());
+			}
+			return key.toString();
+
+		}
+
+		private Object execute(Object proxy, Method method, Object[] args, String name, Class<?> type) throws Throwable {
+
+			String statement = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+					: keyOfParameters();
+			lastKey = statement;
+			resultSet = null;
+			updateCount = -1;
+
+			Result result;
+			if (delegate != null) {
+				try {
+					Object value = call(delegate, method, args);
+					if (value instanceof ResultSet) {
+						result = Result.of(Table.read((ResultSet) value));
+					} else if (Boolean.TRUE.equals(value)) {
+						result = Result.of(Table.read(((Statement) delegate).getResultSet()));
+					} else if (value instanceof Number) {
+						result = Result.of(((Number) value).longValue());
+					} else {
+						result = Result.of(((Statement) delegate).getUpdateCount());
+					}
+				} catch (SQLException e) {
+					result = Result.of(e);
+				}
+				fixture.write("Q\0" + statement, result);
+			} else {
+				result = fixture.read("Q\0" + statement);
+			}
+			result.check();
+
+			if (result.kind == RESULT_SET) {
+				resultSet = wrap(ResultSet.class, new ResultSetHandler(result.table, proxy));
+			} else {
+				updateCount = result.updateCount;
+			}
+			if (name.equals("execute")) {
+				return Boolean.valueOf(resultSet != null);
+			}
+			if (type == long.class) {
+				return Long.valueOf(updateCount);
+			}
+			if (type == int.class) {
+				return Integer.valueOf((int) updateCount);
+			}
+			if (resultSet == null) {
+				throw new SQLException("Statement did not return a result set: " + statement);
+			}
+			Object rs = resultSet;
+			resultSet = null;
+			return rs;
+
+		}
+
+		private Object executeBatch(Method method, Object[] args, Class<?> type) throws Throwable {
+
+			StringBuilder key = new StringBuilder("B");
+			for (String statement : batch) {
+				key.append('\0').append(statement);
+			}
+			batch.clear();
+
+			Result result;
+			if (delegate != null) {
+				try {
+					result = Result.ofBatch(call(delegate, method, args));
+				} catch (SQLException e) {
+					result = Result.of(e);
+				}
+				fixture.write(key.toString(), result);
+			} else {
+				result = fixture.read(key.toString());
+			}
+			result.check();
+			return result.getBatch(type);
+
+		}
+
+		private Object resultOf(Object proxy, Method method, Object[] args, String key) throws Throwable {
+
+			Result result;
+			if (delegate != null) {
+				try {
+					result = Result.of(Table.read((ResultSet) call(delegate, method, args)));
+				} catch (SQLException e) {
+					result = Result.of(e);
+				}
+				fixture.write(key, result);
+			} else {
+				result = fixture.read(key);
+			}
+			result.check();
+			return wrap(ResultSet.class, new ResultSetHandler(result.table, proxy));
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * A scrollable, read only result set over recorded rows.
+	 */
+	static class ResultSetHandler implements InvocationHandler {
+
+		private final Table table;
+
+		private final Object statement;
+
+		/** 0 based; -1 before the first row, rows.size() after the last */
+		private int row = -1;
+
+		private boolean wasNull = false;
+
+		private boolean closed = false;
+
+		ResultSetHandler(Table table, Object statement) {
+			this.table = table;
+			this.statement = statement;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			if (isObjectMethod(method)) {
+				return invokeObjectMethod(proxy, method, args, "Recorded result set");
+			}
+
+			String name = method.getName();
+			Class<?> type = method.getReturnType();
+			int size = table.rows.size();
+
+			if (name.startsWith("get") && args != null && args.length >= 1
+					&& (args[0] instanceof Integer || args[0] instanceof String)) {
+				int column = args[0] instanceof Integer ? ((Integer) args[0]).intValue() - 1 : table.find((String) args[0]);
+				if (row < 0 || row >= size) {
+					throw new SQLException("Before start or after end of result set.", "S1000");
+				}
+				if (column < 0 || column >= table.columns) {
+					throw new SQLException("Column index out of range: " + (column + 1), "S1009");
+				}
+				Object value = table.rows.get(row)[column];
+				wasNull = value == null;
+				Class<?> target = name.equals("getObject") && args.length == 2 && args[1] instanceof Class ? (Class<?>) args[1]
+						: type;
+				return get(name, value, column, target);
+			}
+
+			if (name.equals("next")) {
+				row = Math.min(row + 1, size);
+				return Boolean.valueOf(row < size);
+			}
+			if (name.equals("previous")) {
+				row = Math.max(row - 1, -1);
+				return Boolean.valueOf(row >= 0);
+			}
+			if (name.equals("first")) {
+				row = 0;
+				return Boolean.valueOf(size > 0);
+			}
+			if (name.equals("last")) {
+				row = size - 1;
+				return Boolean.valueOf(size > 0);
+			}
+			if (name.equals("beforeFirst")) {
+				row = -1;
+				return null;
+			}
+			if (name.equals("afterLast")) {
+				row = size;
+				return null;
+			}
+			if (name.equals("absolute")) {
+				int n = ((Integer) args[0]).intValue();
+				row = Math.max(-1, Math.min(size, n >= 0 ? n - 1 : size + n));
+				return Boolean.valueOf(row >= 0 && row < size);
+			}
+			if (name.equals("relative")) {
+				row = Math.max(-1, Math.min(size, row + ((Integer) args[0]).intValue()));
+				return Boolean.valueOf(row >= 0 && row < size);
+			}
+			if (name.equals("getRow")) {
+				return Integer.valueOf(row >= 0 && row < size ? row + 1 : 0);
+			}
+			if (name.equals("isBeforeFirst")) {
+				return Boolean.valueOf(row < 0 && size > 0);
+			}
+			if (name.equals("isAfterLast")) {
+				return Boolean.valueOf(row >= size && size > 0);
+			}
+			if (name.equals("isFirst")) {
+				return Boolean.valueOf(row == 0 && size > 0);
+			}
+			if (name.equals("isLast")) {
+				return Boolean.valueOf(row == size - 1 && size > 0);
+			}
+			if (name.equals("wasNull")) {
+				return Boolean.valueOf(wasNull);
+			}
+			if (name.equals("findColumn")) {
+				return Integer.valueOf(table.find((String) args[0]) + 1);
+			}
+			if (name.equals("getMetaData")) {
+				return wrap(ResultSetMetaData.class, new MetaDataHandler(table));
+			}
+			if (name.equals("getStatement")) {
+				return statement;
+			}
+			if (name.equals("getType")) {
+				return Integer.valueOf(ResultSet.TYPE_SCROLL_INSENSITIVE);
+			}
+			if (name.equals("getConcurrency")) {
+				return Integer.valueOf(ResultSet.CONCUR_READ_ONLY);
+			}
+			if (name.equals("getFetchDirection")) {
+				return Integer.valueOf(ResultSet.FETCH_FORWARD);
+			}
+			if (name.equals("close")) {
+				closed = true;
+				return null;
+			}
+			if (name.equals("isClosed")) {
+				return Boolean.valueOf(closed);
+			}
+			if (name.startsWith("update") || name.endsWith("Row")) {
+				throw new SQLException("Recorded result sets are read only: " + name);
+			}
+			return defaultValue(type);
+
+		}
+
+		private Object get(String name, Object value, int column, Class<?> type) throws SQLException {
+
+			if (value == null) {
+				return defaultValue(type);
+			}
+			if (value instanceof byte[]) {
+				byte[] bytes = (byte[]) value;
+				if (type == byte[].class || type == Object.class) {
+					return bytes.clone();
+				}
+				value = new String(bytes, UTF8);
+			}
+			String s = (String) value;
+
+			try {
+				if (type == String.class) {
+					return s;
+				}
+				if (type == Object.class) {
+					return Table.convert(s, table.classNames[column]);
+				}
+				if (type == int.class || type == Integer.class) {
+					return Integer.valueOf((int) toLong(s));
+				}
+				if (type == long.class || type == Long.class) {
+					return Long.valueOf(toLong(s));
+				}
+				if (type == short.class || type == Short.class) {
+					return Short.valueOf((short) toLong(s));
+				}
+				if (type == byte.class || type == Byte.class) {
+					return Byte.valueOf((byte) toLong(s));
+				}
+				if (type == double.class || type == Double.class) {
+					return Double.valueOf(s);
+				}
+				if (type == float.class || type == Float.class) {
+					return Float.valueOf(s);
+				}
+				if (type == boolean.class || type == Boolean.class) {
+					return Boolean.valueOf(s.equalsIgnoreCase("true") || (!s.equalsIgnoreCase("false") && toDouble(s) != 0));
+				}
+				if (type == BigDecimal.class) {
+					return new BigDecimal(s);
+				}
+				if (type == byte[].class) {
+					return s.getBytes(UTF8);
+				}
+				if (type == java.sql.Date.class) {
+					return Table.convert(s, java.sql.Date.class.getName());
+				}
+				if (type == java.sql.Time.class) {
+					return Table.convert(s, java.sql.Time.class.getName());
+				}
+				if (type == java.sql.Timestamp.class) {
+					return Table.convert(s, java.sql.Timestamp.class.getName());
+				}
+			} catch (NumberFormatException e) {
+				throw new SQLException("Value '" + s + "' can not be represented as " + type.getSimpleName(), "S1009");
+			}
+			throw new SQLException("Recorded result sets do not support " + name);
+
+		}
+
+		private static long toLong(String s) {
+
+			try {
+				return Long.parseLong(s);
+			} catch (NumberFormatException e) {
+				return (long) Double.parseDouble(s);
+			}
+
+		}
+
+		private static double toDouble(String s) {
+
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * The meta data of a recorded result set.
+	 */
+	static class MetaDataHandler implements InvocationHandler {
+
+		private final Table table;
+
+		MetaDataHandler(Table table) {
+			this.table = table;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+			if (isObjectMethod(method)) {
+				return invokeObjectMethod(proxy, method, args, "Recorded result set meta data");
+			}
+
+			String name = method.getName();
+			if (name.equals("getColumnCount")) {
+				return Integer.valueOf(table.columns);
+			}
+			if (args == null || args.length != 1 || !(args[0] instanceof Integer)) {
+				return defaultValue(method.getReturnType());
+			}
+			int column = ((Integer) args[0]).intValue() - 1;
+			if (column < 0 || column >= table.columns) {
+				throw new SQLException("Column index out of range: " + (column + 1), "S1002");
+			}
+			if (name.equals("getColumnLabel")) {
+				return table.labels[column];
+			}
+			if (name.equals("getColumnName")) {
+				return table.names[column];
+			}
+			if (name.equals("getTableName")) {
+				return table.tables[column];
+			}
+			if (name.equals("getColumnType")) {
+				return Integer.valueOf(table.types[column]);
+			}
+			if (name.equals("getColumnTypeName")) {
+				return table.typeNames[column];
+			}
+			if (name.equals("getColumnClassName")) {
+				return table.classNames[column];
+			}
+			if (name.equals("isNullable")) {
+				return Integer.valueOf(table.nullable[column]);
+			}
+			if (name.equals("isAutoIncrement")) {
+				return Boolean.valueOf(table.autoIncrement[column]);
+			}
+			if (method.getReturnType() == String.class) {
+				return "";
+			}
+			return defaultValue(method.getReturnType());
+
+		}
+
+	}
+
+}
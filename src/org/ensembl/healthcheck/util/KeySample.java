@@ -0,0 +1,475 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Random ranges of the keys of a table, for the approximate pre-flight mode
+ * in which scan heavy checks only look at a fraction of each table. The mode
+ * is on when the <code>sample.fraction</code> system property is set to a
+ * fraction between 0 and 1, e.g. 0.05; full scans are the default.
+ * </p>
+ *
+ * <p>
+ * The key range of the table is split into <code>sample.ranges</code>
+ * (default 20) strata of equal width, and a range covering the fraction of
+ * each stratum is picked at random, so every part of the table is looked at.
+ * Set <code>sample.seed</code> to pick the same ranges every run.
+ * </p>
+ *
+ * <p>
+ * What is found in the sample is real, but how often it happens in the whole
+ * table is an estimate, reported with a 95% Wilson score interval. The rows
+ * of a range are not independent of each other (orphans usually come in runs
+ * of keys), so the interval is widened by the design effect of sampling
+ * ranges rather than rows, taken from how much the rate varies between them.
+ * </p>
+ */
+public final class KeySample {
+
+	public static final String FRACTION = "sample.fraction";
+
+	public static final String RANGES = "sample.ranges";
+
+	public static final String SEED = "sample.seed";
+
+	/** z for a 95% confidence interval */
+	private static final double Z = 1.96;
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private static Random random = null;
+
+	private final String table;
+
+	private final String column;
+
+	/** Inclusive lower and upper bound of each range */
+	private final long[][] ranges;
+
+	KeySample(String table, String column, long[][] ranges) {
+		this.table = table;
+		this.column = column;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * @return true if scan heavy checks should only look at a sample
+	 */
+	public static boolean isEnabled() {
+		double fraction = getFraction();
+		return fraction > 0 && fraction < 1;
+	}
+
+	/**
+	 * @return the fraction of each table to look at
+	 */
+	public static double getFraction() {
+
+		String fraction = System.getProperty(FRACTION);
+		if (fraction == null || fraction.length() == 0) {
+			return 1;
+		}
+		try {
+			return Double.parseDouble(fraction);
+		} catch (NumberFormatException e) {
+			logger.warning("Ignoring " + FRACTION + " " + fraction + ", which is not a number");
+			return 1;
+		}
+
+	}
+
+	private static synchronized Random getRandom() {
+
+		if (random == null) {
+			Long seed = Long.getLong(SEED);
+			random = seed == null ? new Random() : new Random(seed.longValue());
+		}
+		return random;
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Sample a table by its primary key.
+	 *
+	 * @return the sample, or null if the table has no single column primary key
+	 *         or no rows, in which case it should be checked in full
+	 */
+	public static KeySample forTable(Connection con, String table) {
+
+		String key = getPrimaryKey(con, table);
+		return key == null ? null : forColumn(con, table, key);
+
+	}
+
+	/**
+	 * Sample a table by a numeric column, which should be indexed.
+	 *
+	 * @return the sample, or null if the column has no values, in which case
+	 *         the table should be checked in full
+	 */
+	public static KeySample forColumn(Connection con, String table, String column) {
+
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.createStatement();
+			rs = stmt.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM " + table);
+			if (!rs.next()) {
+				return null;
+			}
+			long min = rs.getLong(1);
+			if (rs.wasNull()) {
+				return null;
+			}
+			long max = rs.getLong(2);
+			return new KeySample(table, column, pickRanges(min, max, getFraction(), Integer.getInteger(RANGES, 20),
+					getRandom()));
+		} catch (SQLException e) {
+			logger.warning("Cannot sample " + table + "." + column + ", checking all of it: " + e.getMessage());
+			return null;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	/**
+	 * @return the only column of the primary key of table, or null
+	 */
+	static String getPrimaryKey(Connection con, String table) {
+
+		try {
+			DatabaseMetaData meta = con.getMetaData();
+			// H2 keeps the names in upper case
+			for (String name : new String[] { table, table.toUpperCase() }) {
+				List<String> columns = new ArrayList<String>();
+				ResultSet rs = meta.getPrimaryKeys(con.getCatalog(), null, name);
+				try {
+					while (rs.next()) {
+						columns.add(rs.getString("COLUMN_NAME"));
+					}
+				} finally {
+					DBUtils.closeQuietly(rs);
+				}
+				if (!columns.isEmpty()) {
+					return columns.size() == 1 ? columns.get(0).toLowerCase() : null;
+				}
+			}
+		} catch (SQLException e) {
+			logger.warning("Cannot get the primary key of " + table + ": " + e.getMessage());
+		}
+		return null;
+
+	}
+
+	/**
+	 * @return one range in each of at most strata strata of [min, max], each
+	 *         covering fraction of its stratum
+	 */
+	static long[][] pickRanges(long min, long max, double fraction, int strata, Random random) {
+
+		long span = max - min + 1;
+		int n = (int) Math.max(1, Math.min(strata, span));
+		long[][] ranges = new long[n][];
+		for (int i = 0; i < n; i++) {
+			long start = min + span * i / n;
+			long end = min + span * (i + 1) / n - 1;
+			long width = end - start + 1;
+			long window = Math.max(1, Math.round(width * fraction));
+			long offset = (long) (random.nextDouble() * (width - window + 1));
+			ranges[i] = new long[] { start + offset, start + offset + window - 1 };
+		}
+		return ranges;
+
+	}
+
+	// -------------------------------------------------------------------------
+	public String getTable() {
+		return table;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public long[][] getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * @return the index of the range key is in, or -1 if it is in none
+	 */
+	public int getRange(long key) {
+
+		for (int i = 0; i < ranges.length; i++) {
+			if (key >= ranges[i][0] && key <= ranges[i][1]) {
+				return i;
+			}
+		}
+		return -1;
+
+	}
+
+	/**
+	 * @return the condition selecting the rows in the sample, with the column
+	 *         qualified by the table name
+	 */
+	public String getCondition() {
+		return getCondition(table);
+	}
+
+	/**
+	 * @return the condition selecting the rows in the sample, with the column
+	 *         qualified by alias
+	 */
+	public String getCondition(String alias) {
+
+		String qualified = alias + "." + column;
+		StringBuilder condition = new StringBuilder("(");
+		for (int i = 0; i < ranges.length; i++) {
+			condition.append(i > 0 ? " OR " : "").append(qualified).append(" BETWEEN ").append(ranges[i][0])
+					.append(" AND ").append(ranges[i][1]);
+		}
+		return condition.append(')').toString();
+
+	}
+
+	/**
+	 * Count the rows of the sample which break a rule.
+	 *
+	 * @param from
+	 *          the FROM clause of the query counting them, including any joins;
+	 *          the sampled table must not be aliased in it
+	 * @param violation
+	 *          the condition the rows which break the rule meet
+	 * @return the estimate, or null if one of the queries failed
+	 */
+	public Estimate countViolations(Connection con, String from, String violation) {
+
+		String condition = getCondition();
+		long[] violations = countByRange(con, from + " WHERE (" + violation + ") AND " + condition);
+		long[] sampled = countByRange(con, "FROM " + table + " WHERE " + condition);
+		int total = DBUtils.getRowCount(con, "SELECT COUNT(*) FROM " + table);
+		if (violations == null || sampled == null || total < 0) {
+			return null;
+		}
+		return new Estimate(violations, sampled, total);
+
+	}
+
+	/**
+	 * @return the rows of the query in each range, or null if it failed
+	 */
+	private long[] countByRange(Connection con, String fromWhere) {
+
+		StringBuilder range = new StringBuilder("CASE");
+		for (int i = 0; i < ranges.length; i++) {
+			range.append(" WHEN ").append(table).append('.').append(column).append(" BETWEEN ").append(ranges[i][0])
+					.append(" AND ").append(ranges[i][1]).append(" THEN ").append(i);
+		}
+		range.append(" END");
+
+		long[] counts = new long[ranges.length];
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			stmt = con.createStatement();
+			rs = stmt.executeQuery("SELECT " + range + " AS sample_range, COUNT(*) " + fromWhere
+					+ " GROUP BY sample_range");
+			while (rs.next()) {
+				int i = rs.getInt(1);
+				if (!rs.wasNull()) {
+					counts[i] = rs.getLong(2);
+				}
+			}
+			return counts;
+		} catch (SQLException e) {
+			logger.warning("Cannot count the sample of " + table + ": " + e.getMessage());
+			return null;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * How many rows of a table are estimated to break a rule, from how many
+	 * in a sample do.
+	 */
+	public static class Estimate {
+
+		private final long violations;
+
+		private final long sampled;
+
+		private final long total;
+
+		private final double designEffect;
+
+		private final double lower;
+
+		private final double upper;
+
+		/**
+		 * An estimate from a simple random sample of rows.
+		 */
+		public Estimate(long violations, long sampled, long total) {
+			this(new long[] { violations }, new long[] { sampled }, total);
+		}
+
+		/**
+		 * An estimate from a sample of ranges of rows.
+		 *
+		 * @param violations
+		 *          the rows of each range which break the rule
+		 * @param sampled
+		 *          the rows in each range
+		 */
+		public Estimate(long[] violations, long[] sampled, long total) {
+
+			this.violations = sum(violations);
+			this.sampled = sum(sampled);
+			this.total = total;
+			this.designEffect = designEffect(violations, sampled);
+
+			if (this.sampled == 0) {
+				lower = 0;
+				upper = 1;
+			} else {
+				// Wilson score interval, which unlike the normal approximation
+				// is sound for the rates near 0 that most checks see, over the
+				// number of independent rows the sample is worth
+				double n = this.sampled / designEffect;
+				double p = getRate();
+				double denominator = 1 + Z * Z / n;
+				double centre = (p + Z * Z / (2 * n)) / denominator;
+				double half = Z * Math.sqrt(p * (1 - p) / n + Z * Z / (4 * n * n)) / denominator;
+				lower = Math.max(0, centre - half);
+				upper = Math.min(1, centre + half);
+			}
+
+		}
+
+		private static long sum(long[] counts) {
+
+			long sum = 0;
+			for (long count : counts) {
+				sum += count;
+			}
+			return sum;
+
+		}
+
+		/**
+		 * @return the variance of the rate estimated from the ranges as
+		 *         clusters, over the variance it would have from as many rows
+		 *         sampled independently; at least 1
+		 */
+		static double designEffect(long[] violations, long[] sampled) {
+
+			long n = sum(sampled);
+			int k = 0;
+			for (long rows : sampled) {
+				if (rows > 0) {
+					k++;
+				}
+			}
+			double p = n == 0 ? 0 : (double) sum(violations) / n;
+			if (k < 2 || p == 0 || p == 1) {
+				// nothing to tell how the ranges differ
+				return 1;
+			}
+
+			// variance of the ratio estimator across clusters
+			double mean = (double) n / k;
+			double squares = 0;
+			for (int i = 0; i < sampled.length; i++) {
+				if (sampled[i] > 0) {
+					double residual = violations[i] - p * sampled[i];
+					squares += residual * residual;
+				}
+			}
+			double clusterVariance = squares / (k * (k - 1) * mean * mean);
+			double rowVariance = p * (1 - p) / n;
+			return Math.max(1, clusterVariance / rowVariance);
+
+		}
+
+		/**
+		 * @return the number of rows in the sample which break the rule
+		 */
+		public long getViolations() {
+			return violations;
+		}
+
+		public long getSampled() {
+			return sampled;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		public double getRate() {
+			return sampled == 0 ? 0 : (double) violations / sampled;
+		}
+
+		public double getLower() {
+			return lower;
+		}
+
+		public double getUpper() {
+			return upper;
+		}
+
+		public double getDesignEffect() {
+			return designEffect;
+		}
+
+		/**
+		 * @return the estimated number of rows of the table which break the
+		 *         rule, at least the number found in the sample
+		 */
+		public long getEstimatedViolations() {
+			return Math.max(violations, Math.round(getRate() * total));
+		}
+
+		public String toString() {
+			return String.format("%d of %d sampled rows (%.1f%% of %d), estimated rate %.3f%% "
+					+ "(95%% confidence %.3f%% to %.3f%%, design effect %.1f), about %d rows", violations, sampled,
+					total == 0 ? 0.0 : 100.0 * sampled / total, total, 100 * getRate(), 100 * lower, 100 * upper,
+					designEffect, getEstimatedViolations());
+		}
+
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Map of primitive long keys to long values, as produced by a grouped query
+ * such as
+ * <code>SELECT seq_region_id, COUNT(*) FROM density_feature GROUP BY seq_region_id</code>
+ * . Intended to replace loops which issue one keyed query per entity with a
+ * single query whose results are then looked up in memory.
+ * </p>
+ *
+ * <p>
+ * Keys are held in an open addressing table so lookups do not box. The first
+ * value seen for a key is kept, which matches what
+ * {@link DBUtils#getRowColumnValue(java.sql.Connection, String)} would have
+ * returned for the equivalent keyed query.
+ * </p>
+ *
+ * @see SqlTemplate#queryForLongMap(String, Object...)
+ */
+public final class LongKeyedMap {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] keys;
+	private long[] values;
+	private boolean[] used;
+	private int size = 0;
+
+	public LongKeyedMap() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Builds a map from the first two columns of the given result set. Rows
+	 * where either column is NULL are skipped, as a keyed query returning NULL
+	 * would have been treated as having no value.
+	 */
+	public static LongKeyedMap fromResultSet(ResultSet rs) throws SQLException {
+		LongKeyedMap map = new LongKeyedMap();
+		while (rs.next()) {
+			long key = rs.getLong(1);
+			if (rs.wasNull()) {
+				continue;
+			}
+			long value = rs.getLong(2);
+			if (rs.wasNull()) {
+				continue;
+			}
+			map.putIfAbsent(key, value);
+		}
+		return map;
+	}
+
+	/**
+	 * Stores the value for a key, replacing any existing value.
+	 */
+	public void put(long key, long value) {
+		values[insert(key)] = value;
+	}
+
+	/**
+	 * Stores the value for a key unless the key is already present.
+	 *
+	 * @return true if the value was stored
+	 */
+	public boolean putIfAbsent(long key, long value) {
+		int before = size;
+		int slot = insert(key);
+		if (size == before) {
+			return false;
+		}
+		values[slot] = value;
+		return true;
+	}
+
+	/**
+	 * Adds delta to the value for a key, treating an absent key as 0.
+	 *
+	 * @return the new value
+	 */
+	public long increment(long key, long delta) {
+		int slot = insert(key);
+		values[slot] += delta;
+		return values[slot];
+	}
+
+	public boolean containsKey(long key) {
+		return used[slot(key)];
+	}
+
+	/**
+	 * @return the value for the key, or defaultValue if the key is absent
+	 */
+	public long get(long key, long defaultValue) {
+		int slot = slot(key);
+		return used[slot] ? values[slot] : defaultValue;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the keys in ascending order
+	 */
+	public long[] getKeys() {
+		long[] sorted = new long[size];
+		int i = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (used[slot]) {
+				sorted[i++] = keys[slot];
+			}
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	/**
+	 * @return the slot for the key, claiming one (with value 0) if absent
+	 */
+	private int insert(long key) {
+		if ((size + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		int slot = slot(key);
+		if (!used[slot]) {
+			used[slot] = true;
+			keys[slot] = key;
+			values[slot] = 0;
+			size++;
+		}
+		return slot;
+	}
+
+	private int slot(long key) {
+		int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (used[slot] && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new long[capacity];
+		used = new boolean[capacity];
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		boolean[] oldUsed = used;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldUsed[i]) {
+				int slot = slot(oldKeys[i]);
+				used[slot] = true;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		long[] sorted = getKeys();
+		for (int i = 0; i < sorted.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(sorted[i]).append('=').append(get(sorted[i], 0));
+		}
+		return sb.append('}').toString();
+	}
+}
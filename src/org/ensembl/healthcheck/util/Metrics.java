@@ -0,0 +1,743 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * Records where the time of a healthcheck run goes: the wall time of each
+ * test on each database, and the latency, rows fetched and bytes read of the
+ * queries run through {@link ConnectionBasedSqlTemplateImpl} and
+ * {@link DBUtils}, tagged with the test running them, the database and the
+ * server. The time spent getting connections from the {@link ConnectionPool}
+ * is recorded for each server.
+ * </p>
+ *
+ * <p>
+ * Nothing is recorded unless one of these system properties is set:
+ * </p>
+ * <ul>
+ * <li><code>metrics</code>=true to log a summary at the end of the run,</li>
+ * <li><code>metrics.file</code> to write the summary as JSON to a file as
+ * well,</li>
+ * <li><code>metrics.port</code> to serve the metrics in the Prometheus text
+ * format at <code>http://host:port/metrics</code> for as long as the
+ * healthchecks are running, e.g. in the GUI.</li>
+ * </ul>
+ *
+ * <p>
+ * Bytes are estimated from the values read: the length of strings and byte
+ * arrays, and 8 bytes for anything else.
+ * </p>
+ */
+public final class Metrics {
+
+	public static final String ENABLED = "metrics";
+
+	public static final String FILE = "metrics.file";
+
+	public static final String PORT = "metrics.port";
+
+	/** Upper bounds of the query latency buckets, in seconds */
+	static final double[] BUCKETS = { 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 300 };
+
+	private static final String NO_TEST = "";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private static volatile Boolean enabled = null;
+
+	private static HttpServer server = null;
+
+	private static final ConcurrentMap<Tags, Timing> tests = new ConcurrentHashMap<Tags, Timing>();
+
+	private static final ConcurrentMap<Tags, QueryStats> queries = new ConcurrentHashMap<Tags, QueryStats>();
+
+	private static final ConcurrentMap<String, Timing> connectionWaits = new ConcurrentHashMap<String, Timing>();
+
+	/** The innermost test being run by this thread and the threads it starts */
+	private static final InheritableThreadLocal<RunningTest> runningTest = new InheritableThreadLocal<RunningTest>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * @return true if metrics are being recorded
+	 */
+	public static boolean isEnabled() {
+
+		Boolean on = enabled;
+		if (on == null) {
+			on = Boolean.valueOf(Boolean.getBoolean(ENABLED) || System.getProperty(FILE) != null
+					|| System.getProperty(PORT) != null);
+			enabled = on;
+			if (on) {
+				startServer();
+			}
+		}
+		return on;
+
+	}
+
+	/**
+	 * Turn recording on or off regardless of the system properties.
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Forget everything recorded so far.
+	 */
+	public static void reset() {
+		tests.clear();
+		queries.clear();
+		connectionWaits.clear();
+	}
+
+	// -------------------------------------------------------------------------
+	// Recording
+
+	/**
+	 * Called when a test starts running on a database on this thread; queries
+	 * run by the thread are attributed to the test until
+	 * {@link #finishTest(String, String, String)}.
+	 */
+	public static void startTest(String test, String database, String server) {
+
+		if (isEnabled()) {
+			runningTest.set(new RunningTest(new Tags(test, database, server), runningTest.get()));
+		}
+
+	}
+
+	/**
+	 * Called when a test has finished running on a database. Ignored unless
+	 * it matches the last call of {@link #startTest(String, String, String)}
+	 * on this thread.
+	 */
+	public static void finishTest(String test, String database, String server) {
+
+		if (!isEnabled()) {
+			return;
+		}
+		RunningTest current = runningTest.get();
+		Tags tags = new Tags(test, database, server);
+		if (current != null && current.tags.equals(tags)) {
+			runningTest.set(current.outer);
+			getTiming(tests, tags).add(System.nanoTime() - current.start);
+		}
+
+	}
+
+	/**
+	 * @return the name of the test being run by this thread, or an empty
+	 *         string if there is none.
+	 */
+	public static String getRunningTest() {
+
+		RunningTest current = runningTest.get();
+		return current == null ? NO_TEST : current.tags.test;
+
+	}
+
+	/**
+	 * Record a query run on the database at url.
+	 */
+	public static void recordQuery(String url, long nanos, long rows, long bytes) {
+
+		Tags tags = new Tags(getRunningTest(), databaseOf(url), serverOf(url));
+		QueryStats stats = queries.get(tags);
+		if (stats == null) {
+			QueryStats created = new QueryStats();
+			stats = queries.putIfAbsent(tags, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		stats.add(nanos, rows, bytes);
+
+	}
+
+	/**
+	 * Record the time spent getting a connection to the database at url.
+	 */
+	public static void recordConnectionWait(String url, long nanos) {
+		getTiming(connectionWaits, serverOf(url)).add(nanos);
+	}
+
+	/**
+	 * <p>
+	 * Wraps resultSet so that the rows and bytes read from it are counted in
+	 * counter: counter[0] is the number of rows, counter[1] the bytes.
+	 * </p>
+	 */
+	public static ResultSet countingResultSet(final ResultSet resultSet, final long[] counter) {
+
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+				new InvocationHandler() {
+
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+						Object result;
+						try {
+							result = method.invoke(resultSet, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+
+						String name = method.getName();
+						if (name.equals("next")) {
+							if (Boolean.TRUE.equals(result)) {
+								counter[0]++;
+							}
+						} else if (name.startsWith("get") && args != null && args.length > 0 && result != null
+								&& !name.equals("getMetaData") && !name.equals("getStatement")) {
+							counter[1] += sizeOf(result);
+						}
+						return result;
+
+					}
+				});
+
+	}
+
+	private static long sizeOf(Object value) {
+
+		if (value instanceof CharSequence) {
+			return ((CharSequence) value).length();
+		}
+		if (value instanceof byte[]) {
+			return ((byte[]) value).length;
+		}
+		return 8;
+
+	}
+
+	private static <K> Timing getTiming(ConcurrentMap<K, Timing> timings, K key) {
+
+		Timing timing = timings.get(key);
+		if (timing == null) {
+			Timing created = new Timing();
+			timing = timings.putIfAbsent(key, created);
+			if (timing == null) {
+				timing = created;
+			}
+		}
+		return timing;
+
+	}
+
+	/**
+	 * @return host:port of a jdbc URL such as
+	 *         jdbc:mysql://host:port/database?options
+	 */
+	static String serverOf(String url) {
+
+		if (url == null) {
+			return "";
+		}
+		int start = url.indexOf("//");
+		if (start < 0) {
+			return url;
+		}
+		start += 2;
+		int end = url.indexOf('/', start);
+		return end < 0 ? url.substring(start) : url.substring(start, end);
+
+	}
+
+	/**
+	 * @return the database of a jdbc URL such as
+	 *         jdbc:mysql://host:port/database?options
+	 */
+	static String databaseOf(String url) {
+
+		if (url == null) {
+			return "";
+		}
+		int start = url.indexOf("//");
+		if (start < 0) {
+			return "";
+		}
+		start = url.indexOf('/', start + 2);
+		if (start < 0) {
+			return "";
+		}
+		int end = url.length();
+		for (char c : new char[] { '?', ';' }) {
+			int i = url.indexOf(c, start);
+			if (i >= 0 && i < end) {
+				end = i;
+			}
+		}
+		return url.substring(start + 1, end);
+
+	}
+
+	// -------------------------------------------------------------------------
+	// Reporting
+
+	/**
+	 * Called at the end of a run: logs the summary and writes it to the
+	 * <code>metrics.file</code> if it is set. The {@link SlowQueryLog} is
+	 * reported as well.
+	 */
+	public static void finishRun() {
+
+		SlowQueryLog.finishRun();
+
+		if (!isEnabled()) {
+			return;
+		}
+
+		StringBuilder summary = new StringBuilder();
+		try {
+			writeSummary(summary);
+		} catch (IOException e) {
+			// not thrown by StringBuilder
+		}
+		logger.info(summary.toString());
+
+		String fileName = System.getProperty(FILE);
+		if (fileName != null && fileName.length() > 0) {
+			Writer writer = null;
+			try {
+				writer = new OutputStreamWriter(new FileOutputStream(new File(fileName)), UTF8);
+				writeJson(writer);
+			} catch (IOException e) {
+				logger.warning("Cannot write metrics to " + fileName + ": " + e.getMessage());
+			} finally {
+				InputOutputUtils.closeQuietly(writer);
+			}
+		}
+
+	}
+
+	/**
+	 * Write the tests, slowest first, and the queries and connection waits
+	 * attributed to them as a table.
+	 */
+	public static void writeSummary(Appendable out) throws IOException {
+
+		out.append("Metrics\n\nTests (slowest first)\n");
+		out.append(String.format("%12s %-40s %-40s %s\n", "wall ms", "test", "database", "server"));
+		for (Map.Entry<Tags, Timing> test : sortByTime(tests)) {
+			Tags tags = test.getKey();
+			out.append(String.format("%12.1f %-40s %-40s %s\n", millis(test.getValue().getTotal()), tags.test,
+					tags.database, tags.server));
+		}
+
+		out.append("\nQueries (slowest first)\n");
+		out.append(String.format("%8s %12s %10s %10s %10s %12s %12s  %-40s %-40s %s\n", "count", "total ms", "p50 ms",
+				"p95 ms", "max ms", "rows", "bytes", "test", "database", "server"));
+		for (Map.Entry<Tags, QueryStats> query : sortByTime(queries)) {
+			Tags tags = query.getKey();
+			QueryStats stats = query.getValue().copy();
+			out.append(String.format("%8d %12.1f %10.1f %10.1f %10.1f %12d %12d  %-40s %-40s %s\n", stats.count,
+					millis(stats.total), stats.percentile(0.5) * 1000, stats.percentile(0.95) * 1000, millis(stats.max),
+					stats.rows, stats.bytes, tags.test, tags.database, tags.server));
+		}
+
+		out.append("\nConnection waits\n");
+		out.append(String.format("%8s %12s %12s  %s\n", "count", "total ms", "max ms", "server"));
+		for (Map.Entry<String, Timing> wait : sortByTime(connectionWaits)) {
+			Timing timing = wait.getValue().copy();
+			out.append(String.format("%8d %12.1f %12.1f  %s\n", timing.count, millis(timing.total), millis(timing.max),
+					wait.getKey()));
+		}
+
+	}
+
+	/**
+	 * Write everything recorded as one JSON object.
+	 */
+	public static void writeJson(Appendable out) throws IOException {
+
+		List<Map<String, Object>> testList = new ArrayList<Map<String, Object>>();
+		for (Map.Entry<Tags, Timing> test : sortByTime(tests)) {
+			Map<String, Object> entry = test.getKey().toMap();
+			Timing timing = test.getValue().copy();
+			entry.put("runs", timing.count);
+			entry.put("wallMillis", millis(timing.total));
+			testList.add(entry);
+		}
+
+		List<Map<String, Object>> queryList = new ArrayList<Map<String, Object>>();
+		for (Map.Entry<Tags, QueryStats> query : sortByTime(queries)) {
+			Map<String, Object> entry = query.getKey().toMap();
+			QueryStats stats = query.getValue().copy();
+			entry.put("count", stats.count);
+			entry.put("totalMillis", millis(stats.total));
+			entry.put("maxMillis", millis(stats.max));
+			entry.put("rows", stats.rows);
+			entry.put("bytes", stats.bytes);
+			Map<String, Long> buckets = new LinkedHashMap<String, Long>();
+			for (int i = 0; i < BUCKETS.length; i++) {
+				buckets.put(Double.toString(BUCKETS[i]), stats.buckets[i]);
+			}
+			buckets.put("+Inf", stats.buckets[BUCKETS.length]);
+			entry.put("latencySecondsBuckets", buckets);
+			queryList.add(entry);
+		}
+
+		List<Map<String, Object>> waitList = new ArrayList<Map<String, Object>>();
+		for (Map.Entry<String, Timing> wait : sortByTime(connectionWaits)) {
+			Map<String, Object> entry = new LinkedHashMap<String, Object>();
+			Timing timing = wait.getValue().copy();
+			entry.put("server", wait.getKey());
+			entry.put("count", timing.count);
+			entry.put("totalMillis", millis(timing.total));
+			entry.put("maxMillis", millis(timing.max));
+			waitList.add(entry);
+		}
+
+		Map<String, Object> all = new LinkedHashMap<String, Object>();
+		all.put("tests", testList);
+		all.put("queries", queryList);
+		all.put("connectionWaits", waitList);
+		new GsonBuilder().setPrettyPrinting().create().toJson(all, out);
+
+	}
+
+	/**
+	 * Write everything recorded in the Prometheus text exposition format.
+	 */
+	public static void writePrometheus(Appendable out) throws IOException {
+
+		out.append("# TYPE healthcheck_test_seconds summary\n");
+		for (Map.Entry<Tags, Timing> test : tests.entrySet()) {
+			Timing timing = test.getValue().copy();
+			String labels = test.getKey().toLabels();
+			out.append("healthcheck_test_seconds_sum{").append(labels).append("} ").append(seconds(timing.total)).append('\n');
+			out.append("healthcheck_test_seconds_count{").append(labels).append("} ").append(Long.toString(timing.count))
+					.append('\n');
+		}
+
+		out.append("# TYPE healthcheck_query_seconds histogram\n");
+		for (Map.Entry<Tags, QueryStats> query : queries.entrySet()) {
+			QueryStats stats = query.getValue().copy();
+			String labels = query.getKey().toLabels();
+			long cumulative = 0;
+			for (int i = 0; i <= BUCKETS.length; i++) {
+				cumulative += stats.buckets[i];
+				String le = i < BUCKETS.length ? Double.toString(BUCKETS[i]) : "+Inf";
+				out.append("healthcheck_query_seconds_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+						.append(Long.toString(cumulative)).append('\n');
+			}
+			out.append("healthcheck_query_seconds_sum{").append(labels).append("} ").append(seconds(stats.total)).append('\n');
+			out.append("healthcheck_query_seconds_count{").append(labels).append("} ").append(Long.toString(stats.count))
+					.append('\n');
+		}
+
+		out.append("# TYPE healthcheck_query_rows counter\n");
+		for (Map.Entry<Tags, QueryStats> query : queries.entrySet()) {
+			out.append("healthcheck_query_rows_total{").append(query.getKey().toLabels()).append("} ")
+					.append(Long.toString(query.getValue().copy().rows)).append('\n');
+		}
+
+		out.append("# TYPE healthcheck_query_bytes counter\n");
+		for (Map.Entry<Tags, QueryStats> query : queries.entrySet()) {
+			out.append("healthcheck_query_bytes_total{").append(query.getKey().toLabels()).append("} ")
+					.append(Long.toString(query.getValue().copy().bytes)).append('\n');
+		}
+
+		out.append("# TYPE healthcheck_connection_wait_seconds summary\n");
+		for (Map.Entry<String, Timing> wait : connectionWaits.entrySet()) {
+			Timing timing = wait.getValue().copy();
+			String labels = "server=\"" + escape(wait.getKey()) + "\"";
+			out.append("healthcheck_connection_wait_seconds_sum{").append(labels).append("} ").append(seconds(timing.total))
+					.append('\n');
+			out.append("healthcheck_connection_wait_seconds_count{").append(labels).append("} ")
+					.append(Long.toString(timing.count)).append('\n');
+		}
+
+	}
+
+	/**
+	 * Serve {@link #writePrometheus(Appendable)} on <code>metrics.port</code>
+	 * if it is set.
+	 */
+	private static synchronized void startServer() {
+
+		String port = System.getProperty(PORT);
+		if (server != null || port == null || port.trim().length() == 0) {
+			return;
+		}
+		try {
+			server = HttpServer.create(new InetSocketAddress(Integer.parseInt(port.trim())), 0);
+			server.createContext("/metrics", new HttpHandler() {
+
+				public void handle(HttpExchange exchange) throws IOException {
+
+					StringBuilder body = new StringBuilder();
+					writePrometheus(body);
+					byte[] bytes = body.toString().getBytes(UTF8);
+					exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+					exchange.sendResponseHeaders(200, bytes.length);
+					OutputStream os = exchange.getResponseBody();
+					try {
+						os.write(bytes);
+					} finally {
+						os.close();
+					}
+
+				}
+			});
+			// Threads are daemons if the thread starting them is, and the
+			// server thread must not keep the JVM alive.
+			Thread starter = new Thread(new Runnable() {
+				public void run() {
+					server.start();
+				}
+			}, "Metrics-server");
+			starter.setDaemon(true);
+			starter.start();
+			starter.join();
+			logger.info("Serving metrics on port " + port.trim());
+		} catch (IOException e) {
+			logger.warning("Cannot serve metrics on port " + port + ": " + e.getMessage());
+		} catch (NumberFormatException e) {
+			logger.warning("Ignoring " + PORT + "=" + port + ", it is not a number");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	private static <K, V extends Timed> List<Map.Entry<K, V>> sortByTime(Map<K, V> map) {
+
+		List<Map.Entry<K, V>> entries = new ArrayList<Map.Entry<K, V>>(map.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<K, V>>() {
+			public int compare(Map.Entry<K, V> a, Map.Entry<K, V> b) {
+				long ta = a.getValue().getTotal();
+				long tb = b.getValue().getTotal();
+				return ta < tb ? 1 : ta > tb ? -1 : 0;
+			}
+		});
+		return entries;
+
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	private static String seconds(long nanos) {
+		return Double.toString(nanos / 1e9);
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	// -------------------------------------------------------------------------
+
+	private static final class RunningTest {
+
+		final Tags tags;
+
+		final RunningTest outer;
+
+		final long start = System.nanoTime();
+
+		RunningTest(Tags tags, RunningTest outer) {
+			this.tags = tags;
+			this.outer = outer;
+		}
+
+	}
+
+	/**
+	 * Test, database and server something is recorded for.
+	 */
+	private static final class Tags {
+
+		final String test;
+
+		final String database;
+
+		final String server;
+
+		Tags(String test, String database, String server) {
+			this.test = test == null ? NO_TEST : test;
+			this.database = database == null ? "" : database;
+			this.server = server == null ? "" : server;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if (!(o instanceof Tags)) {
+				return false;
+			}
+			Tags other = (Tags) o;
+			return test.equals(other.test) && database.equals(other.database) && server.equals(other.server);
+
+		}
+
+		@Override
+		public int hashCode() {
+			return (test.hashCode() * 31 + database.hashCode()) * 31 + server.hashCode();
+		}
+
+		Map<String, Object> toMap() {
+
+			Map<String, Object> map = new LinkedHashMap<String, Object>();
+			map.put("test", test);
+			map.put("database", database);
+			map.put("server", server);
+			return map;
+
+		}
+
+		String toLabels() {
+			return "test=\"" + escape(test) + "\",database=\"" + escape(database) + "\",server=\"" + escape(server) + "\"";
+		}
+
+	}
+
+	private interface Timed {
+		long getTotal();
+	}
+
+	/**
+	 * Number, total and longest of some durations, in nanoseconds.
+	 */
+	static class Timing implements Timed {
+
+		long count;
+
+		long total;
+
+		long max;
+
+		synchronized void add(long nanos) {
+
+			count++;
+			total += nanos;
+			max = Math.max(max, nanos);
+
+		}
+
+		public synchronized long getTotal() {
+			return total;
+		}
+
+		synchronized Timing copy() {
+
+			Timing copy = new Timing();
+			copy.count = count;
+			copy.total = total;
+			copy.max = max;
+			return copy;
+
+		}
+
+	}
+
+	/**
+	 * Latency histogram, rows and bytes of the queries with the same tags.
+	 */
+	static class QueryStats extends Timing {
+
+		/** Queries per latency bucket; the last is for anything slower */
+		final long[] buckets = new long[BUCKETS.length + 1];
+
+		long rows;
+
+		long bytes;
+
+		synchronized void add(long nanos, long rows, long bytes) {
+
+			add(nanos);
+			this.rows += rows;
+			this.bytes += bytes;
+			double seconds = nanos / 1e9;
+			int bucket = 0;
+			while (bucket < BUCKETS.length && seconds > BUCKETS[bucket]) {
+				bucket++;
+			}
+			buckets[bucket]++;
+
+		}
+
+		@Override
+		synchronized QueryStats copy() {
+
+			QueryStats copy = new QueryStats();
+			copy.count = count;
+			copy.total = total;
+			copy.max = max;
+			copy.rows = rows;
+			copy.bytes = bytes;
+			System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+			return copy;
+
+		}
+
+		/**
+		 * @return the upper bound, in seconds, of the bucket of the query at
+		 *         fraction of the queries ordered by latency; the longest
+		 *         latency if that is in the last bucket.
+		 */
+		double percentile(double fraction) {
+
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return BUCKETS[i];
+				}
+			}
+			return max / 1e9;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Substring search over a fixed list of names, such as the databases on a
+ * server, without scanning every name for every search.
+ * </p>
+ *
+ * <p>
+ * Each name is indexed by the three character sequences (trigrams) it
+ * contains. A search term of three or more characters is looked up by
+ * intersecting the lists of names containing each of its trigrams, and only
+ * those candidates are checked for the whole term. Shorter terms are checked
+ * against the candidates left by the longer ones, or against every name if
+ * there are none.
+ * </p>
+ */
+public final class NameIndex {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final String[] names;
+
+	/** Trigram to the ascending indices of the names containing it */
+	private final Map<Long, int[]> postings;
+
+	private final int[] all;
+
+	public NameIndex(List<String> names) {
+
+		this.names = names.toArray(new String[names.size()]);
+
+		all = new int[this.names.length];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = i;
+		}
+
+		// count first so each posting list is allocated once
+		Map<Long, int[]> counts = new HashMap<Long, int[]>();
+		for (int i = 0; i < this.names.length; i++) {
+			for (long trigram : trigrams(this.names[i])) {
+				int[] count = counts.get(trigram);
+				if (count == null) {
+					counts.put(trigram, new int[] { 1 });
+				} else {
+					count[0]++;
+				}
+			}
+		}
+
+		postings = new HashMap<Long, int[]>(counts.size() * 2);
+		Map<Long, int[]> filled = new HashMap<Long, int[]>(counts.size() * 2);
+		for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+			postings.put(entry.getKey(), new int[entry.getValue()[0]]);
+			filled.put(entry.getKey(), new int[1]);
+		}
+		for (int i = 0; i < this.names.length; i++) {
+			for (long trigram : trigrams(this.names[i])) {
+				int[] fill = filled.get(trigram);
+				postings.get(trigram)[fill[0]++] = i;
+			}
+		}
+
+	}
+
+	public int size() {
+		return names.length;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * @return the ascending indices of the names containing every one of the
+	 *         terms; empty terms are ignored, so no terms match every name
+	 */
+	public int[] search(List<String> terms) {
+
+		int[] candidates = null;
+
+		for (String term : terms) {
+			if (term.length() >= 3) {
+				for (long trigram : trigrams(term)) {
+					int[] posting = postings.get(trigram);
+					if (posting == null) {
+						return EMPTY;
+					}
+					candidates = candidates == null ? posting : intersect(candidates, posting);
+				}
+			}
+		}
+
+		if (candidates == null) {
+			candidates = all;
+		}
+
+		// trigrams being present does not mean the term is
+		int[] result = new int[candidates.length];
+		int count = 0;
+		for (int candidate : candidates) {
+			if (containsAll(names[candidate], terms)) {
+				result[count++] = candidate;
+			}
+		}
+		return count == result.length ? result : Arrays.copyOf(result, count);
+
+	}
+
+	private static boolean containsAll(String name, List<String> terms) {
+
+		for (String term : terms) {
+			if (name.indexOf(term) == -1) {
+				return false;
+			}
+		}
+		return true;
+
+	}
+
+	private static int[] intersect(int[] a, int[] b) {
+
+		int[] result = new int[Math.min(a.length, b.length)];
+		int i = 0, j = 0, count = 0;
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[count++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, count);
+
+	}
+
+	/**
+	 * @return the distinct trigrams of s, each packed into a long
+	 */
+	private static long[] trigrams(String s) {
+
+		if (s.length() < 3) {
+			return new long[0];
+		}
+		long[] trigrams = new long[s.length() - 2];
+		for (int i = 0; i < trigrams.length; i++) {
+			trigrams[i] = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+		}
+		Arrays.sort(trigrams);
+		int count = 0;
+		for (int i = 0; i < trigrams.length; i++) {
+			if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+				trigrams[count++] = trigrams[i];
+			}
+		}
+		return Arrays.copyOf(trigrams, count);
+
+	}
+
+}
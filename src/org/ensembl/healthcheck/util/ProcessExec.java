@@ -26,7 +26,13 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.logging.Logger;
 
 import org.apache.commons.io.IOUtils;
 
@@ -98,6 +104,8 @@ public class ProcessExec {
 	 * Time to wait in milliseconds for stream gobblers to finish
 	 */
 	private static final int TIMEOUT = 10000;
+	
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
 
 	/**
 	 * Execute the command, capturing the output and error streams to
@@ -228,6 +236,32 @@ public class ProcessExec {
 		);
 	}
 
+	/**
+	 * Execute the command, capturing the output and error streams to
+	 * Appendables. If the command has not finished after timeout
+	 * milliseconds, it is killed together with any processes it has started.
+	 *
+	 * @param timeout
+	 *          milliseconds to wait for the command, 0 to wait for as long as
+	 *          it takes
+	 * @return the exit status of the command, or -1 if it was killed
+	 */
+	public static int exec(
+			String[] command, 
+			Appendable out, 
+			Appendable err,
+			boolean discard, 
+			Map<String,String> environmentVars,
+			long timeout
+	) throws IOException {
+		
+		Process proc = Runtime.getRuntime().exec(
+				command, 
+				environmentMapToString(environmentVars)
+		);
+		return waitForProcess(out, err, discard, proc, timeout);
+	}
+
 	/**
 	 * 
 	 * <p>
@@ -384,27 +418,198 @@ public class ProcessExec {
 			Appendable err,
 			boolean discard, 
 			Process proc
-		) {
-		// any error message?
-		StreamGobbler errorGobbler = new StreamGobbler(
-				proc.getErrorStream(),
-				err, 
-				discard
-		);
+		) throws IOException {
+		
+		return waitForProcess(out, err, discard, proc, 0);
+	}
+	
+	/**
+	 * <p>
+	 * 	Waits for the process to finish, handing its output and error to out 
+	 * and err as the shared {@link ProcessStreamPump} reads them. What is 
+	 * done with the output is done on the calling thread.
+	 * </p>
+	 * 
+	 * <p>
+	 * 	If the calling thread is interrupted or the process runs for longer 
+	 * than timeout milliseconds (unless timeout is 0), the process and all 
+	 * the processes it has started are killed and -1 is returned.
+	 * </p>
+	 */
+	private static int waitForProcess(
+			Appendable out, 
+			Appendable err,
+			boolean discard, 
+			Process proc,
+			long timeout
+		) throws IOException {
+		
+		ProcessStreamPump.PumpedProcess pumped = new ProcessStreamPump.PumpedProcess(proc, out, err, discard);
+		ProcessStreamPump.register(pumped);
+		
+		long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+		boolean completed = false;
+		
+		try {
+			
+			while (true) {
+				
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0) {
+					logger.warning("Killing process after " + timeout + "ms");
+					return -1;
+				}
+				
+				ProcessStreamPump.Batch batch = pumped.take(Math.min(wait, TIMEOUT));
+				
+				if (batch == ProcessStreamPump.Batch.END) {
+					
+					// The streams are only finished once the process has exited.
+					//
+					completed = true;
+					return proc.waitFor();
+				}
+				if (batch != null) {
+					batch.deliver();
+				}
+			}
+			
+		} catch (InterruptedException e) {
 
-		// any output?
-		StreamGobbler outputGobbler = new StreamGobbler(
-				proc.getInputStream(),
-				out, 
-				discard
-		);
+			// See waitForProcess(Thread, Thread, boolean, Process) for why
+			// the interrupt is requested again.
+			// 
+			Thread.currentThread().interrupt();
+			
+			return -1;
 
-		return waitForProcess(
-				outputGobbler,
-				errorGobbler,
-				discard,
-				proc
-		);
+		} finally {
+			
+			// Otherwise we will be waiting for the process to terminate on 
+			// its own instead of interrupting as the user has requested.
+			//
+			if (!completed) {
+				destroyTree(proc);
+			}
+			pumped.finish();
+			
+			// to make sure the all streams are closed to avoid open file handles
+			//
+			IOUtils.closeQuietly(proc.getErrorStream());
+			IOUtils.closeQuietly(proc.getInputStream());
+			IOUtils.closeQuietly(proc.getOutputStream());
+			
+			proc.destroy();
+		}
+	}
+	
+	/**
+	 * <p>
+	 * 	Kills the process and every process started by it, directly or not.
+	 * Process.destroy alone would leave e.g. perl running when the process 
+	 * is the shell that started it.
+	 * </p>
+	 */
+	static void destroyTree(Process proc) {
+		
+		long pid = getPid(proc);
+		
+		if (pid > 0) {
+			
+			List<Long> descendants = getDescendants(pid);
+			
+			if (!descendants.isEmpty()) {
+				
+				String[] kill = new String[descendants.size() + 2];
+				kill[0] = "kill";
+				kill[1] = "-KILL";
+				for (int i = 0; i < descendants.size(); i++) {
+					kill[i + 2] = descendants.get(i).toString();
+				}
+				try {
+					Process killer = Runtime.getRuntime().exec(kill);
+					killer.waitFor();
+					IOUtils.closeQuietly(killer.getErrorStream());
+					IOUtils.closeQuietly(killer.getInputStream());
+					IOUtils.closeQuietly(killer.getOutputStream());
+				} catch (IOException e) {
+					logger.warning("Cannot kill processes started by process " + pid + ": " + e.getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		proc.destroy();
+	}
+	
+	/**
+	 * @return the process id, or -1 if it cannot be found out
+	 */
+	private static long getPid(Process proc) {
+		
+		try {
+			// Java 9 and later
+			return ((Number) Process.class.getMethod("pid").invoke(proc)).longValue();
+		} catch (Exception e) {
+			// Fall through to older JVMs
+		}
+		try {
+			Field pid = proc.getClass().getDeclaredField("pid");
+			pid.setAccessible(true);
+			return pid.getInt(proc);
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return the ids of all the processes descended from the process pid, 
+	 *         according to ps
+	 */
+	private static List<Long> getDescendants(long pid) {
+		
+		Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+		
+		try {
+			Process ps = Runtime.getRuntime().exec(new String[] { "ps", "-e", "-o", "pid=", "-o", "ppid=" });
+			BufferedReader reader = new BufferedReader(new InputStreamReader(ps.getInputStream()));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] ids = line.trim().split("\\s+");
+					if (ids.length == 2) {
+						Long parent = Long.valueOf(ids[1]);
+						if (!children.containsKey(parent)) {
+							children.put(parent, new ArrayList<Long>());
+						}
+						children.get(parent).add(Long.valueOf(ids[0]));
+					}
+				}
+				ps.waitFor();
+			} finally {
+				InputOutputUtils.closeQuietly(reader);
+				IOUtils.closeQuietly(ps.getErrorStream());
+				IOUtils.closeQuietly(ps.getOutputStream());
+			}
+		} catch (IOException e) {
+			logger.warning("Cannot list processes: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (NumberFormatException e) {
+			logger.warning("Cannot list processes: " + e.getMessage());
+		}
+		
+		List<Long> descendants = new ArrayList<Long>();
+		LinkedList<Long> toVisit = new LinkedList<Long>();
+		toVisit.add(pid);
+		while (!toVisit.isEmpty()) {
+			List<Long> current = children.get(toVisit.removeFirst());
+			if (current != null) {
+				descendants.addAll(current);
+				toVisit.addAll(current);
+			}
+		}
+		return descendants;
 	}
 
 	/**
@@ -0,0 +1,381 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * Reads the output and error streams of every process run by
+ * {@link ProcessExec} on one shared thread, instead of starting two threads
+ * for each process.
+ * </p>
+ *
+ * <p>
+ * Process streams cannot be selected on, so the thread polls each stream for
+ * the bytes that can be read without blocking and reads them into one large
+ * buffer. Complete lines are handed to the thread waiting for the process in
+ * a batch per read, so what is done with the output does not hold up reading
+ * the other processes. A stream is finished once its process has exited and
+ * nothing is left to read.
+ * </p>
+ */
+final class ProcessStreamPump implements Runnable {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	/** Longest wait between polls when no process has written anything */
+	private static final long MAX_IDLE_SLEEP = 20;
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	private static final ProcessStreamPump pump = new ProcessStreamPump();
+
+	/** Guarded by this */
+	private final List<PumpedProcess> processes = new ArrayList<PumpedProcess>();
+
+	/** Guarded by this */
+	private Thread thread = null;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private ProcessStreamPump() {
+	}
+
+	/**
+	 * Start reading the streams of a process.
+	 */
+	static void register(PumpedProcess process) {
+		pump.add(process);
+	}
+
+	private synchronized void add(PumpedProcess process) {
+
+		processes.add(process);
+		if (thread == null) {
+			thread = new Thread(this, "ProcessStreamPump");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+
+	}
+
+	public void run() {
+
+		long idleSleep = 1;
+		List<PumpedProcess> current = new ArrayList<PumpedProcess>();
+
+		while (true) {
+
+			synchronized (this) {
+				while (processes.isEmpty()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// only stops with the JVM
+					}
+				}
+				current.clear();
+				current.addAll(processes);
+			}
+
+			boolean read = false;
+			for (PumpedProcess process : current) {
+				try {
+					read |= process.pump(buffer);
+				} catch (RuntimeException e) {
+					logger.warning("Cannot read output of process: " + e.getMessage());
+					process.finish();
+				}
+			}
+
+			synchronized (this) {
+				for (Iterator<PumpedProcess> it = processes.iterator(); it.hasNext();) {
+					if (it.next().isFinished()) {
+						it.remove();
+					}
+				}
+			}
+
+			if (read) {
+				idleSleep = 1;
+			} else {
+				try {
+					Thread.sleep(idleSleep);
+				} catch (InterruptedException e) {
+					// only stops with the JVM
+				}
+				idleSleep = Math.min(idleSleep * 2, MAX_IDLE_SLEEP);
+			}
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * <p>
+	 * A process whose streams are read by the pump. The thread waiting for
+	 * the process takes the lines read with {@link #take(long)} and
+	 * {@link Batch#deliver()}s them.
+	 * </p>
+	 */
+	static class PumpedProcess {
+
+		private final Process process;
+
+		private final Source[] sources;
+
+		private final BlockingQueue<Batch> batches = new LinkedBlockingQueue<Batch>();
+
+		private volatile boolean finished = false;
+
+		PumpedProcess(Process process, Appendable out, Appendable err, boolean discard) {
+
+			this.process = process;
+			this.sources = new Source[] { new Source(process.getInputStream(), discard ? null : out),
+					new Source(process.getErrorStream(), discard ? null : err) };
+
+		}
+
+		/**
+		 * Read what is available from the streams of the process.
+		 *
+		 * @return true if anything was read
+		 */
+		boolean pump(byte[] buffer) {
+
+			if (finished) {
+				return false;
+			}
+
+			// checked before reading, so everything the process wrote before
+			// exiting is read before its streams are finished
+			boolean exited = hasExited();
+
+			boolean read = false;
+			boolean allDone = true;
+			for (Source source : sources) {
+				if (!source.done) {
+					read |= source.pump(buffer, exited, batches);
+					allDone &= source.done;
+				}
+			}
+			if (allDone) {
+				finish();
+			}
+			return read;
+
+		}
+
+		private boolean hasExited() {
+
+			try {
+				process.exitValue();
+				return true;
+			} catch (IllegalThreadStateException e) {
+				return false;
+			}
+
+		}
+
+		/**
+		 * Stop reading the process, e.g. because it has been killed.
+		 */
+		synchronized void finish() {
+
+			if (!finished) {
+				finished = true;
+				for (Source source : sources) {
+					source.close();
+				}
+				batches.add(Batch.END);
+			}
+
+		}
+
+		boolean isFinished() {
+			return finished;
+		}
+
+		/**
+		 * @return the next lines read, {@link Batch#END} once the streams are
+		 *         finished, or null if there was nothing within timeout
+		 *         milliseconds
+		 */
+		Batch take(long timeout) throws InterruptedException {
+			return batches.poll(timeout, TimeUnit.MILLISECONDS);
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Lines read from one stream in one go.
+	 */
+	static class Batch {
+
+		static final Batch END = new Batch(null, null);
+
+		final Appendable target;
+
+		final List<String> lines;
+
+		Batch(Appendable target, List<String> lines) {
+			this.target = target;
+			this.lines = lines;
+		}
+
+		/**
+		 * Append each line, followed by a newline, to the target.
+		 */
+		void deliver() throws IOException {
+
+			for (String line : lines) {
+				target.append(line);
+				target.append('\n');
+			}
+
+		}
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * One stream of a process, split into lines as it is read.
+	 */
+	static class Source {
+
+		private static final Charset CHARSET = Charset.defaultCharset();
+
+		private final InputStream in;
+
+		/** Lines are discarded if null */
+		private final Appendable target;
+
+		/** The start of a line which has not been finished yet */
+		private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+
+		boolean done = false;
+
+		Source(InputStream in, Appendable target) {
+			this.in = in;
+			this.target = target;
+		}
+
+		/**
+		 * @return true if anything was read
+		 */
+		boolean pump(byte[] buffer, boolean exited, BlockingQueue<Batch> batches) {
+
+			boolean read = false;
+			List<String> lines = null;
+
+			try {
+				int available;
+				while ((available = in.available()) > 0) {
+					int n = in.read(buffer, 0, Math.min(available, buffer.length));
+					if (n < 0) {
+						break;
+					}
+					read = true;
+					if (target != null) {
+						lines = split(buffer, n, lines);
+					}
+				}
+			} catch (IOException e) {
+				// the stream has been closed under us
+				exited = true;
+			}
+
+			if (exited) {
+				// like BufferedReader.readLine, a last line without a newline
+				// is still a line
+				if (target != null && partial.size() > 0) {
+					if (lines == null) {
+						lines = new ArrayList<String>();
+					}
+					lines.add(decode(partial.toByteArray(), partial.size()));
+				}
+				close();
+			}
+
+			if (lines != null && !lines.isEmpty()) {
+				batches.add(new Batch(target, lines));
+			}
+			return read;
+
+		}
+
+		private List<String> split(byte[] buffer, int n, List<String> lines) {
+
+			int start = 0;
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == '\n') {
+					if (lines == null) {
+						lines = new ArrayList<String>();
+					}
+					if (partial.size() > 0) {
+						partial.write(buffer, start, i - start);
+						lines.add(decode(partial.toByteArray(), partial.size()));
+						partial.reset();
+					} else {
+						lines.add(decode(buffer, i - start, start));
+					}
+					start = i + 1;
+				}
+			}
+			partial.write(buffer, start, n - start);
+			return lines;
+
+		}
+
+		private static String decode(byte[] bytes, int length) {
+			return decode(bytes, length, 0);
+		}
+
+		private static String decode(byte[] bytes, int length, int offset) {
+
+			if (length > 0 && bytes[offset + length - 1] == '\r') {
+				length--;
+			}
+			return new String(bytes, offset, length, CHARSET);
+
+		}
+
+		void close() {
+
+			done = true;
+			partial.reset();
+			InputOutputUtils.closeQuietly(in);
+
+		}
+
+	}
+
+}
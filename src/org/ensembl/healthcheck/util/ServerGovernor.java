@@ -0,0 +1,313 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.ensembl.healthcheck.DatabaseServer;
+
+/**
+ * <p>
+ * Limits the heavy queries running at the same time on one database server,
+ * shared by all the tests of this JVM, so that checks running in parallel do
+ * not drive a server shared with other teams into the ground.
+ * </p>
+ *
+ * <p>
+ * The limit starts at <code>governor.initial</code> (default 4) and is
+ * adjusted every <code>governor.interval</code> milliseconds (default 5000)
+ * from the Threads_running of SHOW GLOBAL STATUS, which counts the queries
+ * of everyone using the server: while it is above
+ * <code>governor.threads_running</code> (default 50) the limit is halved,
+ * and while it is below and all permits were in use the limit grows by one,
+ * between <code>governor.min</code> (default 1) and
+ * <code>governor.max</code> (default 16). If the load cannot be read, the
+ * limit is left as it is and the samples are spaced out further after each
+ * failure, up to {@link #MAX_BACKOFF} intervals apart. Each server is sampled
+ * by a thread of its own, with a query timeout of one interval, so a server
+ * which does not answer does not hold up the others.
+ * {@link ConnectionPool#closeAll()} stops the sampling and closes its
+ * connections.
+ * </p>
+ *
+ * <pre>
+ * ServerGovernor governor = ServerGovernor.forUrl(con.getMetaData().getURL());
+ * governor.acquire();
+ * try {
+ * 	// the heavy query
+ * } finally {
+ * 	governor.release();
+ * }
+ * </pre>
+ */
+public final class ServerGovernor {
+
+	public static final String INITIAL = "governor.initial";
+
+	public static final String MIN = "governor.min";
+
+	public static final String MAX = "governor.max";
+
+	public static final String THREADS_RUNNING = "governor.threads_running";
+
+	public static final String INTERVAL = "governor.interval";
+
+	/** The most intervals skipped between samples after failures */
+	static final int MAX_BACKOFF = 32;
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	/** Keyed by host and port */
+	private static final Map<String, ServerGovernor> governors = new HashMap<String, ServerGovernor>();
+
+	private final String server;
+
+	/** A database URL on the server the pool has connected to, to sample the load with */
+	private final String url;
+
+	private final int min;
+
+	private final int max;
+
+	private final int target;
+
+	private int limit;
+
+	private int running = 0;
+
+	/** Whether all permits were in use at some time since the last sample */
+	private boolean saturated = false;
+
+	private ScheduledExecutorService sampler = null;
+
+	/** Seconds */
+	private int queryTimeout = 5;
+
+	private volatile Connection sampleConnection = null;
+
+	private volatile boolean stopped = false;
+
+	/** Failures to read the load in a row; only used by the sampler */
+	private int failures = 0;
+
+	/** Samples to skip before trying again after a failure */
+	private int skip = 0;
+
+	ServerGovernor(String server, String url, int initial, int min, int max, int target) {
+
+		this.server = server;
+		this.url = url;
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.target = target;
+		this.limit = Math.min(this.max, Math.max(this.min, initial));
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * @return the governor of the server of a database the
+	 *         {@link ConnectionPool} has connected to
+	 */
+	public static ServerGovernor forUrl(String url) {
+		return forServer(Metrics.serverOf(url), url);
+	}
+
+	/**
+	 * @return the governor of server
+	 */
+	public static ServerGovernor forServer(DatabaseServer server) {
+		return forServer(server.getHost() + ":" + server.getPort(), server.getDatabaseURL());
+	}
+
+	private static ServerGovernor forServer(String server, String url) {
+
+		synchronized (governors) {
+			ServerGovernor governor = governors.get(server);
+			if (governor == null) {
+				governor = new ServerGovernor(server, url, Integer.getInteger(INITIAL, 4).intValue(), Integer.getInteger(MIN, 1)
+						.intValue(), Integer.getInteger(MAX, 16).intValue(), Integer.getInteger(THREADS_RUNNING, 50).intValue());
+				governors.put(server, governor);
+				governor.schedule(Long.getLong(INTERVAL, 5000).longValue());
+			}
+			return governor;
+		}
+
+	}
+
+	/**
+	 * Stop sampling the load of every server and close the sampling
+	 * connections, at the end of a run. Governors are created again when next
+	 * asked for.
+	 */
+	public static void closeAll() {
+
+		synchronized (governors) {
+			for (ServerGovernor governor : governors.values()) {
+				governor.stop();
+			}
+			governors.clear();
+		}
+
+	}
+
+	private void schedule(long interval) {
+
+		queryTimeout = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(interval));
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "ServerGovernor-sampler-" + server);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		sampler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				sample();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * Wait until fewer heavy queries than the limit are running on the server.
+	 */
+	public synchronized void acquire() throws InterruptedException {
+
+		while (running >= limit) {
+			saturated = true;
+			wait();
+		}
+		running++;
+		if (running >= limit) {
+			saturated = true;
+		}
+
+	}
+
+	/**
+	 * Let the next heavy query run; call once for each {@link #acquire()}.
+	 */
+	public synchronized void release() {
+
+		running--;
+		notifyAll();
+
+	}
+
+	public synchronized int getLimit() {
+		return limit;
+	}
+
+	public synchronized int getRunning() {
+		return running;
+	}
+
+	public String getServer() {
+		return server;
+	}
+
+	/**
+	 * Additive increase while the server is below the target load and the
+	 * permits are all used, multiplicative decrease while it is above.
+	 */
+	synchronized void adjust(long threadsRunning) {
+
+		int previous = limit;
+		if (threadsRunning > target) {
+			limit = Math.max(min, limit / 2);
+		} else if (saturated) {
+			limit = Math.min(max, limit + 1);
+		}
+		saturated = running >= limit;
+		if (limit != previous) {
+			logger.fine("Heavy queries on " + server + " limited to " + limit + " (was " + previous + "), Threads_running is "
+					+ threadsRunning);
+			notifyAll();
+		}
+
+	}
+
+	private void stop() {
+
+		stopped = true;
+		if (sampler != null) {
+			sampler.shutdownNow();
+		}
+		DBUtils.closeQuietly(sampleConnection);
+		sampleConnection = null;
+
+	}
+
+	/**
+	 * Read Threads_running from the server and adjust the limit.
+	 */
+	void sample() {
+
+		if (skip > 0) {
+			skip--;
+			return;
+		}
+
+		Statement stmt = null;
+		ResultSet rs = null;
+		try {
+			if (sampleConnection == null || sampleConnection.isClosed()) {
+				sampleConnection = ConnectionPool.openSideConnection(url);
+				if (sampleConnection == null) {
+					return;
+				}
+				if (stopped) {
+					// closeAll() ran while this connected
+					DBUtils.closeQuietly(sampleConnection);
+					sampleConnection = null;
+					return;
+				}
+			}
+			stmt = sampleConnection.createStatement();
+			stmt.setQueryTimeout(queryTimeout);
+			rs = stmt.executeQuery("SHOW GLOBAL STATUS LIKE 'Threads_running'");
+			if (rs.next()) {
+				adjust(rs.getLong(2));
+			}
+			failures = 0;
+		} catch (SQLException e) {
+			failures++;
+			skip = Math.min(MAX_BACKOFF, 1 << Math.min(failures, 6)) - 1;
+			logger.fine("Cannot read the load of " + server + ", trying again in " + (skip + 1) + " intervals: "
+					+ e.getMessage());
+			DBUtils.closeQuietly(sampleConnection);
+			sampleConnection = null;
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(stmt);
+		}
+
+	}
+
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * <p>
+ * Records the statements run through {@link ConnectionBasedSqlTemplateImpl}
+ * and {@link DBUtils} which take longer than the
+ * <code>slowquery.threshold</code> system property (in milliseconds), with
+ * the test that ran them and the database. Nothing is recorded if it is not
+ * set.
+ * </p>
+ *
+ * <p>
+ * The EXPLAIN plan of each slow SELECT is captured once per database, in the
+ * background on a connection of its own, so the test that ran it is not
+ * held up and its connection is left alone. At the end of a run the
+ * statements are reported ranked by the total time spent on them, the ones
+ * whose plan has a full table scan or a filesort first. The report is logged
+ * and, if the <code>slowquery.file</code> system property is set, written to
+ * that file as JSON.
+ * </p>
+ */
+public final class SlowQueryLog {
+
+	public static final String THRESHOLD = "slowquery.threshold";
+
+	public static final String FILE = "slowquery.file";
+
+	/** Statements explained in one run at most; later ones are only timed */
+	static final int MAX_EXPLAINED = 1000;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static Logger logger = Logger.getLogger("HealthCheckLogger");
+
+	/** In nanoseconds; negative if slow queries are not recorded */
+	private static volatile Long threshold = null;
+
+	/** Keyed by database URL and statement; guarded by itself */
+	private static final Map<String, SlowQuery> queries = new LinkedHashMap<String, SlowQuery>();
+
+	/** Guarded by queries */
+	private static ExecutorService explainer = null;
+
+	/** Side connection of each database URL; only used by the explainer */
+	private static final Map<String, Connection> sideConnections = new HashMap<String, Connection>();
+
+	private SlowQueryLog() {
+	}
+
+	/**
+	 * @return true if a statement which took nanos nanoseconds is recorded
+	 */
+	public static boolean isSlow(long nanos) {
+
+		Long limit = threshold;
+		if (limit == null) {
+			limit = -1L;
+			String millis = System.getProperty(THRESHOLD);
+			if (millis != null && millis.trim().length() > 0) {
+				try {
+					limit = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(millis.trim()));
+				} catch (NumberFormatException e) {
+					logger.warning("Ignoring " + THRESHOLD + "=" + millis + ", it is not a number");
+				}
+			}
+			threshold = limit;
+		}
+		return limit >= 0 && nanos >= limit;
+
+	}
+
+	/**
+	 * Record slow queries taking at least millis milliseconds regardless of
+	 * the system property; negative to record none.
+	 */
+	public static void setThreshold(long millis) {
+		threshold = millis < 0 ? -1L : TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Record a slow statement run on the database at url with args.
+	 */
+	public static void record(final String url, final String sql, final Object[] args, long nanos) {
+
+		String test = Metrics.getRunningTest();
+		final SlowQuery query;
+		ExecutorService explainWith = null;
+
+		synchronized (queries) {
+			String key = url + '\0' + sql;
+			SlowQuery existing = queries.get(key);
+			if (existing == null) {
+				query = new SlowQuery(Metrics.databaseOf(url), Metrics.serverOf(url), sql);
+				queries.put(key, query);
+				if (queries.size() <= MAX_EXPLAINED && isSelect(sql)) {
+					if (explainer == null) {
+						explainer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+							public Thread newThread(Runnable r) {
+								Thread thread = new Thread(r, "SlowQueryLog-explain");
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+					}
+					explainWith = explainer;
+				}
+			} else {
+				query = existing;
+			}
+			query.add(test, nanos);
+		}
+
+		logger.fine("Slow query (" + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms) in " + test + ": " + sql);
+
+		if (explainWith != null) {
+			final Object[] explainArgs = args == null ? null : args.clone();
+			try {
+				explainWith.submit(new Runnable() {
+					public void run() {
+						query.setPlan(explain(url, sql, explainArgs));
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// the run has finished, so the plan would not be reported
+			}
+		}
+
+	}
+
+	private static boolean isSelect(String sql) {
+
+		String statement = sql.trim();
+		return statement.length() >= 6 && statement.substring(0, 6).equalsIgnoreCase("select");
+
+	}
+
+	/**
+	 * @return the rows of the EXPLAIN of sql, each a map of column to value,
+	 *         or a single row with an "error" if it could not be explained
+	 */
+	private static List<Map<String, String>> explain(String url, String sql, Object[] args) {
+
+		List<Map<String, String>> plan = new ArrayList<Map<String, String>>();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			Connection con = getSideConnection(url);
+			if (con == null) {
+				plan.add(Collections.singletonMap("error", "No connection to explain on"));
+				return plan;
+			}
+			ps = con.prepareStatement("EXPLAIN " + sql);
+			if (args != null) {
+				for (int i = 0; i < args.length; i++) {
+					ps.setObject(i + 1, args[i]);
+				}
+			}
+			rs = ps.executeQuery();
+			ResultSetMetaData meta = rs.getMetaData();
+			while (rs.next()) {
+				Map<String, String> row = new LinkedHashMap<String, String>();
+				for (int i = 1; i <= meta.getColumnCount(); i++) {
+					row.put(meta.getColumnLabel(i).toLowerCase(), rs.getString(i));
+				}
+				plan.add(row);
+			}
+		} catch (SQLException e) {
+			plan.add(Collections.singletonMap("error", e.getMessage()));
+		} finally {
+			DBUtils.closeQuietly(rs);
+			DBUtils.closeQuietly(ps);
+		}
+		return plan;
+
+	}
+
+	private static Connection getSideConnection(String url) throws SQLException {
+
+		Connection con = sideConnections.get(url);
+		if (con == null || con.isClosed()) {
+			con = ConnectionPool.openSideConnection(url);
+			if (con != null) {
+				sideConnections.put(url, con);
+			}
+		}
+		return con;
+
+	}
+
+	/**
+	 * Called at the end of a run: waits for the plans being captured, then
+	 * logs the report and writes it to the <code>slowquery.file</code> if it
+	 * is set.
+	 */
+	public static void finishRun() {
+
+		ExecutorService running;
+		synchronized (queries) {
+			running = explainer;
+			explainer = null;
+		}
+		if (running != null) {
+			running.submit(new Runnable() {
+				public void run() {
+					for (Connection con : sideConnections.values()) {
+						DBUtils.closeQuietly(con);
+					}
+					sideConnections.clear();
+				}
+			});
+			running.shutdown();
+			try {
+				if (!running.awaitTermination(5, TimeUnit.MINUTES)) {
+					logger.warning("Reporting slow queries without waiting for all their plans");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (getSlowQueries().isEmpty()) {
+			return;
+		}
+
+		StringBuilder report = new StringBuilder();
+		try {
+			writeReport(report);
+		} catch (IOException e) {
+			// not thrown by StringBuilder
+		}
+		logger.info(report.toString());
+
+		String fileName = System.getProperty(FILE);
+		if (fileName != null && fileName.length() > 0) {
+			Writer writer = null;
+			try {
+				writer = new OutputStreamWriter(new FileOutputStream(new File(fileName)), UTF8);
+				writeJson(writer);
+			} catch (IOException e) {
+				logger.warning("Cannot write slow queries to " + fileName + ": " + e.getMessage());
+			} finally {
+				InputOutputUtils.closeQuietly(writer);
+			}
+		}
+
+	}
+
+	/**
+	 * Forget the slow queries recorded so far.
+	 */
+	public static void reset() {
+
+		synchronized (queries) {
+			queries.clear();
+		}
+
+	}
+
+	/**
+	 * @return the slow queries, full scans and filesorts first and then by
+	 *         the total time spent on them
+	 */
+	public static List<SlowQuery> getSlowQueries() {
+
+		List<SlowQuery> ranked;
+		synchronized (queries) {
+			ranked = new ArrayList<SlowQuery>(queries.values());
+		}
+		Collections.sort(ranked, new Comparator<SlowQuery>() {
+			public int compare(SlowQuery a, SlowQuery b) {
+				boolean offenderA = a.isOffender();
+				boolean offenderB = b.isOffender();
+				if (offenderA != offenderB) {
+					return offenderA ? -1 : 1;
+				}
+				long ta = a.getTotalNanos();
+				long tb = b.getTotalNanos();
+				return ta < tb ? 1 : ta > tb ? -1 : 0;
+			}
+		});
+		return ranked;
+
+	}
+
+	public static void writeReport(Appendable out) throws IOException {
+
+		out.append("Slow queries (full scans and filesorts first)\n");
+		out.append(String.format("%6s %12s %12s  %-9s %-9s %-30s %-40s %-40s %s\n", "count", "total ms", "max ms",
+				"full scan", "filesort", "tables scanned", "test", "database", "sql"));
+		for (SlowQuery query : getSlowQueries()) {
+			out.append(String.format("%6d %12d %12d  %-9s %-9s %-30s %-40s %-40s %s\n", query.getCount(),
+					TimeUnit.NANOSECONDS.toMillis(query.getTotalNanos()), TimeUnit.NANOSECONDS.toMillis(query.getMaxNanos()),
+					query.isFullScan() ? "yes" : query.getPlan() == null ? "?" : "", query.isFilesort() ? "yes" : "",
+					query.getFullScanTables(), query.getTests(), query.getDatabase(), query.getSql().replaceAll("\\s+", " ")));
+		}
+
+	}
+
+	public static void writeJson(Appendable out) throws IOException {
+
+		List<Map<String, Object>> list = new ArrayList<Map<String, Object>>();
+		for (SlowQuery query : getSlowQueries()) {
+			Map<String, Object> entry = new LinkedHashMap<String, Object>();
+			entry.put("tests", query.getTests());
+			entry.put("database", query.getDatabase());
+			entry.put("server", query.getServer());
+			entry.put("sql", query.getSql());
+			entry.put("count", query.getCount());
+			entry.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(query.getTotalNanos()));
+			entry.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(query.getMaxNanos()));
+			entry.put("fullScan", query.isFullScan());
+			entry.put("filesort", query.isFilesort());
+			entry.put("plan", query.getPlan());
+			list.add(entry);
+		}
+		new GsonBuilder().setPrettyPrinting().create().toJson(list, out);
+
+	}
+
+	// -------------------------------------------------------------------------
+	/**
+	 * One statement which was slow on one database, however often it was run.
+	 */
+	public static class SlowQuery {
+
+		private final String database;
+
+		private final String server;
+
+		private final String sql;
+
+		private final List<String> tests = new ArrayList<String>();
+
+		private int count;
+
+		private long totalNanos;
+
+		private long maxNanos;
+
+		private List<Map<String, String>> plan = null;
+
+		SlowQuery(String database, String server, String sql) {
+			this.database = database;
+			this.server = server;
+			this.sql = sql;
+		}
+
+		synchronized void add(String test, long nanos) {
+
+			if (!tests.contains(test)) {
+				tests.add(test);
+			}
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+
+		}
+
+		synchronized void setPlan(List<Map<String, String>> plan) {
+			this.plan = plan;
+		}
+
+		/**
+		 * @return the rows of the EXPLAIN, or null if it has not been captured
+		 */
+		public synchronized List<Map<String, String>> getPlan() {
+			return plan;
+		}
+
+		public String getDatabase() {
+			return database;
+		}
+
+		public String getServer() {
+			return server;
+		}
+
+		public String getSql() {
+			return sql;
+		}
+
+		public synchronized List<String> getTests() {
+			return new ArrayList<String>(tests);
+		}
+
+		public synchronized int getCount() {
+			return count;
+		}
+
+		public synchronized long getTotalNanos() {
+			return totalNanos;
+		}
+
+		public synchronized long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * @return the tables read in full, with a join type of ALL (or index,
+		 *         a full scan of an index), comma separated
+		 */
+		public synchronized String getFullScanTables() {
+
+			StringBuilder tables = new StringBuilder();
+			if (plan != null) {
+				for (Map<String, String> row : plan) {
+					String type = row.get("type");
+					if ("ALL".equalsIgnoreCase(type) || "index".equalsIgnoreCase(type)) {
+						if (tables.length() > 0) {
+							tables.append(',');
+						}
+						tables.append(row.get("table"));
+					}
+				}
+			}
+			return tables.toString();
+
+		}
+
+		public boolean isFullScan() {
+			return getFullScanTables().length() > 0;
+		}
+
+		public synchronized boolean isFilesort() {
+
+			if (plan != null) {
+				for (Map<String, String> row : plan) {
+					String extra = row.get("extra");
+					if (extra != null && extra.contains("filesort")) {
+						return true;
+					}
+				}
+			}
+			return false;
+
+		}
+
+		boolean isOffender() {
+			return isFullScan() || isFilesort();
+		}
+
+	}
+
+}
@@ -293,6 +293,27 @@ public interface SqlTemplate {
 	<K, T> Map<K, T> queryForMap(String sql, MapRowMapper<K, T> mapRowMapper,
 			Object... args);
 
+	/**
+	 * Runs a grouped query once and returns its results keyed by a primitive
+	 * long. Column 1 must be the numeric key and column 2 the numeric value;
+	 * rows with a NULL in either column are skipped and the first value for a
+	 * repeated key wins. This is the preferred replacement for loops which run
+	 * one keyed query per entity, for example
+	 *
+	 * <code>
+	 * LongKeyedMap counts = template.queryForLongMap(
+	 *   "select seq_region_id, count(*) from density_feature group by seq_region_id");
+	 * long count = counts.get(seqRegionId, 0);
+	 * </code>
+	 *
+	 * @param sql
+	 *            The grouped SQL to run
+	 * @param args
+	 *            Arguments to send to the target server
+	 * @return The key to value map; never null
+	 */
+	LongKeyedMap queryForLongMap(String sql, Object... args);
+
 	/**
    * A generic method used for opening {@link PreparedStatement} and
    * {@link ResultSet} instances and closing them down. Useful for when
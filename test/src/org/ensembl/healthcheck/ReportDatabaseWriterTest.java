@@ -0,0 +1,128 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+import org.ensembl.healthcheck.testcase.generic.Karyotype;
+import org.ensembl.healthcheck.util.ConnectionBasedSqlTemplateImpl;
+import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.SqlTemplate;
+import org.ensembl.healthcheck.util.SqlUncheckedException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ReportDatabaseWriterTest {
+
+  private static final String DB = "homo_sapiens_core_80_38";
+
+  private Connection conn = null;
+  private SqlTemplate t = null;
+  private EnsTestCase testCase = new Karyotype();
+
+  @BeforeClass
+  void setupDb() throws SQLException {
+    conn = ConnectionPool.getConnection("org.h2.Driver", "jdbc:h2:mem:reportdatabasewritertest", "sa", "");
+    t = new ConnectionBasedSqlTemplateImpl(conn);
+    t.execute("create table report(report_id int auto_increment primary key, first_session_id int, last_session_id int, "
+        + "database_name varchar, species varchar, database_type varchar, timestamp datetime, testcase varchar, "
+        + "result varchar, text varchar, team_responsible varchar, created datetime, "
+        + "digest binary(16), unique(digest))");
+  }
+
+  private ReportLine line(int level, String message) {
+    return new ReportLine(testCase, DB, level, message, Team.GENEBUILD, null);
+  }
+
+  @Test
+  public void newReportsInsertedAndExistingCarriedForward() {
+    ReportDatabaseWriter first = new ReportDatabaseWriter(conn, 1);
+    first.add(line(ReportLine.PROBLEM, "Chromosome 1 has no karyotype data"));
+    first.add(line(ReportLine.PROBLEM, "Chromosome 2 has no karyotype data"));
+    first.add(line(ReportLine.PROBLEM, "Chromosome 2 has no karyotype data"));
+    first.close();
+    assertEquals(count("select count(*) from report"), 2, "Duplicate line within a session stored once");
+
+    ReportDatabaseWriter second = new ReportDatabaseWriter(conn, 2);
+    for (int i = 0; i < ReportDatabaseWriter.BATCH_SIZE * 3; i++) {
+      second.add(line(ReportLine.INFO, "Line " + i));
+    }
+    second.add(line(ReportLine.PROBLEM, "Chromosome 2 has no karyotype data"));
+    second.add(line(ReportLine.INFO, "Chromosome 2 has no karyotype data"));
+    second.flush();
+    assertEquals(count("select count(*) from report"), 3 + ReportDatabaseWriter.BATCH_SIZE * 3, "Flush writes every queued line");
+    assertEquals(count("select count(*) from report where last_session_id = 2 and first_session_id = 1"), 1, "Unchanged report carried forward");
+    assertEquals(count("select count(*) from report where last_session_id = 1"), 1, "Report not seen again keeps its last session");
+    second.close();
+  }
+
+  @Test
+  public void repeatedSessionCarriesReportsForward() {
+    String[] messages = { "Chromosome 3 has no karyotype data", "Chromosome 4 has no karyotype data",
+        "Chromosome 5 has no karyotype data" };
+    ReportDatabaseWriter first = new ReportDatabaseWriter(conn, 11);
+    for (String message : messages) {
+      first.add(line(ReportLine.WARNING, message));
+    }
+    first.close();
+    int rows = count("select count(*) from report");
+
+    ReportDatabaseWriter second = new ReportDatabaseWriter(conn, 12);
+    for (String message : messages) {
+      second.add(line(ReportLine.WARNING, message));
+    }
+    second.close();
+    assertEquals(count("select count(*) from report"), rows, "No new rows for a repeated session");
+    assertEquals(count("select count(*) from report where first_session_id = 11 and last_session_id = 12"),
+        messages.length, "last_session_id moved on");
+  }
+
+  @Test
+  public void lostReportsReportedByFlush() throws SQLException {
+    // no report table to write to
+    Connection empty = ConnectionPool.getConnection("org.h2.Driver", "jdbc:h2:mem:reportdatabasewriterlosttest", "sa", "");
+    ReportDatabaseWriter writer = new ReportDatabaseWriter(empty, 3);
+    writer.add(line(ReportLine.PROBLEM, "Chromosome 1 has no karyotype data"));
+    try {
+      writer.flush();
+      fail("Lost reports must be reported");
+    } catch (SqlUncheckedException e) {
+      assertEquals(e.getMessage(), "1 reports could not be written to the output database");
+    }
+    writer.close();
+  }
+
+  @Test
+  public void digestIdentifiesReport() {
+    ReportLine a = line(ReportLine.PROBLEM, "Chromosome 1 has no karyotype data");
+    assertEquals(a.getDigest().length, 16, "MD5 digest");
+    assertEquals(a.getDigest(), line(ReportLine.PROBLEM, "Chromosome 1 has no karyotype data").getDigest(), "Same report, same digest");
+    assertFalse(Arrays.equals(a.getDigest(), line(ReportLine.WARNING, "Chromosome 1 has no karyotype data").getDigest()), "Level is part of the digest");
+    assertFalse(Arrays.equals(a.getDigest(), line(ReportLine.PROBLEM, "chromosome 1 has no karyotype data").getDigest()), "Text is compared exactly");
+  }
+
+  private int count(String sql) {
+    return t.queryForDefaultObject(sql, Integer.class);
+  }
+}
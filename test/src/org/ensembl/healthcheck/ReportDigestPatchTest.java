@@ -0,0 +1,105 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+/**
+ * Runs the statements of the digest patch against the schema of the output
+ * databases the runtime creates. The patch uses MySQL only syntax, so each
+ * statement is checked for the tables it needs rather than executed.
+ */
+public class ReportDigestPatchTest {
+
+  private static final Pattern CREATE = Pattern.compile("CREATE\\s+(TEMPORARY\\s+)?TABLE\\s+(\\w+)",
+      Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern TABLES = Pattern.compile(
+      "(?:ALTER\\s+TABLE|UPDATE|FROM|JOIN)\\s+(\\w+(?:\\s+\\w+)?(?:\\s*,\\s*\\w+(?:\\s+\\w+)?)*)",
+      Pattern.CASE_INSENSITIVE);
+
+  private static final Set<String> KEYWORDS = new HashSet<String>();
+  static {
+    for (String keyword : new String[] { "set", "where", "group", "add", "on", "using" }) {
+      KEYWORDS.add(keyword);
+    }
+  }
+
+  @Test
+  public void runtimeSchemaHasEveryTable() throws IOException {
+    Set<String> tables = new HashSet<String>();
+    for (String statement : statements(new File("resources/runtime/table.sql"))) {
+      Matcher m = CREATE.matcher(statement);
+      if (m.find()) {
+        tables.add(m.group(2).toLowerCase());
+      }
+    }
+    assertFalse(tables.contains("report_session"));
+
+    for (String statement : statements(new File("sql/patch_02_report_digest.sql"))) {
+      Matcher create = CREATE.matcher(statement);
+      if (create.find() && create.group(1) != null) {
+        tables.add(create.group(2).toLowerCase());
+      }
+      Matcher m = TABLES.matcher(statement);
+      while (m.find()) {
+        for (String table : m.group(1).split(",")) {
+          String name = table.trim().split("\\s+")[0].toLowerCase();
+          if (!KEYWORDS.contains(name)) {
+            assertTrue(tables.contains(name), name + " in the runtime schema, needed by " + statement);
+          }
+        }
+      }
+    }
+  }
+
+  private List<String> statements(File file) throws IOException {
+    StringBuilder sql = new StringBuilder();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (!line.trim().startsWith("--")) {
+          sql.append(line).append('\n');
+        }
+      }
+    } finally {
+      in.close();
+    }
+    List<String> statements = new ArrayList<String>();
+    for (String statement : sql.toString().split(";")) {
+      if (statement.trim().length() > 0) {
+        statements.add(statement.trim());
+      }
+    }
+    return statements;
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+import org.ensembl.healthcheck.testcase.generic.Karyotype;
+import org.ensembl.healthcheck.util.ConnectionBasedSqlTemplateImpl;
+import org.ensembl.healthcheck.util.ConnectionPool;
+import org.ensembl.healthcheck.util.SqlTemplate;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ReportJournalTest {
+
+  private static final String DB = "homo_sapiens_core_80_38";
+
+  private Connection conn = null;
+  private SqlTemplate t = null;
+  private EnsTestCase testCase = new Karyotype();
+
+  @BeforeClass
+  void setupDb() throws SQLException {
+    conn = ConnectionPool.getConnection("org.h2.Driver", "jdbc:h2:mem:reportjournaltest", "sa", "");
+    t = new ConnectionBasedSqlTemplateImpl(conn);
+    t.execute("create table report(report_id int auto_increment primary key, first_session_id int, last_session_id int, "
+        + "database_name varchar, species varchar, database_type varchar, timestamp datetime, testcase varchar, "
+        + "result varchar, text varchar, team_responsible varchar, created datetime, "
+        + "digest binary(16), unique(digest))");
+  }
+
+  private ReportLine line(int level, String message) {
+    return new ReportLine(testCase, DB, level, message, Team.GENEBUILD, Team.CORE);
+  }
+
+  @Test
+  public void journalsOfSessionMergedOnce() throws IOException {
+    File dir = File.createTempFile("reportjournaltest", "");
+    dir.delete();
+
+    // two nodes of session 7, one of which reports a line the other does too
+    ReportJournal first = new ReportJournal(dir, 7);
+    first.add(line(ReportLine.PROBLEM, "Chromosome 1 has no karyotype data"));
+    first.add(line(ReportLine.INFO, "#Started"));
+    first.close();
+    ReportJournal second = new ReportJournal(dir, 7);
+    second.add(line(ReportLine.INFO, "#Started"));
+    second.add(line(ReportLine.PROBLEM, "Chromosome 2 has no karyotype data"));
+    second.close();
+    ReportJournal other = new ReportJournal(dir, 8);
+    other.add(line(ReportLine.PROBLEM, "Another session"));
+    other.close();
+
+    ReportDatabaseWriter writer = new ReportDatabaseWriter(conn, 7);
+    assertEquals(ReportJournal.merge(dir, 7, writer), 4, "Reports read from the session's journals");
+    assertEquals(count("select count(*) from report"), 3, "Reports de-duplicated across journals");
+    assertEquals(count("select count(*) from report where result = 'PROBLEM' and team_responsible = 'GENEBUILD and CORE'"), 2,
+        "Columns written from the journal");
+    assertFalse(first.getFile().exists(), "Merged journal renamed");
+    assertTrue(new File(first.getFile().getPath() + ReportJournal.MERGED_SUFFIX).exists(), "Merged journal kept");
+    assertTrue(other.getFile().exists(), "Other session left alone");
+
+    assertEquals(ReportJournal.merge(dir, 7, writer), 0, "Journals only merged once");
+    writer.close();
+
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  @Test
+  public void unreadableJournalSetAside() throws IOException {
+    File dir = File.createTempFile("reportjournaltest", "");
+    dir.delete();
+
+    ReportJournal journal = new ReportJournal(dir, 9);
+    journal.add(line(ReportLine.PROBLEM, "Chromosome 3 has no karyotype data"));
+    journal.close();
+    // not gzipped
+    Writer corrupt = new FileWriter(new File(dir, ReportJournal.prefix(9) + "corrupt" + ReportJournal.SUFFIX));
+    corrupt.write("{\"testCaseName\": ");
+    corrupt.close();
+
+    ReportDatabaseWriter writer = new ReportDatabaseWriter(conn, 9);
+    assertEquals(ReportJournal.merge(dir, 9, writer), 1, "Reports read from the readable journal");
+    assertTrue(new File(dir, ReportJournal.prefix(9) + "corrupt" + ReportJournal.SUFFIX + ReportJournal.FAILED_SUFFIX)
+        .exists(), "Unreadable journal set aside");
+    assertEquals(ReportJournal.merge(dir, 9, writer), 0, "Unreadable journal not read again");
+    writer.close();
+
+    for (File f : dir.listFiles()) {
+      f.delete();
+    }
+    dir.delete();
+  }
+
+  private int count(String sql) {
+    return t.queryForDefaultObject(sql, Integer.class);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ensembl.healthcheck.testcase.EnsTestCase;
+import org.ensembl.healthcheck.testcase.generic.Karyotype;
+import org.ensembl.healthcheck.testcase.generic.MetaCoord;
+import org.testng.annotations.Test;
+
+public class ReportStoreTest {
+
+  private static final String[] DATABASES = { "homo_sapiens_core_80_38", "mus_musculus_core_80_38", "danio_rerio_core_80_10" };
+
+  @Test
+  public void countsAndListsUnderConcurrentProducers() throws InterruptedException {
+    final ReportStore store = new ReportStore(100);
+    final EnsTestCase passing = new Karyotype();
+    final EnsTestCase failing = new MetaCoord();
+    final int linesPerThread = 500;
+
+    List<Thread> threads = new ArrayList<Thread>();
+    for (final String db : DATABASES) {
+      for (int t = 0; t < 2; t++) {
+        threads.add(new Thread() {
+          public void run() {
+            for (int i = 0; i < linesPerThread; i++) {
+              store.add(new ReportLine(passing, db, ReportLine.CORRECT, "ok " + i, Team.GENEBUILD, null));
+              // only the first database fails the second test
+              int level = db.equals(DATABASES[0]) && i == linesPerThread - 1 ? ReportLine.PROBLEM : ReportLine.INFO;
+              store.add(new ReportLine(failing, db, level, "line " + i, Team.GENEBUILD, null));
+            }
+          }
+        });
+      }
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    String passName = passing.getTestName();
+    String failName = failing.getTestName();
+
+    assertEquals(store.getByDatabase(DATABASES[1], ReportLine.ALL).size(), 4 * linesPerThread, "Every line kept by database");
+    assertEquals(store.getByTest(passName, ReportLine.ALL).size(), 3 * 2 * linesPerThread, "Lines beyond memory are kept on disk");
+    assertEquals(store.getByDatabase(DATABASES[0], ReportLine.PROBLEM).size(), 2, "Filtered by level");
+
+    assertEquals(store.countPassesAndFailsTest(passName), new int[] { 3, 0 }, "All databases passed");
+    assertEquals(store.countPassesAndFailsTest(failName), new int[] { 2, 1 }, "One database failed");
+    assertEquals(store.countPassesAndFailsDatabase(DATABASES[0]), new int[] { 1, 1 }, "One test failed on the first database");
+    assertEquals(store.countPassesAndFailsAll(), new int[] { 5, 1 }, "Test and database combinations");
+
+    assertTrue(store.allDatabasesPassed(passName), "Passing test");
+    assertFalse(store.allDatabasesPassed(failName), "Failing test");
+    assertFalse(store.databasePassed(failName, DATABASES[0]), "Failing database");
+    assertTrue(store.databasePassed(failName, DATABASES[2]), "Passing database");
+    store.close();
+  }
+
+  @Test
+  public void linesBeyondMemoryAreReadBackFromDisk() {
+    ReportStore store = new ReportStore(10);
+    EnsTestCase testCase = new Karyotype();
+    for (int i = 0; i < 50; i++) {
+      int level = i % 10 == 9 ? ReportLine.PROBLEM : ReportLine.INFO;
+      ReportLine line = new ReportLine(testCase, DATABASES[i % 2], level, "line " + i, Team.GENEBUILD, null);
+      line.setSpecies("species " + i);
+      store.add(line);
+    }
+    assertNotNull(store.getSpillFile(), "Spill file created");
+
+    List<ReportLine> byTest = store.getByTest(testCase.getTestName(), ReportLine.ALL);
+    assertEquals(byTest.size(), 50, "Every line kept");
+    for (int i = 0; i < 50; i++) {
+      ReportLine line = byTest.get(i);
+      assertEquals(line.getMessage(), "line " + i, "Lines kept in order");
+      assertEquals(line.getDatabaseName(), DATABASES[i % 2], "Database read back");
+      assertEquals(line.getSpeciesName(), "species " + i, "Species read back");
+      assertEquals(line.getTeamResponsible(), Team.GENEBUILD, "Team read back");
+      assertSame(line.getTestCase(), testCase, "Test case read back");
+    }
+
+    List<ReportLine> problems = store.getByDatabase(DATABASES[1], ReportLine.PROBLEM);
+    assertEquals(problems.size(), 5, "Lines on disk filtered by level");
+    assertEquals(problems.get(4).getMessage(), "line 49", "Last problem");
+
+    File file = store.getSpillFile();
+    store.close();
+    assertFalse(file.exists(), "Spill file deleted");
+  }
+
+  @Test
+  public void allLinesIncludeThoseBeyondMemory() {
+    ReportStore store = new ReportStore(10);
+    EnsTestCase testCase = new Karyotype();
+    for (int i = 0; i < 25; i++) {
+      store.add(new ReportLine(testCase, DATABASES[i % 2], ReportLine.PROBLEM, "line " + i, Team.GENEBUILD, null));
+    }
+
+    List<ReportLine> byTest = store.getAllByTest(ReportLine.ALL).get(testCase.getTestName());
+    assertEquals(byTest.size(), 25, "Every line of the test");
+    assertEquals(byTest.get(24).getMessage(), "line 24", "Last line read back");
+    assertEquals(store.getAllByDatabase(ReportLine.PROBLEM).get(DATABASES[0]).size(), 13, "Every line of the database");
+    store.close();
+  }
+}
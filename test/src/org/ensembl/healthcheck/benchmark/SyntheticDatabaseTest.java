@@ -0,0 +1,116 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.benchmark;
+
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SyntheticDatabaseTest {
+
+  private Connection con;
+
+  private Map<String, Long> rows;
+
+  @BeforeClass
+  void generate() throws Exception {
+    Class.forName(SyntheticDatabase.H2_DRIVER);
+    con = DriverManager.getConnection("jdbc:h2:mem:syntheticdatabasetest;MODE=MySQL", "sa", "");
+    // the tables in the order of table.sql, children before their parents
+    rows = new SyntheticDatabase("core", 0.1, 42).generate(con, true, Arrays.asList(
+        "CREATE TABLE exon (exon_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT, seq_region_id INT(10) UNSIGNED NOT NULL,"
+            + " seq_region_start INT(10) UNSIGNED NOT NULL, seq_region_end INT(10) UNSIGNED NOT NULL,"
+            + " seq_region_strand TINYINT(2) NOT NULL, PRIMARY KEY (exon_id))",
+        "CREATE TABLE exon_transcript (exon_id INT(10) UNSIGNED NOT NULL, transcript_id INT(10) UNSIGNED NOT NULL,"
+            + " rank INT(10) NOT NULL, PRIMARY KEY (exon_id,transcript_id,rank))",
+        "CREATE TABLE transcript (transcript_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT, gene_id INT(10) UNSIGNED,"
+            + " seq_region_id INT(10) UNSIGNED NOT NULL, seq_region_start INT(10) UNSIGNED NOT NULL,"
+            + " seq_region_end INT(10) UNSIGNED NOT NULL, seq_region_strand TINYINT(2) NOT NULL,"
+            + " canonical_translation_id INT(10) UNSIGNED, PRIMARY KEY (transcript_id))",
+        "CREATE TABLE gene (gene_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT, seq_region_id INT(10) UNSIGNED NOT NULL,"
+            + " seq_region_start INT(10) UNSIGNED NOT NULL, seq_region_end INT(10) UNSIGNED NOT NULL,"
+            + " seq_region_strand TINYINT(2) NOT NULL, PRIMARY KEY (gene_id))",
+        "CREATE TABLE translation (translation_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT,"
+            + " transcript_id INT(10) UNSIGNED NOT NULL, PRIMARY KEY (translation_id))",
+        "CREATE TABLE seq_region (seq_region_id INT(10) UNSIGNED NOT NULL AUTO_INCREMENT, name VARCHAR(40) NOT NULL,"
+            + " length INT(10) UNSIGNED NOT NULL, PRIMARY KEY (seq_region_id))"));
+  }
+
+  @AfterClass
+  void close() throws SQLException {
+    con.close();
+  }
+
+  private int count(String sql) throws SQLException {
+    Statement stmt = con.createStatement();
+    try {
+      ResultSet rs = stmt.executeQuery(sql);
+      rs.next();
+      return rs.getInt(1);
+    } finally {
+      stmt.close();
+    }
+  }
+
+  @Test
+  public void rowsFollowTheGenes() {
+    assertEquals(rows.get("gene").longValue(), 100);
+    assertEquals(rows.get("transcript").longValue(), 300);
+    assertEquals(rows.get("exon").longValue(), 2400);
+    assertEquals(rows.get("exon_transcript").longValue(), 2400);
+  }
+
+  @Test
+  public void transcriptsLieWithinTheirGene() throws SQLException {
+    assertEquals(count("SELECT COUNT(*) FROM transcript t LEFT JOIN gene g ON t.gene_id = g.gene_id"
+        + " WHERE g.gene_id IS NULL OR t.seq_region_id <> g.seq_region_id OR t.seq_region_strand <> g.seq_region_strand"
+        + " OR t.seq_region_start < g.seq_region_start OR t.seq_region_end > g.seq_region_end"), 0);
+    assertEquals(count("SELECT COUNT(*) FROM gene g LEFT JOIN transcript t ON g.gene_id = t.gene_id"
+        + " WHERE t.transcript_id IS NULL"), 0, "Genes without transcripts");
+  }
+
+  @Test
+  public void exonsLieWithinTheirTranscriptInRankOrder() throws SQLException {
+    assertEquals(count("SELECT COUNT(*) FROM exon_transcript et JOIN exon e ON et.exon_id = e.exon_id"
+        + " JOIN transcript t ON et.transcript_id = t.transcript_id"
+        + " WHERE e.seq_region_id <> t.seq_region_id OR e.seq_region_strand <> t.seq_region_strand"
+        + " OR e.seq_region_start < t.seq_region_start OR e.seq_region_end > t.seq_region_end"), 0);
+    assertEquals(count("SELECT COUNT(*) FROM (SELECT transcript_id, rank FROM exon_transcript"
+        + " GROUP BY transcript_id, rank HAVING COUNT(*) > 1) d"), 0, "Ranks used twice in a transcript");
+    assertEquals(count("SELECT COUNT(*) FROM exon_transcript et1"
+        + " JOIN exon_transcript et2 ON et1.transcript_id = et2.transcript_id AND et2.rank = et1.rank + 1"
+        + " JOIN exon e1 ON et1.exon_id = e1.exon_id JOIN exon e2 ON et2.exon_id = e2.exon_id"
+        + " WHERE (e1.seq_region_strand = 1 AND e2.seq_region_start <= e1.seq_region_end)"
+        + " OR (e1.seq_region_strand = -1 AND e2.seq_region_end >= e1.seq_region_start)"), 0, "Exons out of order");
+  }
+
+  @Test
+  public void translationsHaveOneTranscriptEach() throws SQLException {
+    assertEquals(count("SELECT COUNT(*) FROM (SELECT transcript_id FROM translation"
+        + " GROUP BY transcript_id HAVING COUNT(*) > 1) d"), 0);
+  }
+}
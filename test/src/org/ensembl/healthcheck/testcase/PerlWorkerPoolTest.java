@@ -0,0 +1,79 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.testcase;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class PerlWorkerPoolTest {
+
+  /** Stands in for run_healthcheck.pl -worker: echoes each request and exits with the number of fields */
+  private static final String FAKE_WORKER = "echo started $$; while read -r request; do echo \"got $request\"; "
+      + "echo \"" + PerlWorkerPool.JOB_DONE_MARKER + " $(echo \"$request\" | awk -F'\\t' '{print NF}')\"; done";
+
+  @Test
+  public void requestsEscaped() {
+    assertEquals(PerlWorkerPool.createRequest(new String[] { "a\tb", "c\\d\ne", null }), "a\\tb\tc\\\\d\\ne\t");
+  }
+
+  @Test
+  public void workerReused() throws IOException {
+    Map<String, String> environment = new HashMap<String, String>(System.getenv());
+    PerlWorkerPool pool = PerlWorkerPool.getPool(FAKE_WORKER, environment, 1);
+
+    StringBuilder first = new StringBuilder();
+    assertEquals(pool.run(new String[] { "host", "3306", "db" }, first), 3, "Exit code from the marker line");
+    StringBuilder second = new StringBuilder();
+    assertEquals(pool.run(new String[] { "x\ty" }, second), 1, "Escaped tab is not a separator");
+
+    assertTrue(first.toString().startsWith("started "), "Worker started for the first request");
+    assertTrue(first.toString().contains("got host\t3306\tdb\n"), "Output of the first request");
+    assertEquals(second.toString(), "got x\\ty\n", "Second request run on the same worker");
+    assertTrue(PerlWorkerPool.getPool(FAKE_WORKER, environment, 5) == pool, "One pool per command and environment");
+
+    PerlWorkerPool.closeAll();
+  }
+
+  @Test
+  public void stuckWorkerReplaced() throws IOException {
+    String command = "while read -r request; do if [ \"$request\" = hang ]; then sleep 30; fi; echo \""
+        + PerlWorkerPool.JOB_DONE_MARKER + " 0\"; done";
+    System.setProperty(PerlWorkerPool.TIMEOUT, "1");
+    try {
+      PerlWorkerPool pool = PerlWorkerPool.getPool(command, new HashMap<String, String>(System.getenv()), 1);
+      long start = System.currentTimeMillis();
+      try {
+        pool.run(new String[] { "hang" }, new StringBuilder());
+        fail("A healthcheck running too long must fail");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().startsWith("Perl worker took more than 1s"), e.getMessage());
+      }
+      assertTrue(System.currentTimeMillis() - start < 10000, "Stopped waiting at the timeout");
+      assertEquals(pool.run(new String[] { "quick" }, new StringBuilder()), 0, "Run on a new worker");
+    } finally {
+      System.clearProperty(PerlWorkerPool.TIMEOUT);
+      PerlWorkerPool.closeAll();
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ChunkedScanTest {
+
+  private static final String URL = "jdbc:h2:mem:chunkedscantest";
+
+  private Connection con;
+
+  @BeforeClass
+  void createTable() throws SQLException {
+    con = ConnectionPool.getConnection("org.h2.Driver", URL, "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(con);
+    t.execute("create table variation_feature(variation_feature_id int primary key, seq_region_start int)");
+    for (int i = 1; i <= 1000; i++) {
+      t.execute("insert into variation_feature values (" + i + ", " + (i % 7) + ")");
+    }
+    t.execute("create table homology_member(homology_id int, gene_member_id int, primary key (homology_id, gene_member_id))");
+    t.execute("create table meta_coord(table_name varchar(40) primary key, max_length int)");
+    for (int i = 1; i <= 100; i++) {
+      t.execute("insert into homology_member values (" + i + ", " + (i % 9) + ")");
+      t.execute("insert into meta_coord values ('t" + i + "', " + (i % 9) + ")");
+    }
+  }
+
+  @AfterClass
+  void close() throws SQLException {
+    con.close();
+  }
+
+  @Test
+  public void chunksCoverKeyRange() throws SQLException {
+    long[][] chunks = new ChunkedScan(con, "variation_feature").setRowsPerChunk(100).getChunks();
+    assertEquals(chunks.length, 10);
+    assertEquals(chunks[0][0], 1);
+    assertEquals(chunks[9][1], 1000);
+    for (int i = 1; i < chunks.length; i++) {
+      assertEquals(chunks[i][0], chunks[i - 1][1] + 1, "Chunk " + i + " follows on");
+    }
+  }
+
+  @Test
+  public void countsConcurrently() throws SQLException {
+    final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+    final AtomicInteger progress = new AtomicInteger();
+    ChunkedScan scan = new ChunkedScan(con, "variation_feature").setRowsPerChunk(50).setThreads(3)
+        .setProgress(new ChunkedScan.Progress() {
+          public void chunkDone(ChunkedScan scan, int done, int chunks, long lower, long upper) {
+            progress.incrementAndGet();
+          }
+        });
+
+    Integer count = scan.run(new ChunkedScan.Chunk<Integer>() {
+      public Integer scan(Connection con, long lower, long upper) {
+        threads.add(Thread.currentThread().getName());
+        return DBUtils.getRowCount(con, "SELECT COUNT(*) FROM variation_feature WHERE seq_region_start = 0"
+            + " AND variation_feature_id BETWEEN " + lower + " AND " + upper);
+      }
+    }, ChunkedScan.SUM);
+
+    assertEquals(count.intValue(), 142);
+    assertEquals(progress.get(), 20, "Progress of each chunk");
+    assertTrue(threads.size() > 1, "Scanned on " + threads);
+
+  }
+
+  @Test
+  public void onlyBigTablesCountedInChunks() {
+    String sql = "SELECT COUNT(*) FROM variation_feature vf WHERE vf.seq_region_start = 1 OR vf.seq_region_start = 2";
+    assertEquals(ChunkedScan.getRowCountInChunks(con, "variation_feature", "vf", sql), 286);
+
+    // H2 has no index statistics, so every table looks small; without a
+    // WHERE clause to restrict to each chunk the count must be one query
+    System.setProperty(ChunkedScan.ROWS, "100");
+    try {
+      assertEquals(ChunkedScan.getRowCount(con, "variation_feature", "vf", "SELECT COUNT(*) FROM variation_feature vf"),
+          1000, "Small table counted in one query");
+    } finally {
+      System.clearProperty(ChunkedScan.ROWS);
+    }
+  }
+
+  @Test
+  public void tablesWithoutSingleKey() {
+    assertEquals(ChunkedScan.getKeyColumn(con, "homology_member"), "homology_id", "First column of the primary key");
+    assertEquals(ChunkedScan.getRowCountInChunks(con, "homology_member", "hm",
+        "SELECT COUNT(*) FROM homology_member hm WHERE hm.gene_member_id = 0"), 11);
+
+    assertNull(ChunkedScan.getKeyColumn(con, "meta_coord"), "Not a numeric key");
+    assertEquals(ChunkedScan.getRowCountInChunks(con, "meta_coord", "mc",
+        "SELECT COUNT(*) FROM meta_coord mc WHERE mc.max_length = 0"), 11, "Counted in one query");
+  }
+
+  @Test
+  public void connectionsCappedByGovernor() throws SQLException {
+    ServerGovernor.closeAll();
+    System.setProperty(ServerGovernor.INITIAL, "1");
+    try {
+      final Set<Connection> connections = Collections.synchronizedSet(new HashSet<Connection>());
+      new ChunkedScan(con, "variation_feature").setRowsPerChunk(50).setThreads(3).run(
+          new ChunkedScan.Chunk<Integer>() {
+            public Integer scan(Connection con, long lower, long upper) {
+              connections.add(con);
+              return 0;
+            }
+          }, ChunkedScan.SUM);
+      assertEquals(connections.size(), 1, "No more connections than the governor allows");
+    } finally {
+      System.clearProperty(ServerGovernor.INITIAL);
+      ServerGovernor.closeAll();
+    }
+  }
+
+  @Test
+  public void firstErrorStopsScan() {
+    final AtomicInteger scanned = new AtomicInteger();
+    try {
+      new ChunkedScan(con, "variation_feature").setRowsPerChunk(10).setThreads(2).run(
+          new ChunkedScan.Chunk<Integer>() {
+            public Integer scan(Connection con, long lower, long upper) throws SQLException {
+              scanned.incrementAndGet();
+              throw new SQLException("Lost connection");
+            }
+          }, ChunkedScan.SUM);
+      fail("Error of a chunk must be thrown");
+    } catch (SQLException e) {
+      assertEquals(e.getMessage(), "Lost connection");
+    }
+    assertTrue(scanned.get() <= 2, scanned + " chunks started");
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class GeneModelSnapshotTest {
+
+  private GeneModelSnapshot snapshot = null;
+
+  @BeforeClass
+  void setupDb() throws SQLException {
+    Connection conn = ConnectionPool.getConnection("org.h2.Driver", "jdbc:h2:mem:genemodelsnapshottest", "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(conn);
+
+    t.execute("create table gene(gene_id int, seq_region_id int, seq_region_start int, seq_region_end int, seq_region_strand tinyint, stable_id varchar, source varchar)");
+    t.execute("create table transcript(transcript_id int, gene_id int, seq_region_id int, seq_region_start int, seq_region_end int, seq_region_strand tinyint)");
+    t.execute("create table exon(exon_id int, seq_region_id int, seq_region_start int, seq_region_end int, seq_region_strand tinyint, phase tinyint, end_phase tinyint)");
+    t.execute("create table exon_transcript(exon_id int, transcript_id int, rank int)");
+    t.execute("create table translation(translation_id int, transcript_id int, start_exon_id int, end_exon_id int, seq_start int, seq_end int)");
+
+    t.update("insert into gene values(?,?,?,?,?,?,?)", 2, 1, 100, 900, 1, "G2", "ensembl");
+    t.update("insert into gene values(?,?,?,?,?,?,?)", 1, 1, 10, 50, -1, "G1", "havana");
+    t.update("insert into transcript values(?,?,?,?,?,?)", 10, 2, 1, 100, 900, 1);
+    t.update("insert into transcript values(?,?,?,?,?,?)", 11, 99, 1, 10, 50, -1);
+    t.update("insert into exon values(?,?,?,?,?,?,?)", 100, 1, 100, 200, 1, -1, 0);
+    t.update("insert into exon values(?,?,?,?,?,?,?)", 101, 1, 800, 900, 1, 0, -1);
+    t.update("insert into exon_transcript values(?,?,?)", 101, 10, 2);
+    t.update("insert into exon_transcript values(?,?,?)", 100, 10, 1);
+    t.update("insert into exon_transcript values(?,?,?)", 555, 11, 1);
+    t.update("insert into translation values(?,?,?,?,?,?)", 1000, 10, 100, 666, 5, 20);
+
+    snapshot = GeneModelSnapshot.load("genemodelsnapshottest", conn);
+  }
+
+  @Test
+  public void tablesAreOrderedByPrimaryKey() {
+    assertEquals(snapshot.getGeneCount(), 2, "Gene count");
+    assertEquals(snapshot.getGeneId(0), 1L, "Genes ordered by id");
+    assertEquals(snapshot.getGeneStableId(1), "G2", "Stable id kept with its row");
+    assertEquals(snapshot.getGeneStrand(0), -1, "Negative strand survives");
+    assertEquals(snapshot.geneIndex(2), 1, "Lookup by id");
+    assertEquals(snapshot.geneIndex(3), -1, "Lookup of missing id");
+  }
+
+  @Test
+  public void foreignKeysResolveToIndices() {
+    assertEquals(snapshot.getTranscriptGene(0), 1, "Transcript 10 belongs to gene 2");
+    assertEquals(snapshot.getTranscriptGene(1), -1, "Transcript 11 has a missing gene");
+    assertEquals(snapshot.getTranscriptGeneId(1), 99L, "Raw gene id is kept");
+    assertEquals(snapshot.getTranslationStartExon(0), 0, "Start exon resolved");
+    assertEquals(snapshot.getTranslationEndExon(0), -1, "End exon is missing");
+  }
+
+  @Test
+  public void exonTranscriptGroupedByTranscriptAndRank() {
+    assertEquals(snapshot.getExonTranscriptCount(), 3, "Row count");
+    assertEquals(snapshot.getExonTranscriptBlockEnd(0), 2, "Transcript 10 has two rows");
+    assertEquals(snapshot.getExonTranscriptExonId(0), 100L, "Rank 1 first");
+    assertEquals(snapshot.getExonTranscriptExonId(1), 101L, "Rank 2 second");
+    assertEquals(snapshot.getExonTranscriptExon(2), -1, "Exon 555 is missing");
+    assertEquals(snapshot.getExonTranscriptBlockEnd(2), 3, "Last block ends at the row count");
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class IntervalIndexTest {
+
+  @Test
+  public void simpleQueries() {
+    IntervalIndex index = new IntervalIndex.Builder()
+      .add(2, 50, 60, 3)
+      .add(1, 10, 20, 1)
+      .add(1, 15, 30, 2)
+      .build();
+
+    assertEquals(index.size(), 3, "Size");
+    assertEquals(index.getKey(0), 1L, "Sorted by key");
+    assertEquals(index.getFirstIndex(2), 2, "Block of key 2");
+    assertEquals(index.getEndIndex(1), 2, "End of the block of key 1");
+    assertEquals(index.getFirstIndex(3), -1, "Unknown key");
+    assertEquals(index.getFirstIndexStartingAfter(1, 14), 1, "Only 10-20 starts at or before 14");
+    assertEquals(index.getFirstIndexStartingAfter(1, 15), 2, "Start is compared inclusively");
+    assertEquals(index.getFirstIndexStartingAfter(2, 10), 2, "Keys are kept apart");
+    assertEquals(index.getFirstIndexStartingAfter(3, 10), -1, "Unknown key");
+  }
+
+  @Test
+  public void matchesBruteForce() {
+    Random random = new Random(42);
+    IntervalIndex.Builder builder = new IntervalIndex.Builder();
+    List<long[]> all = new ArrayList<long[]>();
+    for (int i = 0; i < 3000; i++) {
+      long key = random.nextInt(3);
+      long start = random.nextInt(100000);
+      long end = start + random.nextInt(i % 50 == 0 ? 20000 : 500);
+      builder.add(key, start, end, i);
+      all.add(new long[] { key, start, end });
+    }
+    IntervalIndex index = builder.build();
+
+    for (int i = 1; i < index.size(); i++) {
+      assertTrue(index.getKey(i - 1) < index.getKey(i)
+          || (index.getKey(i - 1) == index.getKey(i) && index.getStart(i - 1) <= index.getStart(i)), "Sorted at " + i);
+    }
+
+    for (int q = 0; q < 500; q++) {
+      long key = random.nextInt(3);
+      long position = random.nextInt(100000);
+      int startingBefore = 0;
+      for (long[] interval : all) {
+        if (interval[0] == key && interval[1] <= position) {
+          startingBefore++;
+        }
+      }
+      assertEquals(index.getFirstIndexStartingAfter(key, position) - index.getFirstIndex(key), startingBefore,
+          "Starting at or before " + position + " for query " + q);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class JdbcRecordingTest {
+
+  private static final String URL = "jdbc:h2:mem:jdbcrecordingtest";
+
+  @AfterClass
+  void stop() {
+    JdbcRecording.stop();
+  }
+
+  @Test
+  public void replayMatchesRecording() throws Exception {
+    Class.forName("org.h2.Driver");
+    File dir = File.createTempFile("jdbcrecording", "");
+    dir.delete();
+
+    JdbcRecording.record(dir);
+    Connection conn = JdbcRecording.getConnection(URL, "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(conn);
+    t.execute("create table gene(gene_id int, stable_id varchar(20), score double)");
+    t.execute("insert into gene values (1, 'ENSG01', 1.5), (2, 'ENSG02', null), (3, 'ENSG03', 3)");
+    List<String> recorded = run(conn);
+    JdbcRecording.stop();
+    conn.close();
+
+    assertTrue(JdbcRecording.getFixtureFile(dir, URL).exists(), "Fixture written");
+
+    JdbcRecording.replay(dir);
+    Connection replayed = JdbcRecording.getConnection(URL, "sa", "");
+    assertEquals(run(replayed), recorded, "Replayed results");
+    assertEquals(replayed.getMetaData().getURL(), URL, "URL");
+    try {
+      new ConnectionBasedSqlTemplateImpl(replayed).queryForDefaultObject("select count(*) from exon", Integer.class);
+      fail("Statement which was not recorded must fail");
+    } catch (SqlUncheckedException e) {
+      assertTrue(e.getCause().getMessage().startsWith("No recording of"), e.getCause().getMessage());
+    }
+    replayed.close();
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  private List<String> run(Connection conn) throws SQLException, IOException {
+    List<String> results = new ArrayList<String>();
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(conn);
+    results.add(t.queryForDefaultObjectList("select stable_id from gene where gene_id > ? order by gene_id",
+        String.class, 1).toString());
+    results.add(t.queryForDefaultObjectList("select stable_id from gene where gene_id > ? order by gene_id",
+        String.class, 2).toString());
+    results.add(String.valueOf(t.queryForDefaultObject("select count(*) from gene", Integer.class)));
+
+    Statement stmt = conn.createStatement();
+    ResultSet rs = stmt.executeQuery("select gene_id, stable_id, score from gene order by gene_id");
+    results.add(rs.getMetaData().getColumnCount() + " " + rs.getMetaData().getColumnLabel(2));
+    while (rs.next()) {
+      double score = rs.getDouble("score");
+      results.add(rs.getInt(1) + " " + rs.getString("STABLE_ID") + " " + score + " " + rs.wasNull() + " "
+          + rs.getObject(1).getClass().getSimpleName());
+    }
+    results.add(rs.last() + " " + rs.getRow());
+    rs.close();
+    results.add(String.valueOf(stmt.executeUpdate("update gene set score = 0 where gene_id = 3")));
+    try {
+      stmt.executeQuery("select no_such_column from gene");
+    } catch (SQLException e) {
+      results.add(e.getSQLState());
+    }
+    stmt.close();
+
+    rs = conn.getMetaData().getColumns(null, null, "GENE", null);
+    while (rs.next()) {
+      results.add(rs.getString("COLUMN_NAME"));
+    }
+    rs.close();
+    return results;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Random;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class KeySampleTest {
+
+  @AfterMethod
+  void clearFraction() {
+    System.clearProperty(KeySample.FRACTION);
+  }
+
+  @Test
+  public void fractionEnablesSampling() {
+    assertFalse(KeySample.isEnabled(), "Full scans by default");
+    System.setProperty(KeySample.FRACTION, "0.1");
+    assertTrue(KeySample.isEnabled());
+    System.setProperty(KeySample.FRACTION, "1");
+    assertFalse(KeySample.isEnabled(), "All of the table is a full scan");
+    System.setProperty(KeySample.FRACTION, "most");
+    assertFalse(KeySample.isEnabled(), "Not a number");
+  }
+
+  @Test
+  public void rangesCoverFractionOfEachStratum() {
+    long[][] ranges = KeySample.pickRanges(1, 1000, 0.1, 10, new Random(1));
+    assertEquals(ranges.length, 10);
+    for (int i = 0; i < ranges.length; i++) {
+      assertEquals(ranges[i][1] - ranges[i][0] + 1, 10, "Width of range " + i);
+      assertTrue(ranges[i][0] >= 1 + 100 * i && ranges[i][1] <= 100 * (i + 1), "Range " + i + " in its stratum");
+    }
+
+    ranges = KeySample.pickRanges(5, 7, 0.01, 20, new Random(1));
+    assertEquals(ranges.length, 3, "No more strata than keys");
+    assertEquals(ranges[0][0], 5);
+    assertEquals(ranges[2][1], 7);
+  }
+
+  @Test
+  public void wilsonInterval() {
+    KeySample.Estimate estimate = new KeySample.Estimate(0, 1000, 100000);
+    assertEquals(estimate.getLower(), 0.0);
+    assertEquals(estimate.getUpper(), 0.0038, 0.0001);
+    assertEquals(estimate.getEstimatedViolations(), 0);
+
+    estimate = new KeySample.Estimate(50, 1000, 100000);
+    assertEquals(estimate.getRate(), 0.05);
+    assertEquals(estimate.getLower(), 0.0381, 0.0001);
+    assertEquals(estimate.getUpper(), 0.0653, 0.0001);
+    assertEquals(estimate.getEstimatedViolations(), 5000);
+  }
+
+  @Test
+  public void clusteredViolationsWidenInterval() {
+    long[] sampled = new long[] { 100, 100, 100, 100, 100, 100, 100, 100, 100, 100 };
+    KeySample.Estimate spread = new KeySample.Estimate(new long[] { 5, 5, 5, 5, 5, 5, 5, 5, 5, 5 }, sampled, 100000);
+    KeySample.Estimate clustered = new KeySample.Estimate(new long[] { 50, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, sampled, 100000);
+
+    assertEquals(spread.getDesignEffect(), 1.0);
+    assertEquals(spread.getRate(), clustered.getRate());
+    assertTrue(clustered.getDesignEffect() > 1, clustered.toString());
+    assertTrue(clustered.getLower() < spread.getLower() && clustered.getUpper() > spread.getUpper(),
+        clustered + " wider than " + spread);
+  }
+
+  @Test
+  public void countViolationsInSample() throws Exception {
+    Class.forName("org.h2.Driver");
+    Connection con = DriverManager.getConnection("jdbc:h2:mem:keysampletest", "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(con);
+    t.execute("create table gene(gene_id int primary key, biotype varchar(20))");
+    for (int i = 1; i <= 1000; i++) {
+      t.execute("insert into gene values (" + i + ", " + (i % 10 == 0 ? "null" : "'protein_coding'") + ")");
+    }
+
+    System.setProperty(KeySample.FRACTION, "0.2");
+    KeySample sample = KeySample.forTable(con, "gene");
+    assertNotNull(sample);
+    assertEquals(sample.getColumn(), "gene_id");
+
+    KeySample.Estimate estimate = sample.countViolations(con, "FROM gene", "gene.biotype IS NULL");
+    assertEquals(estimate.getTotal(), 1000);
+    assertEquals(estimate.getSampled(), 200);
+    assertTrue(estimate.getViolations() >= 18 && estimate.getViolations() <= 22, estimate.toString());
+    assertTrue(estimate.getLower() < 0.1 && estimate.getUpper() > 0.1, estimate.toString());
+    con.close();
+  }
+}
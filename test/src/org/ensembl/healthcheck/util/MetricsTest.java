@@ -0,0 +1,86 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class MetricsTest {
+
+  @AfterClass
+  void disable() {
+    Metrics.setEnabled(false);
+    Metrics.reset();
+  }
+
+  @Test
+  public void urlsParsed() {
+    assertEquals(Metrics.serverOf("jdbc:mysql://ens-staging:3306/homo_sapiens_core_80_38?useCursorFetch=true"),
+        "ens-staging:3306", "Server");
+    assertEquals(Metrics.databaseOf("jdbc:mysql://ens-staging:3306/homo_sapiens_core_80_38?useCursorFetch=true"),
+        "homo_sapiens_core_80_38", "Database");
+    assertEquals(Metrics.databaseOf("jdbc:mysql://ens-staging:3306/"), "", "No database");
+  }
+
+  @Test
+  public void queriesAttributedToRunningTest() throws SQLException, IOException {
+    Metrics.setEnabled(true);
+    Metrics.reset();
+
+    Connection conn = ConnectionPool.getConnection("org.h2.Driver", "jdbc:h2:mem:metricstest", "sa", "");
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(conn);
+    t.execute("create table gene(gene_id int, stable_id varchar)");
+    t.execute("insert into gene values (1, 'ENSG01'), (2, 'ENSG02'), (3, 'ENSG03')");
+
+    Metrics.startTest("Karyotype", "homo_sapiens_core_80_38", "ens-staging:3306");
+    assertEquals(Metrics.getRunningTest(), "Karyotype", "Running test");
+    assertEquals(t.queryForDefaultObjectList("select stable_id from gene", String.class).size(), 3, "Rows");
+    Metrics.finishTest("Karyotype", null, null);
+    assertEquals(Metrics.getRunningTest(), "Karyotype", "Finish of another run ignored");
+    Metrics.finishTest("Karyotype", "homo_sapiens_core_80_38", "ens-staging:3306");
+    assertEquals(Metrics.getRunningTest(), "", "No running test");
+
+    StringBuilder prometheus = new StringBuilder();
+    Metrics.writePrometheus(prometheus);
+    String text = prometheus.toString();
+    assertTrue(text.contains("healthcheck_query_rows_total{test=\"Karyotype\",database=\"\",server=\"jdbc:h2:mem:metricstest\"} 3"),
+        "Rows of the test's query: " + text);
+    assertTrue(text.contains("healthcheck_query_bytes_total{test=\"Karyotype\",database=\"\",server=\"jdbc:h2:mem:metricstest\"} 18"),
+        "Bytes of the test's query");
+    assertTrue(text.contains("healthcheck_query_seconds_bucket{test=\"Karyotype\",database=\"\",server=\"jdbc:h2:mem:metricstest\",le=\"+Inf\"} 1"),
+        "Histogram of the test's query");
+    assertTrue(text.contains("healthcheck_query_seconds_count{test=\"\",database=\"\",server=\"jdbc:h2:mem:metricstest\"} 2"),
+        "Queries outside tests");
+    assertTrue(text.contains("healthcheck_test_seconds_count{test=\"Karyotype\",database=\"homo_sapiens_core_80_38\",server=\"ens-staging:3306\"} 1"),
+        "Test timed");
+    assertTrue(text.contains("healthcheck_connection_wait_seconds_count{server=\"jdbc:h2:mem:metricstest\"} 1"),
+        "Connection wait");
+    assertTrue(text.contains("# TYPE healthcheck_test_seconds summary\n")
+        && text.contains("# TYPE healthcheck_connection_wait_seconds summary\n"), "Timings with a sum and count");
+
+    StringBuilder summary = new StringBuilder();
+    Metrics.writeSummary(summary);
+    assertTrue(summary.toString().contains("Karyotype"), "Summary");
+  }
+}
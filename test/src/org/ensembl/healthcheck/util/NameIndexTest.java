@@ -0,0 +1,91 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class NameIndexTest {
+
+  private static final List<String> NAMES = Arrays.asList("homo_sapiens_core_80_38", "homo_sapiens_variation_80_38",
+      "mus_musculus_core_80_38", "ensembl_compara_80", "ab", "");
+
+  @Test
+  public void simpleSearches() {
+    NameIndex index = new NameIndex(NAMES);
+
+    assertEquals(index.size(), 6, "Size");
+    assertEquals(index.search(Collections.<String> emptyList()).length, 6, "No terms match everything");
+    assertEquals(index.search(Arrays.asList("")).length, 6, "Empty term matches everything");
+    assertEquals(index.search(Arrays.asList("core")), new int[] { 0, 2 }, "Long term");
+    assertEquals(index.search(Arrays.asList("homo", "core")), new int[] { 0 }, "All terms must match");
+    assertEquals(index.search(Arrays.asList("ab")), new int[] { 4 }, "Short term scanned");
+    assertEquals(index.search(Arrays.asList("_80", "us")), new int[] { 2 }, "Short term checked against candidates");
+    assertEquals(index.search(Arrays.asList("core_38")).length, 0, "Trigrams present but not the term");
+    assertEquals(index.search(Arrays.asList("Core")).length, 0, "Case sensitive");
+    assertEquals(index.getName(3), "ensembl_compara_80", "Name by index");
+  }
+
+  @Test
+  public void matchesScan() {
+    Random random = new Random(42);
+    String alphabet = "abc_";
+    List<String> names = new ArrayList<String>();
+    for (int i = 0; i < 2000; i++) {
+      names.add(word(random, alphabet, 3 + random.nextInt(15)));
+    }
+    NameIndex index = new NameIndex(names);
+
+    for (int i = 0; i < 500; i++) {
+      List<String> terms = new ArrayList<String>();
+      for (int j = random.nextInt(3); j >= 0; j--) {
+        terms.add(word(random, alphabet, random.nextInt(6)));
+      }
+      List<Integer> expected = new ArrayList<Integer>();
+      for (int n = 0; n < names.size(); n++) {
+        boolean all = true;
+        for (String term : terms) {
+          all &= names.get(n).contains(term);
+        }
+        if (all) {
+          expected.add(n);
+        }
+      }
+      int[] found = index.search(terms);
+      List<Integer> actual = new ArrayList<Integer>();
+      for (int n : found) {
+        actual.add(n);
+      }
+      assertEquals(actual, expected, "Search for " + terms);
+    }
+  }
+
+  private static String word(Random random, String alphabet, int length) {
+    StringBuilder word = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      word.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return word.toString();
+  }
+}
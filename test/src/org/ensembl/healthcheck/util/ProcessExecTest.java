@@ -0,0 +1,63 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ProcessExecTest {
+
+  private static final Map<String, String> ENV = new HashMap<String, String>();
+
+  @Test
+  public void outputAndErrorCaptured() throws IOException {
+    StringBuilder out = new StringBuilder();
+    StringBuilder err = new StringBuilder();
+    int exit = ProcessExec.exec(new String[] { "/bin/bash", "-c", "echo one; echo two >&2; printf 'three\\r\\nfour'; exit 3" },
+        out, err, false, ENV);
+
+    assertEquals(exit, 3, "Exit status");
+    assertEquals(out.toString(), "one\nthree\nfour\n", "Output lines, last one without a newline");
+    assertEquals(err.toString(), "two\n", "Error lines");
+  }
+
+  @Test
+  public void largeOutputCaptured() throws IOException {
+    StringBuilder out = new StringBuilder();
+    int exit = ProcessExec.exec(new String[] { "/bin/bash", "-c", "seq 1 200000" }, out, new StringBuilder(), false, ENV);
+
+    assertEquals(exit, 0, "Exit status");
+    assertTrue(out.toString().startsWith("1\n2\n"), "Start of output");
+    assertTrue(out.toString().endsWith("\n199999\n200000\n"), "End of output");
+  }
+
+  @Test
+  public void processTreeKilledOnTimeout() throws IOException {
+    long start = System.currentTimeMillis();
+    int exit = ProcessExec.exec(new String[] { "/bin/bash", "-c", "sleep 30 & sleep 30; wait" }, new StringBuilder(),
+        new StringBuilder(), false, ENV, 500);
+
+    assertEquals(exit, -1, "Killed");
+    assertTrue(System.currentTimeMillis() - start < 10000, "Not waiting for the children");
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class ServerGovernorTest {
+
+  @Test
+  public void additiveIncreaseMultiplicativeDecrease() throws InterruptedException {
+    ServerGovernor governor = new ServerGovernor("staging:3306", "jdbc:mysql://staging:3306/", 4, 1, 6, 50);
+
+    governor.adjust(10);
+    assertEquals(governor.getLimit(), 4, "No increase while the permits are not all used");
+
+    for (int i = 0; i < 4; i++) {
+      governor.acquire();
+    }
+    governor.adjust(10);
+    assertEquals(governor.getLimit(), 5, "Increase while all used and the server is quiet");
+    governor.acquire();
+    governor.adjust(10);
+    governor.adjust(10);
+    assertEquals(governor.getLimit(), 6, "No more than the maximum");
+
+    governor.adjust(80);
+    assertEquals(governor.getLimit(), 3, "Halved while the server is busy");
+    governor.adjust(80);
+    governor.adjust(80);
+    assertEquals(governor.getLimit(), 1, "No less than the minimum");
+    assertEquals(governor.getRunning(), 5);
+  }
+
+  @Test
+  public void acquireWaitsForLimit() throws InterruptedException {
+    final ServerGovernor governor = new ServerGovernor("staging:3306", "jdbc:mysql://staging:3306/", 1, 1, 2, 50);
+    governor.acquire();
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    Thread waiting = new Thread() {
+      public void run() {
+        try {
+          governor.acquire();
+          acquired.countDown();
+        } catch (InterruptedException e) {
+          // the test fails on the latch
+        }
+      }
+    };
+    waiting.setDaemon(true);
+    waiting.start();
+
+    assertFalse(acquired.await(100, TimeUnit.MILLISECONDS), "Waits while the limit is reached");
+    governor.adjust(10);
+    assertTrue(acquired.await(1, TimeUnit.SECONDS), "Runs once the limit is raised");
+    assertEquals(governor.getRunning(), 2);
+  }
+
+  @Test
+  public void oneGovernorPerServer() {
+    assertSame(ServerGovernor.forUrl("jdbc:mysql://staging:3306/homo_sapiens_core_80_38"),
+        ServerGovernor.forUrl("jdbc:mysql://staging:3306/mus_musculus_core_80_38"));
+    assertTrue(ServerGovernor.forUrl("jdbc:mysql://livemirror:3306/homo_sapiens_core_80_38") != ServerGovernor
+        .forUrl("jdbc:mysql://staging:3306/homo_sapiens_core_80_38"));
+  }
+}
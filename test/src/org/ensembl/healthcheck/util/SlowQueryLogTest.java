@@ -0,0 +1,91 @@
+/*
+ * Copyright [1999-2015] Wellcome Trust Sanger Institute and the EMBL-European Bioinformatics Institute
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ensembl.healthcheck.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class SlowQueryLogTest {
+
+  @AfterClass
+  void disable() {
+    SlowQueryLog.setThreshold(-1);
+    SlowQueryLog.reset();
+  }
+
+  @Test
+  public void slowQueriesExplained() throws SQLException {
+    SqlTemplate t = new ConnectionBasedSqlTemplateImpl(ConnectionPool.getConnection("org.h2.Driver",
+        "jdbc:h2:mem:slowquerylogtest", "sa", ""));
+    t.execute("create table exon(exon_id int primary key, seq_region_start int)");
+    t.execute("insert into exon values (1, 100), (2, 200)");
+
+    SlowQueryLog.reset();
+    SlowQueryLog.setThreshold(0);
+    for (int i = 0; i < 3; i++) {
+      t.queryForDefaultObject("select max(seq_region_start) from exon where exon_id > ?", Integer.class, 0);
+    }
+    SlowQueryLog.setThreshold(-1);
+    t.queryForDefaultObject("select count(*) from exon", Integer.class);
+    SlowQueryLog.finishRun();
+
+    List<SlowQueryLog.SlowQuery> queries = SlowQueryLog.getSlowQueries();
+    assertEquals(queries.size(), 1, "Only queries over the threshold");
+    SlowQueryLog.SlowQuery query = queries.get(0);
+    assertEquals(query.getCount(), 3, "Repeats counted once");
+    assertNotNull(query.getPlan(), "Plan captured");
+    assertFalse(query.getPlan().isEmpty(), "Plan captured");
+    assertFalse(query.getPlan().get(0).containsKey("error"), "Explained: " + query.getPlan());
+  }
+
+  @Test
+  public void offendersFlagged() {
+    SlowQueryLog.SlowQuery scan = new SlowQueryLog.SlowQuery("db", "server", "select * from variation_feature");
+    scan.setPlan(Arrays.asList(row("table", "variation_feature", "type", "ALL", "extra", "")));
+    scan.add("TranscriptVariation", 1000);
+    SlowQueryLog.SlowQuery sort = new SlowQueryLog.SlowQuery("db", "server", "select * from homology order by 1");
+    sort.setPlan(Arrays.asList(row("table", "homology", "type", "ref", "extra", "Using where; Using filesort")));
+    SlowQueryLog.SlowQuery indexed = new SlowQueryLog.SlowQuery("db", "server", "select * from exon where exon_id = 1");
+    indexed.setPlan(Arrays.asList(row("table", "exon", "type", "const", "extra", "")));
+
+    assertTrue(scan.isFullScan(), "Full scan");
+    assertEquals(scan.getFullScanTables(), "variation_feature", "Table scanned");
+    assertFalse(scan.isFilesort(), "No filesort");
+    assertTrue(sort.isFilesort(), "Filesort");
+    assertFalse(sort.isFullScan(), "No full scan");
+    assertFalse(indexed.isOffender(), "Neither");
+  }
+
+  private static Map<String, String> row(String... keysAndValues) {
+    Map<String, String> row = new HashMap<String, String>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      row.put(keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return row;
+  }
+}
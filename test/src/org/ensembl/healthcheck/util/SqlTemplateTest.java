@@ -100,4 +100,23 @@ public class SqlTemplateTest {
     assertEquals(triple(1, "hello", 4.0D), t.queryForObject(sql, TupleRowMappers.triple(a,b,c)), "Checking triple ok");
     assertEquals(quadruple(1, "hello", 4.0D, true), t.queryForObject(sql, TupleRowMappers.quadruple(a, b, c, d)), "Checking quadruple ok");
   }
+  
+  @Test
+  public void longMapTest() {
+    LongKeyedMap counts = t.queryForLongMap("select a, count(*) from numbers where a > ? group by a", 1);
+    assertEquals(counts.size(), 7, "One entry per group");
+    assertEquals(counts.get(8, 0), 2L, "Grouped count");
+    assertEquals(counts.get(1, 0), 0L, "Filtered key falls back to the default");
+    assertEquals(counts.containsKey(1), false, "Filtered key is absent");
+    
+    LongKeyedMap big = new LongKeyedMap();
+    for(long i = 0; i < 10000; i++) {
+      big.putIfAbsent(i * 1000003L, i);
+    }
+    big.increment(7000021L, 5);
+    assertEquals(big.size(), 10000, "Size survives rehashing");
+    assertEquals(big.get(9999 * 1000003L, -1), 9999L, "Lookup after rehashing");
+    assertEquals(big.get(7000021L, -1), 12L, "Increment of an existing key");
+    assertEquals(big.putIfAbsent(0, 42), false, "First value wins");
+  }
 }